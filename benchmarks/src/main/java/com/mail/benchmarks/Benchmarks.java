@@ -0,0 +1,40 @@
+package com.mail.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Ejecuta los benchmarks con el profiler de GC siempre activo, para que cada resultado incluya
+ * los bytes reservados por operación ('gc.alloc.rate.norm') además del throughput.
+ *
+ * Acepta las mismas opciones que el runner de JMH, por ejemplo un filtro por nombre:
+ * {@code java -jar target/benchmarks.jar Hash -p costo=10}, o {@code -l} para listarlos.
+ */
+public final class Benchmarks {
+    private Benchmarks() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+        CommandLineOptions linea = new CommandLineOptions(args);
+        if (linea.shouldHelp()) {
+            linea.showHelp();
+            return;
+        }
+        if (linea.shouldList()) {
+            new Runner(linea).list();
+            return;
+        }
+        Options opciones = new OptionsBuilder()
+                .parent(linea)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opciones).run();
+    }
+}
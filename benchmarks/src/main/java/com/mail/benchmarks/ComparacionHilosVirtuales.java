@@ -0,0 +1,127 @@
+package com.mail.benchmarks;
+
+import com.mail.exceptions.MiExcepcion;
+import com.mail.service.dispatch.MailDispatcher;
+import com.mail.service.smtp.ProteccionRelay;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.lang.Nullable;
+import org.springframework.mail.MailException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import javax.mail.internet.MimeMessage;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compara {@link MailDispatcher} con hilos de plataforma y con hilos virtuales manteniendo
+ * muchos envíos en curso a la vez, cada uno bloqueado esperando al "servidor SMTP".
+ *
+ * Informa cuántos envíos llegaron a estar en curso simultáneamente, cuánto tardó en llegar a
+ * ese punto y la memoria por envío en curso, medida como el aumento del RSS del proceso (que
+ * incluye las pilas nativas de los hilos de plataforma) y del heap (donde viven las pilas de
+ * los hilos virtuales). El RSS se lee de /proc, por lo que ese dato solo está en Linux.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.mail.benchmarks.ComparacionHilosVirtuales plataforma 5000
+ * java -cp target/benchmarks.jar com.mail.benchmarks.ComparacionHilosVirtuales virtual 5000
+ * </pre>
+ * El modo virtual requiere Java 21.
+ */
+public final class ComparacionHilosVirtuales {
+    private ComparacionHilosVirtuales() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean virtuales = args.length > 0 && args[0].equals("virtual");
+        int enVuelo = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+
+        CountDownLatch liberar = new CountDownLatch(1);
+        AtomicInteger enCurso = new AtomicInteger();
+        AtomicInteger maximo = new AtomicInteger();
+        JavaMailSenderImpl servidorLento = new JavaMailSenderImpl() {
+            @Override
+            protected void doSend(MimeMessage[] mimeMessages, @Nullable Object[] originalMessages) throws MailException {
+                maximo.accumulateAndGet(enCurso.incrementAndGet(), Math::max);
+                try {
+                    liberar.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    enCurso.decrementAndGet();
+                }
+            }
+        };
+        // Todos los correos van al mismo "dominio": se lo deja usar todos los hilos, de a un correo por lote.
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ProteccionRelay proteccion = new ProteccionRelay(registry, enVuelo, enVuelo, enVuelo, 20, 0.5,
+                Duration.ofSeconds(30), 3);
+        MailDispatcher dispatcher = new MailDispatcher(servidorLento, proteccion, registry, enVuelo, enVuelo,
+                Duration.ofMinutes(1), enVuelo, 0, 1, Duration.ofSeconds(5), 5, "", 4, 1, 0, 0, virtuales);
+
+        System.gc();
+        long rssAntes = rssBytes();
+        long heapAntes = heapUsado();
+        long inicio = System.nanoTime();
+        CompletableFuture<?>[] envios = new CompletableFuture<?>[enVuelo];
+        for (int i = 0; i < enVuelo; i++) {
+            envios[i] = despachar(dispatcher, servidorLento);
+        }
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (enCurso.get() < enVuelo && System.nanoTime() < limite) {
+            Thread.sleep(10);
+        }
+        double msHastaTodos = (System.nanoTime() - inicio) / 1e6;
+        long rssDurante = rssBytes();
+        long heapDurante = heapUsado();
+        int alcanzados = enCurso.get();
+
+        liberar.countDown();
+        CompletableFuture.allOf(envios).join();
+        double segundosTotales = (System.nanoTime() - inicio) / 1e9;
+        dispatcher.cerrar();
+
+        System.out.printf("modo=%s java=%s%n", virtuales ? "virtual" : "plataforma", Runtime.version());
+        System.out.printf("envíos en curso simultáneos: %d de %d (máximo %d), alcanzados en %.0f ms%n",
+                alcanzados, enVuelo, maximo.get(), msHastaTodos);
+        if (rssAntes > 0) {
+            System.out.printf("RSS por envío en curso:  %.1f KB%n", (rssDurante - rssAntes) / 1024.0 / Math.max(1, alcanzados));
+        }
+        System.out.printf("heap por envío en curso: %.1f KB%n", (heapDurante - heapAntes) / 1024.0 / Math.max(1, alcanzados));
+        System.out.printf("envíos por segundo (incluye la espera): %.0f%n", enVuelo / segundosTotales);
+    }
+
+    private static CompletableFuture<Void> despachar(MailDispatcher dispatcher, JavaMailSenderImpl sender) {
+        try {
+            return dispatcher.despachar(sender.createMimeMessage());
+        } catch (MiExcepcion e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static long heapUsado() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * @return El RSS del proceso en bytes, o 0 si no se puede leer (fuera de Linux).
+     */
+    private static long rssBytes() throws IOException {
+        Path estado = Path.of("/proc/self/status");
+        if (!Files.isReadable(estado)) {
+            return 0;
+        }
+        for (String linea : Files.readAllLines(estado)) {
+            if (linea.startsWith("VmRSS:")) {
+                return Long.parseLong(linea.replaceAll("[^0-9]", "")) * 1024;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,116 @@
+package com.mail.benchmarks;
+
+import com.mail.exceptions.MiExcepcion;
+import com.mail.service.EmailService;
+import com.mail.service.attachment.AdjuntoCache;
+import com.mail.service.smtp.ProteccionRelay;
+import com.mail.service.template.PlantillaCorreoService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construcción y serialización de los correos que arma {@link EmailService}: texto plano, HTML,
+ * el enlace de restablecimiento (esqueleto MIME precompilado) y un PDF adjunto de varios tamaños.
+ *
+ * Los envíos van a {@link SumideroMailSender}, que escribe el mensaje completo sin red.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConstruccionMimeBenchmark {
+    private static final String DESTINATARIO = "ana.perez@ejemplo.com";
+    private static final String ASUNTO = "Resumen de su cuenta - diciembre";
+    private static final String TEXTO = "Hola Ana,\n\nLe enviamos el resumen de su cuenta del mes. "
+            + "Si tiene alguna consulta, responda este correo.\n\nSaludos.";
+    private static final String HTML = "<html><body><h1>Hola Ana</h1><p>Le enviamos el <b>resumen</b> de su cuenta del mes."
+            + " Si tiene alguna consulta, responda este correo.</p><p>Saludos.</p></body></html>";
+    private static final String ENLACE = "https://mailsend.ejemplo.com/reset_password?token="
+            + "eyJpZCI6NDIsInYiOjMsImV4cCI6MTcxNDU2NzAwMCwiZSI6ImFuYUBlamVtcGxvLmNvbSJ9.c2lnbmF0dXJl";
+
+    private Path directorio;
+    private EmailService emailService;
+
+    @Setup
+    public void preparar() throws IOException {
+        directorio = Files.createTempDirectory("bench-adjuntos");
+        AdjuntoCache adjuntoCache = new AdjuntoCache(directorio.toString(), DataSize.ofMegabytes(64));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ProteccionRelay proteccion = new ProteccionRelay(registry, 1000, 1000, 1000, 20, 0.5, Duration.ofSeconds(30), 3);
+        emailService = new EmailService(new SumideroMailSender(), proteccion, null, null, new PlantillaCorreoService(),
+                adjuntoCache, registry);
+        ReflectionTestUtils.setField(emailService, "emailSender", "soporte@ejemplo.com");
+        ReflectionTestUtils.invokeMethod(emailService, "compilarEsqueletos");
+    }
+
+    @TearDown
+    public void limpiar() throws IOException {
+        FileSystemUtils.deleteRecursively(directorio);
+    }
+
+    @Benchmark
+    public void textoPlano() throws MiExcepcion {
+        emailService.sendEmail(DESTINATARIO, ASUNTO, TEXTO);
+    }
+
+    @Benchmark
+    public void html() throws MiExcepcion, MessagingException, IOException {
+        MimeMessage mensaje = emailService.crearMensaje(DESTINATARIO, ASUNTO, HTML, true);
+        mensaje.saveChanges();
+        mensaje.writeTo(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void enlaceRestablecimiento() throws MiExcepcion {
+        emailService.sendEmail(DESTINATARIO, ENLACE);
+    }
+
+    /**
+     * Incluye guardar y hashear el PDF en {@link AdjuntoCache}; desde la segunda iteración el
+     * adjunto ya está codificado y se reutiliza, como ocurre al reenviar el mismo archivo.
+     */
+    @Benchmark
+    public void pdfAdjunto(Pdf adjunto) throws MiExcepcion {
+        emailService.sendEmailWithAttachment(DESTINATARIO, ASUNTO, TEXTO, adjunto.contenido, "resumen.pdf");
+    }
+
+    @State(Scope.Benchmark)
+    public static class Pdf {
+        @Param({"10240", "1048576", "5242880"})
+        public int tamano;
+
+        byte[] contenido;
+
+        @Setup
+        public void preparar() {
+            contenido = new byte[tamano];
+            new Random(42).nextBytes(contenido);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.mail.benchmarks;
+
+import com.mail.service.mime.EsqueletoMime;
+import com.mail.service.template.PlantillaCompilada;
+import com.mail.service.template.PlantillaCorreo;
+import com.mail.service.template.PlantillaCorreoService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mail.javamail.MimeMessageHelper;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Armado y serialización del correo de restablecimiento de contraseña con
+ * {@link MimeMessageHelper} y con un {@link EsqueletoMime} precompilado. La diferencia que
+ * interesa está en los bytes reservados por mensaje ('gc.alloc.rate.norm').
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EsqueletoMimeBenchmark {
+    private static final String DESTINATARIO = "ana@ejemplo.com";
+    private static final Map<String, String> VARIABLES =
+            Map.of("enlace", "http://localhost:8080/reset_password?token=Xq3pZ8aLw0mYv2RcT6uJb9nKe4sHd1fGo7iB5yCtVx");
+
+    private final Session sesion = Session.getInstance(new Properties());
+    private InternetAddress remitente;
+    private String asunto;
+    private PlantillaCompilada cuerpo;
+    private EsqueletoMime esqueleto;
+
+    @Setup
+    public void preparar() throws MessagingException, IOException {
+        PlantillaCorreoService plantillas = new PlantillaCorreoService();
+        remitente = new InternetAddress("soporte@ejemplo.com", "Soporte de Spring Boot", "UTF-8");
+        asunto = PlantillaCorreo.RESET_PASSWORD.getAsunto();
+        cuerpo = plantillas.getCuerpo(PlantillaCorreo.RESET_PASSWORD);
+        esqueleto = EsqueletoMime.compilar(sesion, remitente, plantillas.getAsunto(PlantillaCorreo.RESET_PASSWORD),
+                cuerpo, true);
+    }
+
+    @Benchmark
+    public void mimeMessageHelper() throws MessagingException, IOException {
+        MimeMessage mensaje = new MimeMessage(sesion);
+        MimeMessageHelper helper = new MimeMessageHelper(mensaje, "UTF-8");
+        helper.setFrom(remitente);
+        helper.setTo(DESTINATARIO);
+        helper.setSubject(asunto);
+        helper.setText(cuerpo.renderizar(VARIABLES), true);
+        mensaje.saveChanges();
+        mensaje.writeTo(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void esqueleto() throws MessagingException, IOException {
+        MimeMessage mensaje = esqueleto.crearMensaje(new InternetAddress(DESTINATARIO), VARIABLES);
+        mensaje.saveChanges();
+        mensaje.writeTo(OutputStream.nullOutputStream());
+    }
+}
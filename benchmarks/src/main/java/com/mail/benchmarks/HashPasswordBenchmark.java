@@ -0,0 +1,68 @@
+package com.mail.benchmarks;
+
+import com.mail.service.password.PasswordHashingService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BCrypt con distintos costos, directo y a través de {@link PasswordHashingService}, para ver
+ * cuánto agrega el pasaje por su grupo de hilos.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class HashPasswordBenchmark {
+    private static final String PASSWORD = "una-contraseña-de-prueba";
+
+    @Param({"4", "8", "10", "12"})
+    public int costo;
+
+    private BCryptPasswordEncoder bcrypt;
+    private PasswordHashingService passwordHashingService;
+    private String hash;
+
+    @Setup
+    public void preparar() {
+        bcrypt = new BCryptPasswordEncoder(costo);
+        passwordHashingService = new PasswordHashingService(new SimpleMeterRegistry(), 0, 64, Duration.ofMinutes(1), costo);
+        hash = bcrypt.encode(PASSWORD);
+    }
+
+    @TearDown
+    public void cerrar() {
+        passwordHashingService.cerrar();
+    }
+
+    @Benchmark
+    public String encode() {
+        return bcrypt.encode(PASSWORD);
+    }
+
+    @Benchmark
+    public boolean matches() {
+        return bcrypt.matches(PASSWORD, hash);
+    }
+
+    @Benchmark
+    public boolean matchesConPool() {
+        return passwordHashingService.matches(PASSWORD, hash);
+    }
+}
@@ -0,0 +1,115 @@
+package com.mail.benchmarks;
+
+import com.mail.controllers.PortalController;
+import com.mail.service.vista.ResolutorVistasEstaticas;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.servlet.ViewResolver;
+import org.thymeleaf.spring5.SpringTemplateEngine;
+import org.thymeleaf.spring5.view.ThymeleafViewResolver;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Peticiones a GET /login por segundo, desde el controlador hasta los bytes de la respuesta:
+ * con la caché de plantillas desactivada como en 'application.properties' ('sin-cache'), con
+ * la caché del perfil 'prod' ('cache') y con la página ya renderizada ('prerenderizada').
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaginaLoginBenchmark {
+    @Param({"sin-cache", "cache", "prerenderizada"})
+    public String modo;
+
+    private MockMvc mvc;
+
+    @Setup
+    public void preparar() {
+        ClassLoaderTemplateResolver plantillas = new ClassLoaderTemplateResolver();
+        plantillas.setPrefix("templates/");
+        plantillas.setSuffix(".html");
+        plantillas.setCharacterEncoding("UTF-8");
+        plantillas.setCacheable(!modo.equals("sin-cache"));
+        SpringTemplateEngine motor = new SpringTemplateEngine();
+        motor.setTemplateResolver(plantillas);
+
+        ThymeleafViewResolver thymeleaf = new ThymeleafViewResolver();
+        thymeleaf.setTemplateEngine(motor);
+        thymeleaf.setCharacterEncoding("UTF-8");
+        List<ViewResolver> resolutores = modo.equals("prerenderizada")
+                ? List.of(new ResolutorVistasEstaticas(thymeleaf, List.of("login")), thymeleaf)
+                : List.of(thymeleaf);
+
+        mvc = MockMvcBuilders.standaloneSetup(new PortalController(null))
+                .setViewResolvers(resolutores.toArray(new ViewResolver[0]))
+                .addFilters((request, response, chain) -> chain.doFilter(request, new Respuesta((HttpServletResponse) response)))
+                .build();
+    }
+
+    @Benchmark
+    public MockHttpServletResponse login() throws Exception {
+        return mvc.perform(get("/login")).andReturn().getResponse();
+    }
+
+    /**
+     * El stream de {@link MockHttpServletResponse} escribe de a un byte; este escribe los arreglos
+     * de una vez, como el de Tomcat, para no medir el mock en lugar de la vista.
+     */
+    private static final class Respuesta extends HttpServletResponseWrapper {
+        private final ByteArrayOutputStream cuerpo = new ByteArrayOutputStream();
+        private final ServletOutputStream salida = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                cuerpo.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                cuerpo.write(b, off, len);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        };
+
+        Respuesta(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return salida;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.mail.benchmarks;
+
+import com.mail.service.template.CorreoRenderizado;
+import com.mail.service.template.PlantillaCorreo;
+import com.mail.service.template.PlantillaCorreoService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renderizado del HTML del correo con el enlace de restablecimiento de contraseña.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlantillaBenchmark {
+    private final PlantillaCorreoService plantillaCorreoService = new PlantillaCorreoService();
+    private final Map<String, String> variables = Map.of("enlace",
+            "https://mailsend.ejemplo.com/reset_password?token=eyJpZCI6NDIsInYiOjN9.c2lnbmF0dXJl&origen=<correo>");
+
+    @Benchmark
+    public CorreoRenderizado enlaceRestablecimiento() {
+        return plantillaCorreoService.renderizar(PlantillaCorreo.RESET_PASSWORD, variables);
+    }
+}
@@ -0,0 +1,30 @@
+package com.mail.benchmarks;
+
+import org.springframework.lang.Nullable;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailPreparationException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * {@link JavaMailSenderImpl} que en lugar de conectarse a un servidor SMTP escribe cada mensaje
+ * en un stream descartado. Así se mide la construcción y serialización completa del MIME, que
+ * JavaMail difiere hasta {@code writeTo}, sin depender de la red.
+ */
+class SumideroMailSender extends JavaMailSenderImpl {
+    @Override
+    protected void doSend(MimeMessage[] mimeMessages, @Nullable Object[] originalMessages) throws MailException {
+        for (MimeMessage mensaje : mimeMessages) {
+            try {
+                mensaje.saveChanges();
+                mensaje.writeTo(OutputStream.nullOutputStream());
+            } catch (MessagingException | IOException e) {
+                throw new MailPreparationException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.mail.benchmarks;
+
+import com.mail.entity.Usuario;
+import com.mail.service.TokenRecupero;
+import com.mail.service.TokenRecuperoService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Emisión y verificación de los tokens firmados de restablecimiento de contraseña.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenRecuperoBenchmark {
+    private final TokenRecuperoService tokenRecuperoService = new TokenRecuperoService(
+            "una-clave-de-benchmark-de-al-menos-32-bytes", false, Duration.ofMinutes(30));
+    private Usuario usuario;
+    private String token;
+
+    @Setup
+    public void preparar() {
+        usuario = new Usuario();
+        usuario.setId(42L);
+        usuario.setPasswordVersion(3);
+        usuario.setEmail("ana.perez@ejemplo.com");
+        token = tokenRecuperoService.emitir(usuario);
+    }
+
+    @Benchmark
+    public String emitir() {
+        return tokenRecuperoService.emitir(usuario);
+    }
+
+    @Benchmark
+    public Optional<TokenRecupero> verificar() {
+        return tokenRecuperoService.verificar(token);
+    }
+}
@@ -0,0 +1,43 @@
+package com.mail.benchmarks;
+
+import com.mail.utilitys.Utility;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Armado de la URL base con la que se generan los enlaces de los correos.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilityBenchmark {
+    private MockHttpServletRequest request;
+
+    @Setup
+    public void preparar() {
+        request = new MockHttpServletRequest("POST", "/olvido-password");
+        request.setScheme("https");
+        request.setServerName("mailsend.ejemplo.com");
+        request.setServerPort(443);
+        request.setServletPath("/olvido-password");
+    }
+
+    @Benchmark
+    public String getSiteURL() {
+        return Utility.getSiteURL(request);
+    }
+}
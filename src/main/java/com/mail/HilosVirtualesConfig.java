@@ -0,0 +1,26 @@
+package com.mail;
+
+import com.mail.utilitys.HilosVirtuales;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+
+@Configuration
+@ConditionalOnProperty(name = "mail.virtual-threads.enabled", havingValue = "true")
+public class HilosVirtualesConfig {
+
+    /**
+     * Atiende cada petición HTTP en un hilo virtual nuevo en lugar del pool de hilos de Tomcat,
+     * de modo que la cantidad de peticiones en curso ya no está limitada por
+     * 'server.tomcat.threads.max'. Requiere Java 21; con Java 17 la aplicación no arranca y el
+     * error indica que se desactive 'mail.virtual-threads.enabled'.
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> protocolHandlerHilosVirtuales() {
+        ExecutorService executor = HilosVirtuales.executorPorTarea("http-");
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+}
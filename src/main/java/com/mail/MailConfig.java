@@ -0,0 +1,79 @@
+package com.mail;
+
+import com.mail.service.smtp.NioMailSender;
+import com.mail.service.smtp.PooledMailSender;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mail.MailProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.time.Duration;
+import java.util.Properties;
+
+@Configuration
+@EnableConfigurationProperties(MailProperties.class)
+public class MailConfig {
+
+    /**
+     * Crea el {@link org.springframework.mail.javamail.JavaMailSender} de la aplicación con un pool
+     * de conexiones SMTP reutilizables. Toma la configuración de las propiedades 'spring.mail.*',
+     * igual que el sender que Spring Boot crearía por defecto.
+     */
+    @Bean(destroyMethod = "cerrar")
+    @ConditionalOnProperty(name = "mail.smtp.engine", havingValue = "javamail", matchIfMissing = true)
+    public PooledMailSender javaMailSender(MailProperties properties, MeterRegistry registry,
+                                           @Value("${mail.pool.max-connections:4}") int maxConexiones,
+                                           @Value("${mail.pool.max-messages-per-connection:100}") int maxMensajes,
+                                           @Value("${mail.pool.max-idle:60s}") Duration maxInactividad,
+                                           @Value("${mail.pool.validate-after-idle:5s}") Duration validarTras,
+                                           @Value("${mail.pool.borrow-timeout:10s}") Duration esperaMaxima,
+                                           @Value("${mail.virtual-threads.enabled:false}") boolean hilosVirtuales) {
+        PooledMailSender sender = new PooledMailSender(maxConexiones, maxMensajes, maxInactividad, validarTras, esperaMaxima,
+                registry, hilosVirtuales);
+        configurar(sender, properties);
+        return sender;
+    }
+
+    /**
+     * Con 'mail.smtp.engine=nio' el sender habla SMTP con sockets no bloqueantes: las mismas
+     * propiedades del pool limitan las conexiones, y 'mail.smtp.nio.*' los hilos de eventos y los
+     * mensajes en curso.
+     */
+    @Bean(name = "javaMailSender", destroyMethod = "cerrar")
+    @ConditionalOnProperty(name = "mail.smtp.engine", havingValue = "nio")
+    public NioMailSender nioMailSender(MailProperties properties, MeterRegistry registry,
+                                       @Value("${mail.pool.max-connections:4}") int maxConexiones,
+                                       @Value("${mail.pool.max-messages-per-connection:100}") int maxMensajes,
+                                       @Value("${mail.pool.max-idle:60s}") Duration maxInactividad,
+                                       @Value("${mail.pool.borrow-timeout:10s}") Duration esperaMaxima,
+                                       @Value("${mail.smtp.nio.max-in-flight:1000}") int maxEnCurso,
+                                       @Value("${mail.smtp.nio.event-loop-threads:2}") int hilosEventos,
+                                       @Value("${mail.virtual-threads.enabled:false}") boolean hilosVirtuales) {
+        NioMailSender sender = new NioMailSender(maxConexiones, maxMensajes, maxInactividad, esperaMaxima,
+                maxEnCurso, hilosEventos, registry, hilosVirtuales);
+        configurar(sender, properties);
+        return sender;
+    }
+
+    private static void configurar(JavaMailSenderImpl sender, MailProperties properties) {
+        sender.setHost(properties.getHost());
+        if (properties.getPort() != null) {
+            sender.setPort(properties.getPort());
+        }
+        sender.setUsername(properties.getUsername());
+        sender.setPassword(properties.getPassword());
+        sender.setProtocol(properties.getProtocol());
+        if (properties.getDefaultEncoding() != null) {
+            sender.setDefaultEncoding(properties.getDefaultEncoding().name());
+        }
+        if (!properties.getProperties().isEmpty()) {
+            Properties javaMailProperties = new Properties();
+            javaMailProperties.putAll(properties.getProperties());
+            sender.setJavaMailProperties(javaMailProperties);
+        }
+    }
+}
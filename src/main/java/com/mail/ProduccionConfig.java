@@ -0,0 +1,48 @@
+package com.mail;
+
+import com.mail.service.vista.FiltroRecursosVersionados;
+import com.mail.service.vista.PrecargaPlantillas;
+import com.mail.service.vista.ResolutorVistasEstaticas;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thymeleaf.ThymeleafProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.thymeleaf.spring5.ISpringTemplateEngine;
+import org.thymeleaf.spring5.view.ThymeleafViewResolver;
+
+import java.util.List;
+
+@Configuration
+@Profile("prod")
+public class ProduccionConfig {
+
+    /**
+     * Sirve las vistas de 'mail.web.static-views' desde el HTML que se renderizó la primera vez,
+     * sin volver a procesar la plantilla en cada petición.
+     */
+    @Bean
+    public ResolutorVistasEstaticas resolutorVistasEstaticas(ThymeleafViewResolver thymeleafViewResolver,
+                                                             @Value("${mail.web.static-views:index,login,registro}") List<String> vistas) {
+        return new ResolutorVistasEstaticas(thymeleafViewResolver, vistas);
+    }
+
+    /**
+     * Deja todas las plantillas en la caché de Thymeleaf antes de atender peticiones.
+     */
+    @Bean
+    public PrecargaPlantillas precargaPlantillas(ISpringTemplateEngine templateEngine, ThymeleafProperties properties) {
+        return new PrecargaPlantillas(templateEngine, properties.getPrefix(), properties.getSuffix());
+    }
+
+    /**
+     * Agrega ETag y 'immutable' a los recursos estáticos con la versión en la URL.
+     */
+    @Bean
+    public FilterRegistrationBean<FiltroRecursosVersionados> filtroRecursosVersionados() {
+        FilterRegistrationBean<FiltroRecursosVersionados> registro = new FilterRegistrationBean<>(new FiltroRecursosVersionados());
+        registro.addUrlPatterns("/*");
+        return registro;
+    }
+}
@@ -0,0 +1,25 @@
+package com.mail;
+
+import com.mail.service.sesion.SerializadorSesion;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.support.GenericConversionService;
+
+@Configuration
+public class SesionConfig {
+
+    /**
+     * Conversión que usa Spring Session para guardar los atributos de sesión en un almacén
+     * externo. Solo se usa si 'spring.session.store-type' no es 'none', por ejemplo con el
+     * perfil 'sesion-jdbc', que comparte las sesiones entre instancias a través de la base de datos.
+     */
+    @Bean("springSessionConversionService")
+    public ConversionService springSessionConversionService() {
+        SerializadorSesion serializador = new SerializadorSesion();
+        GenericConversionService conversion = new GenericConversionService();
+        conversion.addConverter(Object.class, byte[].class, serializador::serializar);
+        conversion.addConverter(byte[].class, Object.class, serializador::deserializar);
+        return conversion;
+    }
+}
@@ -2,6 +2,9 @@ package com.mail;
 
 
 import com.mail.service.UsuarioService;
+import com.mail.service.password.ManejadorFalloLogin;
+import com.mail.service.password.PasswordHashingService;
+import com.mail.service.password.ProveedorAutenticacionAcotado;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
@@ -9,27 +12,33 @@ import org.springframework.security.config.annotation.method.configuration.Enabl
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.web.csrf.CookieCsrfTokenRepository;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 
 @Configuration
 @EnableWebSecurity
 @EnableGlobalMethodSecurity(prePostEnabled = true)
 public class WebSecurity extends WebSecurityConfigurerAdapter {
     private final UsuarioService usuarioService;
-    public WebSecurity(UsuarioService usuarioService) {
+    private final PasswordHashingService passwordHashingService;
+    public WebSecurity(UsuarioService usuarioService, PasswordHashingService passwordHashingService) {
         this.usuarioService = usuarioService;
+        this.passwordHashingService = passwordHashingService;
     }
 
     @Autowired
     public void configureGlobal(AuthenticationManagerBuilder auth) throws Exception {
-        auth.userDetailsService(usuarioService)
-                .passwordEncoder(new BCryptPasswordEncoder());
+        ProveedorAutenticacionAcotado proveedor = new ProveedorAutenticacionAcotado();
+        proveedor.setUserDetailsService(usuarioService);
+        proveedor.setUserDetailsPasswordService(usuarioService);
+        proveedor.setPasswordEncoder(passwordHashingService);
+        auth.authenticationProvider(proveedor);
     }
 
     @Override
     protected void configure(HttpSecurity http) throws Exception{
         http.authorizeRequests()
-                .antMatchers("/admin/*").hasRole("ADMIN")
+                .antMatchers("/admin/**").hasRole("ADMIN")
                 .antMatchers("/css/*","/js/*","/img/*","/**")
                 .permitAll()
                 .and().formLogin()
@@ -38,10 +47,16 @@ public class WebSecurity extends WebSecurityConfigurerAdapter {
                 .usernameParameter("dni")
                 .passwordParameter("password")
                 .defaultSuccessUrl("/inicio")
+                .failureHandler(new ManejadorFalloLogin("/login?error"))
                 .permitAll()
                 .and().logout()
-                .logoutUrl("/logout")
+                .logoutRequestMatcher(new AntPathRequestMatcher("/logout"))
                 .logoutSuccessUrl("/login")
-                .permitAll().and().csrf().disable();
+                .permitAll()
+                // Solo se exige el token CSRF en los formularios de administración (th:action lo agrega).
+                // Se guarda en una cookie para no abrir una sesión por cada visitante anónimo.
+                .and().csrf()
+                .csrfTokenRepository(new CookieCsrfTokenRepository())
+                .requireCsrfProtectionMatcher(new AntPathRequestMatcher("/admin/**", "POST"));
     }
 }
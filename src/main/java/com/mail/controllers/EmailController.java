@@ -1,11 +1,11 @@
 package com.mail.controllers;
 
-import com.mail.entity.Usuario;
 import com.mail.exceptions.MiExcepcion;
 import com.mail.service.EmailService;
-import com.mail.service.UsuarioService;
+import com.mail.service.RecuperoPasswordService;
+import com.mail.service.TokenRecupero;
+import com.mail.service.TokenRecuperoService;
 import com.mail.utilitys.Utility;
-import net.bytebuddy.utility.RandomString;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -15,16 +15,19 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.servlet.http.HttpServletRequest;
-import java.io.IOException;
+import java.util.Optional;
 
 @Controller
 public class EmailController {
-    private final UsuarioService usuarioService;
     private final EmailService emailService;
+    private final RecuperoPasswordService recuperoPasswordService;
+    private final TokenRecuperoService tokenRecuperoService;
 
-    public EmailController(UsuarioService usuarioService, EmailService emailService) {
-        this.usuarioService = usuarioService;
+    public EmailController(EmailService emailService, RecuperoPasswordService recuperoPasswordService,
+                           TokenRecuperoService tokenRecuperoService) {
         this.emailService = emailService;
+        this.recuperoPasswordService = recuperoPasswordService;
+        this.tokenRecuperoService = tokenRecuperoService;
     }
 
     /**
@@ -43,9 +46,10 @@ public class EmailController {
     /**
      * Maneja las solicitudes POST para el proceso de recuperación de contraseña.
      *
-     * Procesa la solicitud de recuperación de contraseña, generando un token único,
-     * actualizando la información del usuario en la base de datos y enviando un correo
-     * electrónico con un enlace para restablecer la contraseña. Muestra un mensaje de éxito
+     * Procesa la solicitud de recuperación de contraseña, generando un token firmado con
+     * vencimiento y enviando un correo electrónico con un enlace para restablecer la contraseña.
+     * El correo se guarda en la base de datos y se envía en segundo plano, por lo que la
+     * respuesta no espera al servidor SMTP. Muestra un mensaje de éxito
      * o error en la vista.
      *
      * @param request La solicitud HTTP que contiene los parámetros de la solicitud.
@@ -55,11 +59,8 @@ public class EmailController {
     @PostMapping("/olvido-password")
     public String procesarOlvidoPassword(HttpServletRequest request, Model modelo) {
         String email = request.getParameter("email");
-        String token = RandomString.make(45);
         try {
-            usuarioService.actualizarPasswordToken(token, email);
-            String resetPasswordLink = Utility.getSiteURL(request) + "/reset_password?token=" + token;
-            emailService.sendEmail(email, resetPasswordLink);
+            recuperoPasswordService.solicitarReseteo(email, Utility.getSiteURL(request));
             modelo.addAttribute("mensaje", "Se ha enviado un mensaje a su dirección de correo electrónico con un enlace para restablecer su contraseña.");
         } catch (MiExcepcion e) {
             modelo.addAttribute("error", e.getMessage());
@@ -71,8 +72,9 @@ public class EmailController {
     /**
      * Maneja las solicitudes GET para restablecer la contraseña.
      *
-     * Verifica la validez del token proporcionado y muestra la página de cambio de contraseña
-     * si el token es válido. En caso contrario, muestra un mensaje de error.
+     * Verifica en memoria la firma y el vencimiento del token proporcionado, sin consultar la
+     * base de datos, y muestra la página de cambio de contraseña si el token es válido. En caso
+     * contrario, muestra un mensaje de error.
      *
      * @param token El token proporcionado en la URL para restablecer la contraseña.
      * @param modelo El modelo que se utiliza para pasar datos a la vista.
@@ -80,8 +82,7 @@ public class EmailController {
      */
     @GetMapping("/reset_password")
     public String resetearPassword(@Param(value = "token") String token, Model modelo) {
-        Usuario usuario = usuarioService.get(token);
-        if (usuario == null) {
+        if (tokenRecuperoService.verificar(token).isEmpty()) {
             modelo.addAttribute("mensaje", "Token Invalido.");
             return "mensaje";
         }
@@ -94,9 +95,9 @@ public class EmailController {
      * Maneja las solicitudes POST para procesar el restablecimiento de contraseña.
      *
      * Procesa la solicitud de restablecimiento de contraseña utilizando el token proporcionado.
-     * Si el token es válido, actualiza la contraseña del usuario en la base de datos, envía un
-     * correo electrónico de confirmación y redirige a la página de inicio de sesión. En caso
-     * contrario, muestra un mensaje de error.
+     * Si el token es válido, actualiza la contraseña del usuario con una sola sentencia que
+     * falla si el token ya se usó, envía un correo electrónico de confirmación y redirige a la
+     * página de inicio de sesión. En caso contrario, muestra un mensaje de error.
      *
      * @param request La solicitud HTTP que contiene los parámetros de la solicitud.
      * @param modelo El modelo que se utiliza para pasar datos a la vista.
@@ -106,16 +107,18 @@ public class EmailController {
     public String procesarResetearPassword(HttpServletRequest request, Model modelo) {
         String token = request.getParameter("token");
         String password = request.getParameter("password");
-        Usuario usuario = usuarioService.get(token);
-        if (usuario == null) {
+        Optional<TokenRecupero> datos = tokenRecuperoService.verificar(token);
+        if (datos.isEmpty()) {
             modelo.addAttribute("mensaje", "Token Invalido.");
             return "cambiar_password";
-        }else {
-
-        usuarioService.actualizarPassword(usuario, password);
-        emailService.enviarEmailConfirmacionCambioPassword(usuario.getEmail());
-        return "redirect:/login";
         }
+        try {
+            recuperoPasswordService.restablecer(datos.get(), password);
+        } catch (MiExcepcion e) {
+            modelo.addAttribute("mensaje", e.getMessage());
+            return "mensaje";
+        }
+        return "redirect:/login";
     }
 
     /**
@@ -137,7 +140,7 @@ public class EmailController {
      *
      * Procesa la solicitud para enviar un correo electrónico con un archivo PDF adjunto.
      * Verifica si el archivo adjunto es un PDF, y en caso afirmativo, envía el correo electrónico
-     * con el PDF adjunto. Si hay algún problema, muestra un mensaje de error.
+     * con el PDF adjunto en segundo plano. Si hay algún problema, muestra un mensaje de error.
      *
      * @param to      La dirección de correo electrónico de destino.
      * @param subject El asunto del correo electrónico.
@@ -158,10 +161,9 @@ public class EmailController {
                 request.setAttribute("mensaje", "Por favor seleccione un archivo PDF.");
                 return "mensaje";
             }
-            byte[] pdfBytes = pdfFile.getBytes();
-            emailService.sendEmailWithAttachment( to, subject, text, pdfBytes, pdfFile.getOriginalFilename());
+            emailService.sendEmailWithAttachmentAsync(to, subject, text, pdfFile);
             return "index";
-        } catch (IOException | MiExcepcion e) {
+        } catch (MiExcepcion e) {
             request.setAttribute("mensaje", e.getMessage());
             return "mensaje";
         }
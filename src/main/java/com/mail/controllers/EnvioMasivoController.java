@@ -0,0 +1,99 @@
+package com.mail.controllers;
+
+import com.mail.exceptions.MiExcepcion;
+import com.mail.service.bulk.EnvioMasivoService;
+import com.mail.service.bulk.TrabajoMasivo;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.ModelMap;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+@Controller
+@RequestMapping("/admin/envio_masivo")
+public class EnvioMasivoController {
+    private final EnvioMasivoService envioMasivoService;
+
+    public EnvioMasivoController(EnvioMasivoService envioMasivoService) {
+        this.envioMasivoService = envioMasivoService;
+    }
+
+    /**
+     * Muestra el formulario para iniciar un envío masivo.
+     *
+     * @return La vista "envioMasivo".
+     */
+    @GetMapping
+    public String formulario() {
+        return "envioMasivo";
+    }
+
+    /**
+     * Inicia un envío masivo a los destinatarios de un CSV o a todos los usuarios registrados.
+     *
+     * El envío continúa en segundo plano; se redirige a la página de progreso del trabajo.
+     *
+     * @param origen  "csv" para usar el archivo subido o "usuarios" para todos los usuarios.
+     * @param asunto  La plantilla del asunto, con variables {@code {{nombre}}}.
+     * @param cuerpo  La plantilla del cuerpo, con variables {@code {{nombre}}}.
+     * @param html    Si el cuerpo es HTML.
+     * @param archivo El CSV con una columna "email" y las variables de cada destinatario.
+     * @param adjunto Un archivo opcional que se adjunta a todos los correos.
+     * @param modelo  El modelo que se utiliza para pasar datos a la vista.
+     * @return La redirección al progreso del trabajo, o la vista "mensaje" con el error.
+     */
+    @PostMapping
+    public String iniciar(@RequestParam String origen,
+                          @RequestParam String asunto,
+                          @RequestParam String cuerpo,
+                          @RequestParam(defaultValue = "false") boolean html,
+                          @RequestParam(required = false) MultipartFile archivo,
+                          @RequestParam(required = false) MultipartFile adjunto,
+                          ModelMap modelo) {
+        try {
+            TrabajoMasivo trabajo = "usuarios".equals(origen)
+                    ? envioMasivoService.iniciarParaUsuarios(asunto, cuerpo, html, adjunto)
+                    : envioMasivoService.iniciarDesdeCsv(archivo, asunto, cuerpo, html, adjunto);
+            return "redirect:/admin/envio_masivo/" + trabajo.getId();
+        } catch (MiExcepcion e) {
+            modelo.put("error", e.getMessage());
+            return "mensaje";
+        }
+    }
+
+    /**
+     * Muestra el progreso de un envío masivo.
+     *
+     * @param id     El identificador del trabajo.
+     * @param modelo El modelo que se utiliza para pasar datos a la vista.
+     * @return La vista "progresoMasivo".
+     */
+    @GetMapping("/{id}")
+    public String progreso(@PathVariable String id, ModelMap modelo) {
+        modelo.put("trabajo", buscar(id));
+        return "progresoMasivo";
+    }
+
+    /**
+     * Devuelve el progreso de un envío masivo en formato JSON.
+     *
+     * @param id El identificador del trabajo.
+     * @return El trabajo con sus contadores y su velocidad de envío.
+     */
+    @GetMapping("/{id}/progreso")
+    @ResponseBody
+    public TrabajoMasivo progresoJson(@PathVariable String id) {
+        return buscar(id);
+    }
+
+    private TrabajoMasivo buscar(String id) {
+        return envioMasivoService.buscar(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Envío masivo inexistente"));
+    }
+}
@@ -0,0 +1,85 @@
+package com.mail.controllers;
+
+import com.mail.exceptions.MiExcepcion;
+import com.mail.service.importacion.ImportacionUsuariosService;
+import com.mail.service.importacion.TrabajoImportacion;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.ModelMap;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+@Controller
+@RequestMapping("/admin/importar_usuarios")
+public class ImportacionUsuariosController {
+    private final ImportacionUsuariosService importacionUsuariosService;
+
+    public ImportacionUsuariosController(ImportacionUsuariosService importacionUsuariosService) {
+        this.importacionUsuariosService = importacionUsuariosService;
+    }
+
+    /**
+     * Muestra el formulario para importar usuarios.
+     *
+     * @return La vista "importarUsuarios".
+     */
+    @GetMapping
+    public String formulario() {
+        return "importarUsuarios";
+    }
+
+    /**
+     * Inicia la importación de los usuarios de un CSV. La importación continúa en segundo
+     * plano; se redirige a la página de progreso del trabajo.
+     *
+     * @param archivo El CSV con las columnas "nombre", "dni", "password" y opcionalmente "email" y "telefono".
+     * @param modelo  El modelo que se utiliza para pasar datos a la vista.
+     * @return La redirección al progreso del trabajo, o la vista "mensaje" con el error.
+     */
+    @PostMapping
+    public String iniciar(@RequestParam MultipartFile archivo, ModelMap modelo) {
+        try {
+            TrabajoImportacion trabajo = importacionUsuariosService.iniciar(archivo);
+            return "redirect:/admin/importar_usuarios/" + trabajo.getId();
+        } catch (MiExcepcion e) {
+            modelo.put("error", e.getMessage());
+            return "mensaje";
+        }
+    }
+
+    /**
+     * Muestra el progreso de una importación y las filas rechazadas.
+     *
+     * @param id     El identificador del trabajo.
+     * @param modelo El modelo que se utiliza para pasar datos a la vista.
+     * @return La vista "progresoImportacion".
+     */
+    @GetMapping("/{id}")
+    public String progreso(@PathVariable String id, ModelMap modelo) {
+        modelo.put("trabajo", buscar(id));
+        return "progresoImportacion";
+    }
+
+    /**
+     * Devuelve el progreso de una importación en formato JSON, con el detalle de las filas rechazadas.
+     *
+     * @param id El identificador del trabajo.
+     * @return El trabajo con sus contadores y sus errores.
+     */
+    @GetMapping("/{id}/progreso")
+    @ResponseBody
+    public TrabajoImportacion progresoJson(@PathVariable String id) {
+        return buscar(id);
+    }
+
+    private TrabajoImportacion buscar(String id) {
+        return importacionUsuariosService.buscar(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Importación inexistente"));
+    }
+}
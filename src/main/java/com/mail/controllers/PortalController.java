@@ -1,8 +1,9 @@
 package com.mail.controllers;
 
-import com.mail.entity.Usuario;
 import com.mail.exceptions.MiExcepcion;
+import com.mail.exceptions.ServicioSaturadoException;
 import com.mail.service.UsuarioService;
+import com.mail.service.sesion.UsuarioSesion;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.ModelMap;
@@ -46,6 +47,8 @@ public class PortalController {
                             @RequestParam String password2, ModelMap modelo) throws MiExcepcion {
         try {
             usuarioService.registrar(nombre, dni, password, password2);
+        } catch (ServicioSaturadoException e) {
+            throw e;
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -56,10 +59,11 @@ public class PortalController {
     @GetMapping("/inicio")
     public String inicio(HttpSession session, ModelMap modelo) {
 
-        Usuario logueado = (Usuario) session.getAttribute("usuariosession");
+        UsuarioSesion logueado = (UsuarioSesion) session.getAttribute(UsuarioSesion.ATRIBUTO);
 
-        switch (logueado.getRol().toString()) {
+        switch (logueado.rol().toString()) {
             case "USER":
+            case "ADMIN":
                 return "inicio.html";
 
             default:
@@ -0,0 +1,43 @@
+package com.mail.entity;
+
+import com.mail.enumerated.EstadoCorreo;
+import lombok.Data;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/**
+ * Correo pendiente de envío, guardado en la misma transacción que el cambio que lo origina.
+ *
+ * Mientras un nodo lo envía, el correo queda asociado a su reclamo hasta {@code reclamoVence};
+ * el nodo renueva ese plazo mientras trabaja y, si se cae, otro nodo lo retoma al vencer.
+ */
+@Data
+@Entity
+@Table(indexes = {
+        @Index(name = "idx_correo_estado_proximo", columnList = "estado, proximoIntento"),
+        @Index(name = "idx_correo_reclamo", columnList = "reclamo"),
+        @Index(name = "idx_correo_estado_vence", columnList = "estado, reclamoVence")
+})
+public class CorreoSaliente {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String destinatario;
+    private String asunto;
+    @Lob
+    private String cuerpo;
+    private boolean html;
+    @Enumerated(EnumType.STRING)
+    private EstadoCorreo estado;
+    private int intentos;
+    private Instant creado;
+    private Instant proximoIntento;
+    private String reclamo;
+    private Instant reclamadoEn;
+    private Instant reclamoVence;
+    private Instant enviadoEn;
+    @Column(length = 1000)
+    private String ultimoError;
+}
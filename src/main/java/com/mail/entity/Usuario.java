@@ -7,20 +7,34 @@ import javax.persistence.*;
 
 @Data
 @Entity
+@Table(uniqueConstraints = {
+        @UniqueConstraint(name = "uk_usuario_dni", columnNames = "dni"),
+        @UniqueConstraint(name = "uk_usuario_email", columnNames = "email")
+})
 public class Usuario {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
     private String name;
+    /**
+     * Único, como el DNI: se usa para buscar al usuario al restablecer la contraseña.
+     */
     private String email;
     private String password;
+    /**
+     * El nombre de usuario para el login. Único.
+     */
     private String dni;
     private String phone;
     @Enumerated(EnumType.STRING)
     private Roles rol;
     private String verificationCode;
-    private String resetPasswordToken;
+    /**
+     * Se incrementa cada vez que cambia la contraseña. Los tokens de restablecimiento la
+     * incluyen, por eso dejan de valer después de usarse.
+     */
+    private int passwordVersion;
 
 
 }
@@ -0,0 +1,8 @@
+package com.mail.enumerated;
+
+public enum EstadoCorreo {
+    PENDIENTE,
+    EN_PROCESO,
+    ENVIADO,
+    FALLIDO
+}
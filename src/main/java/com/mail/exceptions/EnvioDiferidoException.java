@@ -0,0 +1,11 @@
+package com.mail.exceptions;
+
+/**
+ * Indica que el correo no se envió porque el servidor SMTP está caído o saturado, y que se
+ * puede reintentar más tarde. Se lanza antes de abrir la conexión, sin esperar al servidor.
+ */
+public class EnvioDiferidoException extends ServicioSaturadoException {
+    public EnvioDiferidoException(String mensaje) {
+        super(mensaje);
+    }
+}
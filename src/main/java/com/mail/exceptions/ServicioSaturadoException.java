@@ -0,0 +1,15 @@
+package com.mail.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Indica que un recurso compartido está al límite de su capacidad y la operación se rechazó
+ * sin esperar. Si llega al controlador, se responde 503 para que el cliente reintente más tarde.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class ServicioSaturadoException extends RuntimeException {
+    public ServicioSaturadoException(String mensaje) {
+        super(mensaje);
+    }
+}
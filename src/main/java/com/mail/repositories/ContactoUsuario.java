@@ -0,0 +1,11 @@
+package com.mail.repositories;
+
+/**
+ * Proyección con los datos de contacto de un usuario. Al no ser una entidad administrada, leer
+ * muchas filas no llena el contexto de persistencia.
+ */
+public interface ContactoUsuario {
+    String getEmail();
+
+    String getName();
+}
@@ -0,0 +1,80 @@
+package com.mail.repositories;
+
+import com.mail.entity.CorreoSaliente;
+import com.mail.enumerated.EstadoCorreo;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface CorreoSalienteRepository extends JpaRepository<CorreoSaliente, Long> {
+
+    /**
+     * Bloquea hasta una página de correos listos. Con el timeout -2 (SKIP LOCKED de Hibernate) la
+     * consulta salta las filas que otro nodo tiene bloqueadas en lugar de esperarlas; en bases
+     * sin SKIP LOCKED queda un 'FOR UPDATE' común y {@link #reclamar} descarta las ya tomadas.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "javax.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT c.id FROM CorreoSaliente c WHERE c.estado = :estado AND c.proximoIntento <= :ahora ORDER BY c.proximoIntento")
+    List<Long> buscarIdsListos(@Param("estado") EstadoCorreo estado, @Param("ahora") Instant ahora, Pageable pagina);
+
+    /**
+     * Marca como tomados los correos indicados que sigan pendientes. Solo los que cambien de
+     * estado quedan asociados al reclamo.
+     */
+    @Modifying
+    @Query("UPDATE CorreoSaliente c SET c.estado = :enProceso, c.reclamo = :reclamo, c.reclamadoEn = :ahora, "
+            + "c.reclamoVence = :vence WHERE c.id IN :ids AND c.estado = :pendiente")
+    int reclamar(@Param("ids") Collection<Long> ids, @Param("reclamo") String reclamo, @Param("ahora") Instant ahora,
+                 @Param("vence") Instant vence, @Param("pendiente") EstadoCorreo pendiente,
+                 @Param("enProceso") EstadoCorreo enProceso);
+
+    List<CorreoSaliente> findByReclamo(String reclamo);
+
+    @Modifying
+    @Query("UPDATE CorreoSaliente c SET c.reclamoVence = :vence WHERE c.reclamo = :reclamo AND c.estado = :enProceso")
+    int renovarReclamo(@Param("reclamo") String reclamo, @Param("vence") Instant vence,
+                       @Param("enProceso") EstadoCorreo enProceso);
+
+    /**
+     * Marca como enviados los correos que sigan asociados al reclamo. Si el reclamo venció y
+     * otro nodo los retomó, no se tocan.
+     */
+    @Modifying
+    @Query("UPDATE CorreoSaliente c SET c.estado = :enviado, c.enviadoEn = :ahora, c.reclamo = NULL, c.reclamoVence = NULL "
+            + "WHERE c.id IN :ids AND c.reclamo = :reclamo")
+    int marcarEnviados(@Param("ids") Collection<Long> ids, @Param("reclamo") String reclamo, @Param("ahora") Instant ahora,
+                       @Param("enviado") EstadoCorreo enviado);
+
+    @Modifying
+    @Query("UPDATE CorreoSaliente c SET c.estado = :estado, c.intentos = :intentos, c.proximoIntento = :proximoIntento, "
+            + "c.ultimoError = :ultimoError, c.reclamo = NULL, c.reclamoVence = NULL "
+            + "WHERE c.id = :id AND c.reclamo = :reclamo")
+    int reprogramar(@Param("id") Long id, @Param("reclamo") String reclamo, @Param("estado") EstadoCorreo estado,
+                    @Param("intentos") int intentos, @Param("proximoIntento") Instant proximoIntento,
+                    @Param("ultimoError") String ultimoError);
+
+    /**
+     * Devuelve a la cola los correos cuyo reclamo venció sin renovarse, porque el nodo que los
+     * tomó se cayó o quedó aislado. Los reclamos sin vencimiento son de versiones anteriores.
+     */
+    @Modifying
+    @Query("UPDATE CorreoSaliente c SET c.estado = :pendiente, c.reclamo = NULL, c.reclamoVence = NULL "
+            + "WHERE c.estado = :enProceso AND (c.reclamoVence < :ahora OR c.reclamoVence IS NULL)")
+    int liberarReclamosVencidos(@Param("ahora") Instant ahora, @Param("enProceso") EstadoCorreo enProceso,
+                                @Param("pendiente") EstadoCorreo pendiente);
+
+    @Modifying
+    @Query("DELETE FROM CorreoSaliente c WHERE c.estado = :enviado AND c.enviadoEn < :limite")
+    int borrarEnviadosAntesDe(@Param("limite") Instant limite, @Param("enviado") EstadoCorreo enviado);
+}
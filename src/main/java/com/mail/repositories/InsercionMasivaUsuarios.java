@@ -0,0 +1,95 @@
+package com.mail.repositories;
+
+import com.mail.entity.Usuario;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Inserta usuarios en lote con JDBC, sin pasar por Hibernate.
+ *
+ * {@link Usuario} usa ids IDENTITY, y con ellos Hibernate inserta de a una fila para leer cada
+ * id generado. Acá las filas viajan en un solo batch JDBC; con 'rewriteBatchedStatements=true'
+ * en la URL, el driver de MySQL lo convierte en INSERTs de varias filas.
+ */
+@Repository
+public class InsercionMasivaUsuarios {
+    private static final String INSERTAR = "INSERT INTO usuario (name, dni, email, phone, password, rol, password_version) "
+            + "VALUES (?, ?, ?, ?, ?, ?, 0)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate consultas;
+
+    public InsercionMasivaUsuarios(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.consultas = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    /**
+     * Inserta los usuarios en un solo batch. Debe llamarse dentro de una transacción para que
+     * un error no deje el lote a medias.
+     *
+     * @param usuarios Los usuarios a insertar, con la contraseña ya convertida en hash.
+     * @return La cantidad de filas insertadas.
+     */
+    public int insertar(List<Usuario> usuarios) {
+        int[][] resultados = jdbcTemplate.batchUpdate(INSERTAR, usuarios, usuarios.size(), this::cargar);
+        int insertados = 0;
+        for (int[] bloque : resultados) {
+            for (int filas : bloque) {
+                // Con los INSERT reescritos el driver informa SUCCESS_NO_INFO en lugar de la cantidad.
+                insertados += filas == Statement.SUCCESS_NO_INFO ? 1 : filas;
+            }
+        }
+        return insertados;
+    }
+
+    private void cargar(PreparedStatement sentencia, Usuario usuario) throws SQLException {
+        sentencia.setString(1, usuario.getName());
+        sentencia.setString(2, usuario.getDni());
+        setNullable(sentencia, 3, usuario.getEmail());
+        setNullable(sentencia, 4, usuario.getPhone());
+        sentencia.setString(5, usuario.getPassword());
+        sentencia.setString(6, usuario.getRol().name());
+    }
+
+    private static void setNullable(PreparedStatement sentencia, int indice, String valor) throws SQLException {
+        if (valor == null) {
+            sentencia.setNull(indice, Types.VARCHAR);
+        } else {
+            sentencia.setString(indice, valor);
+        }
+    }
+
+    /**
+     * @return Los DNI de la lista que ya pertenecen a un usuario registrado.
+     */
+    public Set<String> buscarDnisExistentes(Collection<String> dnis) {
+        return buscarExistentes("dni", dnis);
+    }
+
+    /**
+     * @return Los emails de la lista que ya pertenecen a un usuario registrado.
+     */
+    public Set<String> buscarEmailsExistentes(Collection<String> emails) {
+        return buscarExistentes("email", emails);
+    }
+
+    private Set<String> buscarExistentes(String columna, Collection<String> valores) {
+        if (valores.isEmpty()) {
+            return Set.of();
+        }
+        return new HashSet<>(consultas.queryForList("SELECT " + columna + " FROM usuario WHERE " + columna + " IN (:valores)",
+                new MapSqlParameterSource("valores", valores), String.class));
+    }
+}
@@ -2,12 +2,16 @@ package com.mail.repositories;
 
 import com.mail.entity.Usuario;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
+import java.util.stream.Stream;
+
 public interface UsuarioRepository extends JpaRepository<Usuario, Long> {
 
-    Usuario findByDni(@Param("dni") String dni);
     @Query("SELECT u FROM Usuario u WHERE u.dni = :dni")
     Usuario buscarPorDni(String dni);
 
@@ -15,5 +19,30 @@ public interface UsuarioRepository extends JpaRepository<Usuario, Long> {
     Usuario findByEmail(@Param("email") String email);
     @Query("SELECT u FROM Usuario u WHERE u.verificationCode = ?1")
     Usuario findByVerificationCode(String verificationCode);
-    public Usuario findByResetPasswordToken(String token);
+
+    /**
+     * Cambia la contraseña solo si la versión sigue siendo la indicada, e incrementa la versión.
+     *
+     * @return 1 si se actualizó, 0 si el usuario no existe o la contraseña ya había cambiado.
+     */
+    @Modifying
+    @Query("UPDATE Usuario u SET u.password = :password, u.passwordVersion = u.passwordVersion + 1 "
+            + "WHERE u.id = :id AND u.passwordVersion = :version")
+    int actualizarPasswordSiVersion(@Param("id") Long id, @Param("version") int version, @Param("password") String password);
+
+    /**
+     * Reemplaza el hash de la contraseña sin cambiar la versión; se usa para recalcularlo con
+     * un costo mayor después de un login correcto.
+     */
+    @Modifying
+    @Query("UPDATE Usuario u SET u.password = :password WHERE u.dni = :dni")
+    int actualizarHashPorDni(@Param("dni") String dni, @Param("password") String password);
+
+    /**
+     * Recorre los contactos de todos los usuarios con email, leyendo del servidor de a bloques.
+     * Debe consumirse dentro de una transacción y cerrarse al terminar.
+     */
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+    @Query("SELECT u.email AS email, u.name AS name FROM Usuario u WHERE u.email IS NOT NULL ORDER BY u.id")
+    Stream<ContactoUsuario> streamContactos();
 }
@@ -0,0 +1,247 @@
+package com.mail.service;
+
+import com.mail.entity.Usuario;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Guarda en memoria los usuarios leídos por DNI o por email, para que los logins y las
+ * solicitudes de restablecimiento repetidas no consulten la base cada vez.
+ *
+ * Cada usuario se guarda una vez, indexado por su id, su DNI y su email, y vence a los
+ * {@code vigencia} de haberse leído. La cantidad está acotada: al superarse se descarta el
+ * usado hace más tiempo. Solo se guardan usuarios encontrados, así que un usuario nuevo no
+ * necesita invalidar nada.
+ *
+ * Quien cambia un usuario debe invalidarlo. Si hay una transacción en curso se invalida otra
+ * vez al terminarla, porque hasta entonces otro hilo puede volver a leer la versión anterior.
+ * Además, un usuario leído antes de una invalidación no se guarda (ver {@link #generacion()}).
+ * Los cambios hechos en otra instancia se ven recién al vencer la entrada.
+ *
+ * Se entregan copias, de modo que quien modifique el usuario recibido no altera la caché.
+ * Los emails se comparan sin distinguir mayúsculas, como la base.
+ */
+@Component
+public class CacheUsuarios implements MeterBinder {
+    private final int maxEntradas;
+    private final long vigenciaNanos;
+    private final LinkedHashMap<Long, Entrada> porId = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Long> porDni = new HashMap<>();
+    private final Map<String, Long> porEmail = new HashMap<>();
+    private long generacion;
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+
+    public CacheUsuarios(@Value("${mail.users.cache.max-entries:10000}") int maxEntradas,
+                         @Value("${mail.users.cache.ttl:60s}") Duration vigencia) {
+        this.maxEntradas = Math.max(0, maxEntradas);
+        this.vigenciaNanos = vigencia.toNanos();
+    }
+
+    /**
+     * @return Un valor que cambia con cada invalidación. Debe tomarse antes de leer el usuario
+     *         de la base y pasarse a {@link #guardar}.
+     */
+    public synchronized long generacion() {
+        return generacion;
+    }
+
+    /**
+     * @return Una copia del usuario con ese DNI, o null si no está en la caché o venció.
+     */
+    public Usuario buscarPorDni(String dni) {
+        return buscarPorDni(dni, System.nanoTime());
+    }
+
+    /**
+     * @return Una copia del usuario con ese email, o null si no está en la caché o venció.
+     */
+    public Usuario buscarPorEmail(String email) {
+        return buscarPorEmail(email, System.nanoTime());
+    }
+
+    /**
+     * Guarda una copia del usuario leído de la base, salvo que se haya invalidado algún usuario
+     * desde {@code generacionLectura}: en ese caso lo leído puede estar desactualizado.
+     */
+    public void guardar(Usuario usuario, long generacionLectura) {
+        guardar(usuario, generacionLectura, System.nanoTime());
+    }
+
+    /**
+     * Quita el usuario con ese id, con su DNI y su email.
+     */
+    public void invalidar(long id) {
+        invalidarAlTerminar(() -> quitar(porId.get(id)));
+    }
+
+    /**
+     * Quita el usuario y también las entradas de su DNI y su email, por si cambiaron.
+     */
+    public void invalidar(Usuario usuario) {
+        invalidarAlTerminar(() -> {
+            if (usuario.getId() != null) {
+                quitar(porId.get(usuario.getId()));
+            }
+            quitar(entrada(porDni, usuario.getDni()));
+            quitar(entrada(porEmail, normalizar(usuario.getEmail())));
+        });
+    }
+
+    /**
+     * Quita el usuario con ese DNI.
+     */
+    public void invalidarDni(String dni) {
+        invalidarAlTerminar(() -> quitar(entrada(porDni, dni)));
+    }
+
+    synchronized Usuario buscarPorDni(String dni, long ahora) {
+        return buscar(porDni, dni, ahora);
+    }
+
+    synchronized Usuario buscarPorEmail(String email, long ahora) {
+        return buscar(porEmail, normalizar(email), ahora);
+    }
+
+    private Usuario buscar(Map<String, Long> indice, String clave, long ahora) {
+        Entrada entrada = entrada(indice, clave);
+        if (entrada == null || ahora - entrada.vence >= 0) {
+            quitar(entrada);
+            fallos.increment();
+            return null;
+        }
+        aciertos.increment();
+        return copiar(entrada.usuario);
+    }
+
+    synchronized void guardar(Usuario usuario, long generacionLectura, long ahora) {
+        if (maxEntradas == 0 || generacionLectura != generacion || usuario.getId() == null) {
+            return;
+        }
+        Entrada nueva = new Entrada(copiar(usuario), ahora + vigenciaNanos);
+        quitar(porId.get(usuario.getId()));
+        quitar(entrada(porDni, nueva.usuario.getDni()));
+        quitar(entrada(porEmail, normalizar(nueva.usuario.getEmail())));
+        porId.put(usuario.getId(), nueva);
+        indexar(porDni, nueva.usuario.getDni(), usuario.getId());
+        indexar(porEmail, normalizar(nueva.usuario.getEmail()), usuario.getId());
+        Iterator<Entrada> it = porId.values().iterator();
+        while (porId.size() > maxEntradas) {
+            Entrada vieja = it.next();
+            it.remove();
+            desindexar(vieja);
+        }
+    }
+
+    private void invalidarAlTerminar(Runnable invalidacion) {
+        synchronized (this) {
+            generacion++;
+            invalidacion.run();
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    synchronized (CacheUsuarios.this) {
+                        generacion++;
+                        invalidacion.run();
+                    }
+                }
+            });
+        }
+    }
+
+    private Entrada entrada(Map<String, Long> indice, String clave) {
+        if (clave == null) {
+            return null;
+        }
+        Long id = indice.get(clave);
+        return id == null ? null : porId.get(id);
+    }
+
+    private void quitar(Entrada entrada) {
+        if (entrada != null && porId.remove(entrada.usuario.getId()) != null) {
+            desindexar(entrada);
+        }
+    }
+
+    private void desindexar(Entrada entrada) {
+        porDni.remove(entrada.usuario.getDni(), entrada.usuario.getId());
+        porEmail.remove(normalizar(entrada.usuario.getEmail()), entrada.usuario.getId());
+    }
+
+    private static void indexar(Map<String, Long> indice, String clave, Long id) {
+        if (clave != null) {
+            indice.put(clave, id);
+        }
+    }
+
+    private static String normalizar(String email) {
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Copia todos los campos del usuario. Debe actualizarse si {@link Usuario} gana campos.
+     */
+    private static Usuario copiar(Usuario usuario) {
+        Usuario copia = new Usuario();
+        copia.setId(usuario.getId());
+        copia.setName(usuario.getName());
+        copia.setEmail(usuario.getEmail());
+        copia.setPassword(usuario.getPassword());
+        copia.setDni(usuario.getDni());
+        copia.setPhone(usuario.getPhone());
+        copia.setRol(usuario.getRol());
+        copia.setVerificationCode(usuario.getVerificationCode());
+        copia.setPasswordVersion(usuario.getPasswordVersion());
+        return copia;
+    }
+
+    private synchronized int getCantidad() {
+        return porId.size();
+    }
+
+    /**
+     * @return La proporción de búsquedas que encontraron al usuario en la caché, entre 0 y 1.
+     */
+    public double getTasaAciertos() {
+        long total = aciertos.sum() + fallos.sum();
+        return total == 0 ? 0 : (double) aciertos.sum() / total;
+    }
+
+    /**
+     * Publica la cantidad de usuarios guardados y las búsquedas con y sin acierto.
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("mail.users.cache.entries", this, CacheUsuarios::getCantidad).register(registry);
+        FunctionCounter.builder("mail.users.cache.lookups", aciertos, LongAdder::sum)
+                .tag("resultado", "acierto").register(registry);
+        FunctionCounter.builder("mail.users.cache.lookups", fallos, LongAdder::sum)
+                .tag("resultado", "fallo").register(registry);
+    }
+
+    private static final class Entrada {
+        final Usuario usuario;
+        final long vence;
+
+        Entrada(Usuario usuario, long vence) {
+            this.usuario = usuario;
+            this.vence = vence;
+        }
+    }
+}
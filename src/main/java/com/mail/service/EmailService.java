@@ -1,27 +1,70 @@
 package com.mail.service;
 
+import com.mail.exceptions.EnvioDiferidoException;
 import com.mail.exceptions.MiExcepcion;
+import com.mail.service.attachment.AdjuntoCache;
+import com.mail.service.attachment.AdjuntoCodificado;
+import com.mail.service.dispatch.MailDispatcher;
+import com.mail.service.dispatch.Prioridad;
+import com.mail.service.mime.EsqueletoMime;
+import com.mail.service.outbox.OutboxService;
+import com.mail.service.smtp.ProteccionRelay;
+import com.mail.service.template.CorreoRenderizado;
+import com.mail.service.template.PlantillaCorreo;
+import com.mail.service.template.PlantillaCorreoService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.mail.MailException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
 
+import javax.annotation.PostConstruct;
 import javax.mail.MessagingException;
+import javax.mail.internet.AddressException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeBodyPart;
 import javax.mail.internet.MimeMessage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import org.slf4j.Logger;
-import org.springframework.core.io.Resource;
 
 @Service
 public class EmailService {
     private static final Logger log = LoggerFactory.getLogger(EmailService.class);
+    private static final String NOMBRE_REMITENTE = "Soporte de Spring Boot";
+    private static final String CONTENT_TYPE_PDF = "application/pdf";
+    private static final String MODO_SINCRONICO = "sincronico";
+    private static final String MODO_ASINCRONICO = "asincronico";
     private final JavaMailSender javaMailSender;
-    public EmailService(JavaMailSender javaMailSender) {
+    private final ProteccionRelay proteccionRelay;
+    private final MailDispatcher mailDispatcher;
+    private final OutboxService outboxService;
+    private final PlantillaCorreoService plantillaCorreoService;
+    private final AdjuntoCache adjuntoCache;
+    private final MeterRegistry registry;
+    private final Map<PlantillaCorreo, EsqueletoMime> esqueletos = new EnumMap<>(PlantillaCorreo.class);
+    public EmailService(JavaMailSender javaMailSender, ProteccionRelay proteccionRelay, MailDispatcher mailDispatcher,
+                        OutboxService outboxService, PlantillaCorreoService plantillaCorreoService,
+                        AdjuntoCache adjuntoCache, MeterRegistry registry) {
         this.javaMailSender = javaMailSender;
+        this.proteccionRelay = proteccionRelay;
+        this.mailDispatcher = mailDispatcher;
+        this.outboxService = outboxService;
+        this.plantillaCorreoService = plantillaCorreoService;
+        this.adjuntoCache = adjuntoCache;
+        this.registry = registry;
     }
 
     /**
@@ -29,9 +72,22 @@ public class EmailService {
      * Esta propiedad se configura a través de la anotación @Value y toma su valor de la propiedad 'spring.mail.username'.
      * Se utiliza en los métodos que envían correos electrónicos para especificar la dirección del remitente.
      */
-    @Value("spring.mail.username")
+    @Value("${spring.mail.username}")
     private String emailSender;
 
+    /**
+     * Compila una sola vez el esqueleto MIME de cada correo de {@link PlantillaCorreo}, de modo
+     * que cada envío solo escribe el destinatario y los valores de las variables.
+     */
+    @PostConstruct
+    void compilarEsqueletos() throws MessagingException, UnsupportedEncodingException {
+        InternetAddress remitente = new InternetAddress(emailSender, NOMBRE_REMITENTE, StandardCharsets.UTF_8.name());
+        for (PlantillaCorreo plantilla : PlantillaCorreo.values()) {
+            esqueletos.put(plantilla, EsqueletoMime.compilar(javaMailSender.createMimeMessage().getSession(), remitente,
+                    plantillaCorreoService.getAsunto(plantilla), plantillaCorreoService.getCuerpo(plantilla), plantilla.isHtml()));
+        }
+    }
+
     /**
      * Envía un correo electrónico simple con los parámetros especificados.
      *
@@ -39,17 +95,21 @@ public class EmailService {
      * @param subject El asunto del correo electrónico.
      * @param text    El cuerpo del correo electrónico.
      * @throws MiExcepcion Si hay un error al intentar enviar el correo electrónico.
+     * @throws EnvioDiferidoException Si el servidor SMTP está caído o saturado y el correo no se envió.
      */
     public void sendEmail(String to, String subject, String text) throws MiExcepcion {
+        Timer.Sample muestra = Timer.start(registry);
         try {
             SimpleMailMessage message = new SimpleMailMessage();
             message.setFrom(emailSender);
             message.setTo(to);
             message.setSubject(subject);
             message.setText(text);
-            javaMailSender.send(message);
+            enviarProtegido(() -> javaMailSender.send(message));
+            registrarEnvio(muestra, MODO_SINCRONICO, null);
             log.info("Correo enviado de {} a {} con asunto '{}'", emailSender, to, subject);
         } catch (MailException e) {
+            registrarEnvio(muestra, MODO_SINCRONICO, e);
             log.error("Error al enviar el correo", e);
             throw new MiExcepcion("Error al enviar el correo");
         }
@@ -62,103 +122,100 @@ public class EmailService {
      * @throws RuntimeException Si hay un error al intentar enviar el correo electrónico.
      */
     public void enviarEmailConfirmacionCambioPassword(String email) {
-        String subject = "Contraseña Actualizada";
-        String text = "Su contraseña ha sido actualizada con éxito.";
+        CorreoRenderizado correo = plantillaCorreoService.renderizar(PlantillaCorreo.CONFIRMACION_CAMBIO_PASSWORD, Map.of());
         try {
-            sendEmail(email, subject, text);
+            sendEmail(email, correo.asunto(), correo.cuerpo());
         } catch (MiExcepcion e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Encola el correo de confirmación de cambio de contraseña sin esperar al servidor SMTP.
+     *
+     * @param email La dirección de correo electrónico del destinatario.
+     * @return Un futuro que se completa cuando el correo fue enviado, o de forma excepcional
+     *         si no pudo encolarse o enviarse.
+     */
+    public CompletableFuture<Void> enviarEmailConfirmacionCambioPasswordAsync(String email) {
+        try {
+            return despachar(crearMensaje(email, PlantillaCorreo.CONFIRMACION_CAMBIO_PASSWORD, Map.of()), email,
+                    PlantillaCorreo.CONFIRMACION_CAMBIO_PASSWORD.getAsunto(), Prioridad.TRANSACCIONAL);
+        } catch (MiExcepcion e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Guarda el correo de confirmación de cambio de contraseña para enviarlo en segundo plano.
+     * Debe llamarse dentro de la transacción que actualiza la contraseña.
+     *
+     * @param email La dirección de correo electrónico del destinatario.
+     */
+    public void encolarConfirmacionCambioPassword(String email) {
+        encolar(email, PlantillaCorreo.CONFIRMACION_CAMBIO_PASSWORD, Map.of());
+    }
+
     /**
      * Envía un correo electrónico con un enlace de restablecimiento de contraseña.
      *
      * @param email La dirección de correo electrónico del destinatario.
      * @param resetPasswordLink El enlace de restablecimiento de contraseña.
      * @throws MiExcepcion Si hay un error al intentar enviar el correo electrónico.
+     * @throws EnvioDiferidoException Si el servidor SMTP está caído o saturado y el correo no se envió.
      */
     public void sendEmail(String email, String resetPasswordLink) throws MiExcepcion {
-        MimeMessage message = javaMailSender.createMimeMessage();
-        MimeMessageHelper helper = new MimeMessageHelper(message);
+        MimeMessage mensaje = crearMensajeResetPassword(email, resetPasswordLink);
+        Timer.Sample muestra = Timer.start(registry);
         try {
-            helper.setFrom(emailSender, "Soporte de Spring Boot");
-            helper.setTo(email);
-            String subject = "Aquí está el enlace para restablecer su contraseña: ";
-            String content = "<div style=\"background:#ffffff;background-color:#ffffff;margin:0px auto;max-width:600px\"><p>Hola,</p>"
-                    + "<p>Usted ha solicitado restablecer su contraseña. " +
-                    "</p>"
-                    + "<p>Haga clic en el enlace a continuación para cambiar su contraseña:</p>"
-                    + "<p><b><a href=\"" + resetPasswordLink + "\">Cambiar mi contraseña</a></b></p>"
-                    + "<p>Ignore este correo electrónico si no desea cambiar su contraseña, "
-                    + "o si ya ha cambiado su contraseña.</p></div> <div style=\"background:#ffffff;background-color:#ffffff;margin:0px auto;max-width:600px\">\n" +
-                    "\n" +
-                    "        <table align=\"center\" border=\"0\" cellpadding=\"0\" cellspacing=\"0\" role=\"presentation\"\n" +
-                    "               style=\"background:#ffffff;background-color:#ffffff;width:100%\">\n" +
-                    "            <tbody>\n" +
-                    "            <tr>\n" +
-                    "                <td style=\"direction:ltr;font-size:0px;padding:0 0 40px;text-align:center\">\n" +
-                    "\n" +
-                    "\n" +
-                    "                    <div class=\"m_4154174028324774528mj-column-per-100\"\n" +
-                    "                         style=\"font-size:0px;text-align:left;direction:ltr;display:inline-block;vertical-align:top;width:100%\">\n" +
-                    "\n" +
-                    "                        <table border=\"0\" cellpadding=\"0\" cellspacing=\"0\" role=\"presentation\" width=\"100%\">\n" +
-                    "                            <tbody>\n" +
-                    "                            <tr>\n" +
-                    "                                <td style=\"vertical-align:top;padding:0 24px\">\n" +
-                    "\n" +
-                    "                                    <table border=\"0\" cellpadding=\"0\" cellspacing=\"0\" role=\"presentation\" width=\"100%\">\n" +
-                    "                                        <tbody>\n" +
-                    "\n" +
-                    "                                        <tr>\n" +
-                    "                                            <td align=\"center\" style=\"font-size:0px;padding:0px;word-break:break-word\">\n" +
-                    "\n" +
-                    "                                                <div style=\"font-family:Graphik,Helvetica,Arial,sans-serif;font-size:16px;line-height:1;text-align:center;color:#000000\">\n" +
-                    "                                                    <a href=\"https://www.facebook.com/\"\n" +
-                    "                                                       style=\"text-decoration:none;color:#467ef5\" target=\"_blank\"\n" +
-                    "                                                       data-saferedirecturl=\"https://www.google.com/url?q=https://www.facebook.com/grabrfi&amp;source=gmail&amp;ust=1701998951446000&amp;usg=AOvVaw1UG1UXdAWq7bExzd-PHaiq\">\n" +
-                    "                                                        <img src=\"https://ci3.googleusercontent.com/meips/ADKq_NZ0J9S6lw-FwOU8Jfx6pqmY59vlzSlnyWS0nuZGsNBjylfGEbAT_q43J4hrs9de6PTN5rFdromRwCClMUJsFmsRh9H8iSHgnZIMLjuDIEQ6sm9r1oVFueZ7r4hPEHT6nUdPrI1LJ8NtNzpB8Lfg22zuKNq635odWdZ_D83HdJ7F7C1NOyIFSllxhA=s0-d-e1-ft#https://uploads-ssl.webflow.com/60eedd479e16db8952bc3b1b/619d36fd72bd657c6068ccad_yOez532kvNaVPgPqAgvfMWhO4qvDLQ.png\"\n" +
-                    "                                                             alt=\"Facebook Link\" width=\"36px\" class=\"CToWUd\"\n" +
-                    "                                                             data-bit=\"iit\">\n" +
-                    "                                                    </a>\n" +
-                    "                                                    <a href=\"https://www.instagram.com/\"\n" +
-                    "                                                       style=\"text-decoration:none;color:#467ef5\" target=\"_blank\"\n" +
-                    "                                                       data-saferedirecturl=\"https://www.google.com/url?q=https://www.instagram.com/grabrfi&amp;source=gmail&amp;ust=1701998951446000&amp;usg=AOvVaw1a2JgpOqNpF8bFp3kAGlzD\">\n" +
-                    "                                                        <img src=\"https://ci3.googleusercontent.com/meips/ADKq_Nai8fpkXmnU9z3TOfZoteGY1VcgkOsMQtoN9m8sevFqMeGiX2rkePAyWEcXtQC4bfoRbSc6UZOJ478x3CsUHOjyE_sKjaAV9A9wIZpcMUUYf_ur6CzK0IiiS6IxCWFtUHjOWbLkPaPKNMEhwhfIkl38Q7K_NDdxYKEn-qXZ_KxrXCNmeGKOeGoecQ=s0-d-e1-ft#https://uploads-ssl.webflow.com/60eedd479e16db8952bc3b1b/619d36fde2a53a5062a6c5ea_FN0y1g23p2pL2A0Nwjx3n5ybMiPlSd.png\"\n" +
-                    "                                                             alt=\"Instagram Link\" width=\"36px\" class=\"CToWUd\"\n" +
-                    "                                                             data-bit=\"iit\">\n" +
-                    "                                                    </a></div>\n" +
-                    "\n" +
-                    "                                            </td>\n" +
-                    "                                        </tr>\n" +
-                    "\n" +
-                    "                                        </tbody>\n" +
-                    "                                    </table>\n" +
-                    "\n" +
-                    "                                </td>\n" +
-                    "                            </tr>\n" +
-                    "                            </tbody>\n" +
-                    "                        </table>\n" +
-                    "\n" +
-                    "                    </div>\n" +
-                    "\n" +
-                    "\n" +
-                    "                </td>\n" +
-                    "            </tr>\n" +
-                    "            </tbody>\n" +
-                    "        </table>\n" +
-                    "        <div class=\"yj6qo\"></div>\n" +
-                    "        <div class=\"adL\">\n" +
-                    "\n" +
-                    "        </div>\n" +
-                    "    </div>";
-            helper.setSubject(subject);
-            helper.setText(content, true);
-            javaMailSender.send(message);
+            enviarProtegido(() -> javaMailSender.send(mensaje));
+            registrarEnvio(muestra, MODO_SINCRONICO, null);
+        } catch (MailException e) {
+            registrarEnvio(muestra, MODO_SINCRONICO, e);
+            throw e;
+        }
+    }
 
-        } catch (MessagingException | UnsupportedEncodingException e) {
-            throw new MiExcepcion("Error al enviar el correo electrónico");
+    /**
+     * Encola un correo electrónico con un enlace de restablecimiento de contraseña y retorna
+     * sin esperar al servidor SMTP.
+     *
+     * @param email La dirección de correo electrónico del destinatario.
+     * @param resetPasswordLink El enlace de restablecimiento de contraseña.
+     * @return Un futuro que se completa cuando el correo fue enviado.
+     * @throws MiExcepcion Si no se pudo construir el mensaje o la cola de envío está llena.
+     */
+    public CompletableFuture<Void> sendEmailAsync(String email, String resetPasswordLink) throws MiExcepcion {
+        return despachar(crearMensajeResetPassword(email, resetPasswordLink), email, "restablecimiento de contraseña",
+                Prioridad.TRANSACCIONAL);
+    }
+
+    /**
+     * Guarda el correo con el enlace de restablecimiento de contraseña para enviarlo en segundo
+     * plano. Debe llamarse dentro de una transacción.
+     *
+     * @param email La dirección de correo electrónico del destinatario.
+     * @param resetPasswordLink El enlace de restablecimiento de contraseña.
+     */
+    public void encolarEnlaceResetPassword(String email, String resetPasswordLink) {
+        encolar(email, PlantillaCorreo.RESET_PASSWORD, Map.of("enlace", resetPasswordLink));
+    }
+
+    private MimeMessage crearMensajeResetPassword(String email, String resetPasswordLink) throws MiExcepcion {
+        return crearMensaje(email, PlantillaCorreo.RESET_PASSWORD, Map.of("enlace", resetPasswordLink));
+    }
+
+    private void encolar(String email, PlantillaCorreo plantilla, Map<String, String> variables) {
+        CorreoRenderizado correo = plantillaCorreoService.renderizar(plantilla, variables);
+        outboxService.encolar(email, correo.asunto(), correo.cuerpo(), correo.html());
+    }
+
+    private MimeMessage crearMensaje(String email, PlantillaCorreo plantilla, Map<String, String> variables) throws MiExcepcion {
+        try {
+            return esqueletos.get(plantilla).crearMensaje(new InternetAddress(email, true), variables);
+        } catch (AddressException e) {
+            log.error("Dirección de correo inválida: {}", email, e);
+            throw new MiExcepcion("Error al enviar el correo");
         }
     }
 
@@ -171,8 +228,118 @@ public class EmailService {
      * @param pdfBytes Los bytes del archivo PDF que se adjuntará.
      * @param pdfFileName El nombre del archivo PDF adjunto.
      * @throws MiExcepcion Si hay un error al intentar enviar el correo electrónico con el archivo adjunto.
+     * @throws EnvioDiferidoException Si el servidor SMTP está caído o saturado y el correo no se envió.
      */
     public void sendEmailWithAttachment(String to, String subject, String text, byte[] pdfBytes, String pdfFileName) throws MiExcepcion {
+        Timer.Sample muestra = Timer.start(registry);
+        AdjuntoCodificado adjunto = registrarAdjunto(new ByteArrayInputStream(pdfBytes));
+        try {
+            MimeMessage mensaje = crearMensajeConAdjunto(to, subject, text, adjunto, pdfFileName);
+            enviarProtegido(() -> javaMailSender.send(mensaje));
+            registrarEnvio(muestra, MODO_SINCRONICO, null);
+        } catch (MailException e) {
+            registrarEnvio(muestra, MODO_SINCRONICO, e);
+            throw e;
+        } finally {
+            adjuntoCache.liberar(adjunto);
+        }
+        log.info("Correo enviado de {} a {} con asunto '{}' y PDF adjunto", emailSender, to, subject);
+    }
+
+    /**
+     * Encola un correo electrónico con un archivo PDF adjunto y retorna sin esperar al servidor SMTP.
+     *
+     * @param to La dirección de correo electrónico del destinatario.
+     * @param subject El asunto del correo electrónico.
+     * @param text El contenido del correo electrónico.
+     * @param pdfBytes Los bytes del archivo PDF que se adjuntará.
+     * @param pdfFileName El nombre del archivo PDF adjunto.
+     * @return Un futuro que se completa cuando el correo fue enviado.
+     * @throws MiExcepcion Si no se pudo construir el mensaje o la cola de envío está llena.
+     */
+    public CompletableFuture<Void> sendEmailWithAttachmentAsync(String to, String subject, String text, byte[] pdfBytes, String pdfFileName) throws MiExcepcion {
+        return despacharConAdjunto(to, subject, text, registrarAdjunto(new ByteArrayInputStream(pdfBytes)), pdfFileName);
+    }
+
+    /**
+     * Encola un correo electrónico con un archivo PDF adjunto subido por el usuario, sin cargar
+     * el archivo en memoria.
+     *
+     * El archivo se guarda en la caché de adjuntos ya codificado en Base64; si el mismo PDF ya
+     * se había enviado antes, se reutiliza sin volver a codificarlo. Al escribir el mensaje,
+     * los bytes codificados se copian del disco al socket SMTP.
+     *
+     * @param to La dirección de correo electrónico del destinatario.
+     * @param subject El asunto del correo electrónico.
+     * @param text El contenido del correo electrónico.
+     * @param pdfFile El archivo PDF subido.
+     * @return Un futuro que se completa cuando el correo fue enviado.
+     * @throws MiExcepcion Si no se pudo guardar el archivo, construir el mensaje o la cola de envío está llena.
+     */
+    public CompletableFuture<Void> sendEmailWithAttachmentAsync(String to, String subject, String text, MultipartFile pdfFile) throws MiExcepcion {
+        AdjuntoCodificado adjunto;
+        try (InputStream entrada = pdfFile.getInputStream()) {
+            adjunto = registrarAdjunto(entrada);
+        } catch (IOException e) {
+            log.error("Error al leer el archivo adjunto", e);
+            throw new MiExcepcion("No se pudo leer el archivo adjunto");
+        }
+        return despacharConAdjunto(to, subject, text, adjunto, pdfFile.getOriginalFilename());
+    }
+
+    /**
+     * Encola un correo electrónico con un PDF ya registrado en {@link AdjuntoCache}. Permite
+     * enviar el mismo archivo a muchos destinatarios codificándolo una sola vez.
+     *
+     * @param to La dirección de correo electrónico del destinatario.
+     * @param subject El asunto del correo electrónico.
+     * @param text El contenido del correo electrónico.
+     * @param adjunto El adjunto registrado; quien lo registró sigue siendo responsable de liberarlo.
+     * @param pdfFileName El nombre del archivo PDF adjunto.
+     * @return Un futuro que se completa cuando el correo fue enviado.
+     * @throws MiExcepcion Si no se pudo construir el mensaje o la cola de envío está llena.
+     */
+    public CompletableFuture<Void> sendEmailWithAttachmentAsync(String to, String subject, String text,
+                                                                AdjuntoCodificado adjunto, String pdfFileName) throws MiExcepcion {
+        adjuntoCache.retener(adjunto);
+        return despacharConAdjunto(to, subject, text, adjunto, pdfFileName);
+    }
+
+    private AdjuntoCodificado registrarAdjunto(InputStream contenido) throws MiExcepcion {
+        try {
+            return adjuntoCache.registrar(contenido);
+        } catch (IOException e) {
+            log.error("Error al guardar el archivo adjunto", e);
+            throw new MiExcepcion("No se pudo leer el archivo adjunto");
+        }
+    }
+
+    /**
+     * Despacha el mensaje por el carril masivo y libera el adjunto cuando termina el envío,
+     * haya salido bien o no.
+     */
+    private CompletableFuture<Void> despacharConAdjunto(String to, String subject, String text,
+                                                        AdjuntoCodificado adjunto, String pdfFileName) throws MiExcepcion {
+        try {
+            return despachar(crearMensajeConAdjunto(to, subject, text, adjunto, pdfFileName), to, subject, Prioridad.MASIVO)
+                    .whenComplete((ok, error) -> adjuntoCache.liberar(adjunto));
+        } catch (MiExcepcion | RuntimeException e) {
+            adjuntoCache.liberar(adjunto);
+            throw e;
+        }
+    }
+
+    private MimeMessage crearMensajeConAdjunto(String to, String subject, String text,
+                                               AdjuntoCodificado adjunto, String pdfFileName) throws MiExcepcion {
+        try {
+            return crearMensajeConAdjunto(to, subject, text, adjuntoCache.crearParte(adjunto, pdfFileName, CONTENT_TYPE_PDF));
+        } catch (MessagingException e) {
+            log.error("Error al adjuntar el archivo PDF", e);
+            throw new MiExcepcion("Error al enviar el correo con archivo adjunto");
+        }
+    }
+
+    private MimeMessage crearMensajeConAdjunto(String to, String subject, String text, MimeBodyPart adjunto) throws MiExcepcion {
         try {
             MimeMessage message = javaMailSender.createMimeMessage();
             MimeMessageHelper helper = new MimeMessageHelper(message, true);
@@ -183,14 +350,74 @@ public class EmailService {
             helper.setText(text);
 
             // Adjuntar el archivo PDF
-            Resource pdfAttachment = new ByteArrayResource(pdfBytes);
-            helper.addAttachment(pdfFileName, pdfAttachment);
-
-            javaMailSender.send(message);
-            log.info("Correo enviado de {} a {} con asunto '{}' y PDF adjunto", emailSender, to, subject);
+            helper.getRootMimeMultipart().addBodyPart(adjunto);
+            return message;
         } catch (MessagingException e) {
             log.error("Error al enviar el correo con archivo adjunto", e);
             throw new MiExcepcion("Error al enviar el correo con archivo adjunto");
         }
     }
+
+    /**
+     * Construye un correo electrónico sin adjuntos, listo para enviarse.
+     *
+     * @param to      La dirección de correo electrónico del destinatario.
+     * @param subject El asunto del correo electrónico.
+     * @param text    El cuerpo del correo electrónico.
+     * @param html    Si el cuerpo es HTML.
+     * @return El mensaje construido.
+     * @throws MiExcepcion Si alguno de los datos del mensaje es inválido.
+     */
+    public MimeMessage crearMensaje(String to, String subject, String text, boolean html) throws MiExcepcion {
+        try {
+            MimeMessage message = javaMailSender.createMimeMessage();
+            MimeMessageHelper helper = new MimeMessageHelper(message);
+            helper.setFrom(emailSender, NOMBRE_REMITENTE);
+            helper.setTo(to);
+            helper.setSubject(subject);
+            helper.setText(text, html);
+            return message;
+        } catch (MessagingException | UnsupportedEncodingException e) {
+            log.error("Error al construir el correo", e);
+            throw new MiExcepcion("Error al enviar el correo");
+        }
+    }
+
+    /**
+     * Envía en el hilo del llamador si {@link ProteccionRelay} da lugar; si no, falla de
+     * inmediato con {@link EnvioDiferidoException} en lugar de esperar al servidor.
+     */
+    private void enviarProtegido(Runnable envio) {
+        ProteccionRelay.Permiso permiso = proteccionRelay.adquirir();
+        try {
+            envio.run();
+        } catch (RuntimeException e) {
+            permiso.terminar(1, List.of(e));
+            throw e;
+        }
+        permiso.terminar(1, List.of());
+    }
+
+    private CompletableFuture<Void> despachar(MimeMessage message, String to, String subject,
+                                              Prioridad prioridad) throws MiExcepcion {
+        Timer.Sample muestra = Timer.start(registry);
+        return mailDispatcher.despachar(message, prioridad).whenComplete((ok, error) -> {
+            registrarEnvio(muestra, MODO_ASINCRONICO, error);
+            if (error == null) {
+                log.info("Correo enviado de {} a {} con asunto '{}'", emailSender, to, subject);
+            }
+        });
+    }
+
+    /**
+     * Registra en 'mail.email.send' el tiempo total de un envío: para los asincrónicos incluye la
+     * espera en la cola del despachador, que es lo que percibe quien espera el futuro.
+     */
+    private void registrarEnvio(Timer.Sample muestra, String modo, Throwable error) {
+        muestra.stop(Timer.builder("mail.email.send")
+                .tag("modo", modo)
+                .tag("resultado", error == null ? "ok" : "error")
+                .publishPercentileHistogram()
+                .register(registry));
+    }
 }
@@ -0,0 +1,93 @@
+package com.mail.service;
+
+import com.mail.entity.Usuario;
+import com.mail.exceptions.MiExcepcion;
+import com.mail.service.limite.RegistroReciente;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Locale;
+
+@Service
+public class RecuperoPasswordService {
+    private static final Logger log = LoggerFactory.getLogger(RecuperoPasswordService.class);
+    private final UsuarioService usuarioService;
+    private final EmailService emailService;
+    private final TokenRecuperoService tokenRecuperoService;
+    private final TransactionTemplate transaccion;
+    private final RegistroReciente solicitudesRecientes;
+
+    public RecuperoPasswordService(UsuarioService usuarioService, EmailService emailService,
+                                   TokenRecuperoService tokenRecuperoService,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${mail.reset.coalesce-window:2m}") Duration ventanaAgrupado,
+                                   @Value("${mail.reset.coalesce-slots:1048576}") int posicionesAgrupado) {
+        this.usuarioService = usuarioService;
+        this.emailService = emailService;
+        this.tokenRecuperoService = tokenRecuperoService;
+        this.transaccion = new TransactionTemplate(transactionManager);
+        this.solicitudesRecientes = new RegistroReciente(posicionesAgrupado, ventanaAgrupado.toNanos(), System.nanoTime());
+    }
+
+    /**
+     * Emite un token firmado de restablecimiento para el usuario y guarda el correo con el
+     * enlace. El token no se guarda en la base de datos. Si la transacción se confirma, el
+     * correo se enviará aunque la aplicación se detenga antes de enviarlo.
+     *
+     * Las solicitudes repetidas para el mismo email dentro de 'mail.reset.coalesce-window' se
+     * agrupan con la primera: no se consulta la base ni se envía otro correo, y el usuario usa el
+     * enlace que ya recibió, que sigue vigente porque emitir un token no invalida los anteriores.
+     * La ventana debe ser menor que la vigencia del token.
+     *
+     * @param email   La dirección de correo electrónico del usuario.
+     * @param siteUrl La URL base de la aplicación, usada para armar el enlace.
+     * @throws MiExcepcion Si no existe un usuario con ese email.
+     */
+    public void solicitarReseteo(String email, String siteUrl) throws MiExcepcion {
+        if (email == null || email.isBlank()) {
+            throw new MiExcepcion("Debe ingresar una dirección de correo electrónico");
+        }
+        String clave = email.trim().toLowerCase(Locale.ROOT);
+        if (!solicitudesRecientes.reclamar(clave, System.nanoTime())) {
+            log.debug("Se agrupa una solicitud repetida de restablecimiento de contraseña");
+            return;
+        }
+        try {
+            Usuario usuario = usuarioService.buscarPorEmail(email);
+            String enlace = siteUrl + "/reset_password?token=" + tokenRecuperoService.emitir(usuario);
+            transaccion.executeWithoutResult(estado -> emailService.encolarEnlaceResetPassword(email, enlace));
+        } catch (MiExcepcion | RuntimeException e) {
+            // Si no se llegó a guardar el correo, la próxima solicitud debe poder reintentarlo.
+            solicitudesRecientes.liberar(clave);
+            throw e;
+        }
+    }
+
+    /**
+     * Actualiza la contraseña con una sola sentencia condicionada a la versión del token y
+     * guarda, en la misma transacción, el correo de confirmación del cambio. El hash se calcula
+     * antes de abrir la transacción para no retener la conexión mientras se espera el cálculo.
+     *
+     * @param token    Los datos del token ya verificado.
+     * @param password La nueva contraseña en texto plano.
+     * @throws MiExcepcion Si el token ya se usó o la contraseña cambió después de emitirlo.
+     */
+    public void restablecer(TokenRecupero token, String password) throws MiExcepcion {
+        String hash = usuarioService.codificar(password);
+        Boolean actualizado = transaccion.execute(estado -> {
+            if (!usuarioService.actualizarPasswordSiVersion(token.usuarioId(), token.passwordVersion(), hash)) {
+                return false;
+            }
+            emailService.encolarConfirmacionCambioPassword(token.email());
+            return true;
+        });
+        if (!Boolean.TRUE.equals(actualizado)) {
+            throw new MiExcepcion("El enlace ya fue utilizado o la contraseña cambió. Solicite uno nuevo.");
+        }
+    }
+}
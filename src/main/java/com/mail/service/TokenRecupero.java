@@ -0,0 +1,11 @@
+package com.mail.service;
+
+/**
+ * Datos firmados dentro de un token de restablecimiento de contraseña.
+ *
+ * @param usuarioId       El identificador del usuario.
+ * @param passwordVersion La versión de la contraseña al emitir el token.
+ * @param email           La dirección a la que se envió el enlace.
+ */
+public record TokenRecupero(long usuarioId, int passwordVersion, String email) {
+}
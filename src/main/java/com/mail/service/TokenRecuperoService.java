@@ -0,0 +1,147 @@
+package com.mail.service;
+
+import com.mail.entity.Usuario;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Optional;
+
+/**
+ * Emite y verifica tokens de restablecimiento de contraseña firmados con HMAC-SHA256.
+ *
+ * El token lleva el id del usuario, la versión de su contraseña, el vencimiento y el email, de
+ * modo que se valida en memoria sin consultar la base de datos. Deja de valer al vencer o en
+ * cuanto cambia la contraseña, porque la versión del usuario ya no coincide.
+ */
+@Service
+public class TokenRecuperoService {
+    private static final Logger log = LoggerFactory.getLogger(TokenRecuperoService.class);
+    private static final String ALGORITMO = "HmacSHA256";
+    private static final int LARGO_MINIMO_SECRETO = 32;
+    /** id (8) + versión (4) + vencimiento en segundos (8). */
+    private static final int LARGO_DATOS_FIJOS = 20;
+
+    private final SecretKeySpec clave;
+    private final Duration vigencia;
+    private final Clock reloj;
+    private final ThreadLocal<Mac> macs;
+
+    @Autowired
+    public TokenRecuperoService(@Value("${mail.reset.token.secret:}") String secreto,
+                                @Value("${mail.reset.token.allow-random-secret:false}") boolean permitirClaveAleatoria,
+                                @Value("${mail.reset.token.ttl:30m}") Duration vigencia) {
+        this(secreto, permitirClaveAleatoria, vigencia, Clock.systemUTC());
+    }
+
+    TokenRecuperoService(String secreto, boolean permitirClaveAleatoria, Duration vigencia, Clock reloj) {
+        this.clave = new SecretKeySpec(obtenerSecreto(secreto, permitirClaveAleatoria), ALGORITMO);
+        this.vigencia = vigencia;
+        this.reloj = reloj;
+        this.macs = ThreadLocal.withInitial(this::crearMac);
+    }
+
+    /**
+     * Emite un token para el usuario, válido hasta que venza o cambie su contraseña.
+     *
+     * @param usuario El usuario que pidió restablecer la contraseña.
+     * @return El token, apto para usarse en una URL.
+     */
+    public String emitir(Usuario usuario) {
+        byte[] email = usuario.getEmail().getBytes(StandardCharsets.UTF_8);
+        long vencimiento = reloj.instant().plus(vigencia).getEpochSecond();
+        byte[] datos = ByteBuffer.allocate(LARGO_DATOS_FIJOS + email.length)
+                .putLong(usuario.getId())
+                .putInt(usuario.getPasswordVersion())
+                .putLong(vencimiento)
+                .put(email)
+                .array();
+        Base64.Encoder base64 = Base64.getUrlEncoder().withoutPadding();
+        return base64.encodeToString(datos) + "." + base64.encodeToString(firmar(datos));
+    }
+
+    /**
+     * Verifica la firma y el vencimiento de un token sin acceder a la base de datos.
+     *
+     * @param token El token recibido en el enlace.
+     * @return Los datos del token, o vacío si es inválido, fue alterado o venció.
+     */
+    public Optional<TokenRecupero> verificar(String token) {
+        if (token == null) {
+            return Optional.empty();
+        }
+        int punto = token.indexOf('.');
+        if (punto < 0) {
+            return Optional.empty();
+        }
+        byte[] datos;
+        byte[] firma;
+        try {
+            Base64.Decoder base64 = Base64.getUrlDecoder();
+            datos = base64.decode(token.substring(0, punto));
+            firma = base64.decode(token.substring(punto + 1));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        if (datos.length <= LARGO_DATOS_FIJOS || !MessageDigest.isEqual(firmar(datos), firma)) {
+            return Optional.empty();
+        }
+        ByteBuffer lector = ByteBuffer.wrap(datos);
+        long usuarioId = lector.getLong();
+        int version = lector.getInt();
+        long vencimiento = lector.getLong();
+        if (reloj.instant().getEpochSecond() >= vencimiento) {
+            return Optional.empty();
+        }
+        String email = new String(datos, LARGO_DATOS_FIJOS, datos.length - LARGO_DATOS_FIJOS, StandardCharsets.UTF_8);
+        return Optional.of(new TokenRecupero(usuarioId, version, email));
+    }
+
+    private byte[] firmar(byte[] datos) {
+        Mac mac = macs.get();
+        mac.reset();
+        return mac.doFinal(datos);
+    }
+
+    private Mac crearMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITMO);
+            mac.init(clave);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No se pudo inicializar " + ALGORITMO, e);
+        }
+    }
+
+    private static byte[] obtenerSecreto(String secreto, boolean permitirClaveAleatoria) {
+        if (secreto == null || secreto.isBlank()) {
+            // Una clave aleatoria invalida los enlaces al reiniciar y entre instancias: solo para desarrollo y pruebas.
+            if (!permitirClaveAleatoria) {
+                throw new IllegalStateException("Falta mail.reset.token.secret (variable MAIL_RESET_TOKEN_SECRET); "
+                        + "para desarrollo se puede usar una clave aleatoria con mail.reset.token.allow-random-secret=true");
+            }
+            log.warn("mail.reset.token.secret no está configurado: se usa una clave aleatoria, por lo que los enlaces "
+                    + "de restablecimiento dejan de valer al reiniciar y no sirven entre varias instancias");
+            byte[] aleatorio = new byte[LARGO_MINIMO_SECRETO];
+            new SecureRandom().nextBytes(aleatorio);
+            return aleatorio;
+        }
+        byte[] bytes = secreto.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length < LARGO_MINIMO_SECRETO) {
+            log.warn("mail.reset.token.secret tiene menos de {} bytes; se recomienda una clave más larga", LARGO_MINIMO_SECRETO);
+        }
+        return bytes;
+    }
+}
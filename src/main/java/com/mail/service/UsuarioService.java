@@ -4,13 +4,16 @@ import com.mail.entity.Usuario;
 import com.mail.enumerated.Roles;
 import com.mail.exceptions.MiExcepcion;
 import com.mail.repositories.UsuarioRepository;
+import com.mail.service.sesion.UsuarioSesion;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
@@ -21,32 +24,43 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Service
-public class UsuarioService implements UserDetailsService {
+public class UsuarioService implements UserDetailsService, UserDetailsPasswordService {
     private final UsuarioRepository usuarioRepository;
+    private final PasswordEncoder passwordEncoder;
+    private final CacheUsuarios cacheUsuarios;
 
 
-    public UsuarioService(UsuarioRepository usuarioRepository) {
+    public UsuarioService(UsuarioRepository usuarioRepository, PasswordEncoder passwordEncoder, CacheUsuarios cacheUsuarios) {
         this.usuarioRepository = usuarioRepository;
+        this.passwordEncoder = passwordEncoder;
+        this.cacheUsuarios = cacheUsuarios;
     }
 
     /**
      * Registra un nuevo usuario en la aplicación.
+     * El hash se calcula fuera de una transacción para no retener una conexión a la base de
+     * datos mientras se espera un hilo libre de {@link PasswordEncoder}.
      *
      * @param nombre    El nombre del usuario.
      * @param dni       El número de identificación del usuario.
      * @param password  La contraseña del usuario.
      * @param password2 La confirmación de la contraseña del usuario.
-     * @throws Exception Si ocurre un error durante el proceso de registro.
+     * @throws Exception Si ocurre un error durante el proceso de registro o el DNI ya está registrado.
      */
-    @Transactional
     public void registrar(String nombre, String dni, String password, String password2) throws Exception {
         validar(nombre, dni, password, password2);
         Usuario usuario = new Usuario();
         usuario.setName(nombre);
         usuario.setDni(dni);
         usuario.setRol(Roles.USER);
-        usuario.setPassword(new BCryptPasswordEncoder().encode(password));
-        usuarioRepository.save(usuario);
+        usuario.setPassword(passwordEncoder.encode(password));
+        try {
+            usuarioRepository.save(usuario);
+        } catch (DataIntegrityViolationException e) {
+            throw new Exception("Ya existe un usuario con ese DNI");
+        } finally {
+            cacheUsuarios.invalidar(usuario);
+        }
     }
 
     /**
@@ -75,46 +89,67 @@ public class UsuarioService implements UserDetailsService {
     }
 
     /**
-     * Actualiza el token de restablecimiento de contraseña para un usuario específico.
+     * Busca un usuario por su dirección de correo electrónico, primero en {@link CacheUsuarios}.
      *
-     * @param token El nuevo token de restablecimiento de contraseña.
-     * @param email La dirección de correo electrónico asociada al usuario.
+     * @param email La dirección de correo electrónico del usuario.
+     * @return Una copia del usuario encontrado.
      * @throws MiExcepcion Si no se encuentra el usuario con la dirección de correo electrónico proporcionada.
      */
-    public void actualizarPasswordToken(String token, String email) throws MiExcepcion {
-        Usuario usuario = usuarioRepository.findByEmail(email);
-        if(usuario != null){
-            usuario.setResetPasswordToken(token);
-            usuarioRepository.save(usuario);
-        } else {
+    public Usuario buscarPorEmail(String email) throws MiExcepcion {
+        Usuario usuario = cacheUsuarios.buscarPorEmail(email);
+        if (usuario == null) {
+            long generacion = cacheUsuarios.generacion();
+            usuario = usuarioRepository.findByEmail(email);
+            if (usuario != null) {
+                cacheUsuarios.guardar(usuario, generacion);
+            }
+        }
+        if (usuario == null) {
             throw new MiExcepcion("No se encontró el usuario" + email);
         }
+        return usuario;
     }
 
     /**
-     * Recupera un usuario basado en el token de restablecimiento de contraseña.
+     * Actualiza la contraseña con una sola sentencia UPDATE, sin leer antes al usuario, siempre
+     * que la contraseña no haya cambiado desde que se emitió el token.
      *
-     * @param resetPasswordToken El token de restablecimiento de contraseña asociado al usuario.
-     * @return El objeto Usuario correspondiente al token proporcionado, o null si no se encuentra.
+     * @param id       El identificador del usuario.
+     * @param version  La versión de la contraseña que figura en el token.
+     * @param hash     El hash de la nueva contraseña, calculado con {@link #codificar(String)}.
+     * @return true si se actualizó; false si el token ya se usó o la contraseña cambió por otra vía.
      */
-    public Usuario get(String resetPasswordToken) {
-        return usuarioRepository.findByResetPasswordToken(resetPasswordToken);
+    @Transactional
+    public boolean actualizarPasswordSiVersion(long id, int version, String hash) {
+        cacheUsuarios.invalidar(id);
+        return usuarioRepository.actualizarPasswordSiVersion(id, version, hash) == 1;
     }
 
     /**
-     * Actualiza la contraseña de un usuario y elimina el token de restablecimiento de contraseña asociado.
+     * Calcula el hash de una contraseña. Conviene llamarlo antes de abrir una transacción.
      *
-     * @param usuario  El objeto Usuario cuya contraseña se va a actualizar.
-     * @param password La nueva contraseña en texto plano.
+     * @param password La contraseña en texto plano.
+     * @return El hash de la contraseña.
      */
-    public void actualizarPassword(Usuario usuario, String password) {
-        usuario.setPassword(new BCryptPasswordEncoder().encode(password));
-        usuario.setResetPasswordToken(null);
-        usuarioRepository.save(usuario);
+    public String codificar(String password) {
+        return passwordEncoder.encode(password);
     }
 
     /**
-     * Carga los detalles del usuario utilizando el DNI como nombre de usuario.
+     * Guarda el hash recalculado con un costo mayor después de un login correcto. No cambia la
+     * versión de la contraseña, así que los tokens de restablecimiento vigentes siguen valiendo.
+     */
+    @Override
+    @Transactional
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        cacheUsuarios.invalidarDni(user.getUsername());
+        usuarioRepository.actualizarHashPorDni(user.getUsername(), newPassword);
+        return User.withUserDetails(user).password(newPassword).build();
+    }
+
+    /**
+     * Carga los detalles del usuario utilizando el DNI como nombre de usuario, primero desde
+     * {@link CacheUsuarios}.
      *
      * @param dni El DNI del usuario.
      * @return Detalles del usuario como UserDetails.
@@ -122,14 +157,25 @@ public class UsuarioService implements UserDetailsService {
      */
     @Override
     public UserDetails loadUserByUsername(String dni) throws UsernameNotFoundException {
-        Usuario usuario = usuarioRepository.buscarPorDni(dni);
+        Usuario usuario = cacheUsuarios.buscarPorDni(dni);
+        if (usuario == null) {
+            long generacion = cacheUsuarios.generacion();
+            usuario = usuarioRepository.buscarPorDni(dni);
+            if (usuario != null) {
+                cacheUsuarios.guardar(usuario, generacion);
+            }
+        }
         if (usuario != null) {
             List<GrantedAuthority> permisos = new ArrayList<>();
+            // Todos tienen el rol USER, que abre el portal; los administradores suman el suyo.
             permisos.add(new SimpleGrantedAuthority("ROLE_USER"));
+            if (usuario.getRol() != Roles.USER) {
+                permisos.add(new SimpleGrantedAuthority("ROLE_" + usuario.getRol()));
+            }
 
             ServletRequestAttributes attr = (ServletRequestAttributes) RequestContextHolder.currentRequestAttributes();
             HttpSession session = attr.getRequest().getSession(true);
-            session.setAttribute("usuariosession", usuario);
+            session.setAttribute(UsuarioSesion.ATRIBUTO, new UsuarioSesion(usuario.getId(), usuario.getDni(), usuario.getRol()));
 
             return new User(usuario.getDni(), usuario.getPassword(), permisos);
         } else {
@@ -0,0 +1,258 @@
+package com.mail.service.attachment;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import javax.activation.DataHandler;
+import javax.mail.MessagingException;
+import javax.mail.Part;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.PreencodedMimeBodyPart;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Guarda en disco los adjuntos ya codificados en Base64, indexados por el hash de su contenido.
+ *
+ * Un mismo archivo se codifica una sola vez aunque se envíe a muchos destinatarios o se suba
+ * varias veces: los envíos siguientes escriben en el socket SMTP los bytes ya codificados sin
+ * volver a procesarlos. El tamaño total está acotado y, al superarse, se borran primero los
+ * adjuntos usados hace más tiempo que no estén en uso.
+ */
+@Service
+public class AdjuntoCache implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(AdjuntoCache.class);
+    private static final String EXTENSION = ".b64";
+
+    private final Path directorio;
+    private final long maxBytes;
+    private final LinkedHashMap<String, AdjuntoCodificado> entradas = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytesTotales;
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+
+    public AdjuntoCache(@Value("${mail.attachments.cache-dir:${java.io.tmpdir}/mailsend-adjuntos}") String directorio,
+                        @Value("${mail.attachments.cache-max-size:512MB}") DataSize maxTamano) throws IOException {
+        this.directorio = Path.of(directorio);
+        this.maxBytes = maxTamano.toBytes();
+        Files.createDirectories(this.directorio);
+        cargarExistentes();
+    }
+
+    /**
+     * Guarda el contenido en la caché, codificándolo solo si no estaba guardado, y lo marca como
+     * en uso. Debe liberarse con {@link #liberar} cuando ya no se necesite.
+     *
+     * @param contenido El contenido original del adjunto. No se cierra.
+     * @return El adjunto codificado.
+     * @throws IOException Si hay un error al leer el contenido o escribir en disco.
+     */
+    public AdjuntoCodificado registrar(InputStream contenido) throws IOException {
+        Path original = Files.createTempFile(directorio, "original-", ".tmp");
+        try {
+            MessageDigest sha256 = sha256();
+            try (OutputStream salida = new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(original)), sha256)) {
+                contenido.transferTo(salida);
+            }
+            String hash = HexFormat.of().formatHex(sha256.digest());
+            AdjuntoCodificado existente = retenerSiExiste(hash);
+            if (existente != null) {
+                aciertos.increment();
+                return existente;
+            }
+            fallos.increment();
+            Path codificado = Files.createTempFile(directorio, "codificado-", ".tmp");
+            try (InputStream entrada = Files.newInputStream(original);
+                 OutputStream salida = Base64.getMimeEncoder().wrap(new BufferedOutputStream(Files.newOutputStream(codificado)))) {
+                entrada.transferTo(salida);
+            }
+            Path destino = directorio.resolve(hash + EXTENSION);
+            Files.move(codificado, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return agregar(new AdjuntoCodificado(hash, destino, Files.size(destino)));
+        } finally {
+            Files.deleteIfExists(original);
+        }
+    }
+
+    /**
+     * Marca como en uso un adjunto ya registrado, por ejemplo mientras un envío espera en cola.
+     *
+     * @param adjunto El adjunto a retener.
+     */
+    public synchronized void retener(AdjuntoCodificado adjunto) {
+        adjunto.usos++;
+    }
+
+    /**
+     * Indica que un uso del adjunto terminó. Cuando ningún envío lo usa, puede desalojarse.
+     *
+     * @param adjunto El adjunto a liberar.
+     */
+    public synchronized void liberar(AdjuntoCodificado adjunto) {
+        adjunto.usos--;
+        desalojar();
+    }
+
+    /**
+     * Crea la parte MIME del adjunto. El contenido ya codificado se lee del disco al escribir
+     * el mensaje y se copia tal cual, sin volver a codificarlo.
+     *
+     * @param adjunto     El adjunto registrado.
+     * @param nombre      El nombre de archivo que verá el destinatario.
+     * @param contentType El tipo de contenido del adjunto.
+     * @return La parte lista para agregar al mensaje.
+     * @throws MessagingException Si los datos de la parte son inválidos.
+     */
+    public MimeBodyPart crearParte(AdjuntoCodificado adjunto, String nombre, String contentType) throws MessagingException {
+        MimeBodyPart parte = new PreencodedMimeBodyPart("base64");
+        parte.setDataHandler(new DataHandler(new ArchivoDataSource(adjunto.getArchivo(), nombre, contentType)));
+        parte.setDisposition(Part.ATTACHMENT);
+        parte.setFileName(nombre);
+        return parte;
+    }
+
+    /**
+     * @return La proporción de registros que encontraron el adjunto ya codificado, entre 0 y 1.
+     */
+    public double getTasaAciertos() {
+        long total = aciertos.sum() + fallos.sum();
+        return total == 0 ? 0 : (double) aciertos.sum() / total;
+    }
+
+    /**
+     * @return Los bytes que ocupan en disco los adjuntos guardados.
+     */
+    public synchronized long getBytesTotales() {
+        return bytesTotales;
+    }
+
+    /**
+     * Publica el tamaño ocupado, la cantidad de adjuntos y los registros con y sin acierto.
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("mail.attachments.cache.size", this, AdjuntoCache::getBytesTotales)
+                .baseUnit("bytes").register(registry);
+        Gauge.builder("mail.attachments.cache.entries", this, AdjuntoCache::getCantidad).register(registry);
+        FunctionCounter.builder("mail.attachments.cache.lookups", aciertos, LongAdder::sum)
+                .tag("resultado", "acierto").register(registry);
+        FunctionCounter.builder("mail.attachments.cache.lookups", fallos, LongAdder::sum)
+                .tag("resultado", "fallo").register(registry);
+    }
+
+    private synchronized int getCantidad() {
+        return entradas.size();
+    }
+
+    private synchronized AdjuntoCodificado retenerSiExiste(String hash) {
+        AdjuntoCodificado existente = entradas.get(hash);
+        if (existente != null) {
+            existente.usos++;
+        }
+        return existente;
+    }
+
+    private synchronized AdjuntoCodificado agregar(AdjuntoCodificado nuevo) {
+        AdjuntoCodificado existente = entradas.get(nuevo.getHash());
+        if (existente != null) {
+            // Otro hilo registró el mismo contenido a la vez; el archivo es idéntico.
+            existente.usos++;
+            return existente;
+        }
+        nuevo.usos = 1;
+        entradas.put(nuevo.getHash(), nuevo);
+        bytesTotales += nuevo.getTamano();
+        desalojar();
+        return nuevo;
+    }
+
+    private void desalojar() {
+        Iterator<AdjuntoCodificado> it = entradas.values().iterator();
+        while (bytesTotales > maxBytes && it.hasNext()) {
+            AdjuntoCodificado candidato = it.next();
+            if (candidato.usos > 0) {
+                continue;
+            }
+            it.remove();
+            bytesTotales -= candidato.getTamano();
+            try {
+                Files.deleteIfExists(candidato.getArchivo());
+            } catch (IOException e) {
+                log.warn("No se pudo borrar el adjunto {}", candidato.getArchivo(), e);
+            }
+        }
+    }
+
+    private synchronized void cargarExistentes() throws IOException {
+        List<Path> archivos;
+        try (Stream<Path> listado = Files.list(directorio)) {
+            archivos = listado.collect(Collectors.toList());
+        }
+        for (Path archivo : archivos) {
+            if (archivo.getFileName().toString().endsWith(".tmp")) {
+                Files.deleteIfExists(archivo);
+            }
+        }
+        archivos.stream()
+                .filter(archivo -> archivo.getFileName().toString().endsWith(EXTENSION))
+                .sorted(Comparator.comparing(AdjuntoCache::ultimaModificacion))
+                .forEach(archivo -> {
+                    String nombre = archivo.getFileName().toString();
+                    String hash = nombre.substring(0, nombre.length() - EXTENSION.length());
+                    AdjuntoCodificado adjunto = new AdjuntoCodificado(hash, archivo, tamano(archivo));
+                    entradas.put(hash, adjunto);
+                    bytesTotales += adjunto.getTamano();
+                });
+        desalojar();
+        log.info("Caché de adjuntos en {}: {} archivos, {} bytes", directorio, entradas.size(), bytesTotales);
+    }
+
+    private static long ultimaModificacion(Path archivo) {
+        try {
+            return Files.getLastModifiedTime(archivo).toMillis();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long tamano(Path archivo) {
+        try {
+            return Files.size(archivo);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.mail.service.attachment;
+
+import java.nio.file.Path;
+
+/**
+ * Adjunto guardado en {@link AdjuntoCache}, ya codificado en Base64 e identificado por el
+ * SHA-256 de su contenido original.
+ *
+ * Mientras alguien lo use, es decir entre {@link AdjuntoCache#registrar} o
+ * {@link AdjuntoCache#retener} y {@link AdjuntoCache#liberar}, el archivo no se desaloja.
+ */
+public final class AdjuntoCodificado {
+    private final String hash;
+    private final Path archivo;
+    private final long tamano;
+    int usos;
+
+    AdjuntoCodificado(String hash, Path archivo, long tamano) {
+        this.hash = hash;
+        this.archivo = archivo;
+        this.tamano = tamano;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    Path getArchivo() {
+        return archivo;
+    }
+
+    /**
+     * @return El tamaño en bytes del contenido ya codificado.
+     */
+    public long getTamano() {
+        return tamano;
+    }
+}
@@ -0,0 +1,47 @@
+package com.mail.service.attachment;
+
+import javax.activation.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * {@link DataSource} de solo lectura sobre un archivo en disco.
+ *
+ * JavaMail lee el archivo por bloques mientras escribe el mensaje en el socket SMTP, así que el
+ * contenido nunca se carga completo en memoria. Puede leerse varias veces, por ejemplo si el
+ * envío se reintenta con otra conexión.
+ */
+public class ArchivoDataSource implements DataSource {
+    private final Path archivo;
+    private final String nombre;
+    private final String contentType;
+
+    public ArchivoDataSource(Path archivo, String nombre, String contentType) {
+        this.archivo = archivo;
+        this.nombre = nombre;
+        this.contentType = contentType;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return Files.newInputStream(archivo);
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        throw new IOException("El adjunto es de solo lectura");
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public String getName() {
+        return nombre;
+    }
+}
@@ -0,0 +1,12 @@
+package com.mail.service.bulk;
+
+import java.util.Map;
+
+/**
+ * Destinatario de un envío masivo con los valores que completan su plantilla.
+ *
+ * @param email     La dirección de correo electrónico.
+ * @param variables Los valores de las variables de la plantilla, por nombre.
+ */
+public record Destinatario(String email, Map<String, String> variables) {
+}
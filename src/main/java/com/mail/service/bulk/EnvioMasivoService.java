@@ -0,0 +1,330 @@
+package com.mail.service.bulk;
+
+import com.mail.exceptions.MiExcepcion;
+import com.mail.repositories.ContactoUsuario;
+import com.mail.repositories.UsuarioRepository;
+import com.mail.service.attachment.AdjuntoCache;
+import com.mail.service.attachment.AdjuntoCodificado;
+import com.mail.service.dispatch.MailDispatcher;
+import com.mail.service.dispatch.Prioridad;
+import com.mail.service.mime.EsqueletoMime;
+import com.mail.service.template.PlantillaCompilada;
+import com.mail.service.trabajo.EjecutorTrabajos;
+import com.mail.service.trabajo.EnVuelo;
+import com.mail.utilitys.LectorCsv;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.PreDestroy;
+import javax.mail.MessagingException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMessage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+
+/**
+ * Envía un mismo correo personalizado a muchos destinatarios.
+ *
+ * Los destinatarios se leen de a uno, desde un CSV o desde la tabla de usuarios, y cada correo
+ * se entrega a {@link MailDispatcher} por el carril {@link Prioridad#MASIVO}: comparte así los
+ * hilos y las conexiones SMTP con el resto de los correos, sin ocupar los que el carril
+ * transaccional tiene reservados, y pasa por los límites por dominio y por
+ * {@code ProteccionRelay}. Cada trabajo tiene a lo sumo 'mail.bulk.max-in-flight' correos en
+ * el despachador, así que la memoria usada no depende de la cantidad de destinatarios.
+ *
+ * El correo se compila una sola vez por trabajo en un {@link EsqueletoMime}. Si lleva un
+ * adjunto, se codifica una sola vez en {@link AdjuntoCache} y todos los mensajes del trabajo
+ * comparten los mismos bytes ya codificados.
+ *
+ * Si la cola del despachador está llena, el correo espera y se vuelve a entregar en lugar de
+ * fallar; mientras tanto la lectura de destinatarios se detiene.
+ */
+@Service
+public class EnvioMasivoService {
+    private static final Logger log = LoggerFactory.getLogger(EnvioMasivoService.class);
+    private static final long ESPERA_COLA_LLENA_INICIAL_MS = 100;
+    private static final long ESPERA_COLA_LLENA_MAXIMA_MS = 5_000;
+
+    private final JavaMailSender javaMailSender;
+    private final MailDispatcher mailDispatcher;
+    private final UsuarioRepository usuarioRepository;
+    private final AdjuntoCache adjuntoCache;
+    private final TransactionTemplate transaccionLectura;
+    private final String remitente;
+    private final int maxEnVuelo;
+    private final EjecutorTrabajos<TrabajoMasivo> trabajos;
+
+    public EnvioMasivoService(JavaMailSender javaMailSender,
+                              MailDispatcher mailDispatcher,
+                              UsuarioRepository usuarioRepository,
+                              AdjuntoCache adjuntoCache,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${spring.mail.username}") String remitente,
+                              @Value("${mail.bulk.max-in-flight:100}") int maxEnVuelo,
+                              @Value("${mail.bulk.max-concurrent-jobs:2}") int maxTrabajos) {
+        this.javaMailSender = javaMailSender;
+        this.mailDispatcher = mailDispatcher;
+        this.usuarioRepository = usuarioRepository;
+        this.adjuntoCache = adjuntoCache;
+        this.transaccionLectura = new TransactionTemplate(transactionManager);
+        this.transaccionLectura.setReadOnly(true);
+        this.remitente = remitente;
+        this.maxEnVuelo = maxEnVuelo;
+        this.trabajos = new EjecutorTrabajos<>("mail-bulk-", maxTrabajos);
+    }
+
+    /**
+     * Inicia un envío masivo a los destinatarios de un archivo CSV.
+     *
+     * El CSV debe tener una columna "email"; el resto de las columnas quedan disponibles como
+     * variables de la plantilla, por ejemplo {@code {{nombre}}}.
+     *
+     * @param archivo El archivo CSV subido.
+     * @param asunto  La plantilla del asunto.
+     * @param cuerpo  La plantilla del cuerpo.
+     * @param html    Si el cuerpo es HTML.
+     * @param adjunto El archivo que se adjunta a todos los correos, o null si no lleva adjunto.
+     * @return El trabajo iniciado, para consultar su progreso.
+     * @throws MiExcepcion Si no se puede leer el archivo o ya hay demasiados envíos en curso.
+     */
+    public TrabajoMasivo iniciarDesdeCsv(MultipartFile archivo, String asunto, String cuerpo, boolean html,
+                                         MultipartFile adjunto) throws MiExcepcion {
+        if (archivo == null || archivo.isEmpty()) {
+            throw new MiExcepcion("Debe seleccionar un archivo CSV con los destinatarios");
+        }
+        Path copia = EjecutorTrabajos.copiar(archivo, "envio-masivo-");
+        try {
+            return iniciar("csv:" + archivo.getOriginalFilename(), asunto, cuerpo, html, adjunto, envio -> {
+                try (LectorCsv lector = new LectorCsv(Files.newBufferedReader(copia, StandardCharsets.UTF_8))) {
+                    Map<String, String> fila;
+                    while ((fila = lector.siguiente()) != null) {
+                        envio.agregar(new Destinatario(fila.get("email"), fila));
+                    }
+                } finally {
+                    EjecutorTrabajos.borrar(copia);
+                }
+            });
+        } catch (MiExcepcion e) {
+            EjecutorTrabajos.borrar(copia);
+            throw e;
+        }
+    }
+
+    /**
+     * Inicia un envío masivo a todos los usuarios registrados con email. Las variables
+     * disponibles son {@code {{email}}} y {@code {{nombre}}}.
+     *
+     * @param asunto  La plantilla del asunto.
+     * @param cuerpo  La plantilla del cuerpo.
+     * @param html    Si el cuerpo es HTML.
+     * @param adjunto El archivo que se adjunta a todos los correos, o null si no lleva adjunto.
+     * @return El trabajo iniciado, para consultar su progreso.
+     * @throws MiExcepcion Si no se puede leer el adjunto o ya hay demasiados envíos en curso.
+     */
+    public TrabajoMasivo iniciarParaUsuarios(String asunto, String cuerpo, boolean html, MultipartFile adjunto) throws MiExcepcion {
+        return iniciar("usuarios", asunto, cuerpo, html, adjunto, envio -> transaccionLectura.executeWithoutResult(estado -> {
+            try (Stream<ContactoUsuario> contactos = usuarioRepository.streamContactos()) {
+                contactos.forEach(contacto -> {
+                    Map<String, String> variables = new HashMap<>(4);
+                    variables.put("email", contacto.getEmail());
+                    variables.put("nombre", contacto.getName());
+                    envio.agregar(new Destinatario(contacto.getEmail(), variables));
+                });
+            }
+        }));
+    }
+
+    /**
+     * Busca un envío masivo por su identificador.
+     *
+     * @param id El identificador del trabajo.
+     * @return El trabajo, si existe y no fue descartado por antigüedad.
+     */
+    public Optional<TrabajoMasivo> buscar(String id) {
+        return trabajos.buscar(id);
+    }
+
+    private TrabajoMasivo iniciar(String origen, String asunto, String cuerpo, boolean html,
+                                  MultipartFile adjunto, Recorrido recorrido) throws MiExcepcion {
+        TrabajoMasivo trabajo = new TrabajoMasivo(origen);
+        AdjuntoCodificado codificado = registrarAdjunto(adjunto);
+        EnvioEnCola envio;
+        try {
+            envio = new EnvioEnCola(trabajo, compilarEsqueleto(asunto, cuerpo, html, adjunto, codificado), codificado);
+        } catch (MessagingException e) {
+            if (codificado != null) {
+                adjuntoCache.liberar(codificado);
+            }
+            log.error("Error al preparar el envío masivo", e);
+            throw new MiExcepcion("No se pudo preparar el correo: " + e.getMessage());
+        }
+        try {
+            trabajos.iniciar(trabajo, () -> ejecutar(trabajo, envio, recorrido),
+                    "Ya hay demasiados envíos masivos en curso, intente más tarde");
+        } catch (MiExcepcion e) {
+            envio.liberarAdjunto();
+            throw e;
+        }
+        return trabajo;
+    }
+
+    private void ejecutar(TrabajoMasivo trabajo, EnvioEnCola envio, Recorrido recorrido) {
+        log.info("Envío masivo {} iniciado desde {}", trabajo.getId(), trabajo.getOrigen());
+        TrabajoMasivo.Estado estado = TrabajoMasivo.Estado.COMPLETADO;
+        try {
+            recorrido.recorrer(envio);
+        } catch (Exception e) {
+            log.error("Error en el envío masivo {}", trabajo.getId(), e);
+            trabajo.registrarFallidos(0, e.getMessage());
+            estado = TrabajoMasivo.Estado.FALLIDO;
+        } finally {
+            envio.esperarEnviosEnVuelo();
+            envio.liberarAdjunto();
+        }
+        trabajo.terminar(estado);
+        log.info("Envío masivo {} terminado: {} leídos, {} enviados, {} fallidos, {} msg/s",
+                trabajo.getId(), trabajo.getLeidos(), trabajo.getEnviados(), trabajo.getFallidos(),
+                String.format("%.1f", trabajo.getMensajesPorSegundo()));
+    }
+
+    /**
+     * Arma el correo una sola vez para todo el trabajo; por cada destinatario solo se escriben
+     * la dirección y los valores de las variables.
+     */
+    private EsqueletoMime compilarEsqueleto(String asunto, String cuerpo, boolean html, MultipartFile adjunto,
+                                            AdjuntoCodificado codificado) throws MessagingException {
+        MimeBodyPart[] partes = new MimeBodyPart[0];
+        if (codificado != null) {
+            String tipo = adjunto.getContentType() != null ? adjunto.getContentType() : "application/octet-stream";
+            partes = new MimeBodyPart[]{adjuntoCache.crearParte(codificado, adjunto.getOriginalFilename(), tipo)};
+        }
+        return EsqueletoMime.compilar(javaMailSender.createMimeMessage().getSession(), new InternetAddress(remitente),
+                PlantillaCompilada.compilar(asunto, false), PlantillaCompilada.compilar(cuerpo, html), html, partes);
+    }
+
+    private AdjuntoCodificado registrarAdjunto(MultipartFile adjunto) throws MiExcepcion {
+        if (adjunto == null || adjunto.isEmpty()) {
+            return null;
+        }
+        try (InputStream entrada = adjunto.getInputStream()) {
+            return adjuntoCache.registrar(entrada);
+        } catch (IOException e) {
+            log.error("Error al guardar el adjunto del envío masivo", e);
+            throw new MiExcepcion("No se pudo leer el archivo adjunto");
+        }
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        trabajos.cerrar();
+    }
+
+    private interface Recorrido {
+        void recorrer(EnvioEnCola envio) throws Exception;
+    }
+
+    /**
+     * Arma los mensajes de un trabajo a partir de su esqueleto y los entrega al despachador. Se
+     * usa desde un único hilo.
+     */
+    private final class EnvioEnCola {
+        private final TrabajoMasivo trabajo;
+        private final EsqueletoMime esqueleto;
+        private final AdjuntoCodificado adjunto;
+        private final EnVuelo enVuelo = new EnVuelo(maxEnVuelo);
+
+        EnvioEnCola(TrabajoMasivo trabajo, EsqueletoMime esqueleto, AdjuntoCodificado adjunto) {
+            this.trabajo = trabajo;
+            this.esqueleto = esqueleto;
+            this.adjunto = adjunto;
+        }
+
+        void agregar(Destinatario destinatario) {
+            trabajo.registrarLeido();
+            if (destinatario.email() == null || destinatario.email().isBlank()) {
+                trabajo.registrarFallidos(1, "Destinatario sin email");
+                return;
+            }
+            MimeMessage mensaje;
+            try {
+                mensaje = crearMensaje(destinatario);
+            } catch (MessagingException e) {
+                trabajo.registrarFallidos(1, "Destinatario inválido " + destinatario.email() + ": " + e.getMessage());
+                return;
+            }
+            enVuelo.ocupar();
+            CompletableFuture<Void> envio;
+            try {
+                envio = despachar(mensaje);
+            } catch (RuntimeException e) {
+                enVuelo.liberar();
+                throw e;
+            }
+            envio.whenComplete((ok, error) -> {
+                if (error == null) {
+                    trabajo.registrarEnviados(1);
+                } else {
+                    Throwable causa = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    trabajo.registrarFallidos(1, causa.getMessage());
+                }
+                enVuelo.liberar();
+            });
+        }
+
+        private MimeMessage crearMensaje(Destinatario destinatario) throws MessagingException {
+            return esqueleto.crearMensaje(new InternetAddress(destinatario.email(), true), destinatario.variables());
+        }
+
+        /**
+         * Entrega el mensaje por el carril masivo. Si la cola del despachador está llena, espera
+         * desde {@link #ESPERA_COLA_LLENA_INICIAL_MS} hasta {@link #ESPERA_COLA_LLENA_MAXIMA_MS}
+         * entre intentos.
+         *
+         * @throws CancellationException Si el hilo fue interrumpido mientras esperaba.
+         */
+        private CompletableFuture<Void> despachar(MimeMessage mensaje) {
+            long espera = ESPERA_COLA_LLENA_INICIAL_MS;
+            while (true) {
+                try {
+                    return mailDispatcher.despachar(mensaje, Prioridad.MASIVO);
+                } catch (MiExcepcion e) {
+                    log.debug("Envío masivo {} en espera: {}", trabajo.getId(), e.getMessage());
+                }
+                try {
+                    Thread.sleep(espera);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Envío masivo interrumpido");
+                }
+                espera = Math.min(espera * 2, ESPERA_COLA_LLENA_MAXIMA_MS);
+            }
+        }
+
+        void esperarEnviosEnVuelo() {
+            enVuelo.esperarTodas();
+        }
+
+        void liberarAdjunto() {
+            if (adjunto != null) {
+                adjuntoCache.liberar(adjunto);
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.mail.service.bulk;
+
+import com.mail.service.trabajo.Trabajo;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Estado y progreso de un envío masivo en curso o terminado.
+ */
+public class TrabajoMasivo implements Trabajo {
+    public enum Estado {
+        EN_CURSO,
+        COMPLETADO,
+        FALLIDO
+    }
+
+    private final String id = UUID.randomUUID().toString();
+    private final String origen;
+    private final Instant inicio = Instant.now();
+    private final AtomicLong leidos = new AtomicLong();
+    private final AtomicLong enviados = new AtomicLong();
+    private final AtomicLong fallidos = new AtomicLong();
+    private volatile Estado estado = Estado.EN_CURSO;
+    private volatile Instant fin;
+    private volatile String ultimoError;
+
+    TrabajoMasivo(String origen) {
+        this.origen = origen;
+    }
+
+    void registrarLeido() {
+        leidos.incrementAndGet();
+    }
+
+    void registrarEnviados(long cantidad) {
+        enviados.addAndGet(cantidad);
+    }
+
+    void registrarFallidos(long cantidad, String error) {
+        fallidos.addAndGet(cantidad);
+        ultimoError = error;
+    }
+
+    void terminar(Estado estado) {
+        this.fin = Instant.now();
+        this.estado = estado;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getOrigen() {
+        return origen;
+    }
+
+    public Estado getEstado() {
+        return estado;
+    }
+
+    public Instant getInicio() {
+        return inicio;
+    }
+
+    public long getLeidos() {
+        return leidos.get();
+    }
+
+    public long getEnviados() {
+        return enviados.get();
+    }
+
+    public long getFallidos() {
+        return fallidos.get();
+    }
+
+    public String getUltimoError() {
+        return ultimoError;
+    }
+
+    /**
+     * @return Los segundos transcurridos desde el inicio hasta el fin, o hasta ahora si sigue en curso.
+     */
+    public double getSegundos() {
+        Instant hasta = fin != null ? fin : Instant.now();
+        return Duration.between(inicio, hasta).toMillis() / 1000.0;
+    }
+
+    /**
+     * @return Los correos aceptados por el servidor SMTP por segundo desde el inicio.
+     */
+    public double getMensajesPorSegundo() {
+        double segundos = getSegundos();
+        return segundos == 0 ? 0 : getEnviados() / segundos;
+    }
+
+    public boolean isTerminado() {
+        return estado != Estado.EN_CURSO;
+    }
+}
@@ -0,0 +1,261 @@
+package com.mail.service.dispatch;
+
+import com.mail.exceptions.EnvioDiferidoException;
+import com.mail.exceptions.MiExcepcion;
+import com.mail.service.smtp.EnvioSmtpAsincrono;
+import com.mail.service.smtp.ProteccionRelay;
+import com.mail.utilitys.HilosVirtuales;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.mail.internet.MimeMessage;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Despacha correos salientes en segundo plano para que los hilos de las peticiones HTTP
+ * no queden bloqueados durante la conversación SMTP.
+ *
+ * Los mensajes pasan primero por {@link PlanificadorDominios}, que los agrupa por dominio del
+ * destinatario y arma lotes que viajan por una sola conexión, con límites de concurrencia y
+ * de tasa por dominio que se ajustan ante los diferimientos 4xx ('mail.dispatch.domain.*').
+ * La espera es acotada: si ya hay 'mail.dispatch.queue-capacity' correos pendientes, el
+ * envío se rechaza de inmediato en lugar de bloquear al llamador.
+ *
+ * Cada correo viaja por el carril de su {@link Prioridad}. El transaccional tiene más peso
+ * ('mail.dispatch.lanes.*-weight') y se le reservan hilos de trabajo y lugares de la cola
+ * ('mail.dispatch.lanes.reserved-*'), así un envío masivo no lo demora ni lo rechaza.
+ *
+ * Cada lote pide lugar a {@link ProteccionRelay} antes de salir. Si el relay está saturado o
+ * su circuito está abierto, el lote vuelve a la cola sin ocupar un hilo ni una conexión y se
+ * reintenta en unos instantes; si la espera llena la cola, los correos nuevos se rechazan.
+ *
+ * Con el sender bloqueante, los lotes los envía un grupo fijo de hilos de trabajo, uno por
+ * lote. Publica la cantidad de correos en cola y en curso, el tiempo que cada correo espera
+ * antes de salir por carril ('mail.dispatch.wait') y los envíos fallidos según su causa ('mail.send.failures').
+ *
+ * Con 'mail.virtual-threads.enabled' los hilos de trabajo son virtuales: cada lote en curso
+ * ocupa unos pocos KB en lugar de una pila nativa, así que 'mail.dispatch.workers' puede
+ * subirse a cientos. La conversación SMTP igual se limita a las conexiones del pool.
+ *
+ * Si el sender configurado es no bloqueante ({@link EnvioSmtpAsincrono}, con
+ * 'mail.smtp.engine=nio'), los lotes se le entregan directamente sin pasar por los hilos de
+ * trabajo; el límite de mensajes en curso lo aplica el sender.
+ */
+@Service
+public class MailDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(MailDispatcher.class);
+    private final JavaMailSender javaMailSender;
+    private final EnvioSmtpAsincrono envioAsincrono;
+    private final ProteccionRelay proteccion;
+    private final ThreadPoolExecutor executor;
+    private final PlanificadorDominios planificador;
+    private final Duration tiempoCierre;
+    private final MeterRegistry registry;
+    private final Counter rechazos;
+
+    public MailDispatcher(JavaMailSender javaMailSender, ProteccionRelay proteccion, MeterRegistry registry,
+                          @Value("${mail.dispatch.workers:4}") int workers,
+                          @Value("${mail.dispatch.queue-capacity:500}") int capacidadCola,
+                          @Value("${mail.dispatch.shutdown-timeout:30s}") Duration tiempoCierre,
+                          @Value("${mail.dispatch.domain.max-concurrency:2}") int maxConcurrenciaDominio,
+                          @Value("${mail.dispatch.domain.max-rate:0}") double maxTasaDominio,
+                          @Value("${mail.dispatch.domain.batch-size:20}") int tamanoLote,
+                          @Value("${mail.dispatch.domain.deferral-pause:5s}") Duration pausaDiferimiento,
+                          @Value("${mail.dispatch.domain.max-deferrals:5}") int maxDiferimientos,
+                          @Value("${mail.dispatch.domain.groups:}") String grupos,
+                          @Value("${mail.dispatch.lanes.transactional-weight:4}") int pesoTransaccional,
+                          @Value("${mail.dispatch.lanes.bulk-weight:1}") int pesoMasivo,
+                          @Value("${mail.dispatch.lanes.reserved-workers:1}") int hilosReservados,
+                          @Value("${mail.dispatch.lanes.reserved-queue:100}") int colaReservada,
+                          @Value("${mail.virtual-threads.enabled:false}") boolean hilosVirtuales) {
+        this.javaMailSender = javaMailSender;
+        this.envioAsincrono = javaMailSender instanceof EnvioSmtpAsincrono ? (EnvioSmtpAsincrono) javaMailSender : null;
+        this.proteccion = proteccion;
+        this.tiempoCierre = tiempoCierre;
+        this.registry = registry;
+        // El planificador nunca entrega más lotes que hilos, así que la cola del executor no crece.
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                HilosVirtuales.fabrica("mail-dispatch-", hilosVirtuales),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.rechazos = Counter.builder("mail.dispatch.rejected")
+                .description("Correos rechazados por cola llena")
+                .register(registry);
+        this.planificador = new PlanificadorDominios(envioAsincrono != null ? this::enviarSinHilos : this::enviarEnHilo,
+                envioAsincrono != null ? Integer.MAX_VALUE : workers, capacidadCola, maxConcurrenciaDominio,
+                maxTasaDominio, tamanoLote, pausaDiferimiento, maxDiferimientos,
+                PlanificadorDominios.leerGrupos(grupos),
+                new PlanificadorDominios.Carriles(pesoTransaccional, pesoMasivo, hilosReservados, colaReservada),
+                registry);
+        Gauge.builder("mail.dispatch.active", this, MailDispatcher::getEnCurso).register(registry);
+    }
+
+    /**
+     * Encola un mensaje transaccional para su envío y retorna sin esperar al servidor SMTP.
+     *
+     * @see #despachar(MimeMessage, Prioridad)
+     */
+    public CompletableFuture<Void> despachar(MimeMessage mensaje) throws MiExcepcion {
+        return despachar(mensaje, Prioridad.TRANSACCIONAL);
+    }
+
+    /**
+     * Encola un mensaje para su envío y retorna sin esperar al servidor SMTP.
+     *
+     * @param mensaje   El mensaje ya construido que se enviará.
+     * @param prioridad El carril por el que sale el mensaje.
+     * @return Un futuro que se completa cuando el mensaje fue aceptado por el servidor SMTP,
+     *         o de forma excepcional si el envío falló. Permite registrar callbacks de finalización.
+     * @throws MiExcepcion Si la cola de envío de ese carril está llena.
+     */
+    public CompletableFuture<Void> despachar(MimeMessage mensaje, Prioridad prioridad) throws MiExcepcion {
+        CompletableFuture<Void> envio;
+        try {
+            envio = planificador.encolar(mensaje, prioridad);
+        } catch (RejectedExecutionException e) {
+            rechazos.increment();
+            log.warn("Cola de envío llena ({}), se rechaza el correo {}", e.getMessage(), prioridad.etiqueta());
+            throw new MiExcepcion("El servicio de correo está saturado, intente nuevamente más tarde");
+        }
+        return envio.whenComplete((ok, error) -> {
+            if (error != null) {
+                log.error("Error al enviar el correo en segundo plano", error);
+                contarFallo(error);
+            }
+        });
+    }
+
+    /**
+     * Envía el lote por una sola conexión del pool en un hilo de trabajo.
+     */
+    private CompletableFuture<Map<MimeMessage, Exception>> enviarEnHilo(List<MimeMessage> lote) {
+        ProteccionRelay.Permiso permiso;
+        try {
+            permiso = proteccion.adquirir();
+        } catch (EnvioDiferidoException e) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException(e.getMessage(), e));
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                Map<MimeMessage, Exception> fallidos = enviarBloqueante(lote);
+                permiso.terminar(lote.size(), fallidos.values());
+                return fallidos;
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            permiso.cancelar();
+            throw e;
+        }
+    }
+
+    private Map<MimeMessage, Exception> enviarBloqueante(List<MimeMessage> lote) {
+        try {
+            javaMailSender.send(lote.toArray(new MimeMessage[0]));
+            return Map.of();
+        } catch (MailSendException e) {
+            if (e.getFailedMessages().isEmpty()) {
+                return todos(lote, e);
+            }
+            Map<MimeMessage, Exception> fallidos = new HashMap<>();
+            e.getFailedMessages().forEach((mensaje, causa) -> fallidos.put((MimeMessage) mensaje, causa));
+            return fallidos;
+        } catch (RuntimeException e) {
+            return todos(lote, e);
+        }
+    }
+
+    /**
+     * Entrega los mensajes del lote al sender no bloqueante, que los reparte entre sus conexiones.
+     */
+    private CompletableFuture<Map<MimeMessage, Exception>> enviarSinHilos(List<MimeMessage> lote) {
+        Map<MimeMessage, Exception> fallidos = new ConcurrentHashMap<>();
+        CompletableFuture<?>[] envios = new CompletableFuture[lote.size()];
+        for (int i = 0; i < lote.size(); i++) {
+            MimeMessage mensaje = lote.get(i);
+            ProteccionRelay.Permiso permiso;
+            try {
+                permiso = proteccion.adquirir();
+            } catch (EnvioDiferidoException e) {
+                fallidos.put(mensaje, new RejectedExecutionException(e.getMessage(), e));
+                envios[i] = CompletableFuture.completedFuture(null);
+                continue;
+            }
+            try {
+                envios[i] = envioAsincrono.enviarAsincronico(mensaje).whenComplete((ok, error) -> {
+                    permiso.terminar(1, error != null ? List.of(error) : List.of());
+                    if (error != null) {
+                        fallidos.put(mensaje, error instanceof Exception ? (Exception) error : new RuntimeException(error));
+                    }
+                });
+            } catch (RejectedExecutionException | MailException e) {
+                permiso.cancelar();
+                fallidos.put(mensaje, e);
+                envios[i] = CompletableFuture.completedFuture(null);
+            }
+        }
+        return CompletableFuture.allOf(envios).handle((ok, error) -> fallidos);
+    }
+
+    private static Map<MimeMessage, Exception> todos(List<MimeMessage> lote, Exception error) {
+        Map<MimeMessage, Exception> fallidos = new HashMap<>();
+        lote.forEach(mensaje -> fallidos.put(mensaje, error));
+        return fallidos;
+    }
+
+    /**
+     * Cuenta el fallo según su causa. En un {@link MailSendException} la causa útil es la del
+     * mensaje fallido (dirección rechazada, conexión perdida), no la excepción que la envuelve.
+     */
+    private void contarFallo(Throwable e) {
+        Throwable causa = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (causa instanceof MailSendException && !((MailSendException) causa).getFailedMessages().isEmpty()) {
+            causa = ((MailSendException) causa).getFailedMessages().values().iterator().next();
+        }
+        registry.counter("mail.send.failures", "causa", causa.getClass().getSimpleName()).increment();
+    }
+
+    /**
+     * @return La cantidad de correos que esperan en la cola.
+     */
+    public int getPendientes() {
+        return planificador.getPendientes();
+    }
+
+    /**
+     * @return La cantidad de correos que se están enviando en este momento.
+     */
+    public int getEnCurso() {
+        return planificador.getEnCurso();
+    }
+
+    /**
+     * Deja de aceptar correos nuevos y espera a que se envíen los que ya estaban encolados.
+     */
+    @PreDestroy
+    public void cerrar() throws InterruptedException {
+        planificador.cerrar(tiempoCierre);
+        executor.shutdown();
+        if (!executor.awaitTermination(tiempoCierre.toMillis(), TimeUnit.MILLISECONDS)) {
+            log.warn("Se interrumpen {} lotes en curso al cerrar el despachador", executor.getActiveCount());
+            executor.shutdownNow();
+        }
+    }
+}
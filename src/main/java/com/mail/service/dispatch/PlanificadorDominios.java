@@ -0,0 +1,737 @@
+package com.mail.service.dispatch;
+
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
+import com.sun.mail.smtp.SMTPSenderFailedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Ordena los correos pendientes por dominio del destinatario antes de enviarlos.
+ *
+ * Cada dominio, o grupo de dominios del mismo proveedor, tiene su propia cola. Un único hilo
+ * toma lotes de las colas por turnos y los entrega a {@link EnvioLotes}; cada lote viaja por una
+ * sola conexión SMTP. Por dominio se respeta un máximo de lotes en curso y, si está
+ * configurado, de mensajes por segundo, de modo que un proveedor lento no ocupa todas las
+ * conexiones y uno con límites estrictos no recibe ráfagas.
+ *
+ * Los límites se ajustan solos: cuando el servidor difiere un mensaje con un código 4xx, el
+ * dominio reduce a la mitad su concurrencia y su tasa y se pausa; cada lote entregado sin
+ * diferimientos los vuelve a subir de a poco. Los mensajes diferidos vuelven al frente de su
+ * cola, hasta {@code maxDiferimientos} veces. Un dominio sin diferimientos durante
+ * {@link #OLVIDO} vuelve a sus límites máximos.
+ *
+ * Cada {@link Prioridad} tiene su propio carril dentro de cada dominio. Cuando los dos tienen
+ * lotes listos se alternan según sus pesos, y el masivo no puede ocupar la última conexión de
+ * un dominio, los últimos {@code lotesReservados} lotes en curso ni los últimos
+ * {@code colaReservada} lugares de la cola: un pico de PDF no demora un restablecimiento de
+ * contraseña más que lo que tarda un lote en curso.
+ */
+final class PlanificadorDominios {
+    private static final Logger log = LoggerFactory.getLogger(PlanificadorDominios.class);
+    static final Duration OLVIDO = Duration.ofMinutes(10);
+    private static final double TASA_MINIMA = 0.2;
+    private static final long PAUSA_SATURADO_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final Pattern CODIGO_EN_TEXTO = Pattern.compile("(?:^|: )([2-5]\\d\\d)[ -]");
+
+    /**
+     * Envía un lote de mensajes del mismo dominio por una sola conexión.
+     */
+    interface EnvioLotes {
+        /**
+         * @return Un futuro con los mensajes que fallaron y la causa de cada uno; vacío si se
+         *         enviaron todos. Un {@link RejectedExecutionException} indica que el sender está
+         *         saturado y el mensaje puede reintentarse sin penalizar al dominio.
+         */
+        CompletableFuture<Map<MimeMessage, Exception>> enviar(List<MimeMessage> lote);
+    }
+
+    private final EnvioLotes envio;
+    private final int maxLotes;
+    private final int capacidad;
+    private final int maxConcurrencia;
+    private final double maxTasa;
+    private final int tamanoLote;
+    private final long pausaNanos;
+    private final int maxDiferimientos;
+    private final Map<String, String> grupos;
+    private final Carril[] carriles;
+    private final int lotesReservados;
+    private final int colaReservada;
+    private final Counter diferidos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition cambios = lock.newCondition();
+    private final Map<String, Dominio> dominios = new HashMap<>();
+    private final Thread hilo;
+    private int pendientes;
+    private int lotesEnCurso;
+    private int mensajesEnCurso;
+    private long ultimaLimpieza = System.nanoTime();
+    private long proximaRevision;
+    private boolean cerrado;
+
+    /**
+     * Los pesos y la capacidad reservada de los carriles.
+     *
+     * @param pesoTransaccional Los lotes transaccionales por cada {@code pesoMasivo} masivos cuando ambos esperan.
+     * @param pesoMasivo        Los lotes masivos por cada {@code pesoTransaccional} transaccionales.
+     * @param lotesReservados   Los lotes en curso que solo puede usar el carril transaccional.
+     * @param colaReservada     Los lugares de la cola que solo puede usar el carril transaccional.
+     */
+    record Carriles(int pesoTransaccional, int pesoMasivo, int lotesReservados, int colaReservada) {
+    }
+
+    /**
+     * @param maxLotes         Los lotes en curso entre todos los dominios.
+     * @param capacidad        Los mensajes que pueden esperar entre todos los dominios.
+     * @param maxConcurrencia  Los lotes en curso por dominio.
+     * @param maxTasa          Los mensajes por segundo por dominio; 0 para no limitarlos.
+     * @param tamanoLote       Los mensajes por lote.
+     * @param pausa            La pausa de un dominio tras un diferimiento; se duplica si se repite.
+     * @param maxDiferimientos Las veces que un mensaje diferido vuelve a la cola antes de fallar.
+     * @param grupos           El grupo de cada dominio que comparte límites con otros.
+     * @param carriles         Los pesos y la capacidad reservada de cada prioridad.
+     */
+    PlanificadorDominios(EnvioLotes envio, int maxLotes, int capacidad, int maxConcurrencia, double maxTasa,
+                         int tamanoLote, Duration pausa, int maxDiferimientos, Map<String, String> grupos,
+                         Carriles carriles, MeterRegistry registry) {
+        this.envio = envio;
+        this.maxLotes = maxLotes;
+        this.capacidad = capacidad;
+        this.maxConcurrencia = maxConcurrencia;
+        this.maxTasa = maxTasa > 0 ? maxTasa : Double.POSITIVE_INFINITY;
+        this.tamanoLote = tamanoLote;
+        this.pausaNanos = pausa.toNanos();
+        this.maxDiferimientos = maxDiferimientos;
+        this.grupos = grupos;
+        this.lotesReservados = carriles.lotesReservados();
+        this.colaReservada = carriles.colaReservada();
+        this.carriles = new Carril[]{
+                new Carril(Prioridad.TRANSACCIONAL, carriles.pesoTransaccional(), registry),
+                new Carril(Prioridad.MASIVO, carriles.pesoMasivo(), registry)};
+        this.diferidos = Counter.builder("mail.dispatch.deferred")
+                .description("Correos diferidos por el servidor SMTP con un código 4xx y vueltos a encolar")
+                .register(registry);
+        Gauge.builder("mail.dispatch.domains", this, PlanificadorDominios::getDominios)
+                .description("Dominios con correos pendientes o límites reducidos")
+                .register(registry);
+        this.hilo = new CustomizableThreadFactory("mail-dispatch-planificador").newThread(this::planificar);
+        this.hilo.setDaemon(true);
+        this.hilo.start();
+    }
+
+    /**
+     * Encola un mensaje en el carril de su prioridad, dentro de la cola de su dominio.
+     *
+     * @return Un futuro que se completa cuando el servidor SMTP acepta el mensaje, o con un
+     *         {@link MailException} si falla o se difiere más de {@code maxDiferimientos} veces.
+     * @throws RejectedExecutionException Si la cola del carril está llena o el planificador se cerró.
+     */
+    CompletableFuture<Void> encolar(MimeMessage mensaje, Prioridad prioridad) {
+        Pendiente pendiente = new Pendiente(mensaje);
+        String clave = clave(mensaje);
+        Carril carril = carriles[prioridad.ordinal()];
+        lock.lock();
+        try {
+            if (cerrado) {
+                throw new RejectedExecutionException("El despachador está cerrado");
+            }
+            int lugares = prioridad == Prioridad.TRANSACCIONAL ? capacidad : capacidad - colaReservada;
+            if (pendientes >= lugares) {
+                throw new RejectedExecutionException(pendientes + " correos pendientes");
+            }
+            Dominio dominio = dominios.computeIfAbsent(clave, Dominio::new);
+            dominio.colas[prioridad.ordinal()].addLast(pendiente);
+            pendientes++;
+            carril.pendientes++;
+            ponerEnTurno(dominio, carril);
+            cambios.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        return pendiente.resultado;
+    }
+
+    private String clave(MimeMessage mensaje) {
+        try {
+            Address[] destinatarios = mensaje.getAllRecipients();
+            if (destinatarios != null && destinatarios.length > 0 && destinatarios[0] instanceof InternetAddress) {
+                String direccion = ((InternetAddress) destinatarios[0]).getAddress();
+                String dominio = direccion.substring(direccion.lastIndexOf('@') + 1).toLowerCase(Locale.ROOT);
+                return grupos.getOrDefault(dominio, dominio);
+            }
+        } catch (MessagingException e) {
+            log.debug("No se pudo leer el destinatario del correo", e);
+        }
+        return "";
+    }
+
+    private void ponerEnTurno(Dominio dominio, Carril carril) {
+        int i = carril.prioridad.ordinal();
+        if (!dominio.enTurno[i] && !dominio.colas[i].isEmpty()) {
+            dominio.enTurno[i] = true;
+            carril.turnos.addLast(dominio);
+        }
+    }
+
+    // ------------------------------------------------------------------ hilo planificador
+
+    private void planificar() {
+        List<Lote> lotes = new ArrayList<>();
+        while (true) {
+            lock.lock();
+            try {
+                long esperaNanos;
+                while ((esperaNanos = elegirLotes(lotes)) > 0) {
+                    if (cerrado && pendientes == 0) {
+                        return;
+                    }
+                    cambios.awaitNanos(esperaNanos);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            // Los lotes se entregan sin el lock: si el envío termina en el acto, su resultado lo toma.
+            for (Lote lote : lotes) {
+                lanzar(lote);
+            }
+            lotes.clear();
+        }
+    }
+
+    /**
+     * Toma todos los lotes que se pueden enviar ya. Cada lote sale del carril con menos lotes
+     * entregados en proporción a su peso y, dentro del carril, del siguiente dominio listo.
+     *
+     * @return 0 si eligió algún lote; si no, los nanosegundos hasta que algún dominio pueda estar listo.
+     */
+    private long elegirLotes(List<Lote> lotes) {
+        long ahora = System.nanoTime();
+        limpiar(ahora);
+        nivelarCarriles();
+        proximaRevision = Long.MAX_VALUE;
+        while (true) {
+            Carril primero = carriles[0].pase <= carriles[1].pase ? carriles[0] : carriles[1];
+            Carril segundo = primero == carriles[0] ? carriles[1] : carriles[0];
+            Lote lote = tomarLote(primero, ahora);
+            if (lote == null) {
+                lote = tomarLote(segundo, ahora);
+            }
+            if (lote == null) {
+                break;
+            }
+            lotes.add(lote);
+        }
+        return lotes.isEmpty() ? proximaRevision : 0;
+    }
+
+    /**
+     * Un carril que estuvo vacío no acumula crédito: retoma desde donde va el otro.
+     */
+    private void nivelarCarriles() {
+        for (Carril carril : carriles) {
+            Carril otro = carriles[1 - carril.prioridad.ordinal()];
+            if (carril.pendientes == 0 && otro.pendientes > 0) {
+                carril.pase = Math.max(carril.pase, otro.pase);
+            }
+        }
+    }
+
+    private Lote tomarLote(Carril carril, long ahora) {
+        int maximo = carril.prioridad == Prioridad.TRANSACCIONAL ? maxLotes : Math.max(1, maxLotes - lotesReservados);
+        if (lotesEnCurso >= maximo) {
+            return null;
+        }
+        for (int i = carril.turnos.size(); i > 0; i--) {
+            Dominio dominio = carril.turnos.pollFirst();
+            dominio.enTurno[carril.prioridad.ordinal()] = false;
+            long faltan = dominio.faltaParaEnviar(carril.prioridad, ahora);
+            Lote lote = null;
+            if (faltan == 0) {
+                lote = dominio.tomarLote(carril, ahora);
+                carril.pase += 1.0 / carril.peso;
+            } else {
+                proximaRevision = Math.min(proximaRevision, faltan);
+            }
+            ponerEnTurno(dominio, carril);
+            if (lote != null) {
+                return lote;
+            }
+        }
+        return null;
+    }
+
+    private void lanzar(Lote lote) {
+        List<MimeMessage> mensajes = new ArrayList<>(lote.pendientes.size());
+        long inicio = System.nanoTime();
+        for (Pendiente pendiente : lote.pendientes) {
+            // Un correo diferido o rechazado por saturación vuelve a salir: su espera ya se contó.
+            if (!pendiente.lanzado) {
+                pendiente.lanzado = true;
+                lote.carril.espera.record(inicio - pendiente.encolado, TimeUnit.NANOSECONDS);
+            }
+            mensajes.add(pendiente.mensaje);
+        }
+        CompletableFuture<Map<MimeMessage, Exception>> resultado;
+        try {
+            resultado = envio.enviar(mensajes);
+        } catch (RuntimeException e) {
+            resultado = CompletableFuture.failedFuture(e);
+        }
+        resultado.whenComplete((fallidos, error) -> terminar(lote, fallidos, error));
+    }
+
+    private void terminar(Lote lote, Map<MimeMessage, Exception> fallidos, Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        List<Pendiente> entregados = new ArrayList<>();
+        List<Pendiente> fallados = new ArrayList<>();
+        List<Exception> causas = new ArrayList<>();
+        List<Pendiente> reencolados = new ArrayList<>();
+        boolean diferido = false;
+        boolean saturado = false;
+        lock.lock();
+        try {
+            for (Pendiente pendiente : lote.pendientes) {
+                Throwable causa = error != null ? error : fallidos.get(pendiente.mensaje);
+                if (causa == null) {
+                    entregados.add(pendiente);
+                } else if (causa instanceof RejectedExecutionException && !cerrado) {
+                    saturado = true;
+                    reencolados.add(pendiente);
+                } else if (esDiferimiento(causa) && pendiente.diferimientos < maxDiferimientos && !cerrado) {
+                    diferido = true;
+                    pendiente.diferimientos++;
+                    reencolados.add(pendiente);
+                } else {
+                    fallados.add(pendiente);
+                    causas.add(causa instanceof Exception ? (Exception) causa : new RuntimeException(causa));
+                }
+            }
+            Dominio dominio = lote.dominio;
+            Carril carril = lote.carril;
+            long ahora = System.nanoTime();
+            dominio.lotesEnCurso--;
+            dominio.lotesPorCarril[carril.prioridad.ordinal()]--;
+            lotesEnCurso--;
+            mensajesEnCurso -= lote.pendientes.size();
+            dominio.registrarEnviados(entregados.size(), ahora);
+            if (diferido) {
+                dominio.reducir(ahora);
+            } else if (saturado) {
+                dominio.pausaHasta = Math.max(dominio.pausaHasta, ahora + PAUSA_SATURADO_NANOS);
+            } else if (fallados.isEmpty()) {
+                dominio.aumentar();
+            }
+            for (int i = reencolados.size() - 1; i >= 0; i--) {
+                dominio.colas[carril.prioridad.ordinal()].addFirst(reencolados.get(i));
+            }
+            pendientes += reencolados.size();
+            carril.pendientes += reencolados.size();
+            ponerEnTurno(dominio, carril);
+            cambios.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (diferido) {
+            diferidos.increment(reencolados.size());
+        }
+        for (Pendiente pendiente : entregados) {
+            pendiente.resultado.complete(null);
+        }
+        for (int i = 0; i < fallados.size(); i++) {
+            Pendiente pendiente = fallados.get(i);
+            Exception causa = causas.get(i);
+            pendiente.resultado.completeExceptionally(causa instanceof MailException
+                    ? causa : new MailSendException(Map.of(pendiente.mensaje, causa)));
+        }
+    }
+
+    /**
+     * Descarta el estado de los dominios sin correos en curso que ya no tienen límites
+     * reducidos, y devuelve a sus límites máximos a los que llevan {@link #OLVIDO} sin diferimientos.
+     */
+    private void limpiar(long ahora) {
+        if (ahora - ultimaLimpieza < TimeUnit.SECONDS.toNanos(10)) {
+            return;
+        }
+        ultimaLimpieza = ahora;
+        Iterator<Dominio> it = dominios.values().iterator();
+        while (it.hasNext()) {
+            Dominio dominio = it.next();
+            if (ahora - dominio.ultimoDiferimiento > OLVIDO.toNanos()) {
+                dominio.restablecer();
+            }
+            if (dominio.sinPendientes() && dominio.lotesEnCurso == 0 && dominio.sinPenalidad()) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Indica si el error es un rechazo transitorio del servidor (código 4xx), por ejemplo por
+     * exceder los límites del proveedor, y conviene reintentar más tarde.
+     */
+    static boolean esDiferimiento(Throwable error) {
+        int profundidad = 0;
+        for (Throwable actual = error; actual != null && profundidad < 10; profundidad++) {
+            int codigo = codigoSmtp(actual);
+            if (codigo > 0) {
+                return codigo >= 400 && codigo < 500;
+            }
+            if (actual instanceof MailSendException && !((MailSendException) actual).getFailedMessages().isEmpty()) {
+                actual = ((MailSendException) actual).getFailedMessages().values().iterator().next();
+            } else if (actual instanceof MessagingException && ((MessagingException) actual).getNextException() != null) {
+                actual = ((MessagingException) actual).getNextException();
+            } else {
+                actual = actual.getCause();
+            }
+        }
+        return false;
+    }
+
+    private static int codigoSmtp(Throwable error) {
+        if (error instanceof SMTPAddressFailedException) {
+            return ((SMTPAddressFailedException) error).getReturnCode();
+        }
+        if (error instanceof SMTPSenderFailedException) {
+            return ((SMTPSenderFailedException) error).getReturnCode();
+        }
+        if (error instanceof SMTPSendFailedException) {
+            return ((SMTPSendFailedException) error).getReturnCode();
+        }
+        if (error instanceof MessagingException && error.getMessage() != null) {
+            // Los errores de conexión (por ejemplo un 421 en el saludo) solo traen la respuesta en el texto.
+            Matcher codigo = CODIGO_EN_TEXTO.matcher(error.getMessage());
+            if (codigo.find()) {
+                return Integer.parseInt(codigo.group(1));
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Deja de aceptar correos y espera hasta {@code tiempo} a que se envíen los pendientes. Los
+     * que no alcancen a salir fallan.
+     */
+    void cerrar(Duration tiempo) throws InterruptedException {
+        List<Pendiente> descartados = new ArrayList<>();
+        lock.lock();
+        try {
+            cerrado = true;
+            cambios.signalAll();
+            long restante = tiempo.toNanos();
+            while ((pendientes > 0 || lotesEnCurso > 0) && restante > 0) {
+                restante = cambios.awaitNanos(restante);
+            }
+            for (Dominio dominio : dominios.values()) {
+                for (ArrayDeque<Pendiente> cola : dominio.colas) {
+                    descartados.addAll(cola);
+                    cola.clear();
+                }
+            }
+            pendientes = 0;
+            for (Carril carril : carriles) {
+                carril.pendientes = 0;
+            }
+        } finally {
+            lock.unlock();
+        }
+        hilo.interrupt();
+        if (!descartados.isEmpty()) {
+            log.warn("Se descartan {} correos pendientes al cerrar el despachador", descartados.size());
+            MailSendException error = new MailSendException("Se cerró el despachador antes de enviar el correo");
+            descartados.forEach(p -> p.resultado.completeExceptionally(error));
+        }
+    }
+
+    int getPendientes() {
+        lock.lock();
+        try {
+            return pendientes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getPendientes(Prioridad prioridad) {
+        lock.lock();
+        try {
+            return carriles[prioridad.ordinal()].pendientes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getEnCurso() {
+        lock.lock();
+        try {
+            return mensajesEnCurso;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getDominios() {
+        lock.lock();
+        try {
+            return dominios.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Los lotes en curso que admite hoy el dominio, o el máximo si no tiene estado.
+     */
+    int getConcurrencia(String dominio) {
+        lock.lock();
+        try {
+            Dominio estado = dominios.get(dominio);
+            return estado == null ? maxConcurrencia : (int) estado.concurrencia;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lee los grupos con el formato {@code grupo:dominio1|dominio2,otro:dominio3}.
+     *
+     * @return El grupo de cada dominio listado.
+     */
+    static Map<String, String> leerGrupos(String texto) {
+        Map<String, String> grupos = new HashMap<>();
+        if (texto == null || texto.isBlank()) {
+            return grupos;
+        }
+        for (String definicion : texto.split(",")) {
+            int separador = definicion.indexOf(':');
+            if (separador <= 0) {
+                throw new IllegalArgumentException("Grupo de dominios inválido: '" + definicion.trim()
+                        + "', se esperaba 'grupo:dominio1|dominio2'");
+            }
+            String grupo = definicion.substring(0, separador).trim();
+            for (String dominio : definicion.substring(separador + 1).split("\\|")) {
+                if (!dominio.isBlank()) {
+                    grupos.put(dominio.trim().toLowerCase(Locale.ROOT), grupo);
+                }
+            }
+        }
+        return grupos;
+    }
+
+    private static final class Pendiente {
+        final MimeMessage mensaje;
+        final CompletableFuture<Void> resultado = new CompletableFuture<>();
+        final long encolado = System.nanoTime();
+        int diferimientos;
+        boolean lanzado;
+
+        Pendiente(MimeMessage mensaje) {
+            this.mensaje = mensaje;
+        }
+    }
+
+    private record Lote(Dominio dominio, Carril carril, List<Pendiente> pendientes) {
+    }
+
+    /**
+     * Los dominios con correos de una prioridad, por turno, y cuántos lotes entregó en
+     * proporción a su peso. Se usa siempre con el lock tomado, salvo sus métricas.
+     */
+    private final class Carril {
+        final Prioridad prioridad;
+        final int peso;
+        final ArrayDeque<Dominio> turnos = new ArrayDeque<>();
+        final Timer espera;
+        double pase;
+        int pendientes;
+
+        Carril(Prioridad prioridad, int peso, MeterRegistry registry) {
+            this.prioridad = prioridad;
+            this.peso = Math.max(1, peso);
+            this.espera = Timer.builder("mail.dispatch.wait")
+                    .description("Tiempo que un correo espera en la cola antes de que su lote salga por primera vez")
+                    .tag("carril", prioridad.etiqueta())
+                    .publishPercentileHistogram()
+                    .serviceLevelObjectives(Duration.ofSeconds(1))
+                    .register(registry);
+            Gauge.builder("mail.dispatch.queue", PlanificadorDominios.this, p -> p.getPendientes(prioridad))
+                    .description("Correos que esperan su turno para salir")
+                    .tag("carril", prioridad.etiqueta())
+                    .register(registry);
+        }
+    }
+
+    /**
+     * La cola y los límites de un dominio. Se usa siempre con el lock tomado.
+     */
+    private final class Dominio {
+        final String nombre;
+        @SuppressWarnings("unchecked")
+        final ArrayDeque<Pendiente>[] colas = new ArrayDeque[]{new ArrayDeque<>(), new ArrayDeque<>()};
+        final boolean[] enTurno = new boolean[2];
+        final int[] lotesPorCarril = new int[2];
+        int lotesEnCurso;
+        double concurrencia = maxConcurrencia;
+        double tasa = maxTasa;
+        double fichas = fichasMaximas(maxTasa);
+        long recarga = System.nanoTime();
+        long pausaHasta = System.nanoTime();
+        long reducidoHasta = System.nanoTime();
+        long ultimoDiferimiento = System.nanoTime() - OLVIDO.toNanos();
+        int diferimientosSeguidos;
+        long ventanaInicio = System.nanoTime();
+        int ventanaEnviados;
+        double tasaObservada;
+
+        Dominio(String nombre) {
+            this.nombre = nombre;
+        }
+
+        /**
+         * El carril masivo deja libre la última conexión del dominio, salvo que solo tenga una.
+         *
+         * @return 0 si puede enviar un lote ya; si no, los nanosegundos hasta que pueda, o
+         *         {@link Long#MAX_VALUE} si debe esperar a que termine un lote en curso.
+         */
+        long faltaParaEnviar(Prioridad prioridad, long ahora) {
+            int limite = (int) concurrencia;
+            if (lotesEnCurso >= limite) {
+                return Long.MAX_VALUE;
+            }
+            if (prioridad == Prioridad.MASIVO && limite > 1 && lotesPorCarril[prioridad.ordinal()] >= limite - 1) {
+                return Long.MAX_VALUE;
+            }
+            if (ahora - pausaHasta < 0) {
+                return pausaHasta - ahora;
+            }
+            recargar(ahora);
+            if (fichas < 1) {
+                return (long) Math.ceil((1 - fichas) / tasa * 1e9);
+            }
+            return 0;
+        }
+
+        Lote tomarLote(Carril carril, long ahora) {
+            ArrayDeque<Pendiente> cola = colas[carril.prioridad.ordinal()];
+            int cantidad = Math.min(tamanoLote, cola.size());
+            if (!Double.isInfinite(tasa)) {
+                cantidad = Math.min(cantidad, (int) fichas);
+                fichas -= cantidad;
+            }
+            List<Pendiente> lote = new ArrayList<>(cantidad);
+            for (int i = 0; i < cantidad; i++) {
+                lote.add(cola.pollFirst());
+            }
+            lotesEnCurso++;
+            lotesPorCarril[carril.prioridad.ordinal()]++;
+            PlanificadorDominios.this.lotesEnCurso++;
+            pendientes -= cantidad;
+            carril.pendientes -= cantidad;
+            mensajesEnCurso += cantidad;
+            return new Lote(this, carril, lote);
+        }
+
+        boolean sinPendientes() {
+            return colas[0].isEmpty() && colas[1].isEmpty();
+        }
+
+        private void recargar(long ahora) {
+            if (!Double.isInfinite(tasa)) {
+                fichas = Math.min(fichasMaximas(tasa), fichas + (ahora - recarga) / 1e9 * tasa);
+            }
+            recarga = ahora;
+        }
+
+        void registrarEnviados(int cantidad, long ahora) {
+            ventanaEnviados += cantidad;
+            long transcurrido = ahora - ventanaInicio;
+            if (transcurrido >= TimeUnit.SECONDS.toNanos(1)) {
+                tasaObservada = ventanaEnviados / (transcurrido / 1e9);
+                ventanaEnviados = 0;
+                ventanaInicio = ahora;
+            }
+        }
+
+        /**
+         * Reduce a la mitad la concurrencia y la tasa y pausa el dominio. Los lotes que ya
+         * estaban en curso y también se difieren durante la pausa no lo reducen de nuevo.
+         */
+        void reducir(long ahora) {
+            if (ahora - reducidoHasta < 0) {
+                return;
+            }
+            concurrencia = Math.max(1, concurrencia / 2);
+            double base = Double.isInfinite(tasa) ? (tasaObservada > 0 ? tasaObservada : tamanoLote) : tasa;
+            tasa = Math.max(TASA_MINIMA, base / 2);
+            fichas = 0;
+            recarga = ahora;
+            diferimientosSeguidos++;
+            ultimoDiferimiento = ahora;
+            long pausa = pausaNanos << Math.min(diferimientosSeguidos - 1, 4);
+            pausaHasta = ahora + pausa;
+            reducidoHasta = pausaHasta;
+            log.info("El dominio '{}' difiere correos: se limita a {} conexiones y {} correos por segundo, pausa de {} ms",
+                    nombre, (int) concurrencia, String.format("%.1f", tasa), TimeUnit.NANOSECONDS.toMillis(pausa));
+        }
+
+        /**
+         * Sube un lote más de concurrencia por cada {@code concurrencia} lotes entregados, y un
+         * correo por segundo de tasa por lote, sin pasar los máximos.
+         */
+        void aumentar() {
+            diferimientosSeguidos = 0;
+            concurrencia = Math.min(maxConcurrencia, concurrencia + 1 / concurrencia);
+            if (tasa < maxTasa) {
+                tasa = Math.min(maxTasa, tasa + 1);
+            }
+        }
+
+        void restablecer() {
+            concurrencia = maxConcurrencia;
+            tasa = maxTasa;
+            diferimientosSeguidos = 0;
+        }
+
+        boolean sinPenalidad() {
+            return concurrencia >= maxConcurrencia && tasa >= maxTasa;
+        }
+    }
+
+    private static double fichasMaximas(double tasa) {
+        return Double.isInfinite(tasa) ? 0 : Math.max(1, tasa);
+    }
+}
@@ -0,0 +1,26 @@
+package com.mail.service.dispatch;
+
+import java.util.Locale;
+
+/**
+ * El carril por el que sale un correo del {@link MailDispatcher}.
+ */
+public enum Prioridad {
+    /**
+     * Correos que el usuario está esperando, como el enlace de restablecimiento o la
+     * confirmación del cambio de contraseña. Tienen capacidad reservada y más peso.
+     */
+    TRANSACCIONAL,
+    /**
+     * Correos pesados o en cantidad, como los PDF adjuntos y los envíos masivos, que pueden
+     * esperar unos segundos.
+     */
+    MASIVO;
+
+    /**
+     * @return El nombre del carril para las métricas.
+     */
+    public String etiqueta() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,11 @@
+package com.mail.service.importacion;
+
+/**
+ * Una fila del CSV que no se importó.
+ *
+ * @param fila    El número de fila en el archivo, contando la cabecera como fila 1.
+ * @param dni     El DNI de la fila, si lo tenía.
+ * @param mensaje El motivo del rechazo.
+ */
+public record ErrorFila(long fila, String dni, String mensaje) {
+}
@@ -0,0 +1,324 @@
+package com.mail.service.importacion;
+
+import com.mail.entity.Usuario;
+import com.mail.enumerated.Roles;
+import com.mail.exceptions.MiExcepcion;
+import com.mail.repositories.InsercionMasivaUsuarios;
+import com.mail.service.trabajo.EjecutorTrabajos;
+import com.mail.service.trabajo.EnVuelo;
+import com.mail.utilitys.LectorCsv;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.PreDestroy;
+import javax.mail.internet.AddressException;
+import javax.mail.internet.InternetAddress;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Da de alta muchos usuarios a partir de un CSV.
+ *
+ * Un hilo lee el archivo de a una fila, valida los campos y arma lotes. Cada lote se procesa
+ * en un grupo de hilos propio: se descartan los DNI y emails ya registrados, se calculan los
+ * hashes BCrypt (un lote por núcleo a la vez) y las filas se insertan con un solo batch JDBC
+ * por lote. Como solo hay una cantidad fija de lotes en vuelo, la memoria usada no depende del
+ * tamaño del archivo, salvo por los DNI y emails ya vistos, que se recuerdan para detectar
+ * repetidos dentro del mismo archivo.
+ *
+ * Las filas con errores se informan en el trabajo con su número de fila y no detienen la
+ * importación.
+ */
+@Service
+public class ImportacionUsuariosService {
+    private static final Logger log = LoggerFactory.getLogger(ImportacionUsuariosService.class);
+    private static final List<String> COLUMNAS_REQUERIDAS = List.of("nombre", "dni", "password");
+
+    private final InsercionMasivaUsuarios insercion;
+    private final TransactionTemplate transaccion;
+    private final BCryptPasswordEncoder bcrypt;
+    private final int tamanoLote;
+    private final int hilosHash;
+    private final EjecutorTrabajos<TrabajoImportacion> trabajos;
+    private final ExecutorService lotes;
+
+    public ImportacionUsuariosService(InsercionMasivaUsuarios insercion,
+                                      PlatformTransactionManager transactionManager,
+                                      @Value("${mail.password.bcrypt-strength:10}") int costo,
+                                      @Value("${mail.import.batch-size:500}") int tamanoLote,
+                                      @Value("${mail.import.hash-threads:0}") int hilosHash,
+                                      @Value("${mail.import.max-concurrent-jobs:1}") int maxTrabajos) {
+        this.insercion = insercion;
+        this.transaccion = new TransactionTemplate(transactionManager);
+        this.bcrypt = new BCryptPasswordEncoder(costo);
+        this.tamanoLote = tamanoLote;
+        // Por defecto deja un núcleo libre para los logins, que usan el mismo algoritmo.
+        this.hilosHash = hilosHash > 0 ? hilosHash : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        this.trabajos = new EjecutorTrabajos<>("user-import-", maxTrabajos);
+        this.lotes = Executors.newFixedThreadPool(this.hilosHash, new CustomizableThreadFactory("user-import-hash-"));
+    }
+
+    /**
+     * Inicia la importación de los usuarios de un archivo CSV.
+     *
+     * El CSV debe tener las columnas "nombre", "dni" y "password"; "email" y "telefono" son
+     * opcionales. Los usuarios se crean con el rol USER.
+     *
+     * @param archivo El archivo CSV subido.
+     * @return El trabajo iniciado, para consultar su progreso.
+     * @throws MiExcepcion Si no se puede leer el archivo, le faltan columnas o ya hay demasiadas importaciones en curso.
+     */
+    public TrabajoImportacion iniciar(MultipartFile archivo) throws MiExcepcion {
+        if (archivo == null || archivo.isEmpty()) {
+            throw new MiExcepcion("Debe seleccionar un archivo CSV con los usuarios");
+        }
+        Path copia = EjecutorTrabajos.copiar(archivo, "importacion-usuarios-");
+        try {
+            validarCabecera(copia);
+            TrabajoImportacion trabajo = new TrabajoImportacion("csv:" + archivo.getOriginalFilename());
+            trabajos.iniciar(trabajo, () -> ejecutar(trabajo, copia),
+                    "Ya hay una importación de usuarios en curso, intente más tarde");
+            return trabajo;
+        } catch (MiExcepcion e) {
+            EjecutorTrabajos.borrar(copia);
+            throw e;
+        }
+    }
+
+    /**
+     * Busca una importación por su identificador.
+     *
+     * @param id El identificador del trabajo.
+     * @return El trabajo, si existe y no fue descartado por antigüedad.
+     */
+    public Optional<TrabajoImportacion> buscar(String id) {
+        return trabajos.buscar(id);
+    }
+
+    private void validarCabecera(Path archivo) throws MiExcepcion {
+        try (LectorCsv lector = new LectorCsv(Files.newBufferedReader(archivo, StandardCharsets.UTF_8))) {
+            List<String> cabecera = Arrays.asList(lector.getCabecera());
+            List<String> faltantes = COLUMNAS_REQUERIDAS.stream().filter(c -> !cabecera.contains(c)).toList();
+            if (!faltantes.isEmpty()) {
+                throw new MiExcepcion("Al archivo CSV le faltan las columnas: " + String.join(", ", faltantes));
+            }
+        } catch (IOException e) {
+            throw new MiExcepcion("No se pudo leer el archivo CSV: " + e.getMessage());
+        }
+    }
+
+    private void ejecutar(TrabajoImportacion trabajo, Path archivo) {
+        log.info("Importación de usuarios {} iniciada desde {}", trabajo.getId(), trabajo.getOrigen());
+        Importacion importacion = new Importacion(trabajo);
+        TrabajoImportacion.Estado estado = TrabajoImportacion.Estado.COMPLETADO;
+        String error = null;
+        try (LectorCsv lector = new LectorCsv(Files.newBufferedReader(archivo, StandardCharsets.UTF_8))) {
+            Map<String, String> fila;
+            while ((fila = lector.siguiente()) != null) {
+                importacion.agregar(lector.getNumeroFila(), fila);
+            }
+            importacion.vaciar();
+        } catch (Exception e) {
+            log.error("Error en la importación de usuarios {}", trabajo.getId(), e);
+            estado = TrabajoImportacion.Estado.FALLIDO;
+            error = e.getMessage();
+        } finally {
+            importacion.esperarLotesEnVuelo();
+            EjecutorTrabajos.borrar(archivo);
+        }
+        trabajo.terminar(estado, error);
+        log.info("Importación de usuarios {} terminada: {} leídos, {} importados, {} rechazados, {} usuarios/s",
+                trabajo.getId(), trabajo.getLeidos(), trabajo.getImportados(), trabajo.getRechazados(),
+                String.format("%.1f", trabajo.getUsuariosPorSegundo()));
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        trabajos.cerrar();
+        lotes.shutdownNow();
+    }
+
+    /**
+     * Una fila válida del CSV, con la contraseña en texto plano hasta que se calcula su hash.
+     */
+    private record FilaUsuario(long numero, Usuario usuario, String password) {
+    }
+
+    /**
+     * Valida las filas de una importación y las envía por lotes al grupo de hilos. Se usa desde
+     * un único hilo.
+     */
+    private final class Importacion {
+        private final TrabajoImportacion trabajo;
+        private final EnVuelo lotesEnVuelo = new EnVuelo(hilosHash * 2);
+        private final Set<String> dnis = new HashSet<>();
+        private final Set<String> emails = new HashSet<>();
+        private List<FilaUsuario> pendientes = new ArrayList<>(tamanoLote);
+
+        Importacion(TrabajoImportacion trabajo) {
+            this.trabajo = trabajo;
+        }
+
+        void agregar(long numero, Map<String, String> fila) {
+            trabajo.registrarLeido();
+            String nombre = valor(fila, "nombre");
+            String dni = valor(fila, "dni");
+            String email = valor(fila, "email");
+            String password = fila.get("password");
+            String error = validar(nombre, dni, email, password);
+            if (error == null && dnis.contains(dni)) {
+                error = "El DNI está repetido en el archivo";
+            }
+            if (error == null && email != null && emails.contains(email.toLowerCase(Locale.ROOT))) {
+                error = "El email está repetido en el archivo";
+            }
+            if (error != null) {
+                trabajo.rechazar(numero, dni, error);
+                return;
+            }
+            dnis.add(dni);
+            if (email != null) {
+                emails.add(email.toLowerCase(Locale.ROOT));
+            }
+            Usuario usuario = new Usuario();
+            usuario.setName(nombre);
+            usuario.setDni(dni);
+            usuario.setEmail(email);
+            usuario.setPhone(valor(fila, "telefono"));
+            usuario.setRol(Roles.USER);
+            pendientes.add(new FilaUsuario(numero, usuario, password));
+            if (pendientes.size() >= tamanoLote) {
+                vaciar();
+            }
+        }
+
+        private String valor(Map<String, String> fila, String columna) {
+            String valor = fila.get(columna);
+            return valor == null || valor.isEmpty() ? null : valor;
+        }
+
+        /**
+         * Aplica las mismas reglas que el registro de un usuario.
+         *
+         * @return El motivo del rechazo, o null si la fila es válida.
+         */
+        private String validar(String nombre, String dni, String email, String password) {
+            if (nombre == null) {
+                return "El nombre no puede ser nulo o estar vacío";
+            }
+            if (dni == null) {
+                return "El dni no puede ser nulo o estar vacío";
+            }
+            if (password == null || password.length() <= 6) {
+                return "El password no puede estar vacío y debe contener por lo menos 6 caracteres";
+            }
+            if (email != null) {
+                try {
+                    new InternetAddress(email, true);
+                } catch (AddressException e) {
+                    return "El email no es válido: " + e.getMessage();
+                }
+            }
+            return null;
+        }
+
+        void vaciar() {
+            if (pendientes.isEmpty()) {
+                return;
+            }
+            List<FilaUsuario> lote = pendientes;
+            pendientes = new ArrayList<>(tamanoLote);
+            lotesEnVuelo.ejecutar(lotes, () -> procesarLote(lote));
+        }
+
+        private void procesarLote(List<FilaUsuario> lote) {
+            try {
+                List<FilaUsuario> nuevos = descartarRegistrados(lote);
+                for (FilaUsuario fila : nuevos) {
+                    fila.usuario().setPassword(bcrypt.encode(fila.password()));
+                }
+                insertar(nuevos);
+            } catch (RuntimeException e) {
+                log.error("Error al importar un lote de usuarios en {}", trabajo.getId(), e);
+                for (FilaUsuario fila : lote) {
+                    trabajo.rechazar(fila.numero(), fila.usuario().getDni(), "Error al guardar: " + e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * Rechaza las filas cuyo DNI o email ya está registrado, antes de gastar CPU en su hash.
+         */
+        private List<FilaUsuario> descartarRegistrados(List<FilaUsuario> lote) {
+            Set<String> dnisRegistrados = insercion.buscarDnisExistentes(lote.stream()
+                    .map(f -> f.usuario().getDni()).collect(Collectors.toList()));
+            Set<String> emailsRegistrados = insercion.buscarEmailsExistentes(lote.stream()
+                    .map(f -> f.usuario().getEmail()).filter(e -> e != null).collect(Collectors.toList()));
+            List<FilaUsuario> nuevos = new ArrayList<>(lote.size());
+            for (FilaUsuario fila : lote) {
+                if (dnisRegistrados.contains(fila.usuario().getDni())) {
+                    trabajo.rechazar(fila.numero(), fila.usuario().getDni(), "Ya existe un usuario con ese DNI");
+                } else if (fila.usuario().getEmail() != null && emailsRegistrados.contains(fila.usuario().getEmail())) {
+                    trabajo.rechazar(fila.numero(), fila.usuario().getDni(), "Ya existe un usuario con ese email");
+                } else {
+                    nuevos.add(fila);
+                }
+            }
+            return nuevos;
+        }
+
+        /**
+         * Inserta el lote en un solo batch. Si otro proceso registró alguno de los usuarios
+         * mientras tanto, el batch se descarta y se reintenta fila por fila para aislar las
+         * repetidas.
+         */
+        private void insertar(List<FilaUsuario> filas) {
+            if (filas.isEmpty()) {
+                return;
+            }
+            List<Usuario> usuarios = filas.stream().map(FilaUsuario::usuario).toList();
+            try {
+                trabajo.registrarImportados(transaccion.execute(estado -> insercion.insertar(usuarios)));
+            } catch (DataIntegrityViolationException e) {
+                log.warn("Un lote de la importación {} choca con usuarios registrados; se reintenta fila por fila",
+                        trabajo.getId());
+                for (FilaUsuario fila : filas) {
+                    try {
+                        trabajo.registrarImportados(transaccion.execute(estado -> insercion.insertar(List.of(fila.usuario()))));
+                    } catch (DataIntegrityViolationException repetido) {
+                        trabajo.rechazar(fila.numero(), fila.usuario().getDni(), "Ya existe un usuario con ese DNI o email");
+                    } catch (DataAccessException error) {
+                        trabajo.rechazar(fila.numero(), fila.usuario().getDni(),
+                                "Error al guardar: " + error.getMostSpecificCause().getMessage());
+                    }
+                }
+            }
+        }
+
+        void esperarLotesEnVuelo() {
+            lotesEnVuelo.esperarTodas();
+        }
+    }
+}
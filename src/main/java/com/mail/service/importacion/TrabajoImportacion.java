@@ -0,0 +1,131 @@
+package com.mail.service.importacion;
+
+import com.mail.service.trabajo.Trabajo;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Estado y progreso de una importación de usuarios en curso o terminada.
+ *
+ * Guarda el detalle de las primeras {@link #MAX_ERRORES} filas rechazadas; del resto solo
+ * cuenta la cantidad.
+ */
+public class TrabajoImportacion implements Trabajo {
+    public static final int MAX_ERRORES = 1000;
+
+    public enum Estado {
+        EN_CURSO,
+        COMPLETADO,
+        FALLIDO
+    }
+
+    private final String id = UUID.randomUUID().toString();
+    private final String origen;
+    private final Instant inicio = Instant.now();
+    private final AtomicLong leidos = new AtomicLong();
+    private final AtomicLong importados = new AtomicLong();
+    private final AtomicLong rechazados = new AtomicLong();
+    private final List<ErrorFila> errores = new ArrayList<>();
+    private volatile Estado estado = Estado.EN_CURSO;
+    private volatile Instant fin;
+    private volatile String errorGeneral;
+
+    TrabajoImportacion(String origen) {
+        this.origen = origen;
+    }
+
+    void registrarLeido() {
+        leidos.incrementAndGet();
+    }
+
+    void registrarImportados(long cantidad) {
+        importados.addAndGet(cantidad);
+    }
+
+    void rechazar(long fila, String dni, String mensaje) {
+        rechazados.incrementAndGet();
+        synchronized (errores) {
+            if (errores.size() < MAX_ERRORES) {
+                errores.add(new ErrorFila(fila, dni, mensaje));
+            }
+        }
+    }
+
+    void terminar(Estado estado, String errorGeneral) {
+        this.errorGeneral = errorGeneral;
+        this.fin = Instant.now();
+        this.estado = estado;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getOrigen() {
+        return origen;
+    }
+
+    public Estado getEstado() {
+        return estado;
+    }
+
+    public Instant getInicio() {
+        return inicio;
+    }
+
+    public long getLeidos() {
+        return leidos.get();
+    }
+
+    public long getImportados() {
+        return importados.get();
+    }
+
+    public long getRechazados() {
+        return rechazados.get();
+    }
+
+    /**
+     * @return Las filas rechazadas, ordenadas por número de fila.
+     */
+    public List<ErrorFila> getErrores() {
+        List<ErrorFila> copia;
+        synchronized (errores) {
+            copia = new ArrayList<>(errores);
+        }
+        copia.sort((a, b) -> Long.compare(a.fila(), b.fila()));
+        return copia;
+    }
+
+    /**
+     * @return El error que interrumpió la importación completa, o null.
+     */
+    public String getErrorGeneral() {
+        return errorGeneral;
+    }
+
+    /**
+     * @return Los segundos transcurridos desde el inicio hasta el fin, o hasta ahora si sigue en curso.
+     */
+    public double getSegundos() {
+        Instant hasta = fin != null ? fin : Instant.now();
+        return Duration.between(inicio, hasta).toMillis() / 1000.0;
+    }
+
+    /**
+     * @return Los usuarios importados por segundo desde el inicio.
+     */
+    public double getUsuariosPorSegundo() {
+        double segundos = getSegundos();
+        return segundos == 0 ? 0 : getImportados() / segundos;
+    }
+
+    public boolean isTerminado() {
+        return estado != Estado.EN_CURSO;
+    }
+}
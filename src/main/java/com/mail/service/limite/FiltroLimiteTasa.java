@@ -0,0 +1,111 @@
+package com.mail.service.limite;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limita los POST que disparan un envío SMTP y que cualquiera puede invocar sin iniciar sesión,
+ * para que un script no agote la cuota del servidor de correo.
+ *
+ * Cada endpoint tiene un límite por IP del cliente y otro por dirección de destino, configurables
+ * con 'mail.rate-limit.*' en el formato {@code pedidos/período} (vacío para no limitar). Primero
+ * se controla la IP, así un cliente que ya superó su límite no llega a provocar la lectura del
+ * formulario. Los pedidos rechazados reciben 429 con Retry-After.
+ *
+ * La IP es la de {@link HttpServletRequest#getRemoteAddr()}: detrás de un balanceador hace
+ * falta 'server.forward-headers-strategy' para que sea la del cliente y no la del balanceador.
+ */
+@Component
+public class FiltroLimiteTasa extends OncePerRequestFilter {
+    private static final Logger log = LoggerFactory.getLogger(FiltroLimiteTasa.class);
+
+    private final Map<String, Regla> reglas;
+
+    public FiltroLimiteTasa(@Value("${mail.rate-limit.reset-password.per-ip:5/10m}") String resetPorIp,
+                            @Value("${mail.rate-limit.reset-password.per-email:3/15m}") String resetPorEmail,
+                            @Value("${mail.rate-limit.pdf.per-ip:20/1m}") String pdfPorIp,
+                            @Value("${mail.rate-limit.pdf.per-email:10/1m}") String pdfPorEmail) {
+        this.reglas = Map.of(
+                "/olvido-password", new Regla("email", resetPorIp, resetPorEmail),
+                "/enviar_correo_con_pdf", new Regla("to", pdfPorIp, pdfPorEmail));
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"POST".equals(request.getMethod()) || !reglas.containsKey(request.getServletPath());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Regla regla = reglas.get(request.getServletPath());
+        long ahora = System.nanoTime();
+        long espera = 0;
+        if (regla.porIp != null) {
+            espera = regla.porIp.intentar(request.getRemoteAddr(), ahora);
+        }
+        if (espera == 0 && regla.porEmail != null) {
+            String email = request.getParameter(regla.parametroEmail);
+            if (email != null && !email.isBlank()) {
+                espera = regla.porEmail.intentar(email.trim().toLowerCase(Locale.ROOT), ahora);
+            }
+        }
+        if (espera > 0) {
+            log.debug("Se limita {} desde {}", request.getServletPath(), request.getRemoteAddr());
+            response.setHeader("Retry-After", Long.toString(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(espera + 999_999_999L))));
+            response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), "Demasiados pedidos, intente nuevamente más tarde");
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    /**
+     * Libera los baldes de las claves que ya no tienen pedidos recientes.
+     */
+    @Scheduled(fixedDelayString = "${mail.rate-limit.sweep-interval-ms:60000}")
+    public void desalojar() {
+        long ahora = System.nanoTime();
+        int eliminados = 0;
+        for (Regla regla : reglas.values()) {
+            eliminados += regla.desalojar(ahora);
+        }
+        if (eliminados > 0) {
+            log.debug("Se liberaron {} baldes de límite de tasa", eliminados);
+        }
+    }
+
+    private static final class Regla {
+        final String parametroEmail;
+        final LimitadorTasa porIp;
+        final LimitadorTasa porEmail;
+
+        Regla(String parametroEmail, String porIp, String porEmail) {
+            this.parametroEmail = parametroEmail;
+            this.porIp = crear(porIp);
+            this.porEmail = crear(porEmail);
+        }
+
+        private static LimitadorTasa crear(String limite) {
+            LimiteTasa tasa = LimiteTasa.parse(limite);
+            return tasa != null ? new LimitadorTasa(tasa) : null;
+        }
+
+        int desalojar(long ahora) {
+            return (porIp != null ? porIp.desalojar(ahora) : 0) + (porEmail != null ? porEmail.desalojar(ahora) : 0);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.mail.service.limite;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limitador de tasa por clave (IP, dirección de correo) sin bloqueos globales.
+ *
+ * Cada clave es un token bucket representado con el algoritmo GCRA: en lugar de guardar los
+ * tokens y la fecha de recarga, se guarda un único instante teórico de llegada (TAT) en un
+ * {@link AtomicLong} que se actualiza con compareAndSet. Los baldes viven en un
+ * {@link ConcurrentHashMap}, que ya reparte las claves en segmentos independientes, así que
+ * dos pedidos con claves distintas nunca compiten por el mismo lock. Un pedido sobre una clave
+ * existente no reserva memoria ni toma locks.
+ *
+ * Un balde cuyo TAT ya pasó está lleno y es equivalente a no tenerlo, por eso
+ * {@link #desalojar(long)} lo elimina sin perder información.
+ */
+public class LimitadorTasa {
+    private final LimiteTasa limite;
+    private final ConcurrentHashMap<String, AtomicLong> baldes = new ConcurrentHashMap<>();
+
+    public LimitadorTasa(LimiteTasa limite) {
+        this.limite = limite;
+    }
+
+    /**
+     * Consume un pedido del balde de la clave.
+     *
+     * @param clave La clave a limitar.
+     * @param ahora El instante actual en nanosegundos, de {@link System#nanoTime()}.
+     * @return 0 si el pedido está permitido; si no, los nanosegundos que faltan para que lo esté.
+     */
+    public long intentar(String clave, long ahora) {
+        AtomicLong tat = baldes.get(clave);
+        if (tat == null) {
+            AtomicLong nuevo = new AtomicLong(ahora);
+            tat = baldes.putIfAbsent(clave, nuevo);
+            if (tat == null) {
+                tat = nuevo;
+            }
+        }
+        while (true) {
+            long actual = tat.get();
+            long base = actual - ahora > 0 ? actual : ahora;
+            long siguiente = base + limite.intervaloNanos;
+            long espera = siguiente - ahora - limite.toleranciaNanos - limite.intervaloNanos;
+            if (espera > 0) {
+                return espera;
+            }
+            if (tat.compareAndSet(actual, siguiente)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Elimina los baldes que ya se recargaron por completo.
+     *
+     * Si un pedido concurrente llega a usar un balde mientras se elimina, ese pedido se cuenta
+     * sobre el balde descartado: en el peor caso se permite un pedido más de la cuenta.
+     *
+     * @param ahora El instante actual en nanosegundos, de {@link System#nanoTime()}.
+     * @return La cantidad de baldes eliminados.
+     */
+    public int desalojar(long ahora) {
+        int antes = baldes.size();
+        baldes.values().removeIf(tat -> tat.get() - ahora <= 0);
+        return antes - baldes.size();
+    }
+
+    /**
+     * @return La cantidad de claves con un balde en memoria.
+     */
+    public int getClaves() {
+        return baldes.size();
+    }
+
+    public LimiteTasa getLimite() {
+        return limite;
+    }
+}
@@ -0,0 +1,52 @@
+package com.mail.service.limite;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+
+/**
+ * Límite de la forma "N pedidos por período", con una ráfaga máxima de N pedidos seguidos.
+ *
+ * Se expresa como el intervalo entre pedidos ({@code periodo / N}) y la tolerancia de ráfaga
+ * ({@code periodo - intervalo}), que es lo que necesita el algoritmo GCRA de {@link LimitadorTasa}.
+ */
+public final class LimiteTasa {
+    private final int pedidos;
+    private final Duration periodo;
+    final long intervaloNanos;
+    final long toleranciaNanos;
+
+    public LimiteTasa(int pedidos, Duration periodo) {
+        if (pedidos <= 0 || periodo.isZero() || periodo.isNegative()) {
+            throw new IllegalArgumentException("El límite debe permitir al menos un pedido en un período positivo");
+        }
+        this.pedidos = pedidos;
+        this.periodo = periodo;
+        this.intervaloNanos = Math.max(1, periodo.toNanos() / pedidos);
+        this.toleranciaNanos = periodo.toNanos() - intervaloNanos;
+    }
+
+    /**
+     * Interpreta un límite escrito como {@code "5/10m"} (5 pedidos cada 10 minutos).
+     *
+     * @param texto El límite en texto; vacío o {@code "0"} significa sin límite.
+     * @return El límite, o null si no hay que limitar.
+     */
+    public static LimiteTasa parse(String texto) {
+        if (texto == null || texto.isBlank() || texto.trim().equals("0")) {
+            return null;
+        }
+        int barra = texto.indexOf('/');
+        if (barra < 0) {
+            throw new IllegalArgumentException("Límite inválido, se espera 'pedidos/período': " + texto);
+        }
+        int pedidos = Integer.parseInt(texto.substring(0, barra).trim());
+        Duration periodo = DurationStyle.detectAndParse(texto.substring(barra + 1).trim());
+        return new LimiteTasa(pedidos, periodo);
+    }
+
+    @Override
+    public String toString() {
+        return pedidos + "/" + periodo;
+    }
+}
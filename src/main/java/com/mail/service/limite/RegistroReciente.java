@@ -0,0 +1,97 @@
+package com.mail.service.limite;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Recuerda qué claves se usaron hace menos de una ventana de tiempo, con memoria fija.
+ *
+ * Es una tabla de {@code long} de tamaño fijo: cada clave ocupa la posición que indica su hash
+ * y guarda en una sola palabra 32 bits de huella y 32 bits de vencimiento (en segundos). Con un
+ * millón de posiciones ocupa 8 MB, sin objetos por clave ni limpieza periódica: las entradas
+ * vencidas simplemente se sobrescriben.
+ *
+ * Si dos claves caen en la misma posición, la última reemplaza a la anterior y esa clave deja
+ * de recordarse antes de tiempo. Por eso sirve para evitar trabajo repetido, donde olvidar de
+ * más solo significa hacer el trabajo otra vez, y no para controles de seguridad.
+ */
+public class RegistroReciente {
+    private final AtomicLongArray posiciones;
+    private final int mascara;
+    private final long ventanaSegundos;
+    private final long origenNanos;
+
+    /**
+     * @param capacidad   Cantidad de posiciones; se redondea a la potencia de 2 siguiente.
+     * @param ventanaNanos Tiempo durante el que se recuerda una clave.
+     * @param origenNanos Instante de referencia, de {@link System#nanoTime()}.
+     */
+    public RegistroReciente(int capacidad, long ventanaNanos, long origenNanos) {
+        int tamano = Integer.highestOneBit(Math.max(2, capacidad - 1)) << 1;
+        this.posiciones = new AtomicLongArray(tamano);
+        this.mascara = tamano - 1;
+        this.ventanaSegundos = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(ventanaNanos));
+        this.origenNanos = origenNanos;
+    }
+
+    /**
+     * Registra la clave si no se usó dentro de la ventana.
+     *
+     * @param clave La clave, ya normalizada.
+     * @param ahora El instante actual, de {@link System#nanoTime()}.
+     * @return true si el llamador es el primero en la ventana y debe hacer el trabajo; false si
+     *         la clave ya estaba registrada y vigente.
+     */
+    public boolean reclamar(String clave, long ahora) {
+        long hash = hash(clave);
+        int posicion = (int) hash & mascara;
+        int huella = (int) (hash >>> 32);
+        long segundo = segundo(ahora);
+        long entrada = ((long) huella << 32) | (segundo + ventanaSegundos);
+        while (true) {
+            long actual = posiciones.get(posicion);
+            if (actual != 0 && (int) (actual >>> 32) == huella && (actual & 0xFFFFFFFFL) > segundo) {
+                return false;
+            }
+            if (posiciones.compareAndSet(posicion, actual, entrada)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Olvida la clave, por ejemplo porque el trabajo que se registró falló y debe poder reintentarse.
+     *
+     * @param clave La clave, ya normalizada.
+     */
+    public void liberar(String clave) {
+        long hash = hash(clave);
+        int posicion = (int) hash & mascara;
+        int huella = (int) (hash >>> 32);
+        long actual = posiciones.get(posicion);
+        if (actual != 0 && (int) (actual >>> 32) == huella) {
+            posiciones.compareAndSet(posicion, actual, 0L);
+        }
+    }
+
+    private long segundo(long ahora) {
+        // Se suma 1 para que una entrada vigente nunca valga 0, que marca una posición libre.
+        return TimeUnit.NANOSECONDS.toSeconds(ahora - origenNanos) + 1;
+    }
+
+    /**
+     * FNV-1a de 64 bits sobre los bytes UTF-8, con una mezcla final para repartir los bits bajos.
+     */
+    private static long hash(String clave) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : clave.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
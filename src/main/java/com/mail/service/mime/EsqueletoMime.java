@@ -0,0 +1,245 @@
+package com.mail.service.mime;
+
+import com.mail.service.template.PlantillaCompilada;
+
+import javax.activation.DataHandler;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MailDateFormat;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
+import javax.mail.internet.MimeUtility;
+import javax.mail.internet.PreencodedMimeBodyPart;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Correo que se arma una sola vez para enviarlo a muchos destinatarios cambiando solo unos
+ * pocos campos.
+ *
+ * Al compilarlo se serializan las cabeceras fijas (remitente, asunto, tipo de contenido), los
+ * literales del cuerpo ya codificados en quoted-printable y las cabeceras de los adjuntos. Por
+ * cada destinatario solo se escriben Date, Message-ID, To, el asunto si tiene variables y los
+ * valores de las variables del cuerpo, de modo que no se repiten el plegado de cabeceras, la
+ * codificación de caracteres ni la generación del separador multipart.
+ *
+ * Es inmutable y puede usarse desde varios hilos a la vez.
+ */
+public final class EsqueletoMime {
+    private static final String CHARSET = StandardCharsets.UTF_8.name();
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final AtomicLong SECUENCIA = new AtomicLong();
+    private static volatile FechaFormateada ultimaFecha = new FechaFormateada(-1, new byte[0]);
+
+    private final Session sesion;
+    private final InternetAddress remitente;
+    private final PlantillaCompilada asunto;
+    private final PlantillaCompilada cuerpo;
+    private final byte[] cabeceras;
+    private final byte[][] literales;
+    private final byte[][] aperturasAdjuntos;
+    private final DataHandler[] contenidosAdjuntos;
+    private final byte[] fin;
+    private final String sufijoMessageId;
+
+    private EsqueletoMime(Session sesion, InternetAddress remitente, PlantillaCompilada asunto, PlantillaCompilada cuerpo,
+                          byte[] cabeceras, byte[][] literales, byte[][] aperturasAdjuntos,
+                          DataHandler[] contenidosAdjuntos, byte[] fin) {
+        this.sesion = sesion;
+        this.remitente = remitente;
+        this.asunto = asunto;
+        this.cuerpo = cuerpo;
+        this.cabeceras = cabeceras;
+        this.literales = literales;
+        this.aperturasAdjuntos = aperturasAdjuntos;
+        this.contenidosAdjuntos = contenidosAdjuntos;
+        this.fin = fin;
+        String address = remitente.getAddress();
+        String dominio = address != null && address.indexOf('@') >= 0 ? address.substring(address.indexOf('@') + 1) : "localhost";
+        this.sufijoMessageId = "." + Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36)
+                + "." + System.currentTimeMillis() + "@" + dominio + ">";
+    }
+
+    /**
+     * Compila el esqueleto de un correo.
+     *
+     * @param sesion    La sesión de JavaMail con la que se crean los mensajes.
+     * @param remitente La dirección del remitente, con su nombre si corresponde.
+     * @param asunto    La plantilla del asunto. Si no tiene variables, se serializa una sola vez.
+     * @param cuerpo    La plantilla del cuerpo.
+     * @param html      Si el cuerpo es HTML.
+     * @param adjuntos  Partes ya codificadas, por ejemplo las de
+     *                  {@link com.mail.service.attachment.AdjuntoCache#crearParte}. Deben seguir
+     *                  disponibles mientras se use el esqueleto.
+     * @return El esqueleto listo para crear mensajes.
+     * @throws MessagingException Si alguno de los datos del correo es inválido.
+     */
+    public static EsqueletoMime compilar(Session sesion, InternetAddress remitente, PlantillaCompilada asunto,
+                                         PlantillaCompilada cuerpo, boolean html, MimeBodyPart... adjuntos) throws MessagingException {
+        String separador = adjuntos.length > 0 ? "----=_Esqueleto_" + UUID.randomUUID().toString().replace("-", "") : null;
+        String tipoTexto = (html ? "text/html" : "text/plain") + "; charset=" + CHARSET;
+
+        ByteArrayOutputStream cabeceras = new ByteArrayOutputStream(512);
+        linea(cabeceras, "From: " + MimeUtility.fold(6, remitente.toString()));
+        if (asunto.getCantidadMarcadores() == 0) {
+            linea(cabeceras, "Subject: " + MimeUtility.fold(9, codificarTexto(asunto.getLiteral(0))));
+        }
+        linea(cabeceras, "MIME-Version: 1.0");
+        if (separador != null) {
+            linea(cabeceras, "Content-Type: multipart/mixed; \r\n\tboundary=\"" + separador + "\"");
+            linea(cabeceras, "");
+            linea(cabeceras, "--" + separador);
+        }
+        linea(cabeceras, "Content-Type: " + tipoTexto);
+        linea(cabeceras, "Content-Transfer-Encoding: quoted-printable");
+        linea(cabeceras, "");
+
+        int marcadores = cuerpo.getCantidadMarcadores();
+        byte[][] literales = new byte[marcadores + 1][];
+        for (int i = 0; i <= marcadores; i++) {
+            ByteArrayOutputStream literal = new ByteArrayOutputStream(cuerpo.getLiteral(i).length() + 64);
+            try {
+                QuotedPrintable.escribir(cuerpo.getLiteral(i), false, i == marcadores, literal);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            literales[i] = literal.toByteArray();
+        }
+
+        byte[][] aperturasAdjuntos = new byte[adjuntos.length][];
+        DataHandler[] contenidosAdjuntos = new DataHandler[adjuntos.length];
+        if (adjuntos.length > 0) {
+            prepararCabecerasAdjuntos(sesion, adjuntos);
+            for (int i = 0; i < adjuntos.length; i++) {
+                ByteArrayOutputStream apertura = new ByteArrayOutputStream(256);
+                linea(apertura, "");
+                linea(apertura, "--" + separador);
+                Enumeration<String> lineas = adjuntos[i].getAllHeaderLines();
+                while (lineas.hasMoreElements()) {
+                    linea(apertura, lineas.nextElement());
+                }
+                linea(apertura, "");
+                aperturasAdjuntos[i] = apertura.toByteArray();
+                contenidosAdjuntos[i] = adjuntos[i].getDataHandler();
+            }
+        }
+        byte[] fin = separador != null ? ("\r\n--" + separador + "--\r\n").getBytes(StandardCharsets.US_ASCII) : new byte[0];
+
+        return new EsqueletoMime(sesion, remitente, asunto.getCantidadMarcadores() == 0 ? null : asunto, cuerpo,
+                cabeceras.toByteArray(), literales, aperturasAdjuntos, contenidosAdjuntos, fin);
+    }
+
+    /**
+     * Crea el mensaje para un destinatario. No se serializa nada hasta que el mensaje se envía.
+     *
+     * @param destinatario La dirección del destinatario.
+     * @param valores      Los valores de las variables del asunto y del cuerpo.
+     * @return Un mensaje de solo lectura, listo para {@code JavaMailSender#send}.
+     */
+    public MimeMessage crearMensaje(InternetAddress destinatario, Map<String, String> valores) {
+        String messageId = "<" + Long.toString(SECUENCIA.incrementAndGet(), 36) + sufijoMessageId;
+        return new MensajeEsqueleto(sesion, this, destinatario, valores, messageId);
+    }
+
+    InternetAddress getRemitente() {
+        return remitente;
+    }
+
+    void escribir(MensajeEsqueleto mensaje, OutputStream destino) throws IOException, MessagingException {
+        destino.write(formatearFecha(mensaje.getSentDate().getTime()));
+        ascii(destino, "Message-ID: ");
+        ascii(destino, mensaje.getMessageID());
+        destino.write(CRLF);
+        ascii(destino, "To: ");
+        ascii(destino, MimeUtility.fold(4, mensaje.getDestinatario().toString()));
+        destino.write(CRLF);
+        Map<String, String> valores = mensaje.getValores();
+        if (asunto != null) {
+            StringBuilder texto = new StringBuilder(64);
+            asunto.renderizar(valores::get, texto);
+            ascii(destino, "Subject: ");
+            ascii(destino, MimeUtility.fold(9, codificarTexto(texto.toString())));
+            destino.write(CRLF);
+        }
+        destino.write(cabeceras);
+
+        int marcadores = cuerpo.getCantidadMarcadores();
+        for (int i = 0; i < marcadores; i++) {
+            destino.write(literales[i]);
+            String valor = valores.get(cuerpo.getVariable(i));
+            if (valor != null) {
+                QuotedPrintable.escribir(valor, cuerpo.isEscaparHtml(), false, destino);
+            }
+        }
+        destino.write(literales[marcadores]);
+
+        for (int i = 0; i < aperturasAdjuntos.length; i++) {
+            destino.write(aperturasAdjuntos[i]);
+            // El contenido ya está codificado; se copia tal cual desde su origen.
+            contenidosAdjuntos[i].writeTo(destino);
+        }
+        destino.write(fin);
+    }
+
+    /**
+     * Deja calculadas las cabeceras de los adjuntos (tipo, codificación, nombre) poniéndolos en
+     * un mensaje auxiliar que no se envía.
+     */
+    private static void prepararCabecerasAdjuntos(Session sesion, MimeBodyPart[] adjuntos) throws MessagingException {
+        MimeMultipart contenedor = new MimeMultipart();
+        for (MimeBodyPart adjunto : adjuntos) {
+            if (!(adjunto instanceof PreencodedMimeBodyPart)) {
+                throw new IllegalArgumentException("Los adjuntos del esqueleto deben estar ya codificados");
+            }
+            contenedor.addBodyPart(adjunto);
+        }
+        MimeMessage auxiliar = new MimeMessage(sesion);
+        auxiliar.setContent(contenedor);
+        auxiliar.saveChanges();
+    }
+
+    private static byte[] formatearFecha(long millis) {
+        long segundo = millis / 1000;
+        FechaFormateada fecha = ultimaFecha;
+        if (fecha.segundo() != segundo) {
+            // La cabecera solo cambia una vez por segundo, así que se formatea una vez por segundo.
+            String texto = "Date: " + new MailDateFormat().format(new Date(segundo * 1000)) + "\r\n";
+            fecha = new FechaFormateada(segundo, texto.getBytes(StandardCharsets.US_ASCII));
+            ultimaFecha = fecha;
+        }
+        return fecha.cabecera();
+    }
+
+    private static String codificarTexto(String texto) throws MessagingException {
+        try {
+            return MimeUtility.encodeText(texto, CHARSET, null);
+        } catch (UnsupportedEncodingException e) {
+            throw new MessagingException("Codificación no soportada", e);
+        }
+    }
+
+    private static void linea(ByteArrayOutputStream destino, String texto) {
+        destino.writeBytes(texto.getBytes(StandardCharsets.US_ASCII));
+        destino.writeBytes(CRLF);
+    }
+
+    private static void ascii(OutputStream destino, String texto) throws IOException {
+        for (int i = 0; i < texto.length(); i++) {
+            destino.write(texto.charAt(i));
+        }
+    }
+
+    private record FechaFormateada(long segundo, byte[] cabecera) {
+    }
+}
@@ -0,0 +1,88 @@
+package com.mail.service.mime;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Mensaje creado por {@link EsqueletoMime}. Guarda solo los datos del destinatario y al
+ * enviarse delega la serialización en el esqueleto, por eso ignora las cabeceras y el
+ * contenido propios de {@link MimeMessage}.
+ */
+final class MensajeEsqueleto extends MimeMessage {
+    private final EsqueletoMime esqueleto;
+    private final InternetAddress destinatario;
+    private final Map<String, String> valores;
+    private final String messageId;
+    private final Date fecha = new Date();
+
+    MensajeEsqueleto(Session sesion, EsqueletoMime esqueleto, InternetAddress destinatario,
+                     Map<String, String> valores, String messageId) {
+        super(sesion);
+        this.esqueleto = esqueleto;
+        this.destinatario = destinatario;
+        this.valores = valores;
+        this.messageId = messageId;
+    }
+
+    InternetAddress getDestinatario() {
+        return destinatario;
+    }
+
+    Map<String, String> getValores() {
+        return valores;
+    }
+
+    @Override
+    public Address[] getFrom() {
+        return new Address[]{esqueleto.getRemitente()};
+    }
+
+    @Override
+    public Address[] getRecipients(Message.RecipientType tipo) {
+        return tipo == Message.RecipientType.TO ? new Address[]{destinatario} : null;
+    }
+
+    @Override
+    public Address[] getAllRecipients() {
+        return new Address[]{destinatario};
+    }
+
+    @Override
+    public Date getSentDate() {
+        return fecha;
+    }
+
+    @Override
+    public String getMessageID() {
+        return messageId;
+    }
+
+    /**
+     * No hace nada: las cabeceras se generan al escribir el mensaje.
+     */
+    @Override
+    public void saveChanges() {
+    }
+
+    @Override
+    protected void updateMessageID() {
+    }
+
+    @Override
+    public void writeTo(OutputStream os) throws IOException, MessagingException {
+        esqueleto.escribir(this, os);
+    }
+
+    @Override
+    public void writeTo(OutputStream os, String[] ignoreList) throws IOException, MessagingException {
+        esqueleto.escribir(this, os);
+    }
+}
@@ -0,0 +1,112 @@
+package com.mail.service.mime;
+
+import com.mail.service.template.PlantillaCompilada;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Codifica texto en quoted-printable (RFC 2045) escribiendo directamente en el stream, sin
+ * buffers intermedios.
+ *
+ * Cada fragmento se codifica empezando en la columna 0 y, si no termina en un salto de línea,
+ * se cierra con un salto suave ({@code =\r\n}), que desaparece al decodificar. Así los literales
+ * de una plantilla pueden codificarse una sola vez y los valores de cada destinatario se
+ * intercalan entre ellos sin recalcular el largo de las líneas.
+ */
+final class QuotedPrintable {
+    private static final int MAX_COLUMNA = 75;
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+
+    private QuotedPrintable() {
+    }
+
+    /**
+     * Codifica un fragmento de texto en UTF-8.
+     *
+     * @param texto       El texto a codificar.
+     * @param escaparHtml Si los caracteres especiales de HTML se reemplazan por entidades.
+     * @param ultimo      Si es el último fragmento del cuerpo; en ese caso no se agrega el salto suave final.
+     * @param destino     El stream donde se escribe el resultado.
+     */
+    static void escribir(String texto, boolean escaparHtml, boolean ultimo, OutputStream destino) throws IOException {
+        int columna = 0;
+        int largo = texto.length();
+        for (int i = 0; i < largo; i++) {
+            char c = texto.charAt(i);
+            if (c == '\r' && i + 1 < largo && texto.charAt(i + 1) == '\n') {
+                continue;
+            }
+            if (c == '\r' || c == '\n') {
+                destino.write('\r');
+                destino.write('\n');
+                columna = 0;
+                continue;
+            }
+            String entidad = escaparHtml ? PlantillaCompilada.entidadHtml(c) : null;
+            if (entidad != null) {
+                for (int j = 0; j < entidad.length(); j++) {
+                    columna = escribirByte(entidad.charAt(j), false, columna, destino);
+                }
+            } else if (c < 0x80) {
+                // Un espacio al final de una línea debe codificarse para que no se pierda en tránsito.
+                boolean finDeLinea = (c == ' ' || c == '\t')
+                        && (i + 1 == largo ? ultimo : esSalto(texto.charAt(i + 1)));
+                columna = escribirByte(c, finDeLinea, columna, destino);
+            } else {
+                int codigo = c;
+                if (Character.isHighSurrogate(c) && i + 1 < largo && Character.isLowSurrogate(texto.charAt(i + 1))) {
+                    codigo = Character.toCodePoint(c, texto.charAt(++i));
+                } else if (Character.isSurrogate(c)) {
+                    codigo = '?';
+                }
+                columna = escribirCodigo(codigo, columna, destino);
+            }
+        }
+        if (columna > 0 && !ultimo) {
+            destino.write('=');
+            destino.write('\r');
+            destino.write('\n');
+        }
+    }
+
+    private static int escribirCodigo(int codigo, int columna, OutputStream destino) throws IOException {
+        if (codigo < 0x80) {
+            return escribirByte(codigo, false, columna, destino);
+        }
+        if (codigo < 0x800) {
+            columna = escribirByte(0xC0 | (codigo >> 6), true, columna, destino);
+        } else if (codigo < 0x10000) {
+            columna = escribirByte(0xE0 | (codigo >> 12), true, columna, destino);
+            columna = escribirByte(0x80 | ((codigo >> 6) & 0x3F), true, columna, destino);
+        } else {
+            columna = escribirByte(0xF0 | (codigo >> 18), true, columna, destino);
+            columna = escribirByte(0x80 | ((codigo >> 12) & 0x3F), true, columna, destino);
+            columna = escribirByte(0x80 | ((codigo >> 6) & 0x3F), true, columna, destino);
+        }
+        return escribirByte(0x80 | (codigo & 0x3F), true, columna, destino);
+    }
+
+    private static int escribirByte(int b, boolean codificar, int columna, OutputStream destino) throws IOException {
+        boolean literal = !codificar && ((b >= 33 && b <= 126 && b != '=') || b == ' ' || b == '\t');
+        int ancho = literal ? 1 : 3;
+        if (columna + ancho > MAX_COLUMNA) {
+            destino.write('=');
+            destino.write('\r');
+            destino.write('\n');
+            columna = 0;
+        }
+        if (literal) {
+            destino.write(b);
+        } else {
+            destino.write('=');
+            destino.write(HEX[(b >> 4) & 0xF]);
+            destino.write(HEX[b & 0xF]);
+        }
+        return columna + ancho;
+    }
+
+    private static boolean esSalto(char c) {
+        return c == '\r' || c == '\n';
+    }
+}
@@ -0,0 +1,120 @@
+package com.mail.service.outbox;
+
+import com.mail.entity.CorreoSaliente;
+import com.mail.enumerated.EstadoCorreo;
+import com.mail.repositories.CorreoSalienteRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * La cola de correos salientes compartida por todas las instancias de la aplicación.
+ *
+ * Cada nodo toma lotes con un reclamo que vence a los {@code duracionReclamo}: la consulta
+ * bloquea las filas con SKIP LOCKED, así que varios nodos reclaman a la vez sin esperarse ni
+ * tomar los mismos correos. Mientras envía, el nodo renueva el reclamo; si se cae, el reclamo
+ * vence y {@link #liberarVencidos} devuelve los correos a la cola para que los tome otro nodo.
+ * Los resultados solo se registran si el reclamo sigue siendo del nodo, de modo que un nodo
+ * que perdió su reclamo no pisa lo que hizo el que lo retomó.
+ */
+@Component
+public class ColaOutbox {
+    private static final Logger log = LoggerFactory.getLogger(ColaOutbox.class);
+
+    private final CorreoSalienteRepository correoSalienteRepository;
+    private final TransactionTemplate transaccion;
+    private final String nodo;
+    private final Duration duracionReclamo;
+
+    public ColaOutbox(CorreoSalienteRepository correoSalienteRepository,
+                      PlatformTransactionManager transactionManager,
+                      @Value("${mail.outbox.node-id:${HOSTNAME:}}") String nodo,
+                      @Value("${mail.outbox.lease:30s}") Duration duracionReclamo) {
+        this.correoSalienteRepository = correoSalienteRepository;
+        this.transaccion = new TransactionTemplate(transactionManager);
+        this.nodo = nodo == null || nodo.isBlank() ? "nodo-" + UUID.randomUUID().toString().substring(0, 8) : nodo;
+        this.duracionReclamo = duracionReclamo;
+    }
+
+    /**
+     * Toma hasta {@code maximo} correos listos para enviar.
+     *
+     * @return El lote reclamado, vacío si no había correos listos o los tomó otro nodo.
+     */
+    public LoteReclamado reclamar(int maximo, Instant ahora) {
+        String reclamo = nodo + "/" + UUID.randomUUID();
+        return transaccion.execute(estado -> {
+            List<Long> ids = correoSalienteRepository.buscarIdsListos(EstadoCorreo.PENDIENTE, ahora,
+                    PageRequest.of(0, maximo));
+            if (ids.isEmpty()) {
+                return new LoteReclamado(reclamo, List.of());
+            }
+            correoSalienteRepository.reclamar(ids, reclamo, ahora, ahora.plus(duracionReclamo),
+                    EstadoCorreo.PENDIENTE, EstadoCorreo.EN_PROCESO);
+            return new LoteReclamado(reclamo, correoSalienteRepository.findByReclamo(reclamo));
+        });
+    }
+
+    /**
+     * Extiende el reclamo del lote otros {@code duracionReclamo} a partir de {@code ahora}.
+     *
+     * @return La cantidad de correos que siguen reclamados por el lote; 0 si el reclamo se perdió.
+     */
+    public int renovar(LoteReclamado lote, Instant ahora) {
+        return transaccion.execute(estado -> correoSalienteRepository.renovarReclamo(lote.reclamo(),
+                ahora.plus(duracionReclamo), EstadoCorreo.EN_PROCESO));
+    }
+
+    /**
+     * Marca los enviados y reprograma los fallidos (con el estado, los intentos, el próximo
+     * intento y el error ya cargados) en una sola transacción.
+     *
+     * @return La cantidad de correos actualizados; los que ya no eran del reclamo se omiten.
+     */
+    public int registrarResultados(LoteReclamado lote, List<Long> enviados, List<CorreoSaliente> fallidos, Instant ahora) {
+        int actualizados = transaccion.execute(estado -> {
+            int total = 0;
+            if (!enviados.isEmpty()) {
+                total += correoSalienteRepository.marcarEnviados(enviados, lote.reclamo(), ahora, EstadoCorreo.ENVIADO);
+            }
+            for (CorreoSaliente correo : fallidos) {
+                total += correoSalienteRepository.reprogramar(correo.getId(), lote.reclamo(), correo.getEstado(),
+                        correo.getIntentos(), correo.getProximoIntento(), correo.getUltimoError());
+            }
+            return total;
+        });
+        int perdidos = enviados.size() + fallidos.size() - actualizados;
+        if (perdidos > 0) {
+            log.warn("El reclamo {} venció antes de terminar: {} correos ya los había retomado otro nodo",
+                    lote.reclamo(), perdidos);
+        }
+        return actualizados;
+    }
+
+    /**
+     * Devuelve a la cola los correos cuyos reclamos vencieron.
+     *
+     * @return La cantidad de correos liberados.
+     */
+    public int liberarVencidos(Instant ahora) {
+        return transaccion.execute(estado -> correoSalienteRepository.liberarReclamosVencidos(ahora,
+                EstadoCorreo.EN_PROCESO, EstadoCorreo.PENDIENTE));
+    }
+
+    public String getNodo() {
+        return nodo;
+    }
+
+    public Duration getDuracionReclamo() {
+        return duracionReclamo;
+    }
+}
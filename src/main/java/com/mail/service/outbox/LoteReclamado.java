@@ -0,0 +1,22 @@
+package com.mail.service.outbox;
+
+import com.mail.entity.CorreoSaliente;
+
+import java.util.List;
+
+/**
+ * Los correos que un nodo tomó de {@link ColaOutbox} con un mismo reclamo.
+ *
+ * @param reclamo El identificador del reclamo, con el nombre del nodo como prefijo.
+ * @param correos Los correos reclamados.
+ */
+public record LoteReclamado(String reclamo, List<CorreoSaliente> correos) {
+
+    public boolean isVacio() {
+        return correos.isEmpty();
+    }
+
+    public int size() {
+        return correos.size();
+    }
+}
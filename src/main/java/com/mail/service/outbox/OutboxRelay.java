@@ -0,0 +1,245 @@
+package com.mail.service.outbox;
+
+import com.mail.entity.CorreoSaliente;
+import com.mail.enumerated.EstadoCorreo;
+import com.mail.exceptions.MiExcepcion;
+import com.mail.repositories.CorreoSalienteRepository;
+import com.mail.service.EmailService;
+import com.mail.service.dispatch.MailDispatcher;
+import com.mail.service.smtp.ProteccionRelay;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Envía los correos guardados por {@link OutboxService}.
+ *
+ * En cada ciclo toma un lote de correos listos con una sola consulta y una sola actualización,
+ * los envía en paralelo a través de {@link MailDispatcher} y marca los enviados con otra
+ * actualización por lote. Si el lote vino completo vuelve a consultar sin esperar, para
+ * vaciar rápido una cola atrasada. Los correos que fallan se reprograman con espera
+ * exponencial hasta agotar los intentos.
+ *
+ * Los lotes se toman de {@link ColaOutbox}, compartida por todas las instancias: cada nodo
+ * reclama lotes distintos y renueva su reclamo mientras espera los envíos, así que la cola
+ * se reparte entre los nodos que estén corriendo. Cada correo sale con un Message-ID fijo
+ * derivado de su id, para que un reenvío tras la caída de un nodo se pueda reconocer.
+ *
+ * Mientras el circuito de {@link ProteccionRelay} está abierto no se reclaman lotes: los
+ * correos esperan en la tabla sin gastar intentos hasta que el relay vuelva a responder.
+ */
+@Component
+public class OutboxRelay {
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+    private static final String HEADER_MESSAGE_ID = "Message-ID";
+
+    private final CorreoSalienteRepository correoSalienteRepository;
+    private final ColaOutbox cola;
+    private final EmailService emailService;
+    private final MailDispatcher mailDispatcher;
+    private final ProteccionRelay proteccionRelay;
+    private final TransactionTemplate transaccion;
+    private final int tamanoLote;
+    private final int maxIntentos;
+    private final Duration esperaInicial;
+    private final Duration esperaMaxima;
+    private final Duration tiempoEnvio;
+    private final Duration retencionEnviados;
+
+    public OutboxRelay(CorreoSalienteRepository correoSalienteRepository,
+                       ColaOutbox cola,
+                       EmailService emailService,
+                       MailDispatcher mailDispatcher,
+                       ProteccionRelay proteccionRelay,
+                       PlatformTransactionManager transactionManager,
+                       @Value("${mail.outbox.batch-size:100}") int tamanoLote,
+                       @Value("${mail.outbox.max-attempts:8}") int maxIntentos,
+                       @Value("${mail.outbox.initial-backoff:30s}") Duration esperaInicial,
+                       @Value("${mail.outbox.max-backoff:1h}") Duration esperaMaxima,
+                       @Value("${mail.outbox.send-timeout:5m}") Duration tiempoEnvio,
+                       @Value("${mail.outbox.sent-retention:7d}") Duration retencionEnviados) {
+        this.correoSalienteRepository = correoSalienteRepository;
+        this.cola = cola;
+        this.emailService = emailService;
+        this.mailDispatcher = mailDispatcher;
+        this.proteccionRelay = proteccionRelay;
+        this.transaccion = new TransactionTemplate(transactionManager);
+        this.tamanoLote = tamanoLote;
+        this.maxIntentos = maxIntentos;
+        this.esperaInicial = esperaInicial;
+        this.esperaMaxima = esperaMaxima;
+        this.tiempoEnvio = tiempoEnvio;
+        this.retencionEnviados = retencionEnviados;
+    }
+
+    /**
+     * Procesa lotes de correos hasta que no queden correos listos.
+     */
+    @Scheduled(fixedDelayString = "${mail.outbox.poll-interval-ms:1000}")
+    public void procesar() {
+        int procesados;
+        do {
+            procesados = procesarLote();
+        } while (procesados == tamanoLote && !Thread.currentThread().isInterrupted());
+    }
+
+    /**
+     * Devuelve a la cola los correos cuyo reclamo venció porque el nodo que los tomó dejó de
+     * renovarlo. Puede correr en todos los nodos a la vez.
+     */
+    @Scheduled(fixedDelayString = "${mail.outbox.reclaim-interval-ms:10000}")
+    public void recuperarVencidos() {
+        int liberados = cola.liberarVencidos(Instant.now());
+        if (liberados > 0) {
+            log.warn("Outbox: {} correos con el reclamo vencido vuelven a la cola", liberados);
+        }
+    }
+
+    /**
+     * Borra los correos enviados más antiguos que la retención configurada.
+     */
+    @Scheduled(fixedDelayString = "${mail.outbox.maintenance-interval-ms:60000}")
+    public void mantener() {
+        Instant ahora = Instant.now();
+        transaccion.executeWithoutResult(estado -> {
+            int borrados = correoSalienteRepository.borrarEnviadosAntesDe(ahora.minus(retencionEnviados), EstadoCorreo.ENVIADO);
+            if (borrados > 0) {
+                log.info("Outbox: {} correos enviados borrados", borrados);
+            }
+        });
+    }
+
+    int procesarLote() {
+        if (!proteccionRelay.aceptaEnvios()) {
+            return 0;
+        }
+        LoteReclamado lote = cola.reclamar(tamanoLote, Instant.now());
+        if (lote.isVacio()) {
+            return 0;
+        }
+        List<CompletableFuture<Void>> envios = new ArrayList<>(lote.size());
+        for (CorreoSaliente correo : lote.correos()) {
+            envios.add(despachar(correo));
+        }
+        if (!esperar(lote, envios)) {
+            // Sin reclamo vigente los resultados ya no se pueden registrar; el otro nodo decide.
+            return lote.size();
+        }
+
+        List<Long> enviados = new ArrayList<>(lote.size());
+        List<CorreoSaliente> fallidos = new ArrayList<>();
+        Instant ahora = Instant.now();
+        for (int i = 0; i < lote.size(); i++) {
+            CorreoSaliente correo = lote.correos().get(i);
+            CompletableFuture<Void> envio = envios.get(i);
+            try {
+                envio.join();
+                enviados.add(correo.getId());
+            } catch (CompletionException | CancellationException e) {
+                reprogramar(correo, truncar(e.getCause() != null ? e.getCause().getMessage() : e.getMessage()), ahora);
+                fallidos.add(correo);
+            }
+        }
+        cola.registrarResultados(lote, enviados, fallidos, ahora);
+        return lote.size();
+    }
+
+    /**
+     * Espera a que terminen todos los envíos del lote, renovando el reclamo a intervalos de un
+     * tercio de su duración. Un correo que sigue en la cola del despachador no se puede retirar,
+     * así que ninguno se reprograma mientras quede alguno en curso: saldría dos veces. Pasado
+     * {@code tiempoEnvio} solo se avisa en el log y se sigue esperando.
+     *
+     * @return false si el reclamo se perdió o el hilo fue interrumpido.
+     */
+    private boolean esperar(LoteReclamado lote, List<CompletableFuture<Void>> envios) {
+        CompletableFuture<Void> todos = CompletableFuture.allOf(envios.toArray(new CompletableFuture[0]));
+        long intervalo = cola.getDuracionReclamo().toNanos() / 3;
+        long limite = System.nanoTime() + tiempoEnvio.toNanos();
+        boolean avisado = false;
+        while (!todos.isDone()) {
+            try {
+                todos.get(intervalo, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                if (!avisado && System.nanoTime() - limite > 0) {
+                    avisado = true;
+                    log.warn("El lote {} lleva más de {} esperando al servidor SMTP", lote.reclamo(), tiempoEnvio);
+                }
+                if (cola.renovar(lote, Instant.now()) == 0) {
+                    log.warn("Se perdió el reclamo {} mientras se enviaba el lote", lote.reclamo());
+                    return false;
+                }
+            } catch (ExecutionException e) {
+                // allOf solo termina cuando terminaron todos; el resultado de cada uno se revisa después.
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // Los correos sin confirmar se liberan cuando venza el reclamo.
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private CompletableFuture<Void> despachar(CorreoSaliente correo) {
+        try {
+            MimeMessage mensaje = emailService.crearMensaje(correo.getDestinatario(), correo.getAsunto(),
+                    correo.getCuerpo(), correo.isHtml());
+            mensaje.setHeader(HEADER_MESSAGE_ID, messageId(correo));
+            return mailDispatcher.despachar(mensaje);
+        } catch (MiExcepcion | MessagingException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static String messageId(CorreoSaliente correo) {
+        long creado = correo.getCreado() != null ? correo.getCreado().toEpochMilli() : 0;
+        return "<outbox." + correo.getId() + "." + creado + "@mailsend>";
+    }
+
+    private void reprogramar(CorreoSaliente correo, String error, Instant ahora) {
+        correo.setUltimoError(error);
+        correo.setIntentos(correo.getIntentos() + 1);
+        if (correo.getIntentos() >= maxIntentos) {
+            correo.setEstado(EstadoCorreo.FALLIDO);
+            log.error("Se descarta el correo {} a {} tras {} intentos: {}", correo.getId(),
+                    correo.getDestinatario(), correo.getIntentos(), correo.getUltimoError());
+        } else {
+            correo.setEstado(EstadoCorreo.PENDIENTE);
+            correo.setProximoIntento(ahora.plus(espera(correo.getIntentos())));
+        }
+    }
+
+    /**
+     * Calcula la espera exponencial antes del siguiente intento, con una variación aleatoria
+     * de hasta un 20% para que los reintentos no se sincronicen.
+     */
+    Duration espera(int intentos) {
+        long base = esperaInicial.toMillis() << Math.min(intentos - 1, 30);
+        long acotada = base <= 0 ? esperaMaxima.toMillis() : Math.min(base, esperaMaxima.toMillis());
+        long variacion = ThreadLocalRandom.current().nextLong(acotada / 5 + 1);
+        return Duration.ofMillis(acotada - variacion);
+    }
+
+    private static String truncar(String texto) {
+        return texto == null || texto.length() <= 1000 ? texto : texto.substring(0, 1000);
+    }
+}
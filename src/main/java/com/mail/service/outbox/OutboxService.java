@@ -0,0 +1,43 @@
+package com.mail.service.outbox;
+
+import com.mail.entity.CorreoSaliente;
+import com.mail.enumerated.EstadoCorreo;
+import com.mail.repositories.CorreoSalienteRepository;
+import org.springframework.stereotype.Service;
+
+import javax.transaction.Transactional;
+import java.time.Instant;
+
+@Service
+public class OutboxService {
+    private final CorreoSalienteRepository correoSalienteRepository;
+
+    public OutboxService(CorreoSalienteRepository correoSalienteRepository) {
+        this.correoSalienteRepository = correoSalienteRepository;
+    }
+
+    /**
+     * Guarda un correo para que {@link OutboxRelay} lo envíe en segundo plano.
+     *
+     * Debe llamarse dentro de la transacción que realiza el cambio que origina el correo, de
+     * modo que el cambio y el correo se confirmen o se descarten juntos.
+     *
+     * @param destinatario La dirección de correo electrónico del destinatario.
+     * @param asunto       El asunto del correo electrónico.
+     * @param cuerpo       El cuerpo del correo electrónico.
+     * @param html         Si el cuerpo es HTML.
+     */
+    @Transactional(Transactional.TxType.MANDATORY)
+    public void encolar(String destinatario, String asunto, String cuerpo, boolean html) {
+        Instant ahora = Instant.now();
+        CorreoSaliente correo = new CorreoSaliente();
+        correo.setDestinatario(destinatario);
+        correo.setAsunto(asunto);
+        correo.setCuerpo(cuerpo);
+        correo.setHtml(html);
+        correo.setEstado(EstadoCorreo.PENDIENTE);
+        correo.setCreado(ahora);
+        correo.setProximoIntento(ahora);
+        correoSalienteRepository.save(correo);
+    }
+}
@@ -0,0 +1,18 @@
+package com.mail.service.password;
+
+/**
+ * Instantánea del estado de {@link PasswordHashingService}.
+ *
+ * @param hashes            Cantidad de operaciones BCrypt completadas.
+ * @param rechazos          Operaciones rechazadas por cola llena o por esperar demasiado.
+ * @param enCola            Operaciones esperando un hilo en este momento.
+ * @param tiempoColaNanos   Tiempo medio de espera en la cola.
+ * @param tiempoHashNanos   Tiempo medio de cálculo de cada hash.
+ */
+public record EstadisticasHash(long hashes, long rechazos, int enCola, long tiempoColaNanos, long tiempoHashNanos) {
+    @Override
+    public String toString() {
+        return String.format("hashes=%d, rechazos=%d, enCola=%d, espera media=%.1f ms, hash medio=%.1f ms",
+                hashes, rechazos, enCola, tiempoColaNanos / 1e6, tiempoHashNanos / 1e6);
+    }
+}
@@ -0,0 +1,34 @@
+package com.mail.service.password;
+
+import com.mail.exceptions.ServicioSaturadoException;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.web.authentication.SimpleUrlAuthenticationFailureHandler;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Redirige a la página de login ante un error de credenciales, pero responde 503 con
+ * Retry-After si el login se rechazó porque el cálculo de contraseñas está saturado.
+ */
+public class ManejadorFalloLogin extends SimpleUrlAuthenticationFailureHandler {
+    private static final String SEGUNDOS_REINTENTO = "5";
+
+    public ManejadorFalloLogin(String urlError) {
+        super(urlError);
+    }
+
+    @Override
+    public void onAuthenticationFailure(HttpServletRequest request, HttpServletResponse response,
+                                        AuthenticationException exception) throws IOException, ServletException {
+        if (exception.getCause() instanceof ServicioSaturadoException) {
+            response.setHeader("Retry-After", SEGUNDOS_REINTENTO);
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), exception.getMessage());
+            return;
+        }
+        super.onAuthenticationFailure(request, response, exception);
+    }
+}
@@ -0,0 +1,160 @@
+package com.mail.service.password;
+
+import com.mail.exceptions.ServicioSaturadoException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * {@link PasswordEncoder} que calcula los hashes BCrypt en un grupo de hilos propio, del tamaño
+ * de la cantidad de núcleos, con una cola de espera acotada.
+ *
+ * Así una ráfaga de logins o registros no ocupa todos los núcleos ni deja sin CPU al resto de
+ * las peticiones: los hilos HTTP esperan su turno sin consumir CPU y, si la cola está llena o la
+ * espera supera {@code esperaMaxima}, la operación se rechaza con {@link ServicioSaturadoException}.
+ *
+ * Publica el tiempo de espera en la cola ('password.hash.queue'), el tiempo de cálculo por
+ * operación ('password.hash'), la cantidad en espera y los rechazos según el motivo.
+ */
+@Service
+public class PasswordHashingService implements PasswordEncoder {
+    private static final Logger log = LoggerFactory.getLogger(PasswordHashingService.class);
+
+    private final BCryptPasswordEncoder bcrypt;
+    private final ThreadPoolExecutor executor;
+    private final long esperaMaximaNanos;
+
+    private final MeterRegistry registry;
+    private final Timer tiempoCola;
+    private final Timer tiempoEncode;
+    private final Timer tiempoMatches;
+    private final LongAdder rechazos = new LongAdder();
+
+    public PasswordHashingService(MeterRegistry registry,
+                                  @Value("${mail.password.hash-threads:0}") int hilos,
+                                  @Value("${mail.password.hash-queue-capacity:64}") int capacidadCola,
+                                  @Value("${mail.password.hash-max-wait:5s}") Duration esperaMaxima,
+                                  @Value("${mail.password.bcrypt-strength:10}") int costo) {
+        int cantidad = hilos > 0 ? hilos : Runtime.getRuntime().availableProcessors();
+        this.bcrypt = new BCryptPasswordEncoder(costo);
+        this.esperaMaximaNanos = esperaMaxima.toNanos();
+        this.executor = new ThreadPoolExecutor(cantidad, cantidad, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacidadCola),
+                new CustomizableThreadFactory("password-hash-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.registry = registry;
+        this.tiempoCola = Timer.builder("password.hash.queue")
+                .description("Tiempo de espera hasta que un hilo empieza a calcular el hash")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.tiempoEncode = timerHash(registry, "encode");
+        this.tiempoMatches = timerHash(registry, "matches");
+        Gauge.builder("password.hash.queue.size", executor, e -> e.getQueue().size()).register(registry);
+    }
+
+    private static Timer timerHash(MeterRegistry registry, String operacion) {
+        return Timer.builder("password.hash")
+                .description("Tiempo de cálculo de BCrypt")
+                .tag("operacion", operacion)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return ejecutar(tiempoEncode, () -> bcrypt.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return ejecutar(tiempoMatches, () -> bcrypt.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * Indica si un hash tiene un costo menor al configurado y conviene recalcularlo tras un
+     * login correcto. Si hay operaciones esperando, la mejora se posterga para no sumar carga.
+     */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return executor.getQueue().isEmpty() && bcrypt.upgradeEncoding(encodedPassword);
+    }
+
+    <T> T ejecutar(Timer tiempo, Supplier<T> operacion) {
+        long encolada = System.nanoTime();
+        FutureTask<T> tarea = new FutureTask<>(() -> {
+            long inicio = System.nanoTime();
+            tiempoCola.record(inicio - encolada, TimeUnit.NANOSECONDS);
+            try {
+                return operacion.get();
+            } finally {
+                tiempo.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+            }
+        });
+        try {
+            executor.execute(tarea);
+        } catch (RejectedExecutionException e) {
+            return rechazar("cola_llena");
+        }
+        try {
+            return tarea.get(esperaMaximaNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            tarea.cancel(false);
+            return rechazar("espera_agotada");
+        } catch (InterruptedException e) {
+            tarea.cancel(false);
+            Thread.currentThread().interrupt();
+            return rechazar("interrumpido");
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof RuntimeException) {
+                throw (RuntimeException) causa;
+            }
+            if (causa instanceof Error) {
+                throw (Error) causa;
+            }
+            throw new IllegalStateException(causa);
+        }
+    }
+
+    private <T> T rechazar(String motivo) {
+        rechazos.increment();
+        registry.counter("password.hash.rejected", "motivo", motivo).increment();
+        log.warn("Se rechaza un cálculo de contraseña ({}): {}", motivo, getEstadisticas());
+        throw new ServicioSaturadoException("El servidor está procesando demasiados inicios de sesión, intente nuevamente en unos segundos");
+    }
+
+    /**
+     * @return Una instantánea de la cantidad de hashes, rechazos y tiempos medios de espera y cálculo.
+     */
+    public EstadisticasHash getEstadisticas() {
+        long hashes = tiempoEncode.count() + tiempoMatches.count();
+        double tiempoHash = tiempoEncode.totalTime(TimeUnit.NANOSECONDS) + tiempoMatches.totalTime(TimeUnit.NANOSECONDS);
+        return new EstadisticasHash(hashes, rechazos.sum(), executor.getQueue().size(),
+                (long) tiempoCola.mean(TimeUnit.NANOSECONDS),
+                hashes == 0 ? 0 : (long) (tiempoHash / hashes));
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        executor.shutdownNow();
+    }
+}
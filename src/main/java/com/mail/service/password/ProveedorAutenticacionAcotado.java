@@ -0,0 +1,46 @@
+package com.mail.service.password;
+
+import com.mail.exceptions.ServicioSaturadoException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+
+/**
+ * {@link DaoAuthenticationProvider} que convierte el rechazo de {@link PasswordHashingService}
+ * en un error interno de autenticación, para que el login responda 503 en lugar de fallar con
+ * una excepción no controlada.
+ *
+ * La mejora del costo del hash después de un login correcto es opcional: si no hay capacidad
+ * para calcularla, el login se completa igual con el hash anterior.
+ */
+public class ProveedorAutenticacionAcotado extends DaoAuthenticationProvider {
+    private static final Logger log = LoggerFactory.getLogger(ProveedorAutenticacionAcotado.class);
+
+    @Override
+    protected void additionalAuthenticationChecks(UserDetails userDetails,
+                                                  UsernamePasswordAuthenticationToken authentication) throws AuthenticationException {
+        try {
+            super.additionalAuthenticationChecks(userDetails, authentication);
+        } catch (ServicioSaturadoException e) {
+            throw new InternalAuthenticationServiceException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected Authentication createSuccessAuthentication(Object principal, Authentication authentication, UserDetails user) {
+        try {
+            return super.createSuccessAuthentication(principal, authentication, user);
+        } catch (ServicioSaturadoException e) {
+            log.debug("Se posterga la mejora del hash de {} por falta de capacidad", user.getUsername());
+            UsernamePasswordAuthenticationToken resultado = new UsernamePasswordAuthenticationToken(principal,
+                    authentication.getCredentials(), user.getAuthorities());
+            resultado.setDetails(authentication.getDetails());
+            return resultado;
+        }
+    }
+}
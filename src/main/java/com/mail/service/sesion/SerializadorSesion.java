@@ -0,0 +1,136 @@
+package com.mail.service.sesion;
+
+import com.mail.enumerated.Roles;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.core.userdetails.User;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Serializa los atributos de sesión en un formato binario compacto para guardarlos en un
+ * almacén compartido.
+ *
+ * Los atributos que guarda la aplicación, {@link UsuarioSesion} y el contexto de seguridad de
+ * un login con usuario y contraseña, se escriben campo por campo: ocupan unas decenas de bytes
+ * en lugar de los cientos o miles que usa la serialización de Java con sus descriptores de
+ * clase. Cualquier otro atributo se guarda con la serialización de Java.
+ */
+public class SerializadorSesion {
+    private static final byte TIPO_JAVA = 0;
+    private static final byte TIPO_USUARIO = 1;
+    private static final byte TIPO_CONTEXTO = 2;
+    private static final Roles[] ROLES = Roles.values();
+
+    /**
+     * @param valor El atributo de sesión.
+     * @return Los bytes que lo representan.
+     */
+    public byte[] serializar(Object valor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream salida = new DataOutputStream(bytes)) {
+            if (valor instanceof UsuarioSesion) {
+                salida.writeByte(TIPO_USUARIO);
+                escribir((UsuarioSesion) valor, salida);
+            } else if (esLoginConPassword(valor)) {
+                salida.writeByte(TIPO_CONTEXTO);
+                escribir(((SecurityContext) valor).getAuthentication(), salida);
+            } else {
+                salida.writeByte(TIPO_JAVA);
+                ObjectOutputStream objetos = new ObjectOutputStream(salida);
+                objetos.writeObject(valor);
+                objetos.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo serializar el atributo de sesión " + valor.getClass().getName(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param bytes Los bytes generados por {@link #serializar}.
+     * @return El atributo de sesión.
+     */
+    public Object deserializar(byte[] bytes) {
+        try (DataInputStream entrada = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            byte tipo = entrada.readByte();
+            switch (tipo) {
+                case TIPO_USUARIO:
+                    return leerUsuario(entrada);
+                case TIPO_CONTEXTO:
+                    return new SecurityContextImpl(leerAutenticacion(entrada));
+                case TIPO_JAVA:
+                    try (ObjectInputStream objetos = new ObjectInputStream(entrada)) {
+                        return objetos.readObject();
+                    }
+                default:
+                    throw new IllegalArgumentException("Tipo de atributo de sesión desconocido: " + tipo);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo leer el atributo de sesión", e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("No se pudo leer el atributo de sesión", e);
+        }
+    }
+
+    private static boolean esLoginConPassword(Object valor) {
+        if (!(valor instanceof SecurityContext)) {
+            return false;
+        }
+        Authentication autenticacion = ((SecurityContext) valor).getAuthentication();
+        return autenticacion != null
+                && autenticacion.getClass() == UsernamePasswordAuthenticationToken.class
+                && autenticacion.isAuthenticated()
+                && autenticacion.getPrincipal() instanceof User;
+    }
+
+    private static void escribir(UsuarioSesion usuario, DataOutputStream salida) throws IOException {
+        salida.writeLong(usuario.id() != null ? usuario.id() : -1);
+        salida.writeUTF(usuario.dni() != null ? usuario.dni() : "");
+        salida.writeByte(usuario.rol() != null ? usuario.rol().ordinal() : -1);
+    }
+
+    private static UsuarioSesion leerUsuario(DataInputStream entrada) throws IOException {
+        long id = entrada.readLong();
+        String dni = entrada.readUTF();
+        byte rol = entrada.readByte();
+        return new UsuarioSesion(id >= 0 ? id : null, dni.isEmpty() ? null : dni, rol >= 0 ? ROLES[rol] : null);
+    }
+
+    /**
+     * Guarda el nombre de usuario y sus permisos. La contraseña y los detalles de la petición
+     * de login no se guardan.
+     */
+    private static void escribir(Authentication autenticacion, DataOutputStream salida) throws IOException {
+        salida.writeUTF(((User) autenticacion.getPrincipal()).getUsername());
+        Collection<? extends GrantedAuthority> permisos = autenticacion.getAuthorities();
+        salida.writeShort(permisos.size());
+        for (GrantedAuthority permiso : permisos) {
+            salida.writeUTF(permiso.getAuthority());
+        }
+    }
+
+    private static Authentication leerAutenticacion(DataInputStream entrada) throws IOException {
+        String usuario = entrada.readUTF();
+        int cantidad = entrada.readShort();
+        List<GrantedAuthority> permisos = new ArrayList<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            permisos.add(new SimpleGrantedAuthority(entrada.readUTF()));
+        }
+        return new UsernamePasswordAuthenticationToken(new User(usuario, "", permisos), null, permisos);
+    }
+}
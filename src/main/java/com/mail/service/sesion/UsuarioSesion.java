@@ -0,0 +1,18 @@
+package com.mail.service.sesion;
+
+import com.mail.enumerated.Roles;
+
+import java.io.Serializable;
+
+/**
+ * Datos del usuario logueado que se guardan en la sesión HTTP. Solo incluye lo necesario para
+ * identificarlo y decidir qué puede ver, nunca la contraseña ni los tokens.
+ *
+ * @param id  El identificador del usuario.
+ * @param dni El DNI con el que inició sesión.
+ * @param rol El rol del usuario.
+ */
+public record UsuarioSesion(Long id, String dni, Roles rol) implements Serializable {
+    /** Nombre del atributo de sesión donde se guarda. */
+    public static final String ATRIBUTO = "usuariosession";
+}
@@ -0,0 +1,91 @@
+package com.mail.service.smtp;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Un mensaje listo para enviarse por {@link NioMailSender}: el sobre SMTP, el contenido ya
+ * serializado y el futuro que se completa con la respuesta del servidor.
+ *
+ * El contenido se guarda tal como lo escribe JavaMail (líneas terminadas en CRLF) y se libera
+ * al terminar el envío, haya salido bien o no.
+ */
+final class EnvioSmtp {
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final byte PUNTO = '.';
+
+    final String remitente;
+    final List<String> destinatarios;
+    final ByteBuf contenido;
+    final boolean ochoBits;
+    final long creadoNanos = System.nanoTime();
+    final CompletableFuture<Void> resultado = new CompletableFuture<>();
+    int intentos;
+
+    private final Executor notificaciones;
+    private final AtomicBoolean terminado = new AtomicBoolean();
+
+    EnvioSmtp(String remitente, List<String> destinatarios, ByteBuf contenido, Executor notificaciones) {
+        this.remitente = remitente;
+        this.destinatarios = destinatarios;
+        this.contenido = contenido;
+        this.ochoBits = contenido.forEachByte(b -> b >= 0) >= 0;
+        this.notificaciones = notificaciones;
+    }
+
+    /**
+     * Completa el envío. Los callbacks del futuro corren en {@code notificaciones}, nunca en el
+     * hilo de eventos que atiende las conexiones.
+     */
+    void completar() {
+        if (terminado.compareAndSet(false, true)) {
+            contenido.release();
+            notificaciones.execute(() -> resultado.complete(null));
+        }
+    }
+
+    void fallar(Exception error) {
+        if (terminado.compareAndSet(false, true)) {
+            contenido.release();
+            notificaciones.execute(() -> resultado.completeExceptionally(error));
+        }
+    }
+
+    boolean isTerminado() {
+        return terminado.get();
+    }
+
+    /**
+     * Prepara el contenido para enviarlo con DATA: duplica el punto inicial de cada línea,
+     * asegura que termine en CRLF y agrega la línea final con un solo punto.
+     *
+     * @return Un buffer nuevo que el llamador debe liberar (escribirlo en el canal lo libera).
+     */
+    static ByteBuf conPuntos(ByteBuf contenido, ByteBufAllocator alloc) {
+        int desde = contenido.readerIndex();
+        int hasta = contenido.writerIndex();
+        ByteBuf salida = alloc.buffer(contenido.readableBytes() + 64);
+        boolean inicioLinea = true;
+        byte anterior = 0;
+        for (int i = desde; i < hasta; i++) {
+            byte b = contenido.getByte(i);
+            if (inicioLinea && b == PUNTO) {
+                salida.writeByte(PUNTO);
+            }
+            salida.writeByte(b);
+            inicioLinea = b == LF && anterior == CR;
+            anterior = b;
+        }
+        if (!inicioLinea) {
+            salida.writeByte(CR).writeByte(LF);
+        }
+        salida.writeByte(PUNTO).writeByte(CR).writeByte(LF);
+        return salida;
+    }
+}
@@ -0,0 +1,24 @@
+package com.mail.service.smtp;
+
+import org.springframework.mail.MailException;
+
+import javax.mail.internet.MimeMessage;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Un sender que puede enviar sin ocupar el hilo del llamador mientras dura la conversación SMTP.
+ * {@link com.mail.service.dispatch.MailDispatcher} lo usa en lugar de sus hilos de trabajo
+ * cuando el {@link org.springframework.mail.javamail.JavaMailSender} configurado lo implementa.
+ */
+public interface EnvioSmtpAsincrono {
+
+    /**
+     * @param mensaje El mensaje ya construido.
+     * @return Un futuro que se completa cuando el servidor SMTP aceptó el mensaje, o de forma
+     *         excepcional si lo rechazó o se perdió la conexión.
+     * @throws MailException              Si el mensaje no se pudo preparar para el envío.
+     * @throws RejectedExecutionException Si ya hay demasiados envíos en curso.
+     */
+    CompletableFuture<Void> enviarAsincronico(MimeMessage mensaje) throws MailException;
+}
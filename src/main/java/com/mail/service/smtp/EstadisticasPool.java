@@ -0,0 +1,33 @@
+package com.mail.service.smtp;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Instantánea del estado del pool de conexiones SMTP.
+ *
+ * @param aciertos             Veces que se reutilizó una conexión libre.
+ * @param fallos               Veces que hubo que abrir una conexión nueva.
+ * @param conexionesCreadas    Total de conexiones abiertas desde el arranque.
+ * @param reconexiones         Envíos que se reintentaron porque la conexión se perdió.
+ * @param conexionesAbiertas   Conexiones abiertas en este momento (libres y en uso).
+ * @param conexionesLibres     Conexiones abiertas a la espera de un envío.
+ * @param latenciaConexionNanos Tiempo promedio de conexión (TCP, STARTTLS y AUTH).
+ */
+public record EstadisticasPool(long aciertos, long fallos, long conexionesCreadas, long reconexiones,
+                               int conexionesAbiertas, int conexionesLibres, long latenciaConexionNanos) {
+
+    /**
+     * @return La proporción de préstamos que reutilizaron una conexión existente, entre 0 y 1.
+     */
+    public double tasaAciertos() {
+        long total = aciertos + fallos;
+        return total == 0 ? 0 : (double) aciertos / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("aciertos=%.2f abiertas=%d libres=%d creadas=%d reconexiones=%d conexionMs=%d",
+                tasaAciertos(), conexionesAbiertas, conexionesLibres, conexionesCreadas, reconexiones,
+                TimeUnit.NANOSECONDS.toMillis(latenciaConexionNanos));
+    }
+}
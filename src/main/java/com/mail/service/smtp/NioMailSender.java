@@ -0,0 +1,501 @@
+package com.mail.service.smtp;
+
+import com.mail.utilitys.HilosVirtuales;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.handler.codec.string.StringDecoder;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailPreparationException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import javax.mail.Address;
+import javax.mail.AuthenticationFailedException;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link JavaMailSenderImpl} que habla SMTP con sockets no bloqueantes (Netty) en lugar de usar
+ * el transporte de JavaMail. Unos pocos hilos de eventos atienden todas las conexiones, así que
+ * un envío en curso no ocupa un hilo mientras espera al servidor, y se aprovechan PIPELINING,
+ * 8BITMIME y CHUNKING cuando el servidor los anuncia (ver {@link SesionSmtpNio}).
+ *
+ * Se elige con 'mail.smtp.engine=nio' y toma la misma configuración 'spring.mail.*' que
+ * {@link PooledMailSender}. Los mensajes entran a una cola y los toma la primera conexión libre;
+ * si no hay ninguna y no se llegó a {@code maxConexiones}, se abre otra. Un mensaje que espera
+ * más de {@code esperaMaxima} en la cola falla, y si la conexión se corta durante el envío se
+ * reintenta una vez con otra conexión.
+ *
+ * {@link #send} sigue siendo sincrónico para los llamadores de {@code JavaMailSender};
+ * {@link #enviarAsincronico} devuelve un futuro y no bloquea.
+ *
+ * Limitaciones frente a JavaMail: el mensaje se serializa completo en memoria (fuera del heap)
+ * antes de enviarse; solo se autentica con PLAIN o LOGIN; y con TLS se confía en los
+ * certificados del JDK, sin 'mail.smtp.ssl.trust'.
+ */
+public class NioMailSender extends JavaMailSenderImpl implements EnvioSmtpAsincrono {
+    private static final Logger log = LoggerFactory.getLogger(NioMailSender.class);
+    private static final String HEADER_MESSAGE_ID = "Message-ID";
+    private static final String[] HEADERS_FUERA_DEL_CONTENIDO = {"Bcc", "Content-Length"};
+    private static final int MAXIMO_LINEA_RESPUESTA = 8192;
+    private static final int MAXIMO_INTENTOS = 2;
+    private static final long PERIODO_VENCIMIENTO_MS = 1000;
+
+    private final int maxConexiones;
+    private final int maxMensajesPorConexion;
+    private final Duration maxInactividad;
+    private final long esperaMaximaNanos;
+    private final int maxEnCurso;
+
+    private final EventLoopGroup grupo;
+    private final ExecutorService notificaciones;
+    private final ScheduledFuture<?> vencimientos;
+    private final ConcurrentLinkedDeque<EnvioSmtp> pendientes = new ConcurrentLinkedDeque<>();
+    private final ConcurrentLinkedDeque<SesionSmtpNio> libres = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger abiertas = new AtomicInteger();
+    private final AtomicInteger establecidas = new AtomicInteger();
+    private final AtomicInteger enCurso = new AtomicInteger();
+    private volatile Configuracion configuracion;
+    private volatile boolean cerrado;
+
+    private final LongAdder reconexiones = new LongAdder();
+    private final Timer tiempoConexion;
+    private final Timer envioOk;
+    private final Timer envioError;
+
+    /**
+     * @param maxConexiones          Conexiones SMTP simultáneas como máximo.
+     * @param maxMensajesPorConexion Mensajes que se envían por una conexión antes de cerrarla.
+     * @param maxInactividad         Tiempo que una conexión libre se mantiene abierta.
+     * @param esperaMaxima           Tiempo que un mensaje puede esperar una conexión libre.
+     * @param maxEnCurso             Mensajes aceptados y sin terminar como máximo; por encima se rechazan.
+     * @param hilosEventos           Hilos que atienden los sockets.
+     */
+    public NioMailSender(int maxConexiones, int maxMensajesPorConexion, Duration maxInactividad,
+                         Duration esperaMaxima, int maxEnCurso, int hilosEventos, MeterRegistry registry,
+                         boolean hilosVirtuales) {
+        this.maxConexiones = maxConexiones;
+        this.maxMensajesPorConexion = maxMensajesPorConexion;
+        this.maxInactividad = maxInactividad;
+        this.esperaMaximaNanos = esperaMaxima.toNanos();
+        this.maxEnCurso = maxEnCurso;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("smtp-nio-");
+        threadFactory.setDaemon(true);
+        this.grupo = new NioEventLoopGroup(hilosEventos, threadFactory);
+        // Los callbacks de los futuros corren aquí: pueden bloquear sin frenar a las conexiones.
+        this.notificaciones = Executors.newCachedThreadPool(HilosVirtuales.fabrica("smtp-nio-aviso-", hilosVirtuales));
+        this.vencimientos = grupo.next().scheduleWithFixedDelay(this::vencerPendientes,
+                PERIODO_VENCIMIENTO_MS, PERIODO_VENCIMIENTO_MS, TimeUnit.MILLISECONDS);
+
+        this.tiempoConexion = Timer.builder("mail.smtp.connect")
+                .description("Tiempo de apertura de una conexión SMTP, con STARTTLS y AUTH")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.envioOk = timerEnvio(registry, "ok");
+        this.envioError = timerEnvio(registry, "error");
+        Gauge.builder("mail.smtp.pool.connections", abiertas, AtomicInteger::get)
+                .tag("estado", "abiertas").register(registry);
+        Gauge.builder("mail.smtp.pool.connections", libres, ConcurrentLinkedDeque::size)
+                .tag("estado", "libres").register(registry);
+        Gauge.builder("mail.smtp.in-flight", enCurso, AtomicInteger::get)
+                .description("Mensajes aceptados por el sender SMTP no bloqueante que todavía no terminaron")
+                .register(registry);
+        FunctionCounter.builder("mail.smtp.pool.reconnects", reconexiones, LongAdder::sum)
+                .description("Conexiones perdidas durante un envío").register(registry);
+    }
+
+    private static Timer timerEnvio(MeterRegistry registry, String resultado) {
+        return Timer.builder("mail.smtp.send")
+                .description("Tiempo de la transacción SMTP de un mensaje, sin contar la espera de una conexión")
+                .tag("resultado", resultado)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * Envía los mensajes en paralelo por las conexiones disponibles y espera a que terminen todos.
+     */
+    @Override
+    protected void doSend(MimeMessage[] mimeMessages, @Nullable Object[] originalMessages) throws MailException {
+        Map<Object, Exception> fallidos = new LinkedHashMap<>();
+        List<CompletableFuture<Void>> envios = new ArrayList<>(mimeMessages.length);
+        for (int i = 0; i < mimeMessages.length; i++) {
+            try {
+                envios.add(enviarAsincronico(mimeMessages[i]));
+            } catch (MailException | RejectedExecutionException e) {
+                envios.add(null);
+                fallidos.put(originalMessages != null ? originalMessages[i] : mimeMessages[i], e);
+            }
+        }
+        for (int i = 0; i < mimeMessages.length; i++) {
+            CompletableFuture<Void> envio = envios.get(i);
+            if (envio == null) {
+                continue;
+            }
+            try {
+                envio.get();
+            } catch (ExecutionException e) {
+                Throwable causa = e.getCause();
+                if (causa instanceof AuthenticationFailedException) {
+                    throw new MailAuthenticationException((AuthenticationFailedException) causa);
+                }
+                fallidos.put(originalMessages != null ? originalMessages[i] : mimeMessages[i],
+                        causa instanceof Exception ? (Exception) causa : e);
+            } catch (InterruptedException e) {
+                // Los mensajes ya están en la cola y se envían igual; solo deja de esperarse.
+                Thread.currentThread().interrupt();
+                throw new MailSendException("Envío interrumpido", e);
+            }
+        }
+        if (!fallidos.isEmpty()) {
+            throw new MailSendException(fallidos);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> enviarAsincronico(MimeMessage mensaje) throws MailException {
+        if (cerrado) {
+            throw new RejectedExecutionException("El sender SMTP está cerrado");
+        }
+        if (enCurso.incrementAndGet() > maxEnCurso) {
+            enCurso.decrementAndGet();
+            throw new RejectedExecutionException("Hay " + maxEnCurso + " mensajes SMTP en curso");
+        }
+        EnvioSmtp envio;
+        try {
+            envio = preparar(mensaje, configuracion());
+        } catch (MessagingException | IOException | RuntimeException e) {
+            enCurso.decrementAndGet();
+            throw new MailPreparationException("No se pudo preparar el mensaje para el envío", e);
+        }
+        envio.resultado.whenComplete((ok, error) -> enCurso.decrementAndGet());
+        pendientes.offerLast(envio);
+        despertar();
+        return envio.resultado;
+    }
+
+    /**
+     * Completa los headers como lo haría JavaMail y serializa el mensaje en un buffer fuera del heap.
+     */
+    private EnvioSmtp preparar(MimeMessage mensaje, Configuracion config) throws MessagingException, IOException {
+        if (mensaje.getSentDate() == null) {
+            mensaje.setSentDate(new Date());
+        }
+        String messageId = mensaje.getMessageID();
+        mensaje.saveChanges();
+        if (messageId != null) {
+            // Se conserva el Message-ID explícito que saveChanges() habría reemplazado.
+            mensaje.setHeader(HEADER_MESSAGE_ID, messageId);
+        }
+        List<String> destinatarios = new ArrayList<>();
+        Address[] todos = mensaje.getAllRecipients();
+        if (todos != null) {
+            for (Address direccion : todos) {
+                if (direccion instanceof InternetAddress) {
+                    destinatarios.add(((InternetAddress) direccion).getAddress());
+                }
+            }
+        }
+        if (destinatarios.isEmpty()) {
+            throw new SendFailedException("El mensaje no tiene destinatarios");
+        }
+        ByteBuf contenido = ByteBufAllocator.DEFAULT.buffer();
+        try (ByteBufOutputStream salida = new ByteBufOutputStream(contenido)) {
+            mensaje.writeTo(salida, HEADERS_FUERA_DEL_CONTENIDO);
+        } catch (MessagingException | IOException | RuntimeException e) {
+            contenido.release();
+            throw e;
+        }
+        return new EnvioSmtp(remitente(mensaje, config), List.copyOf(destinatarios), contenido, notificaciones);
+    }
+
+    private static String remitente(MimeMessage mensaje, Configuracion config) throws MessagingException {
+        if (config.remitente != null) {
+            return config.remitente;
+        }
+        Address[] from = mensaje.getFrom();
+        if (from != null && from.length > 0 && from[0] instanceof InternetAddress) {
+            return ((InternetAddress) from[0]).getAddress();
+        }
+        return config.usuario != null ? config.usuario : "";
+    }
+
+    // ------------------------------------------------------------------ pool de conexiones
+
+    /**
+     * Si hay mensajes en cola, despierta una conexión libre o abre una nueva si no se llegó al máximo.
+     */
+    void despertar() {
+        if (cerrado || pendientes.isEmpty()) {
+            return;
+        }
+        SesionSmtpNio libre = libres.pollFirst();
+        if (libre != null) {
+            libre.activar();
+            return;
+        }
+        int actuales;
+        while ((actuales = abiertas.get()) < maxConexiones) {
+            if (abiertas.compareAndSet(actuales, actuales + 1)) {
+                abrir(configuracion());
+                return;
+            }
+        }
+    }
+
+    private void abrir(Configuracion config) {
+        Bootstrap bootstrap = new Bootstrap()
+                .group(grupo)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, config.tiempoConexionMs)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel canal) {
+                        if (config.sslImplicito) {
+                            canal.pipeline().addLast("tls", crearSslHandler(canal.alloc()));
+                        }
+                        canal.pipeline().addLast(
+                                new IdleStateHandler(0, 0, maxInactividad.toMillis(), TimeUnit.MILLISECONDS),
+                                new LineBasedFrameDecoder(MAXIMO_LINEA_RESPUESTA),
+                                new StringDecoder(StandardCharsets.ISO_8859_1),
+                                new SesionSmtpNio(NioMailSender.this, config, config.sslImplicito));
+                    }
+                });
+        bootstrap.connect(config.host, config.puerto).addListener((ChannelFuture conexion) -> {
+            if (!conexion.isSuccess()) {
+                abiertas.decrementAndGet();
+                conexionFallida(new MessagingException("No se pudo conectar con el servidor SMTP " + config.host
+                        + ":" + config.puerto, conexion.cause() instanceof Exception ? (Exception) conexion.cause() : null));
+            }
+        });
+    }
+
+    SslHandler crearSslHandler(ByteBufAllocator alloc) {
+        Configuracion config = configuracion();
+        SslHandler ssl = config.ssl.newHandler(alloc, config.host, config.puerto);
+        if (config.verificarIdentidad) {
+            SSLParameters parametros = ssl.engine().getSSLParameters();
+            parametros.setEndpointIdentificationAlgorithm("HTTPS");
+            ssl.engine().setSSLParameters(parametros);
+        }
+        ssl.setHandshakeTimeoutMillis(config.tiempoRespuestaMs);
+        return ssl;
+    }
+
+    EnvioSmtp tomarPendiente() {
+        return pendientes.pollFirst();
+    }
+
+    void devolverPendiente(EnvioSmtp envio) {
+        pendientes.offerFirst(envio);
+    }
+
+    void quedarLibre(SesionSmtpNio sesion) {
+        libres.offerFirst(sesion);
+    }
+
+    boolean reclamar(SesionSmtpNio sesion) {
+        return libres.remove(sesion);
+    }
+
+    boolean isCerrado() {
+        return cerrado;
+    }
+
+    void sesionLista(long nanos) {
+        establecidas.incrementAndGet();
+        tiempoConexion.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void sesionCerrada(SesionSmtpNio sesion, boolean estabaEstablecida) {
+        libres.remove(sesion);
+        abiertas.decrementAndGet();
+        if (estabaEstablecida) {
+            establecidas.decrementAndGet();
+        }
+        despertar();
+    }
+
+    /**
+     * Si ninguna otra conexión está funcionando, el servidor no está disponible: fallan todos los
+     * mensajes en cola en lugar de reintentar la conexión por cada uno.
+     */
+    void conexionFallida(MessagingException causa) {
+        if (establecidas.get() > 0) {
+            return;
+        }
+        log.warn("Servidor SMTP no disponible, fallan los mensajes en cola: {}", causa.getMessage());
+        EnvioSmtp envio;
+        while ((envio = pendientes.pollFirst()) != null) {
+            envio.fallar(causa);
+        }
+    }
+
+    void reintentarOFallar(EnvioSmtp envio, MessagingException causa) {
+        reconexiones.increment();
+        if (cerrado || envio.intentos >= MAXIMO_INTENTOS) {
+            envio.fallar(causa);
+            return;
+        }
+        log.debug("Se reintenta un mensaje por otra conexión: {}", causa.getMessage());
+        pendientes.offerFirst(envio);
+        despertar();
+    }
+
+    void registrarEnvio(boolean ok, long nanos) {
+        (ok ? envioOk : envioError).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void vencerPendientes() {
+        long limite = System.nanoTime() - esperaMaximaNanos;
+        for (EnvioSmtp envio : pendientes) {
+            if (envio.creadoNanos - limite < 0 && pendientes.remove(envio)) {
+                envio.fallar(new MessagingException("No hay conexiones SMTP disponibles tras esperar "
+                        + TimeUnit.NANOSECONDS.toMillis(esperaMaximaNanos) + " ms"));
+            }
+        }
+    }
+
+    /**
+     * Rechaza los mensajes en cola, despide las conexiones libres y espera a que terminen los
+     * envíos en curso.
+     */
+    public void cerrar() {
+        cerrado = true;
+        vencimientos.cancel(false);
+        EnvioSmtp envio;
+        while ((envio = pendientes.pollFirst()) != null) {
+            envio.fallar(new MessagingException("El sender SMTP se cerró"));
+        }
+        SesionSmtpNio sesion;
+        while ((sesion = libres.pollFirst()) != null) {
+            sesion.activar();
+        }
+        Configuracion config = configuracion;
+        long espera = config != null ? config.tiempoRespuestaMs : 0;
+        grupo.shutdownGracefully(100, espera + 100, TimeUnit.MILLISECONDS).awaitUninterruptibly();
+        notificaciones.shutdown();
+    }
+
+    // ------------------------------------------------------------------ configuración
+
+    private Configuracion configuracion() {
+        Configuracion config = configuracion;
+        if (config == null) {
+            synchronized (this) {
+                config = configuracion;
+                if (config == null) {
+                    config = new Configuracion(this);
+                    configuracion = config;
+                }
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Los datos de conexión leídos una sola vez de las propiedades del sender, para que las
+     * conexiones no consulten las {@link Properties} de JavaMail en el hilo de eventos.
+     */
+    static final class Configuracion {
+        final String host;
+        final int puerto;
+        final String usuario;
+        final String clave;
+        final String remitente;
+        final String dominio;
+        final boolean autenticar;
+        final boolean starttls;
+        final boolean starttlsObligatorio;
+        final boolean sslImplicito;
+        final boolean verificarIdentidad;
+        final int tiempoConexionMs;
+        final int tiempoRespuestaMs;
+        final int maxMensajesPorConexion;
+        final SslContext ssl;
+
+        Configuracion(NioMailSender sender) {
+            Properties propiedades = sender.getJavaMailProperties();
+            this.sslImplicito = "smtps".equals(sender.getProtocol())
+                    || Boolean.parseBoolean(propiedades.getProperty("mail.smtp.ssl.enable"));
+            this.host = sender.getHost() != null ? sender.getHost() : "localhost";
+            this.puerto = sender.getPort() > 0 ? sender.getPort() : (sslImplicito ? 465 : 25);
+            this.usuario = sender.getUsername();
+            this.clave = sender.getPassword() != null ? sender.getPassword() : "";
+            this.remitente = propiedades.getProperty("mail.smtp.from");
+            this.dominio = dominio(propiedades.getProperty("mail.smtp.localhost"));
+            this.autenticar = usuario != null && Boolean.parseBoolean(propiedades.getProperty("mail.smtp.auth"));
+            this.starttls = Boolean.parseBoolean(propiedades.getProperty("mail.smtp.starttls.enable"));
+            this.starttlsObligatorio = Boolean.parseBoolean(propiedades.getProperty("mail.smtp.starttls.required"));
+            this.verificarIdentidad = Boolean.parseBoolean(propiedades.getProperty("mail.smtp.ssl.checkserveridentity"));
+            this.tiempoConexionMs = Integer.parseInt(propiedades.getProperty("mail.smtp.connectiontimeout", "30000"));
+            this.tiempoRespuestaMs = Integer.parseInt(propiedades.getProperty("mail.smtp.timeout", "60000"));
+            this.maxMensajesPorConexion = sender.maxMensajesPorConexion;
+            try {
+                this.ssl = SslContextBuilder.forClient().build();
+            } catch (SSLException e) {
+                throw new IllegalStateException("No se pudo crear el contexto TLS", e);
+            }
+        }
+
+        private static String dominio(@Nullable String configurado) {
+            if (configurado != null && !configurado.isBlank()) {
+                return configurado;
+            }
+            try {
+                return InetAddress.getLocalHost().getCanonicalHostName();
+            } catch (UnknownHostException e) {
+                return "localhost";
+            }
+        }
+    }
+}
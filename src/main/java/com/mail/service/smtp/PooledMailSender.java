@@ -0,0 +1,374 @@
+package com.mail.service.smtp;
+
+import com.mail.utilitys.HilosVirtuales;
+import com.sun.mail.smtp.SMTPTransport;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import javax.mail.Address;
+import javax.mail.AuthenticationFailedException;
+import javax.mail.MessagingException;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+import java.time.Duration;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link JavaMailSenderImpl} que reutiliza conexiones SMTP ya autenticadas en lugar de abrir
+ * una nueva conexión (con STARTTLS y AUTH) por cada envío.
+ *
+ * Las conexiones libres se guardan en una pila para entregar primero la más reciente. Una
+ * conexión se valida con NOOP solo si estuvo inactiva más de {@code validarTras}, se cierra
+ * al alcanzar {@code maxMensajesPorConexion} y una tarea periódica descarta las que superan
+ * {@code maxInactividad}. Si la conexión se corta durante un envío, el mensaje se reintenta
+ * una vez con una conexión nueva.
+ *
+ * Si se llama desde un hilo virtual, el lote se envía en un grupo de hilos de plataforma del
+ * tamaño del pool: los métodos de {@link SMTPTransport} son synchronized y bloquear dentro de
+ * ellos fijaría el hilo virtual a su hilo portador. Así la espera del hilo virtual es sobre un
+ * {@link Future}, que sí libera al portador.
+ *
+ * Publica en el {@link MeterRegistry} el tiempo de conexión ('mail.smtp.connect') y de envío
+ * de cada mensaje ('mail.smtp.send'), las conexiones en uso y libres, y los aciertos del pool.
+ */
+public class PooledMailSender extends JavaMailSenderImpl {
+    private static final Logger log = LoggerFactory.getLogger(PooledMailSender.class);
+    private static final String HEADER_MESSAGE_ID = "Message-ID";
+    private static final long ESPERA_SONDEO_MS = 50;
+
+    private final int maxConexiones;
+    private final int maxMensajesPorConexion;
+    private final long maxInactividadNanos;
+    private final long validarTrasNanos;
+    private final long esperaMaximaNanos;
+
+    private final LinkedBlockingDeque<ConexionSmtp> libres = new LinkedBlockingDeque<>();
+    private final Semaphore permisos;
+    private final ScheduledExecutorService desalojo;
+    private final ExecutorService transporteFueraDeVirtuales;
+    private volatile boolean cerrado;
+
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+    private final LongAdder reconexiones = new LongAdder();
+    private final Timer tiempoConexion;
+    private final Timer envioOk;
+    private final Timer envioError;
+
+    public PooledMailSender(int maxConexiones, int maxMensajesPorConexion, Duration maxInactividad,
+                            Duration validarTras, Duration esperaMaxima, MeterRegistry registry,
+                            boolean hilosVirtuales) {
+        this.maxConexiones = maxConexiones;
+        this.maxMensajesPorConexion = maxMensajesPorConexion;
+        this.maxInactividadNanos = maxInactividad.toNanos();
+        this.validarTrasNanos = validarTras.toNanos();
+        this.esperaMaximaNanos = esperaMaxima.toNanos();
+        this.permisos = new Semaphore(maxConexiones);
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("smtp-pool-");
+        threadFactory.setDaemon(true);
+        this.desalojo = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        long periodo = Math.max(1000, maxInactividad.toMillis() / 2);
+        desalojo.scheduleWithFixedDelay(this::desalojarInactivas, periodo, periodo, TimeUnit.MILLISECONDS);
+        this.transporteFueraDeVirtuales = hilosVirtuales
+                ? Executors.newFixedThreadPool(maxConexiones, new CustomizableThreadFactory("smtp-io-"))
+                : null;
+
+        this.tiempoConexion = Timer.builder("mail.smtp.connect")
+                .description("Tiempo de apertura de una conexión SMTP, con STARTTLS y AUTH")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.envioOk = timerEnvio(registry, "ok");
+        this.envioError = timerEnvio(registry, "error");
+        Gauge.builder("mail.smtp.pool.connections", this, p -> p.maxConexiones - p.permisos.availablePermits())
+                .tag("estado", "abiertas").register(registry);
+        Gauge.builder("mail.smtp.pool.connections", libres, LinkedBlockingDeque::size)
+                .tag("estado", "libres").register(registry);
+        FunctionCounter.builder("mail.smtp.pool.borrows", aciertos, LongAdder::sum)
+                .tag("resultado", "reutilizada").register(registry);
+        FunctionCounter.builder("mail.smtp.pool.borrows", fallos, LongAdder::sum)
+                .tag("resultado", "nueva").register(registry);
+        FunctionCounter.builder("mail.smtp.pool.reconnects", reconexiones, LongAdder::sum)
+                .description("Conexiones perdidas durante un envío").register(registry);
+    }
+
+    private static Timer timerEnvio(MeterRegistry registry, String resultado) {
+        return Timer.builder("mail.smtp.send")
+                .description("Tiempo de la transacción SMTP de un mensaje, sin contar la espera de una conexión")
+                .tag("resultado", resultado)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * Envía los mensajes usando una sola conexión del pool para todo el lote. La conexión se
+     * renueva si alcanza el máximo de mensajes permitido o si se pierde durante el envío.
+     */
+    @Override
+    protected void doSend(MimeMessage[] mimeMessages, @Nullable Object[] originalMessages) throws MailException {
+        if (transporteFueraDeVirtuales == null || !HilosVirtuales.esVirtual(Thread.currentThread())) {
+            enviarLote(mimeMessages, originalMessages);
+            return;
+        }
+        Future<?> envio = transporteFueraDeVirtuales.submit(() -> enviarLote(mimeMessages, originalMessages));
+        try {
+            envio.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new MailSendException("Error inesperado al enviar el lote", e.getCause());
+        } catch (InterruptedException e) {
+            // El lote ya está en curso y termina igual; solo deja de esperarse.
+            Thread.currentThread().interrupt();
+            throw new MailSendException("Envío interrumpido", e);
+        }
+    }
+
+    private void enviarLote(MimeMessage[] mimeMessages, @Nullable Object[] originalMessages) throws MailException {
+        Map<Object, Exception> fallidos = new LinkedHashMap<>();
+        ConexionSmtp conexion = null;
+        boolean completo = false;
+        try {
+            for (int i = 0; i < mimeMessages.length; i++) {
+                MimeMessage mensaje = mimeMessages[i];
+                Exception error = null;
+                for (int intento = 0; intento < 2; intento++) {
+                    if (conexion == null) {
+                        conexion = obtenerParaLote(mimeMessages, originalMessages, i, fallidos);
+                    }
+                    try {
+                        enviar(conexion, mensaje);
+                        error = null;
+                        break;
+                    } catch (MessagingException e) {
+                        error = e;
+                        if (conexion.reiniciar()) {
+                            // El servidor rechazó el mensaje pero la conexión sigue sana: no se reintenta.
+                            break;
+                        }
+                        descartar(conexion);
+                        conexion = null;
+                        reconexiones.increment();
+                    }
+                }
+                if (error != null) {
+                    fallidos.put(originalMessages != null ? originalMessages[i] : mensaje, error);
+                }
+                if (conexion != null && conexion.mensajesEnviados >= maxMensajesPorConexion) {
+                    descartar(conexion);
+                    conexion = null;
+                }
+            }
+            completo = true;
+        } finally {
+            // Tras una excepción no prevista la conexión puede haber quedado a mitad de una
+            // transacción SMTP: no se devuelve al pool.
+            if (conexion != null && completo) {
+                devolver(conexion);
+            } else if (conexion != null) {
+                descartar(conexion);
+            }
+        }
+        if (!fallidos.isEmpty()) {
+            throw new MailSendException(fallidos);
+        }
+    }
+
+    private ConexionSmtp obtenerParaLote(MimeMessage[] mimeMessages, @Nullable Object[] originalMessages,
+                                         int desde, Map<Object, Exception> fallidos) {
+        try {
+            return obtener();
+        } catch (AuthenticationFailedException e) {
+            throw new MailAuthenticationException(e);
+        } catch (MessagingException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            for (int j = desde; j < mimeMessages.length; j++) {
+                fallidos.put(originalMessages != null ? originalMessages[j] : mimeMessages[j], e);
+            }
+            throw new MailSendException("Mail server connection failed", e, fallidos);
+        }
+    }
+
+    private void enviar(ConexionSmtp conexion, MimeMessage mensaje) throws MessagingException {
+        if (mensaje.getSentDate() == null) {
+            mensaje.setSentDate(new Date());
+        }
+        String messageId = mensaje.getMessageID();
+        mensaje.saveChanges();
+        if (messageId != null) {
+            // Se conserva el Message-ID explícito que saveChanges() habría reemplazado.
+            mensaje.setHeader(HEADER_MESSAGE_ID, messageId);
+        }
+        Address[] destinatarios = mensaje.getAllRecipients();
+        long inicio = System.nanoTime();
+        try {
+            conexion.transporte.sendMessage(mensaje, destinatarios != null ? destinatarios : new Address[0]);
+        } catch (MessagingException | RuntimeException e) {
+            envioError.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+        envioOk.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+        conexion.mensajesEnviados++;
+    }
+
+    private ConexionSmtp obtener() throws MessagingException, InterruptedException {
+        if (cerrado) {
+            throw new MessagingException("El pool de conexiones SMTP está cerrado");
+        }
+        long limite = System.nanoTime() + esperaMaximaNanos;
+        while (true) {
+            ConexionSmtp conexion = libres.pollFirst();
+            if (conexion == null && permisos.tryAcquire()) {
+                fallos.increment();
+                return abrir();
+            }
+            if (conexion == null) {
+                long restante = limite - System.nanoTime();
+                if (restante <= 0) {
+                    throw new MessagingException("No hay conexiones SMTP disponibles tras esperar "
+                            + TimeUnit.NANOSECONDS.toMillis(esperaMaximaNanos) + " ms");
+                }
+                conexion = libres.pollFirst(Math.min(restante, TimeUnit.MILLISECONDS.toNanos(ESPERA_SONDEO_MS)),
+                        TimeUnit.NANOSECONDS);
+                if (conexion == null) {
+                    continue;
+                }
+            }
+            if (esUtilizable(conexion)) {
+                aciertos.increment();
+                return conexion;
+            }
+            descartar(conexion);
+        }
+    }
+
+    private ConexionSmtp abrir() throws MessagingException {
+        long inicio = System.nanoTime();
+        try {
+            Transport transporte = connectTransport();
+            long duracion = System.nanoTime() - inicio;
+            tiempoConexion.record(duracion, TimeUnit.NANOSECONDS);
+            log.debug("Conexión SMTP abierta en {} ms", TimeUnit.NANOSECONDS.toMillis(duracion));
+            return new ConexionSmtp(transporte);
+        } catch (MessagingException | RuntimeException e) {
+            permisos.release();
+            throw e;
+        }
+    }
+
+    private boolean esUtilizable(ConexionSmtp conexion) {
+        long inactiva = System.nanoTime() - conexion.ultimoUsoNanos;
+        if (inactiva > maxInactividadNanos) {
+            return false;
+        }
+        // isConnected() envía NOOP, por eso solo se usa con conexiones que estuvieron quietas un tiempo.
+        return inactiva <= validarTrasNanos || conexion.transporte.isConnected();
+    }
+
+    private void devolver(ConexionSmtp conexion) {
+        if (cerrado) {
+            descartar(conexion);
+            return;
+        }
+        conexion.ultimoUsoNanos = System.nanoTime();
+        libres.offerFirst(conexion);
+    }
+
+    private void descartar(ConexionSmtp conexion) {
+        try {
+            conexion.transporte.close();
+        } catch (MessagingException e) {
+            log.debug("Error al cerrar la conexión SMTP", e);
+        } finally {
+            permisos.release();
+        }
+    }
+
+    private void desalojarInactivas() {
+        long ahora = System.nanoTime();
+        Iterator<ConexionSmtp> it = libres.descendingIterator();
+        while (it.hasNext()) {
+            ConexionSmtp conexion = it.next();
+            if (ahora - conexion.ultimoUsoNanos > maxInactividadNanos && libres.removeLastOccurrence(conexion)) {
+                descartar(conexion);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Pool SMTP: {}", getEstadisticas());
+        }
+    }
+
+    /**
+     * Cierra todas las conexiones libres. Las que están en uso se cierran al devolverse.
+     */
+    public void cerrar() {
+        cerrado = true;
+        desalojo.shutdownNow();
+        if (transporteFueraDeVirtuales != null) {
+            transporteFueraDeVirtuales.shutdown();
+        }
+        ConexionSmtp conexion;
+        while ((conexion = libres.pollFirst()) != null) {
+            descartar(conexion);
+        }
+    }
+
+    /**
+     * @return Una instantánea del estado del pool: tasa de aciertos, conexiones y latencia de conexión.
+     */
+    public EstadisticasPool getEstadisticas() {
+        return new EstadisticasPool(aciertos.sum(), fallos.sum(), tiempoConexion.count(), reconexiones.sum(),
+                maxConexiones - permisos.availablePermits(), libres.size(),
+                (long) tiempoConexion.mean(TimeUnit.NANOSECONDS));
+    }
+
+    static final class ConexionSmtp {
+        final Transport transporte;
+        long ultimoUsoNanos = System.nanoTime();
+        int mensajesEnviados;
+
+        ConexionSmtp(Transport transporte) {
+            this.transporte = transporte;
+        }
+
+        /**
+         * Envía RSET para descartar la transacción SMTP fallida y dejar la conexión lista.
+         *
+         * @return true si el servidor respondió y la conexión puede seguir usándose.
+         */
+        boolean reiniciar() {
+            if (!(transporte instanceof SMTPTransport)) {
+                return false;
+            }
+            try {
+                return ((SMTPTransport) transporte).simpleCommand("RSET") == 250;
+            } catch (MessagingException | RuntimeException e) {
+                return false;
+            }
+        }
+    }
+}
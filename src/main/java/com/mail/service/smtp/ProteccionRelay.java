@@ -0,0 +1,317 @@
+package com.mail.service.smtp;
+
+import com.mail.exceptions.EnvioDiferidoException;
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
+import com.sun.mail.smtp.SMTPSenderFailedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailParseException;
+import org.springframework.mail.MailPreparationException;
+import org.springframework.mail.MailSendException;
+import org.springframework.stereotype.Component;
+
+import javax.mail.MessagingException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Protege al relay SMTP cuando se pone lento o deja de responder: en lugar de que cada
+ * llamador espere el timeout del socket, los envíos que no pueden salir se rechazan de
+ * inmediato con {@link EnvioDiferidoException}.
+ *
+ * Los envíos en curso se limitan con un límite adaptativo al estilo de los limitadores por
+ * gradiente. Cada envío que termina bien aporta su latencia por mensaje, que se compara con
+ * una latencia de referencia de largo plazo: si la latencia supera {@link #TOLERANCIA} veces
+ * la referencia, el límite baja en esa proporción (hasta la mitad por muestra); si no, sube
+ * de a la raíz cuadrada del límite, siempre que se esté usando al menos la mitad. Un fallo
+ * del relay reduce el límite a la mitad.
+ *
+ * Encima del límite hay un circuit breaker. Si entre los últimos {@code ventana} envíos la
+ * proporción de fallos del relay llega a {@code umbralFallos}, el circuito se abre y todos los
+ * envíos se difieren durante {@code esperaAbierto}. Después deja pasar {@code sondas} envíos
+ * de prueba: si todos salen bien se cierra, y si alguno falla vuelve a abrirse.
+ *
+ * Los rechazos de un destinatario, del remitente o del contenido no cuentan como fallos del
+ * relay. Con el sender bloqueante cada envío es un lote por una conexión; con el no
+ * bloqueante, un mensaje.
+ *
+ * Pasan por aquí los envíos sincrónicos de {@code EmailService} y los lotes de
+ * {@code MailDispatcher}, incluidos los de los envíos masivos. Ante un diferimiento el
+ * sincrónico falla y el despachador devuelve el lote a su cola.
+ */
+@Component
+public class ProteccionRelay {
+    private static final Logger log = LoggerFactory.getLogger(ProteccionRelay.class);
+    private static final double TOLERANCIA = 1.5;
+    private static final double SUAVIZADO = 0.2;
+    private static final double PESO_REFERENCIA = 2.0 / 501;
+
+    /**
+     * El estado del circuit breaker.
+     */
+    public enum Estado {
+        CERRADO, ABIERTO, SEMIABIERTO
+    }
+
+    private final int limiteMinimo;
+    private final int limiteMaximo;
+    private final double umbralFallos;
+    private final long esperaAbiertoNanos;
+    private final int sondas;
+    private final Counter diferidosPorLimite;
+    private final Counter diferidosPorCircuito;
+
+    private double limite;
+    private int enCurso;
+    private double latenciaReferencia;
+
+    private Estado estado = Estado.CERRADO;
+    private final boolean[] ventana;
+    private int posicion;
+    private int muestras;
+    private int fallos;
+    private long abiertoHasta;
+    private int sondasEnCurso;
+    private int sondasExitosas;
+
+    public ProteccionRelay(MeterRegistry registry,
+                           @Value("${mail.smtp.resilience.initial-limit:20}") int limiteInicial,
+                           @Value("${mail.smtp.resilience.min-limit:2}") int limiteMinimo,
+                           @Value("${mail.smtp.resilience.max-limit:1000}") int limiteMaximo,
+                           @Value("${mail.smtp.resilience.window:20}") int ventana,
+                           @Value("${mail.smtp.resilience.failure-rate-threshold:0.5}") double umbralFallos,
+                           @Value("${mail.smtp.resilience.open-duration:30s}") Duration esperaAbierto,
+                           @Value("${mail.smtp.resilience.half-open-probes:3}") int sondas) {
+        this.limiteMinimo = Math.max(1, limiteMinimo);
+        this.limiteMaximo = Math.max(this.limiteMinimo, limiteMaximo);
+        this.limite = Math.max(this.limiteMinimo, Math.min(this.limiteMaximo, limiteInicial));
+        this.ventana = new boolean[Math.max(1, ventana)];
+        this.umbralFallos = umbralFallos;
+        this.esperaAbiertoNanos = esperaAbierto.toNanos();
+        this.sondas = Math.max(1, sondas);
+
+        this.diferidosPorLimite = contadorDiferidos(registry, "limite");
+        this.diferidosPorCircuito = contadorDiferidos(registry, "circuito");
+        Gauge.builder("mail.smtp.concurrency.limit", this, ProteccionRelay::getLimite)
+                .description("Envíos SMTP en curso que se permiten según la latencia observada")
+                .register(registry);
+        Gauge.builder("mail.smtp.concurrency.in-flight", this, ProteccionRelay::getEnCurso)
+                .description("Envíos SMTP en curso")
+                .register(registry);
+        Gauge.builder("mail.smtp.circuit.state", this, p -> p.getEstado().ordinal())
+                .description("Estado del circuito del relay SMTP: 0 cerrado, 1 abierto, 2 semiabierto")
+                .register(registry);
+    }
+
+    private static Counter contadorDiferidos(MeterRegistry registry, String motivo) {
+        return Counter.builder("mail.smtp.deferred")
+                .description("Envíos rechazados sin llegar al relay SMTP")
+                .tag("motivo", motivo)
+                .register(registry);
+    }
+
+    /**
+     * Reserva un lugar para un envío. El llamador debe terminar el permiso cuando el envío
+     * termine, haya salido bien o no.
+     *
+     * @throws EnvioDiferidoException Si el circuito está abierto o ya se alcanzó el límite de envíos en curso.
+     */
+    public Permiso adquirir() {
+        return adquirir(System.nanoTime());
+    }
+
+    synchronized Permiso adquirir(long ahora) {
+        if (estado == Estado.ABIERTO) {
+            if (ahora - abiertoHasta < 0) {
+                diferidosPorCircuito.increment();
+                throw new EnvioDiferidoException("El servidor de correo no responde, intente nuevamente más tarde");
+            }
+            cambiarEstado(Estado.SEMIABIERTO);
+            sondasEnCurso = 0;
+            sondasExitosas = 0;
+        }
+        if (estado == Estado.SEMIABIERTO) {
+            if (sondasEnCurso + sondasExitosas >= sondas) {
+                diferidosPorCircuito.increment();
+                throw new EnvioDiferidoException("El servidor de correo se está recuperando, intente nuevamente más tarde");
+            }
+            sondasEnCurso++;
+            enCurso++;
+            return new Permiso(ahora, true);
+        }
+        if (enCurso >= (int) limite) {
+            diferidosPorLimite.increment();
+            throw new EnvioDiferidoException("El servidor de correo está saturado, intente nuevamente más tarde");
+        }
+        enCurso++;
+        return new Permiso(ahora, false);
+    }
+
+    /**
+     * @return false si el circuito está abierto y todavía no es momento de probar el relay.
+     */
+    public synchronized boolean aceptaEnvios() {
+        return estado != Estado.ABIERTO || System.nanoTime() - abiertoHasta >= 0;
+    }
+
+    synchronized void terminar(Permiso permiso, int mensajes, Collection<? extends Throwable> errores, long ahora) {
+        boolean fallo = errores.stream().anyMatch(ProteccionRelay::esFalloDelRelay);
+        enCurso--;
+        if (fallo) {
+            limite = Math.max(limiteMinimo, limite / 2);
+        } else {
+            ajustarLimite((double) Math.max(1, ahora - permiso.inicio) / Math.max(1, mensajes));
+        }
+        if (permiso.sonda) {
+            sondasEnCurso--;
+            if (estado != Estado.SEMIABIERTO) {
+                return;
+            }
+            if (fallo) {
+                abrir(ahora);
+            } else if (++sondasExitosas >= sondas) {
+                cambiarEstado(Estado.CERRADO);
+            }
+        } else if (estado == Estado.CERRADO) {
+            registrar(fallo, ahora);
+        }
+    }
+
+    synchronized void cancelar(Permiso permiso) {
+        enCurso--;
+        if (permiso.sonda) {
+            sondasEnCurso--;
+        }
+    }
+
+    private void ajustarLimite(double latencia) {
+        if (latenciaReferencia == 0) {
+            latenciaReferencia = latencia;
+        } else {
+            latenciaReferencia += (latencia - latenciaReferencia) * PESO_REFERENCIA;
+        }
+        // Tras una mejora sostenida la referencia quedaría alta por mucho tiempo: se acerca antes.
+        if (latenciaReferencia > latencia * 2) {
+            latenciaReferencia *= 0.95;
+        }
+        double gradiente = Math.max(0.5, Math.min(1.0, TOLERANCIA * latenciaReferencia / latencia));
+        double nuevo = limite * gradiente + Math.sqrt(limite);
+        if (nuevo > limite && enCurso + 1 < limite / 2) {
+            return;
+        }
+        nuevo = limite * (1 - SUAVIZADO) + nuevo * SUAVIZADO;
+        limite = Math.max(limiteMinimo, Math.min(limiteMaximo, nuevo));
+    }
+
+    private void registrar(boolean fallo, long ahora) {
+        if (muestras == ventana.length) {
+            if (ventana[posicion]) {
+                fallos--;
+            }
+        } else {
+            muestras++;
+        }
+        ventana[posicion] = fallo;
+        if (fallo) {
+            fallos++;
+        }
+        posicion = (posicion + 1) % ventana.length;
+        if (muestras * 2 >= ventana.length && fallos >= umbralFallos * muestras) {
+            abrir(ahora);
+        }
+    }
+
+    private void abrir(long ahora) {
+        abiertoHasta = ahora + esperaAbiertoNanos;
+        muestras = 0;
+        fallos = 0;
+        posicion = 0;
+        cambiarEstado(Estado.ABIERTO);
+    }
+
+    private void cambiarEstado(Estado nuevo) {
+        if (nuevo == Estado.ABIERTO) {
+            log.warn("Se abre el circuito del relay SMTP: los envíos se difieren por {} s", esperaAbiertoNanos / 1_000_000_000);
+        } else if (nuevo == Estado.CERRADO) {
+            log.info("Se cierra el circuito del relay SMTP");
+        }
+        estado = nuevo;
+    }
+
+    /**
+     * Decide si un error indica que el relay no está sano (conexión rechazada o perdida,
+     * timeout, autenticación, respuesta 4xx del servidor), a diferencia de los que dependen
+     * solo del mensaje o de sus direcciones.
+     */
+    static boolean esFalloDelRelay(Throwable error) {
+        for (Throwable e = error; e != null; e = siguiente(e)) {
+            if (e instanceof MailSendException && !((MailSendException) e).getFailedMessages().isEmpty()) {
+                return ((MailSendException) e).getFailedMessages().values().stream().anyMatch(ProteccionRelay::esFalloDelRelay);
+            }
+            if (e instanceof SMTPAddressFailedException || e instanceof SMTPSenderFailedException
+                    || e instanceof MailParseException || e instanceof MailPreparationException
+                    || e instanceof RejectedExecutionException) {
+                return false;
+            }
+            if (e instanceof SMTPSendFailedException) {
+                return ((SMTPSendFailedException) e).getReturnCode() / 100 == 4;
+            }
+        }
+        return error != null;
+    }
+
+    private static Throwable siguiente(Throwable e) {
+        if (e instanceof MessagingException && ((MessagingException) e).getNextException() != null) {
+            return ((MessagingException) e).getNextException();
+        }
+        return e.getCause() != e ? e.getCause() : null;
+    }
+
+    public synchronized int getLimite() {
+        return (int) limite;
+    }
+
+    public synchronized int getEnCurso() {
+        return enCurso;
+    }
+
+    public synchronized Estado getEstado() {
+        return estado;
+    }
+
+    /**
+     * Un lugar reservado por {@link #adquirir()}.
+     */
+    public final class Permiso {
+        private final long inicio;
+        private final boolean sonda;
+
+        private Permiso(long inicio, boolean sonda) {
+            this.inicio = inicio;
+            this.sonda = sonda;
+        }
+
+        /**
+         * Libera el lugar e informa el resultado del envío.
+         *
+         * @param mensajes Los mensajes del envío, para medir la latencia por mensaje.
+         * @param errores  Los errores de los mensajes que fallaron; vacío si salieron todos.
+         */
+        public void terminar(int mensajes, Collection<? extends Throwable> errores) {
+            ProteccionRelay.this.terminar(this, mensajes, errores, System.nanoTime());
+        }
+
+        /**
+         * Libera el lugar sin informar un resultado, porque el envío no llegó a empezar.
+         */
+        public void cancelar() {
+            ProteccionRelay.this.cancelar(this);
+        }
+    }
+}
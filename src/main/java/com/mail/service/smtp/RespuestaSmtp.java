@@ -0,0 +1,62 @@
+package com.mail.service.smtp;
+
+import java.util.List;
+
+/**
+ * Una respuesta completa del servidor SMTP: el código y sus líneas de texto, ya sin el código.
+ * Las respuestas de varias líneas ('250-...' seguidas de '250 ...') se juntan en una sola.
+ */
+final class RespuestaSmtp {
+    final int codigo;
+    final List<String> lineas;
+
+    RespuestaSmtp(int codigo, List<String> lineas) {
+        this.codigo = codigo;
+        this.lineas = lineas;
+    }
+
+    boolean esPositiva() {
+        return codigo >= 200 && codigo < 300;
+    }
+
+    boolean esIntermedia() {
+        return codigo >= 300 && codigo < 400;
+    }
+
+    /**
+     * @return El código de la línea, o -1 si no empieza con tres dígitos.
+     */
+    static int codigo(String linea) {
+        if (linea.length() < 3) {
+            return -1;
+        }
+        int codigo = 0;
+        for (int i = 0; i < 3; i++) {
+            char c = linea.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            codigo = codigo * 10 + (c - '0');
+        }
+        return codigo;
+    }
+
+    /**
+     * @return true si la línea cierra la respuesta: le sigue un espacio o nada al código, no un guion.
+     */
+    static boolean esUltimaLinea(String linea) {
+        return linea.length() == 3 || linea.charAt(3) != '-';
+    }
+
+    /**
+     * @return El texto de la línea sin el código ni el separador.
+     */
+    static String texto(String linea) {
+        return linea.length() > 4 ? linea.substring(4) : "";
+    }
+
+    @Override
+    public String toString() {
+        return codigo + " " + String.join(" / ", lineas);
+    }
+}
@@ -0,0 +1,538 @@
+package com.mail.service.smtp;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.concurrent.ScheduledFuture;
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
+import com.sun.mail.smtp.SMTPSenderFailedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.mail.Address;
+import javax.mail.AuthenticationFailedException;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.internet.InternetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Una conexión SMTP de {@link NioMailSender}. Es una máquina de estados que corre entera en el
+ * hilo de eventos de su canal: nunca bloquea, solo escribe comandos y reacciona a respuestas.
+ *
+ * Al conectarse hace EHLO, STARTTLS y AUTH (PLAIN o LOGIN) según la configuración y lo que
+ * anuncie el servidor. Después toma mensajes de la cola del sender de a uno:
+ * <ul>
+ *     <li>Con PIPELINING escribe MAIL, todos los RCPT y DATA de una vez, y con CHUNKING manda el
+ *     contenido con un solo 'BDAT n LAST' en cuanto se aceptan los destinatarios, sin recorrerlo
+ *     para duplicar puntos.</li>
+ *     <li>Con 8BITMIME marca como 'BODY=8BITMIME' los mensajes que tienen bytes de 8 bits.</li>
+ *     <li>Sin esas extensiones conversa comando por comando, como JavaMail.</li>
+ * </ul>
+ * Igual que JavaMail sin 'mail.smtp.sendpartial', un destinatario rechazado hace fallar el
+ * mensaje entero: si el servidor ya aceptó el DATA, la conexión se corta antes de mandar el
+ * contenido para que no se entregue a los demás.
+ */
+final class SesionSmtpNio extends SimpleChannelInboundHandler<String> {
+    private static final Logger log = LoggerFactory.getLogger(SesionSmtpNio.class);
+
+    private enum Estado { SALUDO, EHLO, STARTTLS, AUTH, AUTH_USUARIO, AUTH_CLAVE, LIBRE, TRANSACCION, RSET, QUIT }
+
+    private enum Paso { MAIL, RCPT, DATA, CONTENIDO }
+
+    private final NioMailSender motor;
+    private final NioMailSender.Configuracion config;
+    private final long inicioConexion = System.nanoTime();
+    private ChannelHandlerContext ctx;
+    private Estado estado = Estado.SALUDO;
+    private boolean tls;
+    private boolean establecida;
+    private boolean cerrada;
+    private int mensajesEnviados;
+    private ScheduledFuture<?> vencimiento;
+
+    private final List<String> lineas = new ArrayList<>();
+    private final Set<String> extensiones = new HashSet<>();
+    private final Set<String> mecanismosAuth = new HashSet<>();
+
+    private EnvioSmtp envio;
+    private long inicioEnvio;
+    private final ArrayDeque<Paso> esperados = new ArrayDeque<>();
+    private int rcptEnviados;
+    private int rcptRespondidos;
+    private final List<Address> aceptados = new ArrayList<>();
+    private final List<Address> rechazados = new ArrayList<>();
+    private MessagingException error;
+
+    SesionSmtpNio(NioMailSender motor, NioMailSender.Configuracion config, boolean tls) {
+        this.motor = motor;
+        this.config = config;
+        this.tls = tls;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) {
+        esperarRespuesta();
+        ctx.fireChannelActive();
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, String linea) {
+        int codigo = RespuestaSmtp.codigo(linea);
+        if (codigo < 0) {
+            perder(new MessagingException("Respuesta SMTP inválida: " + linea));
+            return;
+        }
+        lineas.add(RespuestaSmtp.texto(linea));
+        if (!RespuestaSmtp.esUltimaLinea(linea)) {
+            return;
+        }
+        RespuestaSmtp respuesta = new RespuestaSmtp(codigo, List.copyOf(lineas));
+        lineas.clear();
+        cancelarVencimiento();
+        try {
+            procesar(respuesta);
+        } catch (RuntimeException e) {
+            perder(new MessagingException("Error al procesar la respuesta SMTP " + respuesta, e));
+        }
+    }
+
+    private void procesar(RespuestaSmtp respuesta) {
+        switch (estado) {
+            case SALUDO -> {
+                if (respuesta.codigo != 220) {
+                    fallarConexion(new MessagingException("El servidor SMTP rechazó la conexión: " + respuesta));
+                    return;
+                }
+                ehlo();
+            }
+            case EHLO -> alResponderEhlo(respuesta);
+            case STARTTLS -> {
+                if (respuesta.codigo != 220) {
+                    fallarConexion(new MessagingException("El servidor SMTP rechazó STARTTLS: " + respuesta));
+                    return;
+                }
+                iniciarTls();
+            }
+            case AUTH, AUTH_USUARIO, AUTH_CLAVE -> alResponderAuth(respuesta);
+            case TRANSACCION -> alResponderTransaccion(respuesta);
+            case RSET -> {
+                if (!respuesta.esPositiva()) {
+                    perder(new MessagingException("El servidor SMTP rechazó RSET: " + respuesta));
+                    return;
+                }
+                siguiente();
+            }
+            case QUIT -> ctx.close();
+            default -> perder(new MessagingException("Respuesta SMTP inesperada: " + respuesta));
+        }
+    }
+
+    // ------------------------------------------------------------------ conexión
+
+    private void ehlo() {
+        estado = Estado.EHLO;
+        escribir("EHLO " + config.dominio);
+        ctx.flush();
+        esperarRespuesta();
+    }
+
+    private void alResponderEhlo(RespuestaSmtp respuesta) {
+        if (respuesta.codigo != 250) {
+            fallarConexion(new MessagingException("El servidor SMTP rechazó EHLO: " + respuesta));
+            return;
+        }
+        extensiones.clear();
+        mecanismosAuth.clear();
+        // La primera línea es el saludo; cada una de las siguientes anuncia una extensión.
+        for (String linea : respuesta.lineas.subList(1, respuesta.lineas.size())) {
+            String[] partes = linea.toUpperCase(Locale.ROOT).split(" ");
+            extensiones.add(partes[0]);
+            if (partes[0].equals("AUTH")) {
+                mecanismosAuth.addAll(List.of(partes).subList(1, partes.length));
+            }
+        }
+        if (!tls && config.starttls && extensiones.contains("STARTTLS")) {
+            estado = Estado.STARTTLS;
+            escribir("STARTTLS");
+            ctx.flush();
+            esperarRespuesta();
+            return;
+        }
+        if (!tls && config.starttlsObligatorio) {
+            fallarConexion(new MessagingException("El servidor SMTP no ofrece STARTTLS y es obligatorio"));
+            return;
+        }
+        autenticar();
+    }
+
+    private void iniciarTls() {
+        SslHandler ssl = motor.crearSslHandler(ctx.alloc());
+        ctx.pipeline().addFirst("tls", ssl);
+        ssl.handshakeFuture().addListener(f -> {
+            if (!f.isSuccess()) {
+                fallarConexion(new MessagingException("Falló la negociación TLS con el servidor SMTP",
+                        f.cause() instanceof Exception ? (Exception) f.cause() : null));
+                return;
+            }
+            tls = true;
+            ehlo();
+        });
+    }
+
+    private void autenticar() {
+        if (!config.autenticar) {
+            lista();
+            return;
+        }
+        if (mecanismosAuth.contains("PLAIN")) {
+            estado = Estado.AUTH;
+            String credenciales = "\0" + config.usuario + "\0" + config.clave;
+            escribir("AUTH PLAIN " + base64(credenciales));
+        } else if (mecanismosAuth.contains("LOGIN")) {
+            estado = Estado.AUTH_USUARIO;
+            escribir("AUTH LOGIN");
+        } else {
+            fallarConexion(new MessagingException("El servidor SMTP no ofrece AUTH PLAIN ni LOGIN"));
+            return;
+        }
+        ctx.flush();
+        esperarRespuesta();
+    }
+
+    private void alResponderAuth(RespuestaSmtp respuesta) {
+        if (estado == Estado.AUTH_USUARIO && respuesta.codigo == 334) {
+            estado = Estado.AUTH_CLAVE;
+            escribir(base64(config.usuario));
+        } else if (estado == Estado.AUTH_CLAVE && respuesta.codigo == 334) {
+            estado = Estado.AUTH;
+            escribir(base64(config.clave));
+        } else if (estado == Estado.AUTH && respuesta.codigo == 235) {
+            lista();
+            return;
+        } else {
+            fallarConexion(new AuthenticationFailedException(respuesta.toString()));
+            return;
+        }
+        ctx.flush();
+        esperarRespuesta();
+    }
+
+    private void lista() {
+        establecida = true;
+        motor.sesionLista(System.nanoTime() - inicioConexion);
+        log.debug("Conexión SMTP lista, extensiones {}", extensiones);
+        estado = Estado.LIBRE;
+        siguiente();
+    }
+
+    // ------------------------------------------------------------------ transacciones
+
+    /**
+     * Toma el próximo mensaje de la cola, o deja la conexión libre en el pool si no hay ninguno.
+     * También lo llama el sender, en el hilo de eventos, al sacar esta conexión del pool.
+     */
+    void siguiente() {
+        if (cerrada || estado != Estado.LIBRE) {
+            return;
+        }
+        if (mensajesEnviados >= config.maxMensajesPorConexion || motor.isCerrado()) {
+            estado = Estado.QUIT;
+            escribir("QUIT");
+            ctx.flush();
+            esperarRespuesta();
+            return;
+        }
+        EnvioSmtp proximo = motor.tomarPendiente();
+        if (proximo == null) {
+            motor.quedarLibre(this);
+            // Un mensaje que llegó entre tomarPendiente() y quedarLibre() no encontró esta
+            // conexión en el pool; se vuelve a mirar la cola para no dejarlo esperando.
+            proximo = motor.tomarPendiente();
+            if (proximo == null) {
+                return;
+            }
+            if (!motor.reclamar(this)) {
+                // El sender ya sacó la conexión del pool y va a llamar a siguiente().
+                motor.devolverPendiente(proximo);
+                return;
+            }
+        }
+        iniciar(proximo);
+    }
+
+    private void iniciar(EnvioSmtp proximo) {
+        envio = proximo;
+        envio.intentos++;
+        inicioEnvio = System.nanoTime();
+        estado = Estado.TRANSACCION;
+        esperados.clear();
+        rcptEnviados = 0;
+        rcptRespondidos = 0;
+        aceptados.clear();
+        rechazados.clear();
+        error = null;
+
+        String cuerpo = envio.ochoBits && extensiones.contains("8BITMIME") ? " BODY=8BITMIME" : "";
+        escribir("MAIL FROM:<" + envio.remitente + ">" + cuerpo);
+        esperados.add(Paso.MAIL);
+        if (extensiones.contains("PIPELINING")) {
+            while (rcptEnviados < envio.destinatarios.size()) {
+                enviarRcpt();
+            }
+            if (!usarBdat()) {
+                escribir("DATA");
+                esperados.add(Paso.DATA);
+            }
+        }
+        ctx.flush();
+        esperarRespuesta();
+    }
+
+    private void enviarRcpt() {
+        escribir("RCPT TO:<" + envio.destinatarios.get(rcptEnviados++) + ">");
+        esperados.add(Paso.RCPT);
+    }
+
+    private boolean usarBdat() {
+        return extensiones.contains("CHUNKING");
+    }
+
+    private void alResponderTransaccion(RespuestaSmtp respuesta) {
+        Paso paso = esperados.poll();
+        if (paso == null) {
+            perder(new MessagingException("Respuesta SMTP inesperada: " + respuesta));
+            return;
+        }
+        boolean canalizado = extensiones.contains("PIPELINING");
+        switch (paso) {
+            case MAIL -> {
+                if (!respuesta.esPositiva()) {
+                    error = new SMTPSenderFailedException(envio.remitente.isEmpty() ? null : direccion(envio.remitente),
+                            "MAIL FROM", respuesta.codigo, "MAIL FROM rechazado: " + respuesta);
+                } else if (!canalizado) {
+                    enviarRcpt();
+                }
+            }
+            case RCPT -> {
+                InternetAddress direccion = direccion(envio.destinatarios.get(rcptRespondidos++));
+                if (respuesta.esPositiva()) {
+                    aceptados.add(direccion);
+                } else if (error == null || !rechazados.isEmpty()) {
+                    // Si antes se rechazó MAIL FROM, los RCPT canalizados fallan por eso y no por la dirección.
+                    rechazados.add(direccion);
+                    if (error == null) {
+                        error = new SMTPAddressFailedException(direccion, "RCPT TO", respuesta.codigo,
+                                "Destinatario rechazado " + direccion + ": " + respuesta);
+                    }
+                }
+                boolean ultimo = rcptRespondidos == envio.destinatarios.size();
+                if (!canalizado && !ultimo && error == null) {
+                    enviarRcpt();
+                } else if (ultimo && error == null && (usarBdat() || !canalizado)) {
+                    enviarDatos();
+                }
+            }
+            case DATA -> {
+                if (respuesta.codigo == 354 && error != null) {
+                    // No hay forma de cancelar un DATA aceptado sin entregar algo: se corta la conexión.
+                    fallarEnvio();
+                    estado = Estado.QUIT;
+                    cerrar();
+                    ctx.close();
+                    return;
+                }
+                if (respuesta.codigo == 354) {
+                    ctx.write(EnvioSmtp.conPuntos(envio.contenido, ctx.alloc()));
+                    esperados.add(Paso.CONTENIDO);
+                } else if (error == null) {
+                    error = new SMTPSendFailedException("DATA", respuesta.codigo, "DATA rechazado: " + respuesta, null, null, null, null);
+                }
+            }
+            case CONTENIDO -> {
+                if (!respuesta.esPositiva()) {
+                    error = new SMTPSendFailedException(usarBdat() ? "BDAT" : "DATA", respuesta.codigo, "Mensaje rechazado: " + respuesta,
+                            null, null, null, null);
+                }
+            }
+        }
+        if (!esperados.isEmpty()) {
+            ctx.flush();
+            esperarRespuesta();
+            return;
+        }
+        if (error == null && paso == Paso.CONTENIDO) {
+            motor.registrarEnvio(true, System.nanoTime() - inicioEnvio);
+            mensajesEnviados++;
+            EnvioSmtp terminado = envio;
+            envio = null;
+            terminado.completar();
+            estado = Estado.LIBRE;
+            siguiente();
+        } else if (error != null) {
+            terminarConError(paso != Paso.CONTENIDO);
+        }
+    }
+
+    private void enviarDatos() {
+        if (usarBdat()) {
+            escribir("BDAT " + envio.contenido.readableBytes() + " LAST");
+            ctx.write(envio.contenido.retainedDuplicate());
+            esperados.add(Paso.CONTENIDO);
+        } else {
+            escribir("DATA");
+            esperados.add(Paso.DATA);
+        }
+    }
+
+    /**
+     * Falla el mensaje en curso por una respuesta del servidor. La conexión sigue sana: si la
+     * transacción quedó abierta se descarta con RSET antes de tomar el próximo mensaje.
+     */
+    private void terminarConError(boolean reiniciar) {
+        fallarEnvio();
+        if (reiniciar) {
+            estado = Estado.RSET;
+            escribir("RSET");
+            ctx.flush();
+            esperarRespuesta();
+        } else {
+            estado = Estado.LIBRE;
+            siguiente();
+        }
+    }
+
+    private void fallarEnvio() {
+        motor.registrarEnvio(false, System.nanoTime() - inicioEnvio);
+        MessagingException causa = error;
+        if (!rechazados.isEmpty()) {
+            causa = new SendFailedException("Destinatarios rechazados por el servidor SMTP", error,
+                    new Address[0], aceptados.toArray(new Address[0]), rechazados.toArray(new Address[0]));
+        }
+        EnvioSmtp fallido = envio;
+        envio = null;
+        fallido.fallar(causa);
+    }
+
+    // ------------------------------------------------------------------ fallas y cierre
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evento) {
+        if (evento instanceof IdleStateEvent && estado == Estado.LIBRE && motor.reclamar(this)) {
+            log.debug("Se cierra una conexión SMTP inactiva");
+            estado = Estado.QUIT;
+            escribir("QUIT");
+            ctx.flush();
+            esperarRespuesta();
+            return;
+        }
+        ctx.fireUserEventTriggered(evento);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable causa) {
+        log.debug("Error en la conexión SMTP", causa);
+        perder(new MessagingException("Error en la conexión SMTP: " + causa.getMessage(),
+                causa instanceof Exception ? (Exception) causa : null));
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        if (estado != Estado.QUIT) {
+            perder(new MessagingException("El servidor SMTP cerró la conexión"));
+        }
+        cerrar();
+        ctx.fireChannelInactive();
+    }
+
+    private void fallarConexion(MessagingException causa) {
+        log.warn("No se pudo establecer la conexión SMTP: {}", causa.getMessage());
+        motor.conexionFallida(causa);
+        cerrar();
+        ctx.close();
+    }
+
+    /**
+     * La conexión se perdió o quedó en un estado desconocido: se cierra y el mensaje en curso
+     * vuelve a la cola para reintentarlo una vez con otra conexión.
+     */
+    private void perder(MessagingException causa) {
+        if (!establecida && !cerrada) {
+            fallarConexion(causa);
+            return;
+        }
+        if (envio != null) {
+            motor.registrarEnvio(false, System.nanoTime() - inicioEnvio);
+            EnvioSmtp perdido = envio;
+            envio = null;
+            motor.reintentarOFallar(perdido, causa);
+        }
+        cerrar();
+        ctx.close();
+    }
+
+    private void cerrar() {
+        if (!cerrada) {
+            cerrada = true;
+            cancelarVencimiento();
+            motor.sesionCerrada(this, establecida);
+        }
+    }
+
+    /**
+     * Retoma la conexión desde otro hilo, después de que el sender la sacó del pool.
+     */
+    void activar() {
+        ctx.executor().execute(this::siguiente);
+    }
+
+    // ------------------------------------------------------------------ utilidades
+
+    private void escribir(String comando) {
+        ByteBuf buf = ctx.alloc().buffer(comando.length() + 2);
+        buf.writeCharSequence(comando, StandardCharsets.US_ASCII);
+        buf.writeByte('\r').writeByte('\n');
+        ctx.write(buf);
+    }
+
+    private void esperarRespuesta() {
+        cancelarVencimiento();
+        vencimiento = ctx.executor().schedule(() -> perder(new MessagingException(
+                "Tiempo de espera agotado esperando la respuesta del servidor SMTP")), config.tiempoRespuestaMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelarVencimiento() {
+        if (vencimiento != null) {
+            vencimiento.cancel(false);
+            vencimiento = null;
+        }
+    }
+
+    private static InternetAddress direccion(String direccion) {
+        try {
+            return new InternetAddress(direccion, false);
+        } catch (MessagingException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static String base64(String texto) {
+        return Base64.getEncoder().encodeToString(texto.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,7 @@
+package com.mail.service.template;
+
+/**
+ * Asunto y cuerpo de un correo ya completados con las variables del destinatario.
+ */
+public record CorreoRenderizado(String asunto, String cuerpo, boolean html) {
+}
@@ -0,0 +1,167 @@
+package com.mail.service.template;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Plantilla de texto con marcadores {@code {{variable}}} que se analiza una sola vez.
+ *
+ * Al compilarse, el texto queda dividido en literales y nombres de variable, de modo que
+ * renderizar solo consiste en concatenar los literales con los valores de cada destinatario
+ * sobre un {@link StringBuilder} que el llamador puede reutilizar. Una variable sin valor se
+ * reemplaza por una cadena vacía.
+ */
+public final class PlantillaCompilada {
+    private static final String APERTURA = "{{";
+    private static final String CIERRE = "}}";
+
+    private final String[] literales;
+    private final String[] variables;
+    private final boolean escaparHtml;
+    private final int longitudLiterales;
+
+    private PlantillaCompilada(String[] literales, String[] variables, boolean escaparHtml) {
+        this.literales = literales;
+        this.variables = variables;
+        this.escaparHtml = escaparHtml;
+        int longitud = 0;
+        for (String literal : literales) {
+            longitud += literal.length();
+        }
+        this.longitudLiterales = longitud;
+    }
+
+    /**
+     * Analiza el texto de la plantilla.
+     *
+     * @param fuente      El texto con marcadores {@code {{variable}}}.
+     * @param escaparHtml Si es true, los valores se escapan como HTML al renderizar.
+     * @return La plantilla compilada.
+     */
+    public static PlantillaCompilada compilar(String fuente, boolean escaparHtml) {
+        List<String> literales = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        int desde = 0;
+        while (true) {
+            int apertura = fuente.indexOf(APERTURA, desde);
+            int cierre = apertura < 0 ? -1 : fuente.indexOf(CIERRE, apertura + APERTURA.length());
+            if (cierre < 0) {
+                literales.add(fuente.substring(desde));
+                break;
+            }
+            literales.add(fuente.substring(desde, apertura));
+            variables.add(fuente.substring(apertura + APERTURA.length(), cierre).trim());
+            desde = cierre + CIERRE.length();
+        }
+        return new PlantillaCompilada(literales.toArray(new String[0]), variables.toArray(new String[0]), escaparHtml);
+    }
+
+    /**
+     * Renderiza la plantilla al final del buffer indicado.
+     *
+     * @param valores Función que devuelve el valor de cada variable, o null si no tiene valor.
+     * @param destino El buffer donde se escribe el resultado.
+     */
+    public void renderizar(Function<String, String> valores, StringBuilder destino) {
+        destino.ensureCapacity(destino.length() + longitudLiterales + variables.length * 16);
+        for (int i = 0; i < variables.length; i++) {
+            destino.append(literales[i]);
+            String valor = valores.apply(variables[i]);
+            if (valor == null) {
+                continue;
+            }
+            if (escaparHtml) {
+                escapar(valor, destino);
+            } else {
+                destino.append(valor);
+            }
+        }
+        destino.append(literales[variables.length]);
+    }
+
+    /**
+     * Renderiza la plantilla con los valores del mapa.
+     *
+     * @param valores Los valores de las variables.
+     * @return El texto resultante.
+     */
+    public String renderizar(Map<String, String> valores) {
+        StringBuilder destino = new StringBuilder(longitudLiterales + variables.length * 16);
+        renderizar(valores::get, destino);
+        return destino.toString();
+    }
+
+    /**
+     * @return Si los valores se escapan como HTML al renderizar.
+     */
+    public boolean isEscaparHtml() {
+        return escaparHtml;
+    }
+
+    /**
+     * @return La cantidad de marcadores de la plantilla. Hay un literal más que marcadores.
+     */
+    public int getCantidadMarcadores() {
+        return variables.length;
+    }
+
+    /**
+     * @param indice La posición del literal, de 0 a {@link #getCantidadMarcadores()} inclusive.
+     * @return El texto fijo que precede al marcador de esa posición, o el final de la plantilla.
+     */
+    public String getLiteral(int indice) {
+        return literales[indice];
+    }
+
+    /**
+     * @param indice La posición del marcador.
+     * @return El nombre de la variable de ese marcador.
+     */
+    public String getVariable(int indice) {
+        return variables[indice];
+    }
+
+    /**
+     * @return Los nombres de las variables que usa la plantilla, sin repetir y en orden de aparición.
+     */
+    public List<String> getVariables() {
+        return Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(List.of(variables))));
+    }
+
+    /**
+     * @param c Un carácter de un valor.
+     * @return La entidad HTML que lo reemplaza, o null si puede escribirse tal cual.
+     */
+    public static String entidadHtml(char c) {
+        switch (c) {
+            case '<':
+                return "&lt;";
+            case '>':
+                return "&gt;";
+            case '&':
+                return "&amp;";
+            case '"':
+                return "&quot;";
+            case '\'':
+                return "&#39;";
+            default:
+                return null;
+        }
+    }
+
+    private static void escapar(String valor, StringBuilder destino) {
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            String entidad = entidadHtml(c);
+            if (entidad != null) {
+                destino.append(entidad);
+            } else {
+                destino.append(c);
+            }
+        }
+    }
+}
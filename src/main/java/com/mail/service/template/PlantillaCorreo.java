@@ -0,0 +1,33 @@
+package com.mail.service.template;
+
+/**
+ * Correos que envía la aplicación. El cuerpo de cada uno está en {@code src/main/resources/mail}
+ * y usa marcadores {@code {{variable}}}.
+ */
+public enum PlantillaCorreo {
+    /** Variables: {@code enlace}. */
+    RESET_PASSWORD("reset-password.html", "Aquí está el enlace para restablecer su contraseña: ", true),
+    CONFIRMACION_CAMBIO_PASSWORD("confirmacion-cambio-password.txt", "Contraseña Actualizada", false);
+
+    private final String archivo;
+    private final String asunto;
+    private final boolean html;
+
+    PlantillaCorreo(String archivo, String asunto, boolean html) {
+        this.archivo = archivo;
+        this.asunto = asunto;
+        this.html = html;
+    }
+
+    public String getArchivo() {
+        return archivo;
+    }
+
+    public String getAsunto() {
+        return asunto;
+    }
+
+    public boolean isHtml() {
+        return html;
+    }
+}
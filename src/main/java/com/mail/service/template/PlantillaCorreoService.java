@@ -0,0 +1,83 @@
+package com.mail.service.template;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Renderiza los correos de {@link PlantillaCorreo}.
+ *
+ * Todas las plantillas se leen y compilan una sola vez al crear el servicio. Cada hilo
+ * renderiza sobre su propio buffer, que se reutiliza entre envíos, de modo que un envío solo
+ * reserva memoria para el texto final.
+ */
+@Service
+public class PlantillaCorreoService {
+    private static final String UBICACION = "mail/";
+    private static final int MAX_BUFFER_RETENIDO = 64 * 1024;
+
+    private final Map<PlantillaCorreo, PlantillaCompilada> asuntos = new EnumMap<>(PlantillaCorreo.class);
+    private final Map<PlantillaCorreo, PlantillaCompilada> cuerpos = new EnumMap<>(PlantillaCorreo.class);
+    private final ThreadLocal<StringBuilder> buffers = ThreadLocal.withInitial(() -> new StringBuilder(8 * 1024));
+
+    public PlantillaCorreoService() {
+        for (PlantillaCorreo plantilla : PlantillaCorreo.values()) {
+            asuntos.put(plantilla, PlantillaCompilada.compilar(plantilla.getAsunto(), false));
+            cuerpos.put(plantilla, PlantillaCompilada.compilar(leer(plantilla), plantilla.isHtml()));
+        }
+    }
+
+    /**
+     * Completa el asunto y el cuerpo de un correo con las variables indicadas.
+     *
+     * @param plantilla El correo a renderizar.
+     * @param variables Los valores de las variables de la plantilla.
+     * @return El asunto y el cuerpo listos para enviar.
+     */
+    public CorreoRenderizado renderizar(PlantillaCorreo plantilla, Map<String, String> variables) {
+        StringBuilder buffer = buffers.get();
+        try {
+            buffer.setLength(0);
+            asuntos.get(plantilla).renderizar(variables::get, buffer);
+            String asunto = buffer.toString();
+            buffer.setLength(0);
+            cuerpos.get(plantilla).renderizar(variables::get, buffer);
+            return new CorreoRenderizado(asunto, buffer.toString(), plantilla.isHtml());
+        } finally {
+            if (buffer.capacity() > MAX_BUFFER_RETENIDO) {
+                buffers.remove();
+            }
+        }
+    }
+
+    /**
+     * @param plantilla El correo cuya plantilla se pide.
+     * @return La plantilla compilada del asunto.
+     */
+    public PlantillaCompilada getAsunto(PlantillaCorreo plantilla) {
+        return asuntos.get(plantilla);
+    }
+
+    /**
+     * @param plantilla El correo cuya plantilla se pide.
+     * @return La plantilla compilada del cuerpo.
+     */
+    public PlantillaCompilada getCuerpo(PlantillaCorreo plantilla) {
+        return cuerpos.get(plantilla);
+    }
+
+    private static String leer(PlantillaCorreo plantilla) {
+        try (InputStream entrada = new ClassPathResource(UBICACION + plantilla.getArchivo()).getInputStream()) {
+            return StreamUtils.copyToString(entrada, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo leer la plantilla de correo " + plantilla.getArchivo(), e);
+        }
+    }
+}
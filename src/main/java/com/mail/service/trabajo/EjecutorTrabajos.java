@@ -0,0 +1,106 @@
+package com.mail.service.trabajo;
+
+import com.mail.exceptions.MiExcepcion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Corre trabajos en segundo plano, cada uno en su propio hilo, y los recuerda para consultar
+ * su progreso.
+ *
+ * No hay cola: si ya corren {@code maxTrabajos}, el trabajo nuevo se rechaza en el acto. Los
+ * trabajos terminados se descartan al iniciar otro, si empezaron hace más de {@link #RETENCION}.
+ *
+ * @param <T> El tipo de trabajo.
+ */
+public final class EjecutorTrabajos<T extends Trabajo> {
+    private static final Logger log = LoggerFactory.getLogger(EjecutorTrabajos.class);
+    static final Duration RETENCION = Duration.ofHours(1);
+
+    private final ThreadPoolExecutor hilos;
+    private final Map<String, T> trabajosPorId = new ConcurrentHashMap<>();
+
+    /**
+     * @param nombreHilos El prefijo del nombre de los hilos.
+     * @param maxTrabajos Los trabajos que pueden correr a la vez.
+     */
+    public EjecutorTrabajos(String nombreHilos, int maxTrabajos) {
+        this.hilos = new ThreadPoolExecutor(maxTrabajos, maxTrabajos, 0L, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<>(), new CustomizableThreadFactory(nombreHilos));
+    }
+
+    /**
+     * Empieza a correr el trabajo.
+     *
+     * @param trabajo El trabajo, que se podrá buscar por su id.
+     * @param tarea   Lo que hace el trabajo.
+     * @param ocupado El mensaje si ya corren demasiados trabajos.
+     * @throws MiExcepcion Si ya corren demasiados trabajos.
+     */
+    public void iniciar(T trabajo, Runnable tarea, String ocupado) throws MiExcepcion {
+        Instant limite = Instant.now().minus(RETENCION);
+        trabajosPorId.values().removeIf(t -> t.isTerminado() && t.getInicio().isBefore(limite));
+        try {
+            hilos.execute(tarea);
+        } catch (RejectedExecutionException e) {
+            throw new MiExcepcion(ocupado);
+        }
+        trabajosPorId.put(trabajo.getId(), trabajo);
+    }
+
+    /**
+     * @return El trabajo, si existe y no fue descartado por antigüedad.
+     */
+    public Optional<T> buscar(String id) {
+        return Optional.ofNullable(trabajosPorId.get(id));
+    }
+
+    /**
+     * Interrumpe los trabajos en curso.
+     */
+    public void cerrar() {
+        hilos.shutdownNow();
+    }
+
+    /**
+     * Copia un archivo subido a un archivo temporal, porque el de la petición se borra al
+     * responder y el trabajo lo lee después.
+     *
+     * @throws MiExcepcion Si no se puede leer el archivo.
+     */
+    public static Path copiar(MultipartFile archivo, String prefijo) throws MiExcepcion {
+        try (InputStream entrada = archivo.getInputStream()) {
+            Path copia = Files.createTempFile(prefijo, ".csv");
+            Files.copy(entrada, copia, StandardCopyOption.REPLACE_EXISTING);
+            return copia;
+        } catch (IOException e) {
+            log.error("Error al copiar el archivo subido {}", archivo.getOriginalFilename(), e);
+            throw new MiExcepcion("No se pudo leer el archivo CSV");
+        }
+    }
+
+    public static void borrar(Path archivo) {
+        try {
+            Files.deleteIfExists(archivo);
+        } catch (IOException e) {
+            log.warn("No se pudo borrar el archivo temporal {}", archivo, e);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.mail.service.trabajo;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limita las tareas de un trabajo que están en curso a la vez. Quien agrega tareas se bloquea
+ * cuando se llega al máximo, así la memoria usada no depende del tamaño del trabajo.
+ */
+public final class EnVuelo {
+    private final int maximo;
+    private final Semaphore lugares;
+
+    public EnVuelo(int maximo) {
+        this.maximo = maximo;
+        this.lugares = new Semaphore(maximo);
+    }
+
+    /**
+     * Espera a que haya lugar y lo ocupa. Quien lo ocupa debe {@link #liberar()}lo al terminar.
+     */
+    public void ocupar() {
+        lugares.acquireUninterruptibly();
+    }
+
+    public void liberar() {
+        lugares.release();
+    }
+
+    /**
+     * Ocupa un lugar y corre la tarea en el executor; el lugar se libera cuando termina.
+     *
+     * @throws RejectedExecutionException Si el executor rechaza la tarea.
+     */
+    public void ejecutar(Executor executor, Runnable tarea) {
+        ocupar();
+        try {
+            executor.execute(() -> {
+                try {
+                    tarea.run();
+                } finally {
+                    liberar();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            liberar();
+            throw e;
+        }
+    }
+
+    /**
+     * Espera a que terminen todas las tareas en curso.
+     */
+    public void esperarTodas() {
+        lugares.acquireUninterruptibly(maximo);
+        lugares.release(maximo);
+    }
+}
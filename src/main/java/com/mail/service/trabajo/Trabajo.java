@@ -0,0 +1,16 @@
+package com.mail.service.trabajo;
+
+import java.time.Instant;
+
+/**
+ * Un trabajo largo que corre en segundo plano y cuyo progreso se consulta por su id.
+ */
+public interface Trabajo {
+    String getId();
+
+    String getOrigen();
+
+    Instant getInicio();
+
+    boolean isTerminado();
+}
@@ -0,0 +1,68 @@
+package com.mail.service.vista;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Completa las cabeceras de los recursos estáticos servidos con la versión de su contenido en
+ * el nombre ('login-&lt;md5&gt;.css', ver 'spring.web.resources.chain.strategy.content').
+ *
+ * Como la URL cambia cuando cambia el archivo, la respuesta se marca 'immutable' para que el
+ * navegador no la revalide mientras dure su max-age, y el hash de la URL sirve de ETag: una
+ * revalidación con If-None-Match recibe 304 sin llegar a leer el archivo. El ETag es débil
+ * porque la misma URL se sirve con y sin compresión.
+ */
+public class FiltroRecursosVersionados extends OncePerRequestFilter {
+    private static final Pattern VERSIONADO = Pattern.compile("-([0-9a-f]{32})\\.[^/.]+$");
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !("GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod()))
+                || !VERSIONADO.matcher(request.getRequestURI()).find();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Matcher version = VERSIONADO.matcher(request.getRequestURI());
+        version.find();
+        if (new ServletWebRequest(request, response).checkNotModified("W/\"" + version.group(1) + "\"")) {
+            return;
+        }
+        filterChain.doFilter(request, new Inmutable(response));
+    }
+
+    private static final class Inmutable extends HttpServletResponseWrapper {
+        Inmutable(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            super.setHeader(name, conInmutable(name, value));
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            super.addHeader(name, conInmutable(name, value));
+        }
+
+        private static String conInmutable(String name, String value) {
+            if (HttpHeaders.CACHE_CONTROL.equalsIgnoreCase(name) && value != null && value.contains("max-age")
+                    && !value.contains("immutable")) {
+                return value + ", immutable";
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.mail.service.vista;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.TemplateSpec;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.engine.TemplateManager;
+import org.thymeleaf.exceptions.TemplateProcessingException;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Parsea todas las plantillas al arrancar para que la caché de Thymeleaf
+ * ('spring.thymeleaf.cache') ya las tenga cuando llegan las primeras peticiones.
+ *
+ * Cada plantilla se procesa una vez sin modelo y se descarta la salida. Thymeleaf la guarda en
+ * la caché en cuanto termina de parsearla, así que no importa que el procesamiento falle por
+ * faltar el modelo o la petición. Se usa el {@link TemplateManager} y no el motor para que
+ * esos fallos esperados no queden en el log como errores.
+ */
+public class PrecargaPlantillas {
+    private static final Logger log = LoggerFactory.getLogger(PrecargaPlantillas.class);
+
+    private final ITemplateEngine templateEngine;
+    private final String prefijo;
+    private final String sufijo;
+
+    /**
+     * @param prefijo Dónde están las plantillas, como en 'spring.thymeleaf.prefix' (por ejemplo 'classpath:/templates/').
+     * @param sufijo  La extensión de las plantillas, como en 'spring.thymeleaf.suffix'.
+     */
+    public PrecargaPlantillas(ITemplateEngine templateEngine, String prefijo, String sufijo) {
+        this.templateEngine = templateEngine;
+        this.prefijo = prefijo.endsWith("/") ? prefijo : prefijo + "/";
+        this.sufijo = sufijo;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void precargar() throws IOException {
+        long inicio = System.nanoTime();
+        Resource raiz = new PathMatchingResourcePatternResolver().getResource(prefijo);
+        String base = URLDecoder.decode(raiz.getURL().toString(), StandardCharsets.UTF_8);
+        TemplateManager plantillas = templateEngine.getConfiguration().getTemplateManager();
+        int cantidad = 0;
+        for (Resource plantilla : new PathMatchingResourcePatternResolver().getResources(prefijo + "**/*" + sufijo)) {
+            String ruta = URLDecoder.decode(plantilla.getURL().toString(), StandardCharsets.UTF_8);
+            if (!ruta.startsWith(base)) {
+                continue;
+            }
+            String nombre = ruta.substring(base.length(), ruta.length() - sufijo.length());
+            try {
+                plantillas.parseAndProcess(new TemplateSpec(nombre, (Map<String, Object>) null), new Context(), Writer.nullWriter());
+            } catch (TemplateProcessingException e) {
+                log.debug("La plantilla {} quedó en caché pero no se pudo procesar sin modelo: {}", nombre, e.getMessage());
+            }
+            cantidad++;
+        }
+        log.info("Se precargaron {} plantillas en {} ms", cantidad, (System.nanoTime() - inicio) / 1_000_000);
+    }
+}
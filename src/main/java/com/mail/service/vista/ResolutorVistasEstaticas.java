@@ -0,0 +1,53 @@
+package com.mail.service.vista;
+
+import org.springframework.core.Ordered;
+import org.springframework.web.servlet.View;
+import org.springframework.web.servlet.ViewResolver;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resuelve las vistas que no usan el modelo ('mail.web.static-views') como
+ * {@link VistaPrerenderizada}, a partir de la vista que devuelve {@code delegado}. Se ordena
+ * antes que el resolutor de Thymeleaf; el resto de las vistas las sigue resolviendo él.
+ *
+ * El nombre se compara sin la extensión '.html', así "login" y "login.html" son la misma vista.
+ */
+public class ResolutorVistasEstaticas implements ViewResolver, Ordered {
+    private static final String EXTENSION = ".html";
+
+    private final ViewResolver delegado;
+    private final Set<String> nombres;
+    private final Map<String, View> vistas = new ConcurrentHashMap<>();
+
+    public ResolutorVistasEstaticas(ViewResolver delegado, Collection<String> nombres) {
+        this.delegado = delegado;
+        this.nombres = Set.copyOf(nombres);
+    }
+
+    @Override
+    public View resolveViewName(String viewName, Locale locale) throws Exception {
+        String nombre = viewName.endsWith(EXTENSION) ? viewName.substring(0, viewName.length() - EXTENSION.length()) : viewName;
+        if (!nombres.contains(nombre)) {
+            return null;
+        }
+        View vista = vistas.get(nombre);
+        if (vista == null) {
+            View original = delegado.resolveViewName(nombre, locale);
+            if (original == null) {
+                return null;
+            }
+            vista = vistas.computeIfAbsent(nombre, n -> new VistaPrerenderizada(original));
+        }
+        return vista;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 10;
+    }
+}
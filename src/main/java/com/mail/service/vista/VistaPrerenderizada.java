@@ -0,0 +1,116 @@
+package com.mail.service.vista;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.DigestUtils;
+import org.springframework.validation.BindingResult;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.View;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Una vista cuyo HTML no depende del modelo. La primera petición la renderiza con la vista
+ * original; desde entonces se responden los mismos bytes, también comprimidos con gzip, con un
+ * ETag por representación y 'Cache-Control: no-cache' para que el navegador revalide y reciba
+ * 304 mientras la página no cambie.
+ *
+ * Se renderiza con una petición real y no al arrancar para que los enlaces salgan igual que
+ * en una vista común, con el contexto de la aplicación y la versión de cada recurso estático.
+ * Si el controlador agrega algo al modelo (por ejemplo un error), esa respuesta se renderiza
+ * con la vista original y no se guarda.
+ */
+final class VistaPrerenderizada implements View {
+    private static final String GZIP = "gzip";
+
+    private final View original;
+    private volatile Contenido contenido;
+
+    VistaPrerenderizada(View original) {
+        this.original = original;
+    }
+
+    @Override
+    public String getContentType() {
+        return original.getContentType();
+    }
+
+    @Override
+    public void render(Map<String, ?> model, HttpServletRequest request, HttpServletResponse response) throws Exception {
+        if (usaElModelo(model)) {
+            original.render(model, request, response);
+            return;
+        }
+        Contenido actual = contenido;
+        if (actual == null) {
+            ContentCachingResponseWrapper captura = new ContentCachingResponseWrapper(response);
+            original.render(model, request, captura);
+            if (captura.getStatus() != HttpStatus.OK.value()) {
+                captura.copyBodyToResponse();
+                return;
+            }
+            actual = Contenido.de(captura.getContentType(), captura.getContentAsByteArray());
+            contenido = actual;
+        }
+        escribir(actual, request, response);
+    }
+
+    private static boolean usaElModelo(Map<String, ?> model) {
+        return model != null && model.keySet().stream().anyMatch(clave -> !clave.startsWith(BindingResult.MODEL_KEY_PREFIX));
+    }
+
+    private static void escribir(Contenido contenido, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        boolean gzip = aceptaGzip(request);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (new ServletWebRequest(request, response).checkNotModified(gzip ? contenido.etagGzip : contenido.etag)) {
+            return;
+        }
+        byte[] cuerpo = gzip ? contenido.gzip : contenido.bytes;
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP);
+        }
+        response.setContentType(contenido.tipo);
+        response.setContentLength(cuerpo.length);
+        response.getOutputStream().write(cuerpo);
+    }
+
+    private static boolean aceptaGzip(HttpServletRequest request) {
+        String aceptadas = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        return aceptadas != null && aceptadas.contains(GZIP) && !aceptadas.replace(" ", "").contains("gzip;q=0");
+    }
+
+    private static final class Contenido {
+        final String tipo;
+        final byte[] bytes;
+        final byte[] gzip;
+        final String etag;
+        final String etagGzip;
+
+        private Contenido(String tipo, byte[] bytes, byte[] gzip) {
+            this.tipo = tipo;
+            this.bytes = bytes;
+            this.gzip = gzip;
+            String hash = DigestUtils.md5DigestAsHex(bytes);
+            this.etag = "\"" + hash + "\"";
+            this.etagGzip = "\"" + hash + "-gz\"";
+        }
+
+        static Contenido de(String tipo, byte[] bytes) {
+            ByteArrayOutputStream comprimido = new ByteArrayOutputStream(bytes.length / 3);
+            try (GZIPOutputStream salida = new GZIPOutputStream(comprimido)) {
+                salida.write(bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new Contenido(tipo, bytes, comprimido.toByteArray());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.mail.utilitys;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Acceso a los hilos virtuales de Java 21 desde código que compila y corre con Java 17.
+ *
+ * Las APIs se buscan por reflexión una sola vez. En un JDK sin hilos virtuales,
+ * {@link #disponibles()} devuelve false y pedir una fábrica virtual falla con un mensaje claro,
+ * de modo que activar 'mail.virtual-threads.enabled' en Java 17 se detecta al arrancar.
+ */
+public final class HilosVirtuales {
+    private static final MethodHandle OF_VIRTUAL;
+    private static final MethodHandle NOMBRE;
+    private static final MethodHandle FABRICA;
+    private static final MethodHandle POR_TAREA;
+    private static final MethodHandle ES_VIRTUAL;
+
+    static {
+        MethodHandle ofVirtual = null;
+        MethodHandle nombre = null;
+        MethodHandle fabrica = null;
+        MethodHandle porTarea = null;
+        MethodHandle esVirtual = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            Class<?> ofVirtualBuilder = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(ofVirtualBuilder));
+            nombre = lookup.findVirtual(ofVirtualBuilder, "name", MethodType.methodType(ofVirtualBuilder, String.class, long.class));
+            fabrica = lookup.findVirtual(builder, "factory", MethodType.methodType(ThreadFactory.class));
+            porTarea = lookup.findStatic(Executors.class, "newThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class, ThreadFactory.class));
+            esVirtual = lookup.findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (ReflectiveOperationException e) {
+            // JDK anterior a 21: no hay hilos virtuales.
+        }
+        OF_VIRTUAL = ofVirtual;
+        NOMBRE = nombre;
+        FABRICA = fabrica;
+        POR_TAREA = porTarea;
+        ES_VIRTUAL = esVirtual;
+    }
+
+    private HilosVirtuales() {
+    }
+
+    /**
+     * @return true si el JDK en uso tiene hilos virtuales.
+     */
+    public static boolean disponibles() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Crea la fábrica de hilos de un executor.
+     *
+     * @param prefijo   El prefijo del nombre de los hilos.
+     * @param virtuales Si los hilos deben ser virtuales.
+     * @return Una fábrica de hilos virtuales, o de hilos de plataforma si {@code virtuales} es false.
+     * @throws IllegalStateException Si se piden hilos virtuales y el JDK no los tiene.
+     */
+    public static ThreadFactory fabrica(String prefijo, boolean virtuales) {
+        if (!virtuales) {
+            return new CustomizableThreadFactory(prefijo);
+        }
+        exigirDisponibles();
+        try {
+            Object builder = NOMBRE.invoke(OF_VIRTUAL.invoke(), prefijo, 0L);
+            return (ThreadFactory) FABRICA.invoke(builder);
+        } catch (Throwable e) {
+            throw new IllegalStateException("No se pudo crear la fábrica de hilos virtuales", e);
+        }
+    }
+
+    /**
+     * Crea un executor que inicia un hilo virtual nuevo por cada tarea, sin reutilizarlos.
+     *
+     * @param prefijo El prefijo del nombre de los hilos.
+     * @throws IllegalStateException Si el JDK no tiene hilos virtuales.
+     */
+    public static ExecutorService executorPorTarea(String prefijo) {
+        ThreadFactory fabrica = fabrica(prefijo, true);
+        try {
+            return (ExecutorService) POR_TAREA.invoke(fabrica);
+        } catch (Throwable e) {
+            throw new IllegalStateException("No se pudo crear el executor de hilos virtuales", e);
+        }
+    }
+
+    /**
+     * @return true si el hilo es virtual; siempre false en un JDK sin hilos virtuales.
+     */
+    public static boolean esVirtual(Thread hilo) {
+        if (ES_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) ES_VIRTUAL.invoke(hilo);
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    private static void exigirDisponibles() {
+        if (!disponibles()) {
+            throw new IllegalStateException("Los hilos virtuales requieren Java 21 o posterior (JDK actual: "
+                    + Runtime.version() + "). Desactive 'mail.virtual-threads.enabled'.");
+        }
+    }
+}
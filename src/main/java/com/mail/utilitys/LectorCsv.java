@@ -0,0 +1,141 @@
+package com.mail.utilitys;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lector de archivos CSV que devuelve una fila por vez, sin cargar el archivo en memoria.
+ *
+ * La primera fila se toma como cabecera. Admite campos entre comillas dobles (con comas,
+ * saltos de línea y comillas duplicadas) y detecta si el separador es coma o punto y coma.
+ */
+public class LectorCsv implements Closeable {
+    private final BufferedReader lector;
+    private final String[] cabecera;
+    private final char separador;
+    private long numeroFila = 1;
+
+    public LectorCsv(Reader lector) throws IOException {
+        this.lector = lector instanceof BufferedReader ? (BufferedReader) lector : new BufferedReader(lector);
+        String primeraLinea = this.lector.readLine();
+        if (primeraLinea == null) {
+            throw new IOException("El archivo CSV está vacío");
+        }
+        if (!primeraLinea.isEmpty() && primeraLinea.charAt(0) == '\uFEFF') {
+            primeraLinea = primeraLinea.substring(1);
+        }
+        this.separador = primeraLinea.indexOf(';') >= 0 && primeraLinea.indexOf(',') < 0 ? ';' : ',';
+        List<String> campos = new ArrayList<>();
+        separar(primeraLinea, campos);
+        this.cabecera = new String[campos.size()];
+        for (int i = 0; i < campos.size(); i++) {
+            cabecera[i] = campos.get(i).trim().toLowerCase();
+        }
+    }
+
+    /**
+     * @return Los nombres de columna de la cabecera, en minúsculas.
+     */
+    public String[] getCabecera() {
+        return cabecera.clone();
+    }
+
+    /**
+     * @return El número de la última fila leída, contando la cabecera como fila 1.
+     */
+    public long getNumeroFila() {
+        return numeroFila;
+    }
+
+    /**
+     * Lee la siguiente fila no vacía.
+     *
+     * @return Los valores de la fila indexados por nombre de columna, o null al final del archivo.
+     * @throws IOException Si hay un error de lectura o una comilla sin cerrar.
+     */
+    public Map<String, String> siguiente() throws IOException {
+        List<String> campos = siguienteFila();
+        if (campos == null) {
+            return null;
+        }
+        Map<String, String> fila = new HashMap<>(cabecera.length * 2);
+        for (int i = 0; i < cabecera.length && i < campos.size(); i++) {
+            fila.put(cabecera[i], campos.get(i).trim());
+        }
+        return fila;
+    }
+
+    private List<String> siguienteFila() throws IOException {
+        String linea;
+        do {
+            linea = lector.readLine();
+            if (linea == null) {
+                return null;
+            }
+            numeroFila++;
+        } while (linea.isBlank());
+        List<String> campos = new ArrayList<>(cabecera == null ? 8 : cabecera.length);
+        StringBuilder pendiente = null;
+        while (!separar(linea, campos)) {
+            // El campo entre comillas continúa en la línea siguiente.
+            String continuacion = lector.readLine();
+            if (continuacion == null) {
+                throw new IOException("Comilla sin cerrar en la fila " + numeroFila);
+            }
+            numeroFila++;
+            if (pendiente == null) {
+                pendiente = new StringBuilder(linea);
+            }
+            pendiente.append('\n').append(continuacion);
+            linea = pendiente.toString();
+            campos.clear();
+        }
+        return campos;
+    }
+
+    /**
+     * Separa una línea en campos.
+     *
+     * @return false si la línea termina dentro de un campo entre comillas.
+     */
+    private boolean separar(String linea, List<String> campos) {
+        StringBuilder campo = new StringBuilder();
+        boolean entreComillas = false;
+        for (int i = 0; i < linea.length(); i++) {
+            char c = linea.charAt(i);
+            if (entreComillas) {
+                if (c == '"' && i + 1 < linea.length() && linea.charAt(i + 1) == '"') {
+                    campo.append('"');
+                    i++;
+                } else if (c == '"') {
+                    entreComillas = false;
+                } else {
+                    campo.append(c);
+                }
+            } else if (c == '"') {
+                entreComillas = true;
+            } else if (c == separador) {
+                campos.add(campo.toString());
+                campo.setLength(0);
+            } else {
+                campo.append(c);
+            }
+        }
+        if (entreComillas) {
+            return false;
+        }
+        campos.add(campo.toString());
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lector.close();
+    }
+}
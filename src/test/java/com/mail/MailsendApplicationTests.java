@@ -3,7 +3,7 @@ package com.mail;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = "mail.reset.token.allow-random-secret=true")
 class MailsendApplicationTests {
 
     @Test
@@ -0,0 +1,369 @@
+package com.mail.carga;
+
+import com.mail.entity.Usuario;
+import com.mail.enumerated.Roles;
+import com.mail.repositories.UsuarioRepository;
+import com.mail.service.TokenRecuperoService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Mide el throughput real de los endpoints que envían correo y del login, con la aplicación
+ * completa contra una base H2 en memoria y {@link ServidorSmtpSimulado}.
+ *
+ * No corre con el resto de las pruebas; se ejecuta con el perfil de Maven 'carga':
+ * <pre>
+ * ./mvnw test -Pcarga -Dcarga.clientes=32 -Dcarga.duracion=30s -Dcarga.smtp.latencia=50ms -Dcarga.smtp.fallos=0.02
+ * </pre>
+ * Por cada escenario informa pedidos por segundo, latencias p50/p99 y mensajes aceptados por
+ * segundo por el servidor SMTP durante el escenario.
+ */
+@Tag("carga")
+@ActiveProfiles("carga")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class PruebaDeCargaTest {
+    private static final Logger log = LoggerFactory.getLogger(PruebaDeCargaTest.class);
+    private static final String PASSWORD = "clave-de-carga-1";
+    private static final String BOUNDARY = "----limite-de-carga";
+
+    private static final int CLIENTES = Integer.getInteger("carga.clientes", 16);
+    private static final int USUARIOS = Integer.getInteger("carga.usuarios", 1000);
+    private static final int TAMANO_PDF = Integer.getInteger("carga.pdf-bytes", 100 * 1024);
+    private static final Duration DURACION = DurationStyle.detectAndParse(System.getProperty("carga.duracion", "20s"));
+    private static final Duration LATENCIA_SMTP = DurationStyle.detectAndParse(System.getProperty("carga.smtp.latencia", "0ms"));
+    private static final double FALLOS_SMTP = Double.parseDouble(System.getProperty("carga.smtp.fallos", "0"));
+
+    private static ServidorSmtpSimulado smtp;
+
+    @LocalServerPort
+    private int puerto;
+    @Autowired
+    private UsuarioRepository usuarioRepository;
+    @Autowired
+    private TokenRecuperoService tokenRecuperoService;
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .build();
+    private List<Usuario> olvido;
+    private List<Usuario> reseteo;
+    private List<Usuario> login;
+
+    @DynamicPropertySource
+    static void configurarSmtp(DynamicPropertyRegistry registro) throws IOException {
+        smtp = new ServidorSmtpSimulado(LATENCIA_SMTP, FALLOS_SMTP);
+        registro.add("spring.mail.port", smtp::getPuerto);
+    }
+
+    @AfterAll
+    static void detenerSmtp() throws IOException {
+        smtp.close();
+    }
+
+    @BeforeAll
+    void crearUsuarios() {
+        String hash = passwordEncoder.encode(PASSWORD);
+        olvido = usuarioRepository.saveAll(usuarios("olvido", hash));
+        reseteo = usuarioRepository.saveAll(usuarios("reseteo", hash));
+        login = usuarioRepository.saveAll(usuarios("login", hash));
+    }
+
+    @Test
+    void olvidoPassword() throws Exception {
+        Resultado resultado = medir("POST /olvido-password", cliente -> new Cliente() {
+            int siguiente = cliente;
+
+            @Override
+            public HttpRequest pedido() {
+                Usuario usuario = olvido.get(siguiente % olvido.size());
+                siguiente += CLIENTES;
+                return formulario("/olvido-password", "email=" + codificar(usuario.getEmail()));
+            }
+
+            @Override
+            public boolean exitoso(HttpResponse<String> respuesta) {
+                return respuesta.statusCode() == 200 && !respuesta.body().contains("No se encontró");
+            }
+        });
+        assertTrue(resultado.exitosos > 0);
+    }
+
+    @Test
+    void resetPassword() throws Exception {
+        Resultado resultado = medir("POST /reset_password", cliente -> new Cliente() {
+            // Cada cliente usa sus propios usuarios y lleva la versión de su contraseña, porque
+            // cada restablecimiento exitoso invalida el token anterior.
+            final List<Usuario> propios = propios(reseteo, cliente);
+            int siguiente;
+            Usuario actual;
+
+            @Override
+            public HttpRequest pedido() {
+                actual = propios.get(siguiente++ % propios.size());
+                String token = tokenRecuperoService.emitir(actual);
+                return formulario("/reset_password", "token=" + codificar(token) + "&password=" + codificar(PASSWORD));
+            }
+
+            @Override
+            public boolean exitoso(HttpResponse<String> respuesta) {
+                boolean ok = respuesta.statusCode() == 302
+                        && respuesta.headers().firstValue("Location").orElse("").endsWith("/login");
+                if (ok) {
+                    actual.setPasswordVersion(actual.getPasswordVersion() + 1);
+                }
+                return ok;
+            }
+        });
+        assertTrue(resultado.exitosos > 0);
+    }
+
+    @Test
+    void enviarCorreoConPdf() throws Exception {
+        byte[] pdf = new byte[TAMANO_PDF];
+        new Random(7).nextBytes(pdf);
+        Resultado resultado = medir("POST /enviar_correo_con_pdf", cliente -> new Cliente() {
+            int siguiente = cliente;
+
+            @Override
+            public HttpRequest pedido() {
+                Usuario usuario = olvido.get(siguiente % olvido.size());
+                siguiente += CLIENTES;
+                return HttpRequest.newBuilder(uri("/enviar_correo_con_pdf"))
+                        .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(multipart(usuario.getEmail(), pdf)))
+                        .build();
+            }
+
+            @Override
+            public boolean exitoso(HttpResponse<String> respuesta) {
+                return respuesta.statusCode() == 200;
+            }
+        });
+        assertTrue(resultado.exitosos > 0);
+    }
+
+    @Test
+    void login() throws Exception {
+        Resultado resultado = medir("POST /logincheck", cliente -> new Cliente() {
+            int siguiente = cliente;
+
+            @Override
+            public HttpRequest pedido() {
+                Usuario usuario = login.get(siguiente % login.size());
+                siguiente += CLIENTES;
+                return formulario("/logincheck", "dni=" + codificar(usuario.getDni()) + "&password=" + codificar(PASSWORD));
+            }
+
+            @Override
+            public boolean exitoso(HttpResponse<String> respuesta) {
+                return respuesta.statusCode() == 302
+                        && respuesta.headers().firstValue("Location").orElse("").endsWith("/inicio");
+            }
+        });
+        assertTrue(resultado.exitosos > 0);
+    }
+
+    /**
+     * Ejecuta el escenario con {@code CLIENTES} hilos durante {@code DURACION}. Cada hilo espera
+     * la respuesta antes de enviar el pedido siguiente (modelo de sistema cerrado).
+     */
+    private Resultado medir(String nombre, IntFunction<Cliente> clientes) throws Exception {
+        long aceptadosAntes = smtp.getAceptados();
+        long inicio = System.nanoTime();
+        long fin = inicio + DURACION.toNanos();
+        ExecutorService hilos = Executors.newFixedThreadPool(CLIENTES);
+        List<Future<Muestras>> resultados = new ArrayList<>();
+        for (int i = 0; i < CLIENTES; i++) {
+            Cliente cliente = clientes.apply(i);
+            resultados.add(hilos.submit(() -> ejecutar(cliente, fin)));
+        }
+        Muestras total = new Muestras();
+        for (Future<Muestras> resultado : resultados) {
+            total.sumar(resultado.get());
+        }
+        hilos.shutdown();
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        Resultado resultado = new Resultado(nombre, total, segundos, smtp.getAceptados() - aceptadosAntes);
+        log.info("{}", resultado);
+        return resultado;
+    }
+
+    private Muestras ejecutar(Cliente cliente, long fin) {
+        Muestras muestras = new Muestras();
+        while (System.nanoTime() < fin) {
+            HttpRequest pedido = cliente.pedido();
+            long inicio = System.nanoTime();
+            try {
+                HttpResponse<String> respuesta = http.send(pedido, HttpResponse.BodyHandlers.ofString());
+                muestras.agregar(System.nanoTime() - inicio, cliente.exitoso(respuesta));
+            } catch (IOException e) {
+                muestras.agregar(System.nanoTime() - inicio, false);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return muestras;
+    }
+
+    private HttpRequest formulario(String ruta, String cuerpo) {
+        return HttpRequest.newBuilder(uri(ruta))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(cuerpo))
+                .build();
+    }
+
+    private URI uri(String ruta) {
+        return URI.create("http://127.0.0.1:" + puerto + ruta);
+    }
+
+    private static byte[] multipart(String destinatario, byte[] pdf) {
+        ByteArrayOutputStream cuerpo = new ByteArrayOutputStream(pdf.length + 1024);
+        campo(cuerpo, "to", destinatario);
+        campo(cuerpo, "subject", "Prueba de carga");
+        campo(cuerpo, "text", "Adjuntamos el documento solicitado.");
+        cuerpo.writeBytes(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"pdfFile\"; filename=\"documento.pdf\"\r\n"
+                + "Content-Type: application/pdf\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        cuerpo.writeBytes(pdf);
+        cuerpo.writeBytes(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return cuerpo.toByteArray();
+    }
+
+    private static void campo(ByteArrayOutputStream cuerpo, String nombre, String valor) {
+        cuerpo.writeBytes(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + nombre + "\"\r\n\r\n"
+                + valor + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String codificar(String valor) {
+        return URLEncoder.encode(valor, StandardCharsets.UTF_8);
+    }
+
+    private static List<Usuario> usuarios(String prefijo, String hash) {
+        List<Usuario> usuarios = new ArrayList<>(USUARIOS);
+        for (int i = 0; i < USUARIOS; i++) {
+            Usuario usuario = new Usuario();
+            usuario.setName(prefijo + " " + i);
+            usuario.setDni(prefijo + "-" + i);
+            usuario.setEmail(prefijo + "-" + i + "@carga.local");
+            usuario.setPassword(hash);
+            usuario.setRol(Roles.USER);
+            usuarios.add(usuario);
+        }
+        return usuarios;
+    }
+
+    private static List<Usuario> propios(List<Usuario> usuarios, int cliente) {
+        List<Usuario> propios = new ArrayList<>();
+        for (int i = cliente; i < usuarios.size(); i += CLIENTES) {
+            propios.add(usuarios.get(i));
+        }
+        return propios;
+    }
+
+    private interface Cliente {
+        HttpRequest pedido();
+
+        boolean exitoso(HttpResponse<String> respuesta);
+    }
+
+    /**
+     * Latencias de un cliente, en nanosegundos, sin objetos por muestra.
+     */
+    private static final class Muestras {
+        long[] latencias = new long[1024];
+        int cantidad;
+        long exitosos;
+
+        void agregar(long latencia, boolean exitoso) {
+            if (cantidad == latencias.length) {
+                latencias = Arrays.copyOf(latencias, cantidad * 2);
+            }
+            latencias[cantidad++] = latencia;
+            if (exitoso) {
+                exitosos++;
+            }
+        }
+
+        void sumar(Muestras otras) {
+            for (int i = 0; i < otras.cantidad; i++) {
+                agregar(otras.latencias[i], false);
+            }
+            exitosos += otras.exitosos;
+        }
+    }
+
+    private static final class Resultado {
+        final String nombre;
+        final long pedidos;
+        final long exitosos;
+        final double pedidosPorSegundo;
+        final double mensajesPorSegundo;
+        final double p50Ms;
+        final double p99Ms;
+
+        Resultado(String nombre, Muestras muestras, double segundos, long mensajes) {
+            long[] ordenadas = Arrays.copyOf(muestras.latencias, muestras.cantidad);
+            Arrays.sort(ordenadas);
+            this.nombre = nombre;
+            this.pedidos = ordenadas.length;
+            this.exitosos = muestras.exitosos;
+            this.pedidosPorSegundo = pedidos / segundos;
+            this.mensajesPorSegundo = mensajes / segundos;
+            this.p50Ms = percentil(ordenadas, 0.50);
+            this.p99Ms = percentil(ordenadas, 0.99);
+        }
+
+        private static double percentil(long[] ordenadas, double percentil) {
+            if (ordenadas.length == 0) {
+                return 0;
+            }
+            int indice = (int) Math.ceil(percentil * ordenadas.length) - 1;
+            return ordenadas[Math.max(0, indice)] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-28s pedidos=%d exitosos=%d  %.1f ped/s  p50=%.2f ms  p99=%.2f ms  smtp=%.1f msj/s",
+                    nombre, pedidos, exitosos, pedidosPorSegundo, p50Ms, p99Ms, mensajesPorSegundo);
+        }
+    }
+}
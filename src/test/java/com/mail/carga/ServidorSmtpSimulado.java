@@ -0,0 +1,198 @@
+package com.mail.carga;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Servidor SMTP mínimo que acepta los mensajes y los descarta, para medir la aplicación sin
+ * enviar correos reales.
+ *
+ * Implementa lo justo para JavaMail (EHLO, MAIL, RCPT, DATA, RSET, NOOP, QUIT) y para el sender
+ * no bloqueante (PIPELINING, que sale gratis al responder en orden, y BDAT), sin STARTTLS ni AUTH. Puede demorar la respuesta a cada DATA para simular la latencia de un servidor real y
+ * rechazar una fracción de los mensajes con un error transitorio (451).
+ */
+public class ServidorSmtpSimulado implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ServidorSmtpSimulado.class);
+
+    private final ServerSocket servidor;
+    private final ExecutorService conexiones;
+    private final long latenciaNanos;
+    private final double tasaFallos;
+    private final boolean chunking;
+
+    private final LongAdder aceptados = new LongAdder();
+    private final LongAdder rechazados = new LongAdder();
+    private final LongAdder bytesRecibidos = new LongAdder();
+    private final LongAdder sesiones = new LongAdder();
+
+    /**
+     * @param latencia   Demora antes de responder al final de cada DATA.
+     * @param tasaFallos Fracción de mensajes, entre 0 y 1, que se rechazan con 451.
+     */
+    public ServidorSmtpSimulado(Duration latencia, double tasaFallos) throws IOException {
+        this(latencia, tasaFallos, true);
+    }
+
+    /**
+     * @param chunking Si se anuncia CHUNKING; sin él, el sender no bloqueante envía con DATA.
+     */
+    public ServidorSmtpSimulado(Duration latencia, double tasaFallos, boolean chunking) throws IOException {
+        this.latenciaNanos = latencia.toNanos();
+        this.tasaFallos = tasaFallos;
+        this.chunking = chunking;
+        this.servidor = new ServerSocket(0, 512, InetAddress.getLoopbackAddress());
+        this.conexiones = Executors.newCachedThreadPool(r -> {
+            Thread hilo = new Thread(r, "smtp-simulado");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        conexiones.execute(this::aceptar);
+    }
+
+    public int getPuerto() {
+        return servidor.getLocalPort();
+    }
+
+    public long getAceptados() {
+        return aceptados.sum();
+    }
+
+    public long getRechazados() {
+        return rechazados.sum();
+    }
+
+    public long getBytesRecibidos() {
+        return bytesRecibidos.sum();
+    }
+
+    public long getSesiones() {
+        return sesiones.sum();
+    }
+
+    private void aceptar() {
+        while (!servidor.isClosed()) {
+            try {
+                Socket socket = servidor.accept();
+                conexiones.execute(() -> atender(socket));
+            } catch (IOException e) {
+                if (!servidor.isClosed()) {
+                    log.warn("Error al aceptar una conexión SMTP", e);
+                }
+            }
+        }
+    }
+
+    private void atender(Socket socket) {
+        sesiones.increment();
+        try (socket;
+             BufferedReader entrada = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+             Writer salida = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.ISO_8859_1))) {
+            responder(salida, "220 localhost SMTP simulado");
+            String linea;
+            while ((linea = entrada.readLine()) != null) {
+                String comando = (linea.length() > 4 ? linea.substring(0, 4) : linea).toUpperCase(Locale.ROOT);
+                switch (comando) {
+                    case "EHLO" -> responder(salida,
+                            "250-localhost\r\n250-8BITMIME\r\n250-PIPELINING\r\n" + (chunking ? "250-CHUNKING\r\n" : "")
+                                    + "250 SIZE 52428800");
+                    case "HELO" -> responder(salida, "250 localhost");
+                    case "MAIL", "RCPT", "RSET", "NOOP" -> responder(salida, "250 OK");
+                    case "DATA" -> {
+                        responder(salida, "354 Termine con <CRLF>.<CRLF>");
+                        if (!leerDatos(entrada)) {
+                            return;
+                        }
+                        responder(salida, resultadoEntrega());
+                    }
+                    case "BDAT" -> {
+                        String[] partes = linea.split(" ");
+                        if (!leerBloque(entrada, Integer.parseInt(partes[1]))) {
+                            return;
+                        }
+                        boolean ultimo = partes.length > 2 && partes[2].equalsIgnoreCase("LAST");
+                        responder(salida, ultimo ? resultadoEntrega() : "250 OK");
+                    }
+                    case "QUIT" -> {
+                        responder(salida, "221 Hasta luego");
+                        return;
+                    }
+                    default -> responder(salida, "502 Comando no implementado");
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Conexión SMTP simulada cerrada", e);
+        }
+    }
+
+    private boolean leerDatos(BufferedReader entrada) throws IOException {
+        String linea;
+        while ((linea = entrada.readLine()) != null) {
+            if (linea.equals(".")) {
+                return true;
+            }
+            bytesRecibidos.add(linea.length() + 2);
+        }
+        return false;
+    }
+
+    private boolean leerBloque(BufferedReader entrada, int tamano) throws IOException {
+        // ISO-8859-1 lee un carácter por byte, así que se pueden contar los bytes del bloque en caracteres.
+        char[] buffer = new char[8192];
+        int restante = tamano;
+        while (restante > 0) {
+            int leidos = entrada.read(buffer, 0, Math.min(buffer.length, restante));
+            if (leidos < 0) {
+                return false;
+            }
+            restante -= leidos;
+        }
+        bytesRecibidos.add(tamano);
+        return true;
+    }
+
+    private String resultadoEntrega() {
+        if (latenciaNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(latenciaNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (tasaFallos > 0 && ThreadLocalRandom.current().nextDouble() < tasaFallos) {
+            rechazados.increment();
+            return "451 4.3.0 Falla simulada, reintente luego";
+        }
+        aceptados.increment();
+        return "250 2.0.0 OK mensaje aceptado";
+    }
+
+    private static void responder(Writer salida, String respuesta) throws IOException {
+        salida.write(respuesta);
+        salida.write("\r\n");
+        salida.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        servidor.close();
+        conexiones.shutdownNow();
+    }
+}
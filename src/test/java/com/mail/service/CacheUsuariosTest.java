@@ -0,0 +1,79 @@
+package com.mail.service;
+
+import com.mail.entity.Usuario;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CacheUsuariosTest {
+    private static final long SEGUNDO = 1_000_000_000L;
+
+    private final CacheUsuarios cache = new CacheUsuarios(2, Duration.ofSeconds(60));
+    private final long ahora = System.nanoTime();
+
+    @Test
+    void encuentraAlUsuarioPorDniYPorEmailHastaQueVence() {
+        Usuario ana = usuario(1L, "111", "Ana@Ejemplo.com");
+        cache.guardar(ana, cache.generacion(), ahora);
+        ana.setPassword("cambiada");
+
+        Usuario porDni = cache.buscarPorDni("111", ahora + SEGUNDO);
+        assertEquals("hash", porDni.getPassword());
+        assertNotSame(porDni, cache.buscarPorDni("111", ahora + SEGUNDO));
+        assertEquals(1L, cache.buscarPorEmail(" ana@ejemplo.com", ahora + SEGUNDO).getId());
+
+        assertNull(cache.buscarPorDni("111", ahora + 60 * SEGUNDO));
+        assertNull(cache.buscarPorEmail("ana@ejemplo.com", ahora + SEGUNDO));
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+        assertEquals(3.0, registry.get("mail.users.cache.lookups").tag("resultado", "acierto").functionCounter().count());
+        assertEquals(0.0, registry.get("mail.users.cache.entries").gauge().value());
+    }
+
+    @Test
+    void laInvalidacionQuitaTodasLasClavesYDescartaLecturasAnteriores() {
+        cache.guardar(usuario(1L, "111", "ana@ejemplo.com"), cache.generacion(), ahora);
+        long lecturaAnterior = cache.generacion();
+
+        cache.invalidar(1L);
+        assertNull(cache.buscarPorDni("111", ahora));
+        assertNull(cache.buscarPorEmail("ana@ejemplo.com", ahora));
+
+        // Lo leído antes de la invalidación puede tener la contraseña anterior.
+        cache.guardar(usuario(1L, "111", "ana@ejemplo.com"), lecturaAnterior, ahora);
+        assertNull(cache.buscarPorDni("111", ahora));
+
+        cache.guardar(usuario(1L, "111", "ana@ejemplo.com"), cache.generacion(), ahora);
+        cache.invalidarDni("111");
+        assertNull(cache.buscarPorEmail("ana@ejemplo.com", ahora));
+    }
+
+    @Test
+    void descartaAlUsuarioUsadoHaceMasTiempo() {
+        cache.guardar(usuario(1L, "111", "ana@ejemplo.com"), cache.generacion(), ahora);
+        cache.guardar(usuario(2L, "222", null), cache.generacion(), ahora);
+        assertNotNull(cache.buscarPorDni("111", ahora));
+
+        cache.guardar(usuario(3L, "333", "eva@ejemplo.com"), cache.generacion(), ahora);
+
+        assertNotNull(cache.buscarPorDni("111", ahora));
+        assertNull(cache.buscarPorDni("222", ahora));
+        assertNotNull(cache.buscarPorEmail("eva@ejemplo.com", ahora));
+    }
+
+    private static Usuario usuario(Long id, String dni, String email) {
+        Usuario usuario = new Usuario();
+        usuario.setId(id);
+        usuario.setDni(dni);
+        usuario.setEmail(email);
+        usuario.setPassword("hash");
+        return usuario;
+    }
+}
@@ -0,0 +1,75 @@
+package com.mail.service;
+
+import com.mail.entity.Usuario;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenRecuperoServiceTest {
+    private static final String SECRETO = "una-clave-de-prueba-de-al-menos-32-bytes";
+    private static final Instant AHORA = Instant.parse("2024-05-01T12:00:00Z");
+
+    private final TokenRecuperoService service = new TokenRecuperoService(SECRETO, false, Duration.ofMinutes(30),
+            Clock.fixed(AHORA, ZoneOffset.UTC));
+
+    @Test
+    void verificaLosDatosDelTokenEmitido() {
+        String token = service.emitir(usuario(42L, 3, "ana@ejemplo.com"));
+
+        Optional<TokenRecupero> datos = service.verificar(token);
+
+        assertEquals(Optional.of(new TokenRecupero(42L, 3, "ana@ejemplo.com")), datos);
+    }
+
+    @Test
+    void rechazaTokensAlteradosOFirmadosConOtraClave() {
+        String token = service.emitir(usuario(42L, 3, "ana@ejemplo.com"));
+        String otroUsuario = service.emitir(usuario(43L, 3, "ana@ejemplo.com"));
+        TokenRecuperoService otraClave = new TokenRecuperoService(SECRETO + "-distinta", false, Duration.ofMinutes(30),
+                Clock.fixed(AHORA, ZoneOffset.UTC));
+
+        String alterado = otroUsuario.substring(0, otroUsuario.indexOf('.')) + token.substring(token.indexOf('.'));
+
+        assertTrue(service.verificar(alterado).isEmpty());
+        assertTrue(otraClave.verificar(token).isEmpty());
+        assertTrue(service.verificar("sin-punto").isEmpty());
+        assertTrue(service.verificar("%%%.###").isEmpty());
+        assertTrue(service.verificar(null).isEmpty());
+    }
+
+    @Test
+    void rechazaTokensVencidos() {
+        String token = service.emitir(usuario(42L, 3, "ana@ejemplo.com"));
+        TokenRecuperoService masTarde = new TokenRecuperoService(SECRETO, false, Duration.ofMinutes(30),
+                Clock.fixed(AHORA.plus(Duration.ofMinutes(31)), ZoneOffset.UTC));
+
+        assertTrue(masTarde.verificar(token).isEmpty());
+    }
+
+    @Test
+    void sinSecretoSoloArrancaSiSePermiteUnaClaveAleatoria() {
+        Clock reloj = Clock.fixed(AHORA, ZoneOffset.UTC);
+
+        assertThrows(IllegalStateException.class, () -> new TokenRecuperoService(" ", false, Duration.ofMinutes(30), reloj));
+
+        TokenRecuperoService aleatoria = new TokenRecuperoService("", true, Duration.ofMinutes(30), reloj);
+        String token = aleatoria.emitir(usuario(42L, 3, "ana@ejemplo.com"));
+        assertTrue(aleatoria.verificar(token).isPresent());
+    }
+
+    private static Usuario usuario(Long id, int version, String email) {
+        Usuario usuario = new Usuario();
+        usuario.setId(id);
+        usuario.setPasswordVersion(version);
+        usuario.setEmail(email);
+        return usuario;
+    }
+}
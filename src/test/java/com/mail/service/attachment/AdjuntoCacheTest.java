@@ -0,0 +1,73 @@
+package com.mail.service.attachment;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdjuntoCacheTest {
+    @TempDir
+    Path directorio;
+
+    @Test
+    void codificaUnaSolaVezElMismoContenido() throws Exception {
+        AdjuntoCache cache = new AdjuntoCache(directorio.toString(), DataSize.ofMegabytes(1));
+        byte[] pdf = contenido(10_000, 1);
+
+        AdjuntoCodificado primero = cache.registrar(new ByteArrayInputStream(pdf));
+        AdjuntoCodificado segundo = cache.registrar(new ByteArrayInputStream(pdf));
+
+        assertSame(primero, segundo);
+        assertEquals(0.5, cache.getTasaAciertos());
+        String codificado = Files.readString(primero.getArchivo());
+        assertTrue(codificado.contains("\r\n"));
+        assertArrayEquals(pdf, Base64.getMimeDecoder().decode(codificado));
+        try (var archivos = Files.list(directorio)) {
+            assertEquals(1, archivos.count());
+        }
+    }
+
+    @Test
+    void desalojaSoloLosAdjuntosSinUso() throws Exception {
+        AdjuntoCache cache = new AdjuntoCache(directorio.toString(), DataSize.ofBytes(20_000));
+
+        AdjuntoCodificado viejo = cache.registrar(new ByteArrayInputStream(contenido(10_000, 1)));
+        AdjuntoCodificado enUso = cache.registrar(new ByteArrayInputStream(contenido(10_000, 2)));
+        assertTrue(Files.exists(viejo.getArchivo()));
+
+        cache.liberar(viejo);
+
+        assertFalse(Files.exists(viejo.getArchivo()));
+        assertTrue(Files.exists(enUso.getArchivo()));
+        assertEquals(enUso.getTamano(), cache.getBytesTotales());
+    }
+
+    @Test
+    void recuperaLosAdjuntosGuardadosAlReiniciar() throws Exception {
+        byte[] pdf = contenido(5_000, 3);
+        AdjuntoCodificado original = new AdjuntoCache(directorio.toString(), DataSize.ofMegabytes(1))
+                .registrar(new ByteArrayInputStream(pdf));
+
+        AdjuntoCache reiniciada = new AdjuntoCache(directorio.toString(), DataSize.ofMegabytes(1));
+
+        assertEquals(original.getHash(), reiniciada.registrar(new ByteArrayInputStream(pdf)).getHash());
+        assertEquals(1.0, reiniciada.getTasaAciertos());
+    }
+
+    private static byte[] contenido(int tamano, long semilla) {
+        byte[] datos = new byte[tamano];
+        new Random(semilla).nextBytes(datos);
+        return datos;
+    }
+}
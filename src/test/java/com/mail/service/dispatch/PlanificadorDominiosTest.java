@@ -0,0 +1,214 @@
+package com.mail.service.dispatch;
+
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.MailSendException;
+
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlanificadorDominiosTest {
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ExecutorService hilos = Executors.newCachedThreadPool();
+    private PlanificadorDominios planificador;
+
+    @AfterEach
+    void cerrar() throws InterruptedException {
+        if (planificador != null) {
+            planificador.cerrar(Duration.ofSeconds(5));
+        }
+        hilos.shutdownNow();
+    }
+
+    @Test
+    void agrupaPorDominioYRespetaLaConcurrenciaDeCadaUno() throws Exception {
+        Map<String, AtomicInteger> enCurso = new ConcurrentHashMap<>();
+        Map<String, Integer> maximos = new ConcurrentHashMap<>();
+        AtomicBoolean mezclados = new AtomicBoolean();
+        AtomicInteger lotes = new AtomicInteger();
+        planificador = planificador(lote -> CompletableFuture.supplyAsync(() -> {
+            String dominio = grupo(lote.get(0));
+            if (lote.stream().anyMatch(m -> !grupo(m).equals(dominio))) {
+                mezclados.set(true);
+            }
+            int actual = enCurso.computeIfAbsent(dominio, d -> new AtomicInteger()).incrementAndGet();
+            maximos.merge(dominio, actual, Math::max);
+            dormir(5);
+            enCurso.get(dominio).decrementAndGet();
+            lotes.incrementAndGet();
+            return Map.of();
+        }, hilos), 8, 2, 0);
+
+        List<CompletableFuture<Void>> envios = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            envios.add(planificador.encolar(mensaje("destino" + i + "@" + (i % 3 == 0 ? "gmail.com" : i % 3 == 1 ? "googlemail.com" : "otro.com")),
+                    Prioridad.TRANSACCIONAL));
+        }
+        CompletableFuture.allOf(envios.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+
+        assertFalse(mezclados.get());
+        assertEquals(Set.of("google", "otro.com"), maximos.keySet());
+        assertTrue(maximos.values().stream().allMatch(maximo -> maximo <= 2), "máximos: " + maximos);
+        assertTrue(lotes.get() < 300, "lotes: " + lotes.get());
+    }
+
+    @Test
+    void unDiferimientoReduceLosLimitesYElMensajeSeReintenta() throws Exception {
+        AtomicInteger intentos = new AtomicInteger();
+        planificador = planificador(lote -> CompletableFuture.supplyAsync(() -> {
+            if (intentos.getAndIncrement() == 0) {
+                Exception diferido = new SMTPSendFailedException("DATA", 451, "451 4.7.1 Try again later", null, null, null, null);
+                Map<MimeMessage, Exception> fallidos = new ConcurrentHashMap<>();
+                lote.forEach(m -> fallidos.put(m, diferido));
+                return fallidos;
+            }
+            return Map.of();
+        }, hilos), 8, 4, 0);
+
+        planificador.encolar(mensaje("a@lento.com"), Prioridad.TRANSACCIONAL).get(10, TimeUnit.SECONDS);
+
+        assertEquals(2, intentos.get());
+        assertEquals(2, planificador.getConcurrencia("lento.com"));
+        assertEquals(1.0, registry.counter("mail.dispatch.deferred").count());
+        // La espera del correo se mide una sola vez, aunque su lote salió dos.
+        assertEquals(1, registry.get("mail.dispatch.wait").tag("carril", "transaccional").timer().count());
+    }
+
+    @Test
+    void fallaElMensajeQueSeDifiereDemasiadasVeces() throws Exception {
+        AtomicInteger intentos = new AtomicInteger();
+        planificador = planificador(lote -> {
+            intentos.incrementAndGet();
+            return CompletableFuture.completedFuture(Map.of(lote.get(0),
+                    new SMTPSendFailedException("RCPT", 452, "452 Too many recipients", null, null, null, null)));
+        }, 8, 2, 0);
+
+        CompletableFuture<Void> envio = planificador.encolar(mensaje("a@lleno.com"), Prioridad.TRANSACCIONAL);
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> envio.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(MailSendException.class, error.getCause());
+        assertEquals(3, intentos.get());
+    }
+
+    @Test
+    void elCarrilTransaccionalNoEsperaALosLotesMasivos() throws Exception {
+        CountDownLatch liberar = new CountDownLatch(1);
+        planificador = planificador(lote -> CompletableFuture.supplyAsync(() -> {
+            if (grupo(lote.get(0)).equals("otro.com")) {
+                try {
+                    liberar.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return Map.of();
+        }, hilos), 2, 2, 0);
+
+        List<CompletableFuture<Void>> masivos = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            masivos.add(planificador.encolar(mensaje("pdf" + i + "@otro.com"), Prioridad.MASIVO));
+        }
+        planificador.encolar(mensaje("reset@gmail.com"), Prioridad.TRANSACCIONAL).get(5, TimeUnit.SECONDS);
+        // A lo sumo un lote masivo en curso: el otro hilo quedó reservado para el transaccional.
+        assertTrue(planificador.getPendientes(Prioridad.MASIVO) >= 90);
+
+        liberar.countDown();
+        CompletableFuture.allOf(masivos.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        assertEquals(1, registry.get("mail.dispatch.wait").tag("carril", "transaccional").timer().count());
+        assertEquals(100, registry.get("mail.dispatch.wait").tag("carril", "masivo").timer().count());
+    }
+
+    @Test
+    void elCarrilMasivoNoOcupaLaColaReservada() throws Exception {
+        CompletableFuture<Map<MimeMessage, Exception>> bloqueo = new CompletableFuture<>();
+        planificador = planificador(lote -> bloqueo, 1, 2, 0);
+
+        int aceptados = 0;
+        try {
+            while (aceptados < 2000) {
+                planificador.encolar(mensaje("pdf" + aceptados + "@otro.com"), Prioridad.MASIVO);
+                aceptados++;
+            }
+        } catch (RejectedExecutionException e) {
+            // La cola para el carril masivo se llenó.
+        }
+
+        assertEquals(990, planificador.getPendientes(Prioridad.MASIVO));
+        planificador.encolar(mensaje("reset@gmail.com"), Prioridad.TRANSACCIONAL);
+        assertEquals(1, planificador.getPendientes(Prioridad.TRANSACCIONAL));
+        bloqueo.complete(Map.of());
+    }
+
+    @Test
+    void distingueLosDiferimientosDeLosRechazosDefinitivos() throws Exception {
+        SMTPAddressFailedException diferido = new SMTPAddressFailedException(new InternetAddress("a@b.com"), "RCPT TO", 450, "450 Mailbox busy");
+        SMTPAddressFailedException rechazado = new SMTPAddressFailedException(new InternetAddress("a@b.com"), "RCPT TO", 550, "550 No such user");
+
+        assertTrue(PlanificadorDominios.esDiferimiento(new SendFailedException("Destinatarios rechazados", diferido)));
+        assertFalse(PlanificadorDominios.esDiferimiento(new SendFailedException("Destinatarios rechazados", rechazado)));
+        assertTrue(PlanificadorDominios.esDiferimiento(new MailSendException(Map.of(new Object(), diferido))));
+        assertTrue(PlanificadorDominios.esDiferimiento(new MessagingException("El servidor SMTP rechazó la conexión: 421 Too busy")));
+        assertFalse(PlanificadorDominios.esDiferimiento(new MessagingException("Connection refused")));
+    }
+
+    private PlanificadorDominios planificador(PlanificadorDominios.EnvioLotes envio, int maxLotes, int maxConcurrencia,
+                                              double maxTasa) {
+        return new PlanificadorDominios(envio, maxLotes, 1000, maxConcurrencia, maxTasa, 10, Duration.ofMillis(50), 2,
+                PlanificadorDominios.leerGrupos("google:gmail.com|googlemail.com"),
+                new PlanificadorDominios.Carriles(4, 1, 1, 10), registry);
+    }
+
+    private static String grupo(MimeMessage mensaje) {
+        try {
+            String direccion = mensaje.getAllRecipients()[0].toString();
+            String dominio = direccion.substring(direccion.indexOf('@') + 1);
+            return dominio.equals("otro.com") ? dominio : "google";
+        } catch (MessagingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void dormir(long milisegundos) {
+        try {
+            Thread.sleep(milisegundos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static MimeMessage mensaje(String destino) throws MessagingException {
+        MimeMessage mensaje = new MimeMessage(Session.getInstance(new Properties()));
+        mensaje.setFrom("origen@ejemplo.com");
+        mensaje.setRecipients(MimeMessage.RecipientType.TO, destino);
+        mensaje.setText("Hola");
+        return mensaje;
+    }
+}
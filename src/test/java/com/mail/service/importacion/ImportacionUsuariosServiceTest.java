@@ -0,0 +1,90 @@
+package com.mail.service.importacion;
+
+import com.mail.entity.Usuario;
+import com.mail.enumerated.Roles;
+import com.mail.repositories.InsercionMasivaUsuarios;
+import com.mail.repositories.UsuarioRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+@Import(InsercionMasivaUsuarios.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ImportacionUsuariosServiceTest {
+
+    @Autowired
+    UsuarioRepository usuarioRepository;
+
+    @Autowired
+    InsercionMasivaUsuarios insercion;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void limpiar() {
+        usuarioRepository.deleteAll();
+    }
+
+    @Test
+    void importaLasFilasValidasEInformaLasRechazadas() throws Exception {
+        Usuario registrado = new Usuario();
+        registrado.setName("Registrado");
+        registrado.setDni("1000");
+        registrado.setEmail("registrado@ejemplo.com");
+        registrado.setRol(Roles.USER);
+        registrado.setPassword("hash");
+        usuarioRepository.save(registrado);
+
+        StringBuilder csv = new StringBuilder("nombre,dni,email,telefono,password\n");
+        for (int i = 0; i < 1200; i++) {
+            csv.append("Usuario ").append(i).append(',').append(2000 + i).append(",usuario").append(i)
+                    .append("@ejemplo.com,,clave-").append(i).append('\n');
+        }
+        csv.append(",5000,,,clave-larga\n");                          // fila 1202: sin nombre
+        csv.append("Corta,5001,,,corta\n");                           // fila 1203: password corto
+        csv.append("Repetido,2000,,,clave-larga\n");                  // fila 1204: DNI repetido en el archivo
+        csv.append("Existente,1000,,,clave-larga\n");                 // fila 1205: DNI ya registrado
+        csv.append("Email,5002,registrado@ejemplo.com,,clave-larga\n"); // fila 1206: email ya registrado
+        csv.append("Invalido,5003,no es un email,,clave-larga\n");    // fila 1207: email inválido
+
+        ImportacionUsuariosService servicio = new ImportacionUsuariosService(insercion, transactionManager, 4, 100, 2, 1);
+        try {
+            TrabajoImportacion trabajo = servicio.iniciar(new MockMultipartFile("archivo", "usuarios.csv", "text/csv",
+                    csv.toString().getBytes(StandardCharsets.UTF_8)));
+            long limite = System.nanoTime() + 60_000_000_000L;
+            while (!trabajo.isTerminado() && System.nanoTime() < limite) {
+                Thread.sleep(20);
+            }
+
+            assertEquals(TrabajoImportacion.Estado.COMPLETADO, trabajo.getEstado());
+            assertEquals(1206, trabajo.getLeidos());
+            assertEquals(1200, trabajo.getImportados());
+            assertEquals(6, trabajo.getRechazados());
+            assertEquals(List.of(1202L, 1203L, 1204L, 1205L, 1206L, 1207L),
+                    trabajo.getErrores().stream().map(ErrorFila::fila).toList());
+            assertEquals(1201, usuarioRepository.count());
+
+            Usuario importado = usuarioRepository.buscarPorDni("2007");
+            assertEquals("usuario7@ejemplo.com", importado.getEmail());
+            assertEquals(Roles.USER, importado.getRol());
+            assertTrue(new BCryptPasswordEncoder().matches("clave-7", importado.getPassword()));
+        } finally {
+            servicio.cerrar();
+        }
+    }
+}
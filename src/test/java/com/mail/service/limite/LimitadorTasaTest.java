@@ -0,0 +1,51 @@
+package com.mail.service.limite;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LimitadorTasaTest {
+    private static final long MINUTO = TimeUnit.MINUTES.toNanos(1);
+
+    @Test
+    void permiteLaRafagaYLuegoUnPedidoPorIntervalo() {
+        LimitadorTasa limitador = new LimitadorTasa(new LimiteTasa(3, Duration.ofMinutes(3)));
+        long ahora = 1_000L;
+
+        assertEquals(0, limitador.intentar("1.2.3.4", ahora));
+        assertEquals(0, limitador.intentar("1.2.3.4", ahora));
+        assertEquals(0, limitador.intentar("1.2.3.4", ahora));
+        assertEquals(MINUTO, limitador.intentar("1.2.3.4", ahora));
+        assertEquals(0, limitador.intentar("5.6.7.8", ahora));
+
+        assertEquals(0, limitador.intentar("1.2.3.4", ahora + MINUTO));
+        assertTrue(limitador.intentar("1.2.3.4", ahora + MINUTO) > 0);
+    }
+
+    @Test
+    void desalojaSoloLosBaldesRecargados() {
+        LimitadorTasa limitador = new LimitadorTasa(new LimiteTasa(2, Duration.ofMinutes(2)));
+        limitador.intentar("a", 0);
+        limitador.intentar("b", 0);
+        limitador.intentar("b", 0);
+
+        assertEquals(1, limitador.desalojar(MINUTO));
+        assertEquals(1, limitador.getClaves());
+        assertEquals(1, limitador.desalojar(2 * MINUTO));
+        assertEquals(0, limitador.getClaves());
+    }
+
+    @Test
+    void interpretaElFormatoDeLasPropiedades() {
+        LimiteTasa limite = LimiteTasa.parse("5/10m");
+
+        assertEquals(TimeUnit.MINUTES.toNanos(2), limite.intervaloNanos);
+        assertNull(LimiteTasa.parse(""));
+        assertNull(LimiteTasa.parse("0"));
+    }
+}
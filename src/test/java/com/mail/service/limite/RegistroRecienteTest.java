@@ -0,0 +1,43 @@
+package com.mail.service.limite;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegistroRecienteTest {
+    private static final long MINUTO = TimeUnit.MINUTES.toNanos(1);
+
+    @Test
+    void recuerdaLaClaveDuranteLaVentana() {
+        RegistroReciente registro = new RegistroReciente(1024, 2 * MINUTO, 0);
+
+        assertTrue(registro.reclamar("ana@ejemplo.com", 0));
+        assertFalse(registro.reclamar("ana@ejemplo.com", MINUTO));
+        assertTrue(registro.reclamar("juan@ejemplo.com", MINUTO));
+        assertTrue(registro.reclamar("ana@ejemplo.com", 2 * MINUTO));
+    }
+
+    @Test
+    void liberarPermiteReintentarAntesDeQueVenza() {
+        RegistroReciente registro = new RegistroReciente(1024, 2 * MINUTO, 0);
+        registro.reclamar("ana@ejemplo.com", 0);
+
+        registro.liberar("ana@ejemplo.com");
+
+        assertTrue(registro.reclamar("ana@ejemplo.com", 1));
+    }
+
+    @Test
+    void lasColisionesSoloHacenOlvidarAntes() {
+        RegistroReciente registro = new RegistroReciente(2, 2 * MINUTO, 0);
+        for (int i = 0; i < 100; i++) {
+            registro.reclamar("usuario" + i + "@ejemplo.com", 0);
+        }
+
+        assertTrue(registro.reclamar("nuevo@ejemplo.com", 0));
+        assertFalse(registro.reclamar("nuevo@ejemplo.com", 0));
+    }
+}
@@ -0,0 +1,84 @@
+package com.mail.service.mime;
+
+import com.mail.service.template.PlantillaCompilada;
+import org.junit.jupiter.api.Test;
+
+import javax.activation.DataHandler;
+import javax.mail.BodyPart;
+import javax.mail.Message;
+import javax.mail.Part;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
+import javax.mail.internet.PreencodedMimeBodyPart;
+import javax.mail.util.ByteArrayDataSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EsqueletoMimeTest {
+    private final Session sesion = Session.getInstance(new Properties());
+
+    @Test
+    void generaUnCorreoQueJavaMailInterpreta() throws Exception {
+        EsqueletoMime esqueleto = EsqueletoMime.compilar(sesion,
+                new InternetAddress("soporte@ejemplo.com", "Soporte de Spring Boot", "UTF-8"),
+                PlantillaCompilada.compilar("Hola {{nombre}}", false),
+                PlantillaCompilada.compilar("<p>Estimado {{nombre}}, su enlace:</p>\n<a href=\"{{enlace}}\">Cambiar contraseña</a> ", true),
+                true);
+
+        MimeMessage mensaje = esqueleto.crearMensaje(new InternetAddress("ana@ejemplo.com"),
+                Map.of("nombre", "Ana Núñez", "enlace", "http://localhost/reset_password?token=a&b"));
+        MimeMessage leido = releer(mensaje);
+
+        assertEquals("ana@ejemplo.com", ((InternetAddress) leido.getRecipients(Message.RecipientType.TO)[0]).getAddress());
+        assertEquals("Soporte de Spring Boot", ((InternetAddress) leido.getFrom()[0]).getPersonal());
+        assertEquals("Hola Ana Núñez", leido.getSubject());
+        assertEquals(mensaje.getMessageID(), leido.getMessageID());
+        assertNotNull(leido.getSentDate());
+        assertTrue(leido.isMimeType("text/html"));
+        assertEquals("<p>Estimado Ana Núñez, su enlace:</p>\r\n"
+                + "<a href=\"http://localhost/reset_password?token=a&amp;b\">Cambiar contraseña</a> ", leido.getContent());
+    }
+
+    @Test
+    void compartePartesAdjuntasEntreDestinatarios() throws Exception {
+        byte[] pdf = "%PDF-1.4 contenido de prueba".getBytes(StandardCharsets.US_ASCII);
+        PreencodedMimeBodyPart parte = new PreencodedMimeBodyPart("base64");
+        parte.setDataHandler(new DataHandler(new ByteArrayDataSource(Base64.getMimeEncoder().encode(pdf), "application/pdf")));
+        parte.setDisposition(Part.ATTACHMENT);
+        parte.setFileName("factura.pdf");
+        EsqueletoMime esqueleto = EsqueletoMime.compilar(sesion, new InternetAddress("soporte@ejemplo.com"),
+                PlantillaCompilada.compilar("Su factura", false), PlantillaCompilada.compilar("Hola {{nombre}}", false),
+                false, parte);
+
+        for (String nombre : List.of("Ana", "Luis")) {
+            MimeMessage leido = releer(esqueleto.crearMensaje(new InternetAddress(nombre.toLowerCase() + "@ejemplo.com"),
+                    Map.of("nombre", nombre)));
+
+            assertEquals("Su factura", leido.getSubject());
+            MimeMultipart contenido = (MimeMultipart) leido.getContent();
+            assertEquals(2, contenido.getCount());
+            assertEquals("Hola " + nombre, contenido.getBodyPart(0).getContent());
+            BodyPart adjunto = contenido.getBodyPart(1);
+            assertEquals("factura.pdf", adjunto.getFileName());
+            assertArrayEquals(pdf, adjunto.getInputStream().readAllBytes());
+        }
+    }
+
+    private MimeMessage releer(MimeMessage mensaje) throws Exception {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        mensaje.writeTo(salida);
+        return new MimeMessage(sesion, new ByteArrayInputStream(salida.toByteArray()));
+    }
+}
@@ -0,0 +1,202 @@
+package com.mail.service.outbox;
+
+import com.mail.entity.CorreoSaliente;
+import com.mail.enumerated.EstadoCorreo;
+import com.mail.repositories.CorreoSalienteRepository;
+import com.mail.service.EmailService;
+import com.mail.service.dispatch.MailDispatcher;
+import com.mail.service.smtp.ProteccionRelay;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Varios nodos compartiendo la cola en una base H2 embebida. Cada nodo es un {@link ColaOutbox}
+ * con su propio nombre que corre en su propio hilo.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ColaOutboxTest {
+    private static final Duration RECLAMO = Duration.ofSeconds(30);
+
+    @Autowired
+    CorreoSalienteRepository correoSalienteRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void limpiar() {
+        correoSalienteRepository.deleteAll();
+    }
+
+    @Test
+    void cadaCorreoLoEnviaUnSoloNodo() throws Exception {
+        guardar(400, Instant.now());
+        Map<Long, AtomicInteger> envios = new ConcurrentHashMap<>();
+        ExecutorService nodos = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> procesados = new ArrayList<>();
+        for (int n = 0; n < 4; n++) {
+            ColaOutbox cola = new ColaOutbox(correoSalienteRepository, transactionManager, "nodo-" + n, RECLAMO);
+            procesados.add(nodos.submit(() -> {
+                int total = 0;
+                LoteReclamado lote;
+                while (!(lote = cola.reclamar(25, Instant.now())).isVacio()) {
+                    List<Long> enviados = new ArrayList<>();
+                    for (CorreoSaliente correo : lote.correos()) {
+                        envios.computeIfAbsent(correo.getId(), id -> new AtomicInteger()).incrementAndGet();
+                        enviados.add(correo.getId());
+                    }
+                    total += cola.registrarResultados(lote, enviados, List.of(), Instant.now());
+                }
+                return total;
+            }));
+        }
+        int total = 0;
+        for (Future<Integer> procesado : procesados) {
+            total += procesado.get();
+        }
+        nodos.shutdown();
+
+        assertEquals(400, total);
+        assertEquals(400, envios.size());
+        assertTrue(envios.values().stream().allMatch(veces -> veces.get() == 1));
+        assertTrue(correoSalienteRepository.findAll().stream().allMatch(c -> c.getEstado() == EstadoCorreo.ENVIADO));
+    }
+
+    @Test
+    void otroNodoRetomaLosReclamosVencidos() {
+        Instant ahora = Instant.now();
+        guardar(5, ahora.minusSeconds(1));
+        ColaOutbox caido = new ColaOutbox(correoSalienteRepository, transactionManager, "caido", RECLAMO);
+        ColaOutbox vivo = new ColaOutbox(correoSalienteRepository, transactionManager, "vivo", RECLAMO);
+
+        LoteReclamado perdido = caido.reclamar(10, ahora);
+        assertEquals(5, perdido.size());
+        assertTrue(vivo.reclamar(10, ahora).isVacio());
+
+        // Renovado, el reclamo sigue vigente pasada su duración original.
+        assertEquals(5, caido.renovar(perdido, ahora.plusSeconds(20)));
+        assertEquals(0, vivo.liberarVencidos(ahora.plusSeconds(40)));
+
+        assertEquals(5, vivo.liberarVencidos(ahora.plusSeconds(60)));
+        LoteReclamado retomado = vivo.reclamar(10, ahora.plusSeconds(60));
+        assertEquals(5, retomado.size());
+
+        List<Long> ids = perdido.correos().stream().map(CorreoSaliente::getId).toList();
+        assertEquals(0, caido.renovar(perdido, ahora.plusSeconds(61)));
+        assertEquals(0, caido.registrarResultados(perdido, ids, List.of(), ahora.plusSeconds(61)));
+        assertEquals(5, vivo.registrarResultados(retomado, ids, List.of(), ahora.plusSeconds(61)));
+    }
+
+    @Test
+    void unCorreoFallidoNoReprogramaLosQueSiguenEnCurso() throws Exception {
+        CorreoSaliente rechazado = guardar("destino@rechaza.com");
+        CorreoSaliente lento = guardar("destino@lento.com");
+        Map<String, AtomicInteger> envios = new ConcurrentHashMap<>();
+        CountDownLatch liberarLento = new CountDownLatch(1);
+        JavaMailSenderImpl sender = new JavaMailSenderImpl() {
+            @Override
+            public void send(MimeMessage... mensajes) {
+                for (MimeMessage mensaje : mensajes) {
+                    String destino;
+                    try {
+                        destino = mensaje.getAllRecipients()[0].toString();
+                    } catch (MessagingException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    envios.computeIfAbsent(destino, d -> new AtomicInteger()).incrementAndGet();
+                    if (destino.endsWith("@rechaza.com")) {
+                        throw new MailSendException("Destinatario rechazado");
+                    }
+                    try {
+                        liberarLento.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ProteccionRelay proteccion = new ProteccionRelay(registry, 20, 2, 1000, 20, 0.5, Duration.ofSeconds(30), 3);
+        MailDispatcher dispatcher = new MailDispatcher(sender, proteccion, registry, 4, 100, Duration.ofSeconds(5),
+                2, 0, 20, Duration.ofSeconds(5), 5, "", 4, 1, 1, 10, false);
+        EmailService emailService = new EmailService(sender, proteccion, dispatcher, null, null, null, registry);
+        ReflectionTestUtils.setField(emailService, "emailSender", "remitente@ejemplo.com");
+        // El reclamo se renueva cada 200 ms y el aviso de envío lento salta a los 100 ms.
+        ColaOutbox cola = new ColaOutbox(correoSalienteRepository, transactionManager, "nodo", Duration.ofMillis(600));
+        OutboxRelay relay = new OutboxRelay(correoSalienteRepository, cola, emailService, dispatcher, proteccion,
+                transactionManager, 10, 8, Duration.ofSeconds(30), Duration.ofHours(1), Duration.ofMillis(100),
+                Duration.ofDays(7));
+        ScheduledExecutorService reloj = Executors.newSingleThreadScheduledExecutor();
+        try {
+            reloj.schedule(liberarLento::countDown, 1, TimeUnit.SECONDS);
+            assertEquals(2, relay.procesarLote());
+        } finally {
+            reloj.shutdownNow();
+            dispatcher.cerrar();
+        }
+
+        assertEquals(1, envios.get("destino@rechaza.com").get());
+        assertEquals(1, envios.get("destino@lento.com").get());
+        CorreoSaliente fallido = correoSalienteRepository.findById(rechazado.getId()).orElseThrow();
+        assertEquals(EstadoCorreo.PENDIENTE, fallido.getEstado());
+        assertEquals(1, fallido.getIntentos());
+        CorreoSaliente enviado = correoSalienteRepository.findById(lento.getId()).orElseThrow();
+        assertEquals(EstadoCorreo.ENVIADO, enviado.getEstado());
+        assertEquals(0, enviado.getIntentos());
+    }
+
+    private void guardar(int cantidad, Instant ahora) {
+        List<CorreoSaliente> correos = new ArrayList<>();
+        for (int i = 0; i < cantidad; i++) {
+            CorreoSaliente correo = new CorreoSaliente();
+            correo.setDestinatario("destino" + i + "@ejemplo.com");
+            correo.setAsunto("Prueba");
+            correo.setCuerpo("Cuerpo " + i);
+            correo.setEstado(EstadoCorreo.PENDIENTE);
+            correo.setCreado(ahora);
+            correo.setProximoIntento(ahora);
+            correos.add(correo);
+        }
+        correoSalienteRepository.saveAll(correos);
+    }
+
+    private CorreoSaliente guardar(String destinatario) {
+        CorreoSaliente correo = new CorreoSaliente();
+        correo.setDestinatario(destinatario);
+        correo.setAsunto("Prueba");
+        correo.setCuerpo("Cuerpo");
+        correo.setEstado(EstadoCorreo.PENDIENTE);
+        correo.setCreado(Instant.now());
+        correo.setProximoIntento(Instant.now());
+        return correoSalienteRepository.save(correo);
+    }
+}
@@ -0,0 +1,99 @@
+package com.mail.service.password;
+
+import com.mail.exceptions.ServicioSaturadoException;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PasswordHashingServiceTest {
+    private static final Timer OCUPADO = Timer.builder("prueba").register(new SimpleMeterRegistry());
+    private final CountDownLatch liberar = new CountDownLatch(1);
+    private PasswordHashingService service;
+
+    @AfterEach
+    void cerrar() {
+        liberar.countDown();
+        service.cerrar();
+    }
+
+    @Test
+    void codificaYVerificaContrasenas() {
+        service = new PasswordHashingService(new SimpleMeterRegistry(), 2, 4, Duration.ofSeconds(5), 4);
+
+        String hash = service.encode("secreto");
+
+        assertTrue(service.matches("secreto", hash));
+        assertFalse(service.matches("otro", hash));
+        assertEquals(3, service.getEstadisticas().hashes());
+    }
+
+    @Test
+    void rechazaSinEsperarCuandoLaColaEstaLlena() throws Exception {
+        service = new PasswordHashingService(new SimpleMeterRegistry(), 1, 1, Duration.ofSeconds(5), 4);
+        CountDownLatch ocupado = new CountDownLatch(1);
+        CompletableFuture.runAsync(() -> service.ejecutar(OCUPADO, () -> bloquear(ocupado)));
+        assertTrue(ocupado.await(5, TimeUnit.SECONDS));
+        CompletableFuture.runAsync(() -> service.ejecutar(OCUPADO, () -> bloquear(new CountDownLatch(1))));
+        esperarEnCola(1);
+
+        assertThrows(ServicioSaturadoException.class, () -> service.encode("secreto"));
+        assertEquals(1, service.getEstadisticas().rechazos());
+    }
+
+    @Test
+    void rechazaSiLaEsperaSuperaElMaximo() throws Exception {
+        service = new PasswordHashingService(new SimpleMeterRegistry(), 1, 4, Duration.ofMillis(50), 4);
+        CountDownLatch ocupado = new CountDownLatch(1);
+        CompletableFuture.runAsync(() -> service.ejecutar(OCUPADO, () -> bloquear(ocupado)));
+        assertTrue(ocupado.await(5, TimeUnit.SECONDS));
+
+        assertThrows(ServicioSaturadoException.class, () -> service.encode("secreto"));
+    }
+
+    @Test
+    void mejoraElCostoSoloSiNoHayOperacionesEnEspera() throws Exception {
+        service = new PasswordHashingService(new SimpleMeterRegistry(), 1, 4, Duration.ofSeconds(5), 5);
+        String hashViejo = new BCryptPasswordEncoder(4).encode("secreto");
+
+        assertTrue(service.upgradeEncoding(hashViejo));
+        assertFalse(service.upgradeEncoding(service.encode("secreto")));
+
+        CountDownLatch ocupado = new CountDownLatch(1);
+        CompletableFuture.runAsync(() -> service.ejecutar(OCUPADO, () -> bloquear(ocupado)));
+        assertTrue(ocupado.await(5, TimeUnit.SECONDS));
+        CompletableFuture.runAsync(() -> service.ejecutar(OCUPADO, () -> bloquear(new CountDownLatch(1))));
+        esperarEnCola(1);
+
+        assertFalse(service.upgradeEncoding(hashViejo));
+    }
+
+    private Void bloquear(CountDownLatch iniciado) {
+        iniciado.countDown();
+        try {
+            liberar.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    private void esperarEnCola(int cantidad) throws InterruptedException {
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (service.getEstadisticas().enCola() < cantidad && System.nanoTime() < limite) {
+            Thread.sleep(5);
+        }
+        assertEquals(cantidad, service.getEstadisticas().enCola());
+    }
+}
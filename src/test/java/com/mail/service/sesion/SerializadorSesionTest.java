@@ -0,0 +1,62 @@
+package com.mail.service.sesion;
+
+import com.mail.enumerated.Roles;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.core.userdetails.User;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SerializadorSesionTest {
+    private final SerializadorSesion serializador = new SerializadorSesion();
+
+    @Test
+    void serializaElUsuarioDeSesionCampoPorCampo() throws Exception {
+        UsuarioSesion usuario = new UsuarioSesion(7L, "30111222", Roles.USER);
+
+        byte[] bytes = serializador.serializar(usuario);
+
+        assertEquals(usuario, serializador.deserializar(bytes));
+        assertTrue(bytes.length * 10 < serializacionJava(usuario),
+                "Ocupa " + bytes.length + " bytes contra " + serializacionJava(usuario));
+    }
+
+    @Test
+    void conservaUsuarioYPermisosDelContextoDeSeguridad() {
+        List<SimpleGrantedAuthority> permisos = List.of(new SimpleGrantedAuthority("ROLE_USER"));
+        SecurityContext contexto = new SecurityContextImpl(new UsernamePasswordAuthenticationToken(
+                new User("30111222", "$2a$10$hash", permisos), null, permisos));
+
+        Authentication leida = ((SecurityContext) serializador.deserializar(serializador.serializar(contexto))).getAuthentication();
+
+        assertTrue(leida.isAuthenticated());
+        assertEquals("30111222", leida.getName());
+        assertEquals("", ((User) leida.getPrincipal()).getPassword());
+        assertEquals(permisos, new ArrayList<>(leida.getAuthorities()));
+    }
+
+    @Test
+    void usaSerializacionDeJavaParaOtrosAtributos() {
+        ArrayList<String> valor = new ArrayList<>(List.of("a", "b"));
+
+        assertEquals(valor, serializador.deserializar(serializador.serializar(valor)));
+    }
+
+    private static int serializacionJava(Object valor) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream salida = new ObjectOutputStream(bytes)) {
+            salida.writeObject(valor);
+        }
+        return bytes.size();
+    }
+}
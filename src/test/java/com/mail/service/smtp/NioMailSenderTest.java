@@ -0,0 +1,93 @@
+package com.mail.service.smtp;
+
+import com.mail.carga.ServidorSmtpSimulado;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.MailSendException;
+
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NioMailSenderTest {
+
+    @Test
+    void duplicaLosPuntosAlInicioDeLineaYCierraElMensaje() {
+        ByteBuf contenido = Unpooled.copiedBuffer(".hola\r\nlinea.\r\n..x", StandardCharsets.US_ASCII);
+
+        ByteBuf datos = EnvioSmtp.conPuntos(contenido, ByteBufAllocator.DEFAULT);
+
+        assertEquals("..hola\r\nlinea.\r\n...x\r\n.\r\n", datos.toString(StandardCharsets.US_ASCII));
+        datos.release();
+    }
+
+    @Test
+    void enviaMuchosMensajesPorPocasConexiones() throws Exception {
+        for (boolean chunking : new boolean[]{true, false}) {
+            try (ServidorSmtpSimulado servidor = new ServidorSmtpSimulado(Duration.ofMillis(5), 0, chunking)) {
+                NioMailSender sender = sender(servidor.getPuerto());
+                try {
+                    List<CompletableFuture<Void>> envios = new ArrayList<>();
+                    for (int i = 0; i < 200; i++) {
+                        envios.add(sender.enviarAsincronico(mensaje("destino" + i + "@ejemplo.com")));
+                    }
+                    CompletableFuture.allOf(envios.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+
+                    assertEquals(200, servidor.getAceptados());
+                    assertTrue(servidor.getSesiones() <= 4, "sesiones: " + servidor.getSesiones());
+                } finally {
+                    sender.cerrar();
+                }
+            }
+        }
+    }
+
+    @Test
+    void fallaLosMensajesSiElServidorNoResponde() throws Exception {
+        int puerto;
+        try (ServerSocket libre = new ServerSocket(0)) {
+            puerto = libre.getLocalPort();
+        }
+        NioMailSender sender = sender(puerto);
+        try {
+            assertThrows(MailSendException.class, () -> sender.send(mensaje("destino@ejemplo.com")));
+        } finally {
+            sender.cerrar();
+        }
+    }
+
+    private static NioMailSender sender(int puerto) {
+        NioMailSender sender = new NioMailSender(4, 1000, Duration.ofSeconds(30), Duration.ofSeconds(10), 1000, 1,
+                new SimpleMeterRegistry(), false);
+        sender.setHost("127.0.0.1");
+        sender.setPort(puerto);
+        Properties propiedades = new Properties();
+        propiedades.setProperty("mail.smtp.localhost", "prueba.local");
+        propiedades.setProperty("mail.smtp.timeout", "5000");
+        sender.setJavaMailProperties(propiedades);
+        return sender;
+    }
+
+    private static MimeMessage mensaje(String destino) throws Exception {
+        MimeMessage mensaje = new MimeMessage(Session.getInstance(new Properties()));
+        mensaje.setFrom("origen@ejemplo.com");
+        mensaje.setRecipients(MimeMessage.RecipientType.TO, destino);
+        mensaje.setSubject("Prueba");
+        mensaje.setText(".línea que empieza con punto\nañadido en UTF-8", "UTF-8");
+        return mensaje;
+    }
+}
@@ -0,0 +1,95 @@
+package com.mail.service.smtp;
+
+import com.mail.exceptions.EnvioDiferidoException;
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.MailSendException;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.InternetAddress;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProteccionRelayTest {
+    private static final long MS = 1_000_000L;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ProteccionRelay proteccion = new ProteccionRelay(registry, 20, 2, 200, 20, 0.5, Duration.ofSeconds(30), 3);
+    private long ahora = System.nanoTime();
+
+    @Test
+    void elLimiteSigueALaLatenciaDelRelay() throws Exception {
+        rondas(30, 10);
+        int estable = proteccion.getLimite();
+        assertTrue(estable > 20, "límite: " + estable);
+
+        rondas(1, 100);
+        int lento = proteccion.getLimite();
+        assertTrue(lento < estable / 2, "límite: " + lento);
+
+        ProteccionRelay.Permiso permiso = proteccion.adquirir(ahora);
+        proteccion.terminar(permiso, 1, List.of(new MessagingException("Timeout", new SocketTimeoutException())), ahora);
+        assertEquals(Math.max(2, lento / 2), proteccion.getLimite());
+
+        List<ProteccionRelay.Permiso> permisos = new ArrayList<>();
+        for (int i = 0; i < proteccion.getLimite(); i++) {
+            permisos.add(proteccion.adquirir(ahora));
+        }
+        assertThrows(EnvioDiferidoException.class, () -> proteccion.adquirir(ahora));
+        permisos.forEach(ProteccionRelay.Permiso::cancelar);
+        assertEquals(1.0, registry.get("mail.smtp.deferred").tag("motivo", "limite").counter().count());
+    }
+
+    @Test
+    void elCircuitoSeAbrePorFallosDelRelayYSeCierraConSondas() throws Exception {
+        SMTPAddressFailedException rechazado = new SMTPAddressFailedException(new InternetAddress("a@b.com"), "RCPT TO", 550, "550 No such user");
+        for (int i = 0; i < 20; i++) {
+            proteccion.terminar(proteccion.adquirir(ahora), 1, List.of(new MailSendException(Map.of(new Object(), rechazado))), ahora);
+        }
+        assertEquals(ProteccionRelay.Estado.CERRADO, proteccion.getEstado());
+
+        for (int i = 0; i < 10; i++) {
+            proteccion.terminar(proteccion.adquirir(ahora), 1, List.of(new MessagingException("Connection refused")), ahora);
+        }
+        assertEquals(ProteccionRelay.Estado.ABIERTO, proteccion.getEstado());
+        assertThrows(EnvioDiferidoException.class, () -> proteccion.adquirir(ahora));
+        assertFalse(proteccion.aceptaEnvios());
+
+        ahora += Duration.ofSeconds(30).toNanos();
+        List<ProteccionRelay.Permiso> sondas = List.of(proteccion.adquirir(ahora), proteccion.adquirir(ahora), proteccion.adquirir(ahora));
+        assertEquals(ProteccionRelay.Estado.SEMIABIERTO, proteccion.getEstado());
+        assertThrows(EnvioDiferidoException.class, () -> proteccion.adquirir(ahora));
+
+        for (ProteccionRelay.Permiso sonda : sondas) {
+            proteccion.terminar(sonda, 1, List.of(), ahora + 10 * MS);
+        }
+        assertEquals(ProteccionRelay.Estado.CERRADO, proteccion.getEstado());
+        assertEquals(0, proteccion.getEnCurso());
+        assertEquals(2.0, registry.get("mail.smtp.deferred").tag("motivo", "circuito").counter().count());
+    }
+
+    /**
+     * En cada ronda ocupa todo el límite y termina todos los envíos tras {@code latencia} ms.
+     */
+    private void rondas(int cantidad, long latencia) {
+        for (int r = 0; r < cantidad; r++) {
+            List<ProteccionRelay.Permiso> permisos = new ArrayList<>();
+            for (int i = proteccion.getLimite(); i > 0; i--) {
+                permisos.add(proteccion.adquirir(ahora));
+            }
+            ahora += latencia * MS;
+            for (ProteccionRelay.Permiso permiso : permisos) {
+                proteccion.terminar(permiso, 1, List.of(), ahora);
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.mail.service.template;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlantillaCorreoServiceTest {
+    private final PlantillaCorreoService service = new PlantillaCorreoService();
+
+    @Test
+    void renderizaEnlaceEscapado() {
+        CorreoRenderizado correo = service.renderizar(PlantillaCorreo.RESET_PASSWORD,
+                Map.of("enlace", "http://localhost/reset_password?token=a&b"));
+
+        assertEquals(PlantillaCorreo.RESET_PASSWORD.getAsunto(), correo.asunto());
+        assertTrue(correo.html());
+        assertTrue(correo.cuerpo().contains("<a href=\"http://localhost/reset_password?token=a&amp;b\">"));
+        assertFalse(correo.cuerpo().contains("{{"));
+    }
+
+    @Test
+    void reutilizaElBufferSinMezclarEnvios() {
+        String primero = service.renderizar(PlantillaCorreo.RESET_PASSWORD, Map.of("enlace", "http://uno")).cuerpo();
+        String segundo = service.renderizar(PlantillaCorreo.RESET_PASSWORD, Map.of("enlace", "http://dos")).cuerpo();
+
+        assertTrue(primero.contains("http://uno"));
+        assertTrue(segundo.contains("http://dos"));
+        assertFalse(segundo.contains("http://uno"));
+    }
+
+    @Test
+    void renderizaCorreoDeTextoPlano() {
+        CorreoRenderizado correo = service.renderizar(PlantillaCorreo.CONFIRMACION_CAMBIO_PASSWORD, Map.of());
+
+        assertFalse(correo.html());
+        assertEquals("Su contraseña ha sido actualizada con éxito.", correo.cuerpo());
+    }
+}
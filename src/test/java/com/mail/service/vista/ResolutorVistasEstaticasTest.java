@@ -0,0 +1,107 @@
+package com.mail.service.vista;
+
+import com.mail.controllers.PortalController;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.support.GenericWebApplicationContext;
+import org.springframework.web.servlet.View;
+import org.springframework.web.servlet.ViewResolver;
+import org.thymeleaf.spring5.SpringTemplateEngine;
+import org.thymeleaf.spring5.view.ThymeleafViewResolver;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+class ResolutorVistasEstaticasTest {
+
+    @Test
+    void sirveLaVistaEstaticaDesdeLosBytesRenderizados() throws Exception {
+        AtomicInteger procesadas = new AtomicInteger();
+        SpringTemplateEngine motor = new SpringTemplateEngine();
+        ClassLoaderTemplateResolver plantillas = new ClassLoaderTemplateResolver();
+        plantillas.setPrefix("templates/");
+        plantillas.setSuffix(".html");
+        plantillas.setCharacterEncoding("UTF-8");
+        motor.setTemplateResolver(plantillas);
+        ThymeleafViewResolver thymeleaf = new ThymeleafViewResolver();
+        thymeleaf.setTemplateEngine(motor);
+        thymeleaf.setCharacterEncoding("UTF-8");
+        GenericWebApplicationContext contexto = new GenericWebApplicationContext(new MockServletContext());
+        contexto.refresh();
+        thymeleaf.setApplicationContext(contexto);
+        ViewResolver contador = (nombre, locale) -> {
+            View vista = thymeleaf.resolveViewName(nombre, locale);
+            return (modelo, request, response) -> {
+                procesadas.incrementAndGet();
+                vista.render(modelo, request, response);
+            };
+        };
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(new PortalController(null))
+                .setViewResolvers(new ResolutorVistasEstaticas(contador, List.of("login")), contador)
+                .build();
+
+        MockHttpServletResponse primera = mvc.perform(get("/login")).andReturn().getResponse();
+        MockHttpServletResponse segunda = mvc.perform(get("/login")).andReturn().getResponse();
+        assertEquals(1, procesadas.get());
+        assertEquals(200, segunda.getStatus());
+        assertArrayEquals(primera.getContentAsByteArray(), segunda.getContentAsByteArray());
+        assertTrue(segunda.getContentAsString(StandardCharsets.UTF_8).contains("/logincheck"));
+        String etag = segunda.getHeader(HttpHeaders.ETAG);
+
+        MockHttpServletResponse revalidada = mvc.perform(get("/login").header(HttpHeaders.IF_NONE_MATCH, etag)).andReturn().getResponse();
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, revalidada.getStatus());
+        assertEquals(0, revalidada.getContentLength());
+
+        MockHttpServletResponse comprimida = mvc.perform(get("/login").header(HttpHeaders.ACCEPT_ENCODING, "gzip, br")).andReturn().getResponse();
+        assertEquals("gzip", comprimida.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertNotEquals(etag, comprimida.getHeader(HttpHeaders.ETAG));
+        try (GZIPInputStream entrada = new GZIPInputStream(new ByteArrayInputStream(comprimida.getContentAsByteArray()))) {
+            assertArrayEquals(segunda.getContentAsByteArray(), entrada.readAllBytes());
+        }
+
+        mvc.perform(get("/login").param("error", ""));
+        assertEquals(2, procesadas.get());
+    }
+
+    @Test
+    void marcaInmutablesLosRecursosVersionados() throws Exception {
+        FiltroRecursosVersionados filtro = new FiltroRecursosVersionados();
+        String ruta = "/styles/login-0123456789abcdef0123456789abcdef.css";
+        MockFilterChain recurso = new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) {
+                resp.setHeader(HttpHeaders.CACHE_CONTROL, "max-age=31536000, public");
+            }
+        });
+
+        MockHttpServletResponse respuesta = new MockHttpServletResponse();
+        filtro.doFilter(new MockHttpServletRequest("GET", ruta), respuesta, recurso);
+        assertEquals("max-age=31536000, public, immutable", respuesta.getHeader(HttpHeaders.CACHE_CONTROL));
+        assertEquals("W/\"0123456789abcdef0123456789abcdef\"", respuesta.getHeader(HttpHeaders.ETAG));
+
+        MockHttpServletRequest revalidacion = new MockHttpServletRequest("GET", ruta);
+        revalidacion.addHeader(HttpHeaders.IF_NONE_MATCH, respuesta.getHeader(HttpHeaders.ETAG));
+        MockHttpServletResponse noModificado = new MockHttpServletResponse();
+        filtro.doFilter(revalidacion, noModificado, new MockFilterChain());
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, noModificado.getStatus());
+    }
+}
@@ -0,0 +1,43 @@
+package com.mail.utilitys;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ThreadFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class HilosVirtualesTest {
+
+    @Test
+    void sinHilosVirtualesUsaHilosDePlataforma() {
+        Thread hilo = HilosVirtuales.fabrica("prueba-", false).newThread(() -> { });
+
+        assertTrue(hilo.getName().startsWith("prueba-"));
+        assertFalse(HilosVirtuales.esVirtual(hilo));
+    }
+
+    @Test
+    void creaHilosVirtualesEnJava21() {
+        assumeTrue(HilosVirtuales.disponibles());
+
+        ThreadFactory fabrica = HilosVirtuales.fabrica("virtual-", true);
+        Thread hilo = fabrica.newThread(() -> { });
+
+        assertEquals("virtual-0", hilo.getName());
+        assertTrue(HilosVirtuales.esVirtual(hilo));
+    }
+
+    @Test
+    void fallaConUnMensajeClaroEnJava17() {
+        assumeFalse(HilosVirtuales.disponibles());
+
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> HilosVirtuales.fabrica("virtual-", true));
+        assertTrue(error.getMessage().contains("mail.virtual-threads.enabled"));
+    }
+}
@@ -0,0 +1,41 @@
+package com.mail.utilitys;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LectorCsvTest {
+
+    @Test
+    void leeFilasPorNombreDeColumna() throws IOException {
+        LectorCsv lector = new LectorCsv(new StringReader("Email,Nombre\na@mail.com,Ana\n\nb@mail.com,Beto\n"));
+
+        assertEquals(Map.of("email", "a@mail.com", "nombre", "Ana"), lector.siguiente());
+        assertEquals(Map.of("email", "b@mail.com", "nombre", "Beto"), lector.siguiente());
+        assertNull(lector.siguiente());
+        assertEquals(4, lector.getNumeroFila());
+    }
+
+    @Test
+    void admiteComillasYPuntoYComa() throws IOException {
+        LectorCsv lector = new LectorCsv(new StringReader("\uFEFFemail;nota\na@mail.com;\"dice \"\"hola\"\";\nen dos líneas\"\n"));
+
+        Map<String, String> fila = lector.siguiente();
+
+        assertEquals("dice \"hola\";\nen dos líneas", fila.get("nota"));
+        assertNull(lector.siguiente());
+    }
+
+    @Test
+    void fallaConComillaSinCerrar() throws IOException {
+        LectorCsv lector = new LectorCsv(new StringReader("email\n\"a@mail.com\n"));
+
+        assertThrows(IOException.class, lector::siguiente);
+    }
+}